@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.tests.sample.beans.TestBean;
+
+/**
+ * Benchmarks for {@link BeanWrapperImpl#setPropertyValue}.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class BeanWrapperBenchmark {
+
+	private BeanWrapperImpl beanWrapper;
+
+
+	@Setup
+	public void setup() {
+		TestBean target = new TestBean();
+		target.setSpouse(new TestBean());
+		this.beanWrapper = new BeanWrapperImpl(target);
+	}
+
+
+	@Benchmark
+	public Object setStringProperty() {
+		this.beanWrapper.setPropertyValue("name", "Juergen");
+		return this.beanWrapper.getWrappedInstance();
+	}
+
+	@Benchmark
+	public Object setPropertyWithConversion() {
+		this.beanWrapper.setPropertyValue("age", "42");
+		return this.beanWrapper.getWrappedInstance();
+	}
+
+	@Benchmark
+	public Object setNestedProperty() {
+		this.beanWrapper.setPropertyValue("spouse.name", "Rod");
+		return this.beanWrapper.getWrappedInstance();
+	}
+
+	@Benchmark
+	public Object newBeanWrapperAndSetProperty() {
+		BeanWrapperImpl beanWrapper = new BeanWrapperImpl(new TestBean());
+		beanWrapper.setPropertyValue("name", "Juergen");
+		beanWrapper.setPropertyValue("age", "42");
+		return beanWrapper.getWrappedInstance();
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory.support;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.tests.sample.beans.TestBean;
+
+/**
+ * Benchmarks for {@link DefaultListableBeanFactory#getBean} with prototype
+ * bean definitions.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DefaultListableBeanFactoryBenchmark {
+
+	private DefaultListableBeanFactory beanFactory;
+
+
+	@Setup
+	public void setup() {
+		this.beanFactory = new DefaultListableBeanFactory();
+
+		RootBeanDefinition simple = new RootBeanDefinition(TestBean.class);
+		simple.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+		this.beanFactory.registerBeanDefinition("simple", simple);
+
+		RootBeanDefinition withProperties = new RootBeanDefinition(TestBean.class);
+		withProperties.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+		withProperties.getPropertyValues().add("name", "Juergen").add("age", "42");
+		this.beanFactory.registerBeanDefinition("withProperties", withProperties);
+
+		RootBeanDefinition withConstructorArgs = new RootBeanDefinition(TestBean.class);
+		withConstructorArgs.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+		withConstructorArgs.getConstructorArgumentValues().addGenericArgumentValue("Juergen");
+		withConstructorArgs.getConstructorArgumentValues().addGenericArgumentValue("42");
+		this.beanFactory.registerBeanDefinition("withConstructorArgs", withConstructorArgs);
+
+		RootBeanDefinition withReference = new RootBeanDefinition(TestBean.class);
+		withReference.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+		withReference.getPropertyValues().add("spouse", new RuntimeBeanReference("simple"));
+		this.beanFactory.registerBeanDefinition("withReference", withReference);
+	}
+
+
+	@Benchmark
+	public Object prototype() {
+		return this.beanFactory.getBean("simple");
+	}
+
+	@Benchmark
+	public Object prototypeWithProperties() {
+		return this.beanFactory.getBean("withProperties");
+	}
+
+	@Benchmark
+	public Object prototypeWithConstructorArguments() {
+		return this.beanFactory.getBean("withConstructorArgs");
+	}
+
+	@Benchmark
+	public Object prototypeWithReference() {
+		return this.beanFactory.getBean("withReference");
+	}
+
+	@Benchmark
+	public Object prototypeByType() {
+		return this.beanFactory.getBean("simple", TestBean.class);
+	}
+
+}
@@ -25,6 +25,7 @@ import java.lang.annotation.Annotation;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
@@ -42,9 +43,14 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Provider;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
 import org.springframework.beans.TypeConverter;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.beans.factory.BeanCurrentlyInCreationException;
@@ -64,7 +70,9 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinitionHolder;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
 import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.core.OrderComparator;
 import org.springframework.core.ResolvableType;
 import org.springframework.core.annotation.AnnotationUtils;
@@ -181,6 +189,9 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 	/** Whether bean definition metadata may be cached for all beans */
 	private volatile boolean configurationFrozen = false;
 
+	/** Optional Executor for instantiating independent singletons concurrently */
+	private Executor bootstrapExecutor;
+
 
 	/**
 	 * Create a new DefaultListableBeanFactory.
@@ -322,6 +333,7 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 			this.allowEagerClassLoading = otherListableFactory.allowEagerClassLoading;
 			this.autowireCandidateResolver = otherListableFactory.autowireCandidateResolver;
 			this.resolvableDependencies.putAll(otherListableFactory.resolvableDependencies);
+			this.bootstrapExecutor = otherListableFactory.bootstrapExecutor;
 		}
 	}
 
@@ -719,6 +731,26 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 		clearByTypeCache();
 	}
 
+	/**
+	 * Set an {@link Executor} to use for instantiating independent non-lazy-init
+	 * singletons concurrently in {@link #preInstantiateSingletons()}.
+	 * <p>Default is none, instantiating all singletons one after the other
+	 * in the calling thread.
+	 * @since 4.3
+	 */
+	public void setBootstrapExecutor(Executor bootstrapExecutor) {
+		this.bootstrapExecutor = bootstrapExecutor;
+	}
+
+	/**
+	 * Return the {@link Executor} to use for instantiating independent non-lazy-init
+	 * singletons concurrently, if any.
+	 * @since 4.3
+	 */
+	public Executor getBootstrapExecutor() {
+		return this.bootstrapExecutor;
+	}
+
 	@Override
 	public void freezeConfiguration() {
 		this.configurationFrozen = true;
@@ -751,31 +783,13 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 		List<String> beanNames = new ArrayList<String>(this.beanDefinitionNames);
 
 		// Trigger initialization of all non-lazy singleton beans...
-		for (String beanName : beanNames) {
-			RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
-			if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
-				if (isFactoryBean(beanName)) {
-					final FactoryBean<?> factory = (FactoryBean<?>) getBean(FACTORY_BEAN_PREFIX + beanName);
-					boolean isEagerInit;
-					if (System.getSecurityManager() != null && factory instanceof SmartFactoryBean) {
-						isEagerInit = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-							@Override
-							public Boolean run() {
-								return ((SmartFactoryBean<?>) factory).isEagerInit();
-							}
-						}, getAccessControlContext());
-					}
-					else {
-						isEagerInit = (factory instanceof SmartFactoryBean &&
-								((SmartFactoryBean<?>) factory).isEagerInit());
-					}
-					if (isEagerInit) {
-						getBean(beanName);
-					}
-				}
-				else {
-					getBean(beanName);
-				}
+		Executor executor = getBootstrapExecutor();
+		if (executor != null) {
+			preInstantiateSingletonsConcurrently(beanNames, executor);
+		}
+		else {
+			for (String beanName : beanNames) {
+				preInstantiateSingleton(beanName);
 			}
 		}
 
@@ -801,6 +815,250 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 	}
 
 
+	/**
+	 * Instantiate the given bean if it is a non-lazy-init singleton,
+	 * also considering eagerly initializing {@link SmartFactoryBean SmartFactoryBeans}.
+	 * @param beanName the name of the bean
+	 */
+	private void preInstantiateSingleton(String beanName) {
+		RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
+		if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+			if (isFactoryBean(beanName)) {
+				final FactoryBean<?> factory = (FactoryBean<?>) getBean(FACTORY_BEAN_PREFIX + beanName);
+				boolean isEagerInit;
+				if (System.getSecurityManager() != null && factory instanceof SmartFactoryBean) {
+					isEagerInit = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+						@Override
+						public Boolean run() {
+							return ((SmartFactoryBean<?>) factory).isEagerInit();
+						}
+					}, getAccessControlContext());
+				}
+				else {
+					isEagerInit = (factory instanceof SmartFactoryBean &&
+							((SmartFactoryBean<?>) factory).isEagerInit());
+				}
+				if (isEagerInit) {
+					getBean(beanName);
+				}
+			}
+			else {
+				getBean(beanName);
+			}
+		}
+	}
+
+	/**
+	 * Instantiate the given beans using the given executor: beans that are linked
+	 * through their bean definitions are instantiated one after the other in the
+	 * same task, in registration order, whereas independent groups of beans are
+	 * instantiated concurrently. Dependencies that are not expressed in the bean
+	 * definitions (e.g. autowired fields) are coordinated by the singleton registry.
+	 * @param beanNames the names of the beans to instantiate
+	 * @param executor the executor to submit the tasks to
+	 */
+	private void preInstantiateSingletonsConcurrently(List<String> beanNames, Executor executor) {
+		List<List<String>> groups = groupIndependentSingletons(beanNames);
+		if (groups.size() < 2) {
+			for (String beanName : beanNames) {
+				preInstantiateSingleton(beanName);
+			}
+			return;
+		}
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("Instantiating " + groups.size() + " groups of independent singletons concurrently");
+		}
+
+		final CountDownLatch latch = new CountDownLatch(groups.size());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		final AccessControlContext acc = (System.getSecurityManager() != null ? getAccessControlContext() : null);
+		setConcurrentSingletonCreation(true);
+		try {
+			for (final List<String> group : groups) {
+				Runnable task = new Runnable() {
+					@Override
+					public void run() {
+						Thread currentThread = Thread.currentThread();
+						ClassLoader previousClassLoader = currentThread.getContextClassLoader();
+						currentThread.setContextClassLoader(classLoader);
+						try {
+							if (acc != null) {
+								AccessController.doPrivileged(new PrivilegedAction<Object>() {
+									@Override
+									public Object run() {
+										preInstantiateSingletonGroup(group, failure);
+										return null;
+									}
+								}, acc);
+							}
+							else {
+								preInstantiateSingletonGroup(group, failure);
+							}
+						}
+						catch (Throwable ex) {
+							failure.compareAndSet(null, ex);
+						}
+						finally {
+							currentThread.setContextClassLoader(previousClassLoader);
+							latch.countDown();
+						}
+					}
+				};
+				try {
+					executor.execute(task);
+				}
+				catch (RejectedExecutionException ex) {
+					// Executor saturated or shut down - fall back to the calling thread.
+					task.run();
+				}
+			}
+			awaitUninterruptibly(latch);
+		}
+		finally {
+			setConcurrentSingletonCreation(false);
+		}
+
+		Throwable ex = failure.get();
+		if (ex instanceof RuntimeException) {
+			throw (RuntimeException) ex;
+		}
+		if (ex instanceof Error) {
+			throw (Error) ex;
+		}
+		if (ex != null) {
+			throw new IllegalStateException("Concurrent pre-instantiation of singletons failed", ex);
+		}
+	}
+
+	/**
+	 * Instantiate the given group of beans one after the other, unless
+	 * another group has failed already.
+	 */
+	private void preInstantiateSingletonGroup(List<String> group, AtomicReference<Throwable> failure) {
+		for (String beanName : group) {
+			if (failure.get() != null) {
+				// Another group failed already - don't bother creating further beans.
+				break;
+			}
+			preInstantiateSingleton(beanName);
+		}
+	}
+
+	/**
+	 * Partition the given non-lazy-init singletons into groups of beans
+	 * that refer to each other, directly or through other bean definitions,
+	 * via bean references, inner beans, "depends-on" or factory beans.
+	 * @param beanNames the candidate bean names, in registration order
+	 * @return the groups of bean names, each in registration order
+	 */
+	private List<List<String>> groupIndependentSingletons(List<String> beanNames) {
+		Map<String, String> parents = new HashMap<String, String>(beanNames.size());
+		for (String beanName : beanNames) {
+			parents.put(beanName, beanName);
+		}
+		for (String beanName : beanNames) {
+			Set<String> references = new LinkedHashSet<String>();
+			collectBeanReferences(getMergedLocalBeanDefinition(beanName), references);
+			for (String reference : references) {
+				String referencedName = transformedBeanName(reference);
+				if (parents.containsKey(referencedName)) {
+					String root = findGroup(parents, beanName);
+					String referencedRoot = findGroup(parents, referencedName);
+					if (!root.equals(referencedRoot)) {
+						parents.put(referencedRoot, root);
+					}
+				}
+			}
+		}
+		Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+		for (String beanName : beanNames) {
+			RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
+			if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+				String root = findGroup(parents, beanName);
+				List<String> group = groups.get(root);
+				if (group == null) {
+					group = new ArrayList<String>();
+					groups.put(root, group);
+				}
+				group.add(beanName);
+			}
+		}
+		return new ArrayList<List<String>>(groups.values());
+	}
+
+	private static String findGroup(Map<String, String> parents, String beanName) {
+		String root = beanName;
+		String parent = parents.get(root);
+		while (!parent.equals(root)) {
+			root = parent;
+			parent = parents.get(root);
+		}
+		// Path compression for subsequent lookups
+		parents.put(beanName, root);
+		return root;
+	}
+
+	/**
+	 * Collect the names of all beans that the given value refers to,
+	 * recursing into inner bean definitions and managed collections.
+	 */
+	private void collectBeanReferences(Object value, Set<String> references) {
+		if (value instanceof BeanDefinitionHolder) {
+			collectBeanReferences(((BeanDefinitionHolder) value).getBeanDefinition(), references);
+		}
+		else if (value instanceof BeanDefinition) {
+			BeanDefinition bd = (BeanDefinition) value;
+			if (bd.getFactoryBeanName() != null) {
+				references.add(bd.getFactoryBeanName());
+			}
+			if (bd.getDependsOn() != null) {
+				references.addAll(Arrays.asList(bd.getDependsOn()));
+			}
+			for (PropertyValue pv : bd.getPropertyValues().getPropertyValueList()) {
+				collectBeanReferences(pv.getValue(), references);
+			}
+			ConstructorArgumentValues cargs = bd.getConstructorArgumentValues();
+			for (ConstructorArgumentValues.ValueHolder valueHolder : cargs.getIndexedArgumentValues().values()) {
+				collectBeanReferences(valueHolder.getValue(), references);
+			}
+			for (ConstructorArgumentValues.ValueHolder valueHolder : cargs.getGenericArgumentValues()) {
+				collectBeanReferences(valueHolder.getValue(), references);
+			}
+		}
+		else if (value instanceof RuntimeBeanReference) {
+			references.add(((RuntimeBeanReference) value).getBeanName());
+		}
+		else if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				collectBeanReferences(element, references);
+			}
+		}
+		else if (value instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				collectBeanReferences(entry.getKey(), references);
+				collectBeanReferences(entry.getValue(), references);
+			}
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			}
+			catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
 	//---------------------------------------------------------------------
 	// Implementation of BeanDefinitionRegistry interface
 	//---------------------------------------------------------------------
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -98,6 +98,16 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 	private final Set<String> singletonsCurrentlyInCreation =
 			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(16));
 
+	/** Singleton creations in concurrent mode: bean name --> creation in progress */
+	private final Map<String, SingletonCreation> singletonCreations =
+			new ConcurrentHashMap<String, SingletonCreation>(16);
+
+	/** Singletons waited for in concurrent mode: waiting thread --> bean name */
+	private final Map<Thread, String> singletonCreationWaits = new HashMap<Thread, String>(16);
+
+	/** Whether singletons may currently be created by several threads at the same time */
+	private volatile boolean concurrentSingletonCreation = false;
+
 	/** Names of beans currently excluded from in creation checks */
 	private final Set<String> inCreationCheckExclusions =
 			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(16));
@@ -183,22 +193,31 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 	 */
 	protected Object getSingleton(String beanName, boolean allowEarlyReference) {
 		Object singletonObject = this.singletonObjects.get(beanName);
-		if (singletonObject == null && isSingletonCurrentlyInCreation(beanName)) {
+		if (singletonObject == null && isSingletonCurrentlyInCreationByCurrentThread(beanName)) {
 			synchronized (this.singletonObjects) {
-				singletonObject = this.earlySingletonObjects.get(beanName);
-				if (singletonObject == null && allowEarlyReference) {
-					ObjectFactory<?> singletonFactory = this.singletonFactories.get(beanName);
-					if (singletonFactory != null) {
-						singletonObject = singletonFactory.getObject();
-						this.earlySingletonObjects.put(beanName, singletonObject);
-						this.singletonFactories.remove(beanName);
-					}
-				}
+				singletonObject = getEarlySingletonReference(beanName, allowEarlyReference);
 			}
 		}
 		return (singletonObject != NULL_OBJECT ? singletonObject : null);
 	}
 
+	/**
+	 * Return an early reference to the singleton that is currently in creation,
+	 * for resolving a circular reference. To be called with the singleton mutex held.
+	 */
+	private Object getEarlySingletonReference(String beanName, boolean allowEarlyReference) {
+		Object singletonObject = this.earlySingletonObjects.get(beanName);
+		if (singletonObject == null && allowEarlyReference) {
+			ObjectFactory<?> singletonFactory = this.singletonFactories.get(beanName);
+			if (singletonFactory != null) {
+				singletonObject = singletonFactory.getObject();
+				this.earlySingletonObjects.put(beanName, singletonObject);
+				this.singletonFactories.remove(beanName);
+			}
+		}
+		return singletonObject;
+	}
+
 	/**
 	 * Return the (raw) singleton object registered under the given name,
 	 * creating and registering a new one if none registered yet.
@@ -209,6 +228,9 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 	 */
 	public Object getSingleton(String beanName, ObjectFactory<?> singletonFactory) {
 		Assert.notNull(beanName, "'beanName' must not be null");
+		if (this.concurrentSingletonCreation) {
+			return getSingletonConcurrently(beanName, singletonFactory);
+		}
 		synchronized (this.singletonObjects) {
 			Object singletonObject = this.singletonObjects.get(beanName);
 			if (singletonObject == null) {
@@ -260,6 +282,223 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 		}
 	}
 
+	/**
+	 * Variant of {@link #getSingleton(String, ObjectFactory)} for concurrent mode:
+	 * The singleton is created without holding the singleton mutex, with other
+	 * threads requesting the same singleton waiting for its creation to complete.
+	 * <p>A circular reference across threads (i.e. the thread creating the requested
+	 * singleton is itself waiting for a singleton created by the current thread) is
+	 * resolved through an early reference, just like a circular reference within
+	 * a single thread. If the requested singleton does not expose an early reference
+	 * yet, the current thread waits for its creation instead, as long as another
+	 * thread in the cycle is able to proceed with an early reference.
+	 * <p>Waiting threads wait on the singleton mutex, releasing it until the creation
+	 * is complete, including any holds of outer calls (e.g. when obtaining the object
+	 * from a singleton FactoryBean).
+	 * @param beanName the name of the bean
+	 * @param singletonFactory the ObjectFactory to lazily create the singleton
+	 * with, if necessary
+	 * @return the registered singleton object
+	 * @see #setConcurrentSingletonCreation
+	 */
+	private Object getSingletonConcurrently(String beanName, ObjectFactory<?> singletonFactory) {
+		Thread currentThread = Thread.currentThread();
+		SingletonCreation creation;
+		boolean nestedCreation = false;
+		synchronized (this.singletonObjects) {
+			while (true) {
+				Object singletonObject = this.singletonObjects.get(beanName);
+				if (singletonObject != null) {
+					return (singletonObject != NULL_OBJECT ? singletonObject : null);
+				}
+				SingletonCreation pendingCreation = this.singletonCreations.get(beanName);
+				if (pendingCreation == null || pendingCreation.thread == currentThread) {
+					creation = pendingCreation;
+					break;
+				}
+				if (isWaitingForThread(pendingCreation.thread, currentThread)) {
+					singletonObject = getEarlySingletonReference(beanName, true);
+					if (singletonObject != null) {
+						return (singletonObject != NULL_OBJECT ? singletonObject : null);
+					}
+					if (!isResolvableByWaitingThread(pendingCreation.thread, currentThread)) {
+						throw new BeanCurrentlyInCreationException(beanName, "Requested bean is currently in " +
+								"creation in thread [" + pendingCreation.thread.getName() + "]: Is there an " +
+								"unresolvable circular reference or a FactoryBean waiting for it?");
+					}
+					// No early reference to the requested singleton yet (e.g. still in its constructor),
+					// but another thread in the cycle can proceed with one: let it re-check, and wait
+					// for the requested singleton to be completed, just like in sequential creation.
+					this.singletonObjects.notifyAll();
+				}
+				this.singletonCreationWaits.put(currentThread, beanName);
+				try {
+					// Releases the mutex, including the holds of outer calls
+					this.singletonObjects.wait();
+				}
+				catch (InterruptedException ex) {
+					currentThread.interrupt();
+					throw new BeanCreationException(beanName, "Interrupted while waiting for singleton " +
+							"creation in thread [" + pendingCreation.thread.getName() + "]");
+				}
+				finally {
+					this.singletonCreationWaits.remove(currentThread);
+				}
+				// Woken up on completion of a creation or for re-checking a circular reference
+				if (pendingCreation.isCompleted()) {
+					Throwable failure = pendingCreation.failure;
+					if (failure instanceof RuntimeException) {
+						throw (RuntimeException) failure;
+					}
+					if (failure instanceof Error) {
+						throw (Error) failure;
+					}
+				}
+			}
+
+			if (this.singletonsCurrentlyInDestruction) {
+				throw new BeanCreationNotAllowedException(beanName,
+						"Singleton bean creation not allowed while the singletons of this factory are in destruction " +
+						"(Do not request a bean from a BeanFactory in a destroy method implementation!)");
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Creating shared instance of singleton bean '" + beanName + "' in thread [" +
+						currentThread.getName() + "]");
+			}
+			if (creation != null) {
+				nestedCreation = true;
+				beforeSingletonCreation(beanName);
+			}
+			else {
+				// Register the creation first, for in-creation checks from other threads
+				creation = new SingletonCreation(currentThread);
+				this.singletonCreations.put(beanName, creation);
+				try {
+					beforeSingletonCreation(beanName);
+				}
+				catch (RuntimeException ex) {
+					this.singletonCreations.remove(beanName);
+					creation.complete(ex);
+					this.singletonObjects.notifyAll();
+					throw ex;
+				}
+			}
+		}
+
+		Object singletonObject = null;
+		boolean newSingleton = false;
+		Throwable failure = null;
+		try {
+			singletonObject = singletonFactory.getObject();
+			newSingleton = true;
+		}
+		catch (IllegalStateException ex) {
+			// Has the singleton object implicitly appeared in the meantime ->
+			// if yes, proceed with it since the exception indicates that state.
+			singletonObject = this.singletonObjects.get(beanName);
+			if (singletonObject == null) {
+				failure = ex;
+				throw ex;
+			}
+		}
+		catch (RuntimeException ex) {
+			failure = ex;
+			throw ex;
+		}
+		catch (Error err) {
+			failure = err;
+			throw err;
+		}
+		finally {
+			synchronized (this.singletonObjects) {
+				if (newSingleton) {
+					addSingleton(beanName, singletonObject);
+				}
+				afterSingletonCreation(beanName);
+				if (!nestedCreation) {
+					this.singletonCreations.remove(beanName);
+					// Wake up waiting threads, propagating the failure to them, if any
+					creation.complete(failure);
+					this.singletonObjects.notifyAll();
+				}
+			}
+		}
+		return (singletonObject != NULL_OBJECT ? singletonObject : null);
+	}
+
+	/**
+	 * Determine whether the given thread is waiting, directly or through further
+	 * threads, for a singleton that is being created by the target thread.
+	 * To be called with the singleton mutex held.
+	 */
+	private boolean isWaitingForThread(Thread thread, Thread targetThread) {
+		Set<Thread> visited = new HashSet<Thread>();
+		Thread current = thread;
+		while (current != null && visited.add(current)) {
+			String awaitedBean = this.singletonCreationWaits.get(current);
+			if (awaitedBean == null) {
+				return false;
+			}
+			SingletonCreation creation = this.singletonCreations.get(awaitedBean);
+			current = (creation != null ? creation.thread : null);
+			if (current == targetThread) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determine whether a thread on the waiting chain from the given thread to the
+	 * target thread waits for a singleton that exposes an early reference already,
+	 * i.e. whether that thread is able to resolve a circular reference across threads.
+	 * To be called with the singleton mutex held.
+	 */
+	private boolean isResolvableByWaitingThread(Thread thread, Thread targetThread) {
+		Set<Thread> visited = new HashSet<Thread>();
+		Thread current = thread;
+		while (current != null && current != targetThread && visited.add(current)) {
+			String awaitedBean = this.singletonCreationWaits.get(current);
+			if (awaitedBean == null) {
+				return false;
+			}
+			if (this.earlySingletonObjects.containsKey(awaitedBean) ||
+					this.singletonFactories.containsKey(awaitedBean)) {
+				return true;
+			}
+			SingletonCreation creation = this.singletonCreations.get(awaitedBean);
+			current = (creation != null ? creation.thread : null);
+		}
+		return false;
+	}
+
+	/**
+	 * Switch concurrent creation of singletons on or off.
+	 * <p>In concurrent mode, singletons are not created while holding the
+	 * {@link #getSingletonMutex() singleton mutex}, allowing independent
+	 * singletons to be created by several threads at the same time. A thread
+	 * requesting a singleton that is currently being created by another thread
+	 * waits for the creation to complete; early references to a singleton in
+	 * creation are only exposed to the creating thread itself, unless needed
+	 * for resolving a circular reference across threads. A thread that holds
+	 * the singleton mutex while waiting releases it until the creation is
+	 * complete, allowing the creating thread to proceed.
+	 * <p>To be switched on only while no singleton is in creation.
+	 * @since 4.3
+	 * @see DefaultListableBeanFactory#preInstantiateSingletons()
+	 */
+	protected void setConcurrentSingletonCreation(boolean concurrentSingletonCreation) {
+		this.concurrentSingletonCreation = concurrentSingletonCreation;
+	}
+
+	/**
+	 * Return whether singletons may currently be created concurrently.
+	 * @since 4.3
+	 */
+	protected boolean isConcurrentSingletonCreation() {
+		return this.concurrentSingletonCreation;
+	}
+
 	/**
 	 * Register an Exception that happened to get suppressed during the creation of a
 	 * singleton bean instance, e.g. a temporary circular reference resolution problem.
@@ -324,7 +563,7 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 	}
 
 	protected boolean isActuallyInCreation(String beanName) {
-		return isSingletonCurrentlyInCreation(beanName);
+		return isSingletonCurrentlyInCreationByCurrentThread(beanName);
 	}
 
 	/**
@@ -336,6 +575,24 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 		return this.singletonsCurrentlyInCreation.contains(beanName);
 	}
 
+	/**
+	 * Return whether the specified singleton bean is currently in creation
+	 * by the current thread. Same as {@link #isSingletonCurrentlyInCreation}
+	 * unless singletons are {@link #setConcurrentSingletonCreation created concurrently}.
+	 * @param beanName the name of the bean
+	 * @since 4.3
+	 */
+	protected boolean isSingletonCurrentlyInCreationByCurrentThread(String beanName) {
+		if (!isSingletonCurrentlyInCreation(beanName)) {
+			return false;
+		}
+		if (!this.concurrentSingletonCreation) {
+			return true;
+		}
+		SingletonCreation creation = this.singletonCreations.get(beanName);
+		return (creation == null || creation.thread == Thread.currentThread());
+	}
+
 	/**
 	 * Callback before singleton creation.
 	 * <p>The default implementation register the singleton as currently in creation.
@@ -617,4 +874,31 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 		return this.singletonObjects;
 	}
 
+
+	/**
+	 * A singleton being created by a specific thread in concurrent mode,
+	 * with the outcome of the creation for other threads waiting for it.
+	 */
+	private static class SingletonCreation {
+
+		private final Thread thread;
+
+		private volatile boolean completed;
+
+		private volatile Throwable failure;
+
+		public SingletonCreation(Thread thread) {
+			this.thread = thread;
+		}
+
+		public void complete(Throwable failure) {
+			this.failure = failure;
+			this.completed = true;
+		}
+
+		public boolean isCompleted() {
+			return this.completed;
+		}
+	}
+
 }
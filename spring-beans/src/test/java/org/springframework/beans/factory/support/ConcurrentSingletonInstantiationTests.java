@@ -0,0 +1,523 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory.support;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for concurrent pre-instantiation of singletons through a
+ * {@link DefaultListableBeanFactory#setBootstrapExecutor bootstrap executor}.
+ *
+ * @author agent
+ */
+public class ConcurrentSingletonInstantiationTests {
+
+	private static CyclicBarrier barrier;
+
+	private static CountDownLatch creationStarted;
+
+	private static CountDownLatch waitingWithMutexHeld;
+
+	private static CountDownLatch fieldInjectedCreationStarted;
+
+	private static volatile Thread constructorInjectedThread;
+
+	private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+	private ExecutorService executor;
+
+
+	@Before
+	public void setup() {
+		this.executor = Executors.newFixedThreadPool(4);
+		this.beanFactory.setBootstrapExecutor(this.executor);
+		barrier = new CyclicBarrier(2);
+		creationStarted = new CountDownLatch(1);
+		waitingWithMutexHeld = new CountDownLatch(1);
+		fieldInjectedCreationStarted = new CountDownLatch(1);
+	}
+
+	@After
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+
+	@Test
+	public void independentSingletonsInstantiatedConcurrently() {
+		// Each bean blocks until the other one has been instantiated as well
+		this.beanFactory.registerBeanDefinition("bean1", new RootBeanDefinition(BarrierBean.class));
+		this.beanFactory.registerBeanDefinition("bean2", new RootBeanDefinition(BarrierBean.class));
+		this.beanFactory.preInstantiateSingletons();
+
+		BarrierBean bean1 = this.beanFactory.getBean("bean1", BarrierBean.class);
+		BarrierBean bean2 = this.beanFactory.getBean("bean2", BarrierBean.class);
+		assertNotSame(bean1.thread, bean2.thread);
+		assertFalse(this.beanFactory.isConcurrentSingletonCreation());
+	}
+
+	@Test
+	public void referencedSingletonsInstantiatedInSameThread() {
+		RootBeanDefinition bd1 = new RootBeanDefinition(ThreadRecordingBean.class);
+		bd1.getPropertyValues().add("other", new RuntimeBeanReference("bean2"));
+		this.beanFactory.registerBeanDefinition("bean1", bd1);
+		this.beanFactory.registerBeanDefinition("bean2", new RootBeanDefinition(ThreadRecordingBean.class));
+		this.beanFactory.registerAlias("bean2", "alias2");
+		RootBeanDefinition bd3 = new RootBeanDefinition(ThreadRecordingBean.class);
+		bd3.setDependsOn("alias2");
+		this.beanFactory.registerBeanDefinition("bean3", bd3);
+		this.beanFactory.preInstantiateSingletons();
+
+		ThreadRecordingBean bean1 = this.beanFactory.getBean("bean1", ThreadRecordingBean.class);
+		ThreadRecordingBean bean2 = this.beanFactory.getBean("bean2", ThreadRecordingBean.class);
+		ThreadRecordingBean bean3 = this.beanFactory.getBean("bean3", ThreadRecordingBean.class);
+		assertSame(bean2, bean1.other);
+		assertSame(bean1.thread, bean2.thread);
+		assertSame(bean1.thread, bean3.thread);
+	}
+
+	@Test
+	public void circularReferenceAcrossThreads() {
+		// Autowiring by type hides the dependencies from the bean definitions,
+		// so both beans get instantiated concurrently and resolve each other.
+		RootBeanDefinition bd1 = new RootBeanDefinition(CircularBeanA.class);
+		bd1.setAutowireMode(RootBeanDefinition.AUTOWIRE_BY_TYPE);
+		this.beanFactory.registerBeanDefinition("a", bd1);
+		RootBeanDefinition bd2 = new RootBeanDefinition(CircularBeanB.class);
+		bd2.setAutowireMode(RootBeanDefinition.AUTOWIRE_BY_TYPE);
+		this.beanFactory.registerBeanDefinition("b", bd2);
+		this.beanFactory.preInstantiateSingletons();
+
+		CircularBeanA a = this.beanFactory.getBean(CircularBeanA.class);
+		CircularBeanB b = this.beanFactory.getBean(CircularBeanB.class);
+		assertSame(b, a.b);
+		assertSame(a, b.a);
+		assertNotSame(a.thread, b.thread);
+	}
+
+	@Test
+	public void constructorAndFieldCircularReferenceAcrossThreads() {
+		// The bean with the autowired field is registered first, and the other thread
+		// requests it while its own bean is still being constructed: no early reference
+		// exists for the latter, so its creation has to be awaited instead.
+		AutowiredAnnotationBeanPostProcessor bpp = new AutowiredAnnotationBeanPostProcessor();
+		bpp.setBeanFactory(this.beanFactory);
+		this.beanFactory.addBeanPostProcessor(bpp);
+		this.beanFactory.addBeanPostProcessor(new InstantiationAwareBeanPostProcessorAdapter() {
+			@Override
+			public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+				if (beanName.equals("x")) {
+					constructorInjectedThread = Thread.currentThread();
+					creationStarted.countDown();
+					awaitLatch(fieldInjectedCreationStarted);
+				}
+				return null;
+			}
+		});
+		this.beanFactory.registerBeanDefinition("y", new RootBeanDefinition(FieldInjectedBean.class));
+		this.beanFactory.registerBeanDefinition("x", new RootBeanDefinition(ConstructorInjectedBean.class));
+		this.beanFactory.preInstantiateSingletons();
+
+		ConstructorInjectedBean x = this.beanFactory.getBean(ConstructorInjectedBean.class);
+		FieldInjectedBean y = this.beanFactory.getBean(FieldInjectedBean.class);
+		assertSame(y, x.y);
+		assertSame(x, y.x);
+		assertNotSame(x.thread, y.thread);
+	}
+
+	@Test
+	public void smartInitializingSingletonCalledOnceInCallingThread() {
+		this.beanFactory.registerBeanDefinition("bean1", new RootBeanDefinition(SmartBean.class));
+		this.beanFactory.registerBeanDefinition("bean2", new RootBeanDefinition(SmartBean.class));
+		this.beanFactory.preInstantiateSingletons();
+
+		for (String beanName : new String[] {"bean1", "bean2"}) {
+			SmartBean bean = this.beanFactory.getBean(beanName, SmartBean.class);
+			assertEquals(1, bean.callbacks.get());
+			assertSame(Thread.currentThread(), bean.callbackThread);
+		}
+	}
+
+	@Test
+	public void eagerFactoryBeanObjectInstantiated() {
+		this.beanFactory.registerBeanDefinition("factory", new RootBeanDefinition(EagerFactoryBean.class));
+		this.beanFactory.registerBeanDefinition("bean", new RootBeanDefinition(ThreadRecordingBean.class));
+		this.beanFactory.preInstantiateSingletons();
+
+		EagerFactoryBean factoryBean = this.beanFactory.getBean("&factory", EagerFactoryBean.class);
+		assertEquals(1, factoryBean.objects.get());
+		assertTrue(this.beanFactory.containsSingleton("bean"));
+	}
+
+	@Test
+	public void failurePropagatedToCallingThread() {
+		this.beanFactory.registerBeanDefinition("bean1", new RootBeanDefinition(ThreadRecordingBean.class));
+		this.beanFactory.registerBeanDefinition("bean2", new RootBeanDefinition(FailingBean.class));
+		try {
+			this.beanFactory.preInstantiateSingletons();
+			fail("Should have thrown BeanCreationException");
+		}
+		catch (BeanCreationException ex) {
+			assertEquals("bean2", ex.getBeanName());
+			assertTrue(ex.getMostSpecificCause() instanceof IllegalStateException);
+		}
+		assertFalse(this.beanFactory.isConcurrentSingletonCreation());
+	}
+
+	@Test
+	public void factoryBeanObjectWaitsForSingletonInCreation() {
+		// The FactoryBean object is obtained with the singleton mutex held,
+		// while the requested bean is being created by another thread.
+		SlowBean.instances.set(0);
+		this.beanFactory.registerBeanDefinition("slow", new RootBeanDefinition(SlowBean.class));
+		RootBeanDefinition bd = new RootBeanDefinition(WaitingFactoryBean.class);
+		bd.getPropertyValues().add("targetBeanName", "slow");
+		this.beanFactory.registerBeanDefinition("factory", bd);
+		this.beanFactory.preInstantiateSingletons();
+
+		SlowBean slow = this.beanFactory.getBean("slow", SlowBean.class);
+		assertSame(slow, this.beanFactory.getBean("factory"));
+		assertTrue(slow.initialized);
+		assertEquals(1, SlowBean.instances.get());
+	}
+
+	@Test
+	public void failurePropagatedToWaitingThread() {
+		SlowFailingBean.instances.set(0);
+		this.beanFactory.registerBeanDefinition("failing", new RootBeanDefinition(SlowFailingBean.class));
+		RootBeanDefinition bd = new RootBeanDefinition(WaitingFactoryBean.class);
+		bd.getPropertyValues().add("targetBeanName", "failing");
+		this.beanFactory.registerBeanDefinition("factory", bd);
+		try {
+			this.beanFactory.preInstantiateSingletons();
+			fail("Should have thrown BeanCreationException");
+		}
+		catch (BeanCreationException ex) {
+			assertTrue(ex.getMostSpecificCause() instanceof IllegalStateException);
+		}
+		// The waiting thread got the original failure rather than retrying the creation
+		assertEquals(1, SlowFailingBean.instances.get());
+	}
+
+	@Test
+	public void rejectedTasksRunInCallingThread() {
+		this.beanFactory.setBootstrapExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		});
+		this.beanFactory.registerBeanDefinition("bean1", new RootBeanDefinition(ThreadRecordingBean.class));
+		this.beanFactory.registerBeanDefinition("bean2", new RootBeanDefinition(ThreadRecordingBean.class));
+		this.beanFactory.preInstantiateSingletons();
+
+		assertSame(Thread.currentThread(), this.beanFactory.getBean("bean1", ThreadRecordingBean.class).thread);
+		assertSame(Thread.currentThread(), this.beanFactory.getBean("bean2", ThreadRecordingBean.class).thread);
+	}
+
+	@Test
+	public void contextClassLoaderPropagated() {
+		ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {};
+		ClassLoader previous = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(classLoader);
+		try {
+			this.beanFactory.registerBeanDefinition("bean1", new RootBeanDefinition(ThreadRecordingBean.class));
+			this.beanFactory.registerBeanDefinition("bean2", new RootBeanDefinition(ThreadRecordingBean.class));
+			this.beanFactory.preInstantiateSingletons();
+		}
+		finally {
+			Thread.currentThread().setContextClassLoader(previous);
+		}
+		assertSame(classLoader, this.beanFactory.getBean("bean1", ThreadRecordingBean.class).classLoader);
+		assertSame(classLoader, this.beanFactory.getBean("bean2", ThreadRecordingBean.class).classLoader);
+	}
+
+
+	private static void awaitBarrier() {
+		try {
+			barrier.await(10, TimeUnit.SECONDS);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Beans not instantiated concurrently", ex);
+		}
+	}
+
+	private static void awaitLatch(CountDownLatch latch) {
+		try {
+			if (!latch.await(10, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Timed out waiting for the other thread");
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static void awaitWaiting(Thread thread) {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (thread.getState() != Thread.State.WAITING) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("Timed out waiting for the other thread to wait");
+			}
+			Thread.yield();
+		}
+	}
+
+
+	public static class ThreadRecordingBean {
+
+		final Thread thread = Thread.currentThread();
+
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		ThreadRecordingBean other;
+
+		public void setOther(ThreadRecordingBean other) {
+			this.other = other;
+		}
+	}
+
+
+	public static class BarrierBean {
+
+		final Thread thread = Thread.currentThread();
+
+		public BarrierBean() {
+			awaitBarrier();
+		}
+	}
+
+
+	public static class CircularBeanA {
+
+		final Thread thread = Thread.currentThread();
+
+		CircularBeanB b;
+
+		public CircularBeanA() {
+			awaitBarrier();
+		}
+
+		public void setB(CircularBeanB b) {
+			this.b = b;
+		}
+	}
+
+
+	public static class CircularBeanB {
+
+		final Thread thread = Thread.currentThread();
+
+		CircularBeanA a;
+
+		public CircularBeanB() {
+			awaitBarrier();
+		}
+
+		public void setA(CircularBeanA a) {
+			this.a = a;
+		}
+	}
+
+
+	public static class ConstructorInjectedBean {
+
+		final Thread thread = Thread.currentThread();
+
+		final FieldInjectedBean y;
+
+		@Autowired
+		public ConstructorInjectedBean(FieldInjectedBean y) {
+			this.y = y;
+		}
+	}
+
+
+	public static class FieldInjectedBean {
+
+		final Thread thread = Thread.currentThread();
+
+		@Autowired
+		ConstructorInjectedBean x;
+
+		public FieldInjectedBean() {
+			fieldInjectedCreationStarted.countDown();
+			awaitLatch(creationStarted);
+			// Request the other bean only once its thread waits for this one
+			awaitWaiting(constructorInjectedThread);
+		}
+	}
+
+
+	public static class SmartBean implements SmartInitializingSingleton {
+
+		final AtomicInteger callbacks = new AtomicInteger();
+
+		volatile Thread callbackThread;
+
+		@Override
+		public void afterSingletonsInstantiated() {
+			this.callbacks.incrementAndGet();
+			this.callbackThread = Thread.currentThread();
+		}
+	}
+
+
+	public static class EagerFactoryBean implements SmartFactoryBean<ThreadRecordingBean> {
+
+		final AtomicInteger objects = new AtomicInteger();
+
+		@Override
+		public ThreadRecordingBean getObject() {
+			this.objects.incrementAndGet();
+			return new ThreadRecordingBean();
+		}
+
+		@Override
+		public Class<?> getObjectType() {
+			return ThreadRecordingBean.class;
+		}
+
+		@Override
+		public boolean isSingleton() {
+			return true;
+		}
+
+		@Override
+		public boolean isPrototype() {
+			return false;
+		}
+
+		@Override
+		public boolean isEagerInit() {
+			return true;
+		}
+	}
+
+
+	public static class FailingBean {
+
+		public FailingBean() {
+			throw new IllegalStateException("Failing on purpose");
+		}
+	}
+
+
+	public static class SlowBean implements InitializingBean {
+
+		static final AtomicInteger instances = new AtomicInteger();
+
+		volatile boolean initialized;
+
+		public SlowBean() {
+			instances.incrementAndGet();
+			creationStarted.countDown();
+			// Complete the creation only once the other thread is about to wait for it
+			awaitLatch(waitingWithMutexHeld);
+		}
+
+		@Override
+		public void afterPropertiesSet() {
+			this.initialized = true;
+		}
+	}
+
+
+	public static class SlowFailingBean {
+
+		static final AtomicInteger instances = new AtomicInteger();
+
+		public SlowFailingBean() {
+			instances.incrementAndGet();
+			creationStarted.countDown();
+			awaitLatch(waitingWithMutexHeld);
+			throw new IllegalStateException("Failing on purpose");
+		}
+	}
+
+
+	public static class WaitingFactoryBean implements SmartFactoryBean<Object>, BeanFactoryAware {
+
+		private BeanFactory beanFactory;
+
+		private String targetBeanName;
+
+		@Override
+		public void setBeanFactory(BeanFactory beanFactory) {
+			this.beanFactory = beanFactory;
+		}
+
+		public void setTargetBeanName(String targetBeanName) {
+			this.targetBeanName = targetBeanName;
+		}
+
+		@Override
+		public Object getObject() {
+			// Called with the singleton mutex held: the creating thread cannot
+			// complete the creation before this thread waits for it
+			awaitLatch(creationStarted);
+			waitingWithMutexHeld.countDown();
+			return this.beanFactory.getBean(this.targetBeanName);
+		}
+
+		@Override
+		public Class<?> getObjectType() {
+			return null;
+		}
+
+		@Override
+		public boolean isSingleton() {
+			return true;
+		}
+
+		@Override
+		public boolean isPrototype() {
+			return false;
+		}
+
+		@Override
+		public boolean isEagerInit() {
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.index.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation {@link Processor} that writes a {@code META-INF/spring.components}
+ * index of the candidate components found in the compiled sources. Each type is
+ * listed with its stereotypes, as determined by {@code @Indexed} (including the
+ * {@code @Component} stereotypes) and by {@code javax.*} annotations.
+ *
+ * <p>With the index on the classpath, the component scanning facility of
+ * {@code spring-context} retrieves its candidates from the index rather than
+ * scanning the classpath. An index from a previous compilation in the same
+ * output location is merged, allowing for incremental compilation.
+ *
+ * @author agent
+ * @since 4.3
+ */
+public class CandidateComponentsIndexer implements Processor {
+
+	private static final Set<ElementKind> TYPE_KINDS;
+
+	static {
+		Set<ElementKind> kinds = new HashSet<ElementKind>();
+		kinds.add(ElementKind.CLASS);
+		kinds.add(ElementKind.INTERFACE);
+		kinds.add(ElementKind.ENUM);
+		kinds.add(ElementKind.ANNOTATION_TYPE);
+		TYPE_KINDS = Collections.unmodifiableSet(kinds);
+	}
+
+
+	private ProcessingEnvironment environment;
+
+	private MetadataStore metadataStore;
+
+	private TypeHelper typeHelper;
+
+	private List<StereotypesProvider> stereotypesProviders;
+
+	private Map<String, Set<String>> previousMetadata;
+
+	private final Map<String, Set<String>> metadata = new TreeMap<String, Set<String>>();
+
+	private final Set<String> processedTypes = new HashSet<String>();
+
+
+	@Override
+	public Set<String> getSupportedOptions() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton("*");
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public synchronized void init(ProcessingEnvironment env) {
+		this.environment = env;
+		this.metadataStore = new MetadataStore(env);
+		this.typeHelper = new TypeHelper(env);
+		this.stereotypesProviders = new ArrayList<StereotypesProvider>(2);
+		this.stereotypesProviders.add(new IndexedStereotypesProvider(this.typeHelper));
+		this.stereotypesProviders.add(new StandardStereotypesProvider(this.typeHelper));
+		this.previousMetadata = this.metadataStore.readMetadata();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getRootElements()) {
+			processElement(element);
+		}
+		if (roundEnv.processingOver()) {
+			writeMetadata();
+		}
+		return false;
+	}
+
+	@Override
+	public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation,
+			ExecutableElement member, String userText) {
+
+		return Collections.emptyList();
+	}
+
+
+	private void processElement(Element element) {
+		if (!TYPE_KINDS.contains(element.getKind())) {
+			return;
+		}
+		String type = this.typeHelper.getType((TypeElement) element);
+		this.processedTypes.add(type);
+		Set<String> stereotypes = new LinkedHashSet<String>();
+		for (StereotypesProvider provider : this.stereotypesProviders) {
+			stereotypes.addAll(provider.getStereotypes(element));
+		}
+		if (!stereotypes.isEmpty()) {
+			this.metadata.put(type, stereotypes);
+		}
+		for (Element enclosed : element.getEnclosedElements()) {
+			processElement(enclosed);
+		}
+	}
+
+	private void writeMetadata() {
+		Map<String, Set<String>> content = new TreeMap<String, Set<String>>(this.metadata);
+		// Keep entries of a previous (incremental) compilation for types that still exist
+		for (Map.Entry<String, Set<String>> entry : this.previousMetadata.entrySet()) {
+			String type = entry.getKey();
+			if (!this.processedTypes.contains(type) && this.typeHelper.getTypeElement(type) != null) {
+				content.put(type, entry.getValue());
+			}
+		}
+		try {
+			this.metadataStore.writeMetadata(content);
+		}
+		catch (IOException ex) {
+			this.environment.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Failed to write metadata to " + MetadataStore.METADATA_PATH + ": " + ex);
+		}
+	}
+
+}
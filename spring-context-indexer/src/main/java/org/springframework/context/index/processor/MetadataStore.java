@@ -0,0 +1,150 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.index.processor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Store {@code META-INF/spring.components} in the class output location
+ * of the current compilation, and read back a previously generated index
+ * for incremental compilation.
+ *
+ * <p>The index is a properties file with the fully qualified type names as
+ * keys and comma-separated stereotypes as values. Entries and stereotypes are
+ * written in alphabetical order, without any timestamp, for reproducible builds.
+ *
+ * @author agent
+ * @since 4.3
+ */
+class MetadataStore {
+
+	static final String METADATA_PATH = "META-INF/spring.components";
+
+	private static final String CHARSET = "ISO-8859-1";
+
+	private final ProcessingEnvironment environment;
+
+
+	public MetadataStore(ProcessingEnvironment environment) {
+		this.environment = environment;
+	}
+
+
+	/**
+	 * Read the index generated by a previous compilation, if any.
+	 * @return the stereotypes per type, or an empty map if no index exists
+	 */
+	public Map<String, Set<String>> readMetadata() {
+		Map<String, Set<String>> metadata = new TreeMap<String, Set<String>>();
+		try {
+			InputStream in = getMetadataResource().openInputStream();
+			try {
+				Properties properties = new Properties();
+				properties.load(in);
+				for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+					Set<String> stereotypes = new LinkedHashSet<String>();
+					for (String stereotype : ((String) entry.getValue()).split(",")) {
+						if (stereotype.trim().length() > 0) {
+							stereotypes.add(stereotype.trim());
+						}
+					}
+					metadata.put((String) entry.getKey(), stereotypes);
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ex) {
+			// No previous index (or not accessible) - start from scratch
+		}
+		catch (IllegalArgumentException ex) {
+			// Malformed previous index - start from scratch
+		}
+		return metadata;
+	}
+
+	/**
+	 * Write the given stereotypes per type as the index of this compilation.
+	 * @param metadata the stereotypes per type
+	 */
+	public void writeMetadata(Map<String, Set<String>> metadata) throws IOException {
+		if (metadata.isEmpty()) {
+			return;
+		}
+		FileObject resource = this.environment.getFiler().createResource(
+				StandardLocation.CLASS_OUTPUT, "", METADATA_PATH);
+		OutputStream out = resource.openOutputStream();
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET));
+			for (Map.Entry<String, Set<String>> entry : new TreeMap<String, Set<String>>(metadata).entrySet()) {
+				writer.write(escape(entry.getKey()));
+				writer.write('=');
+				boolean first = true;
+				for (String stereotype : new TreeSet<String>(entry.getValue())) {
+					if (!first) {
+						writer.write(',');
+					}
+					writer.write(escape(stereotype));
+					first = false;
+				}
+				writer.write('\n');
+			}
+			writer.flush();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private FileObject getMetadataResource() throws IOException {
+		return this.environment.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", METADATA_PATH);
+	}
+
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x20 || c > 0x7e) {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				if (c == '=' || c == ':' || c == '#' || c == '!' || c == '\\' || c == ' ') {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
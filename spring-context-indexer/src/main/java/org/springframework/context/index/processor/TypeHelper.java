@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.index.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Type utilities for the candidate components indexer.
+ *
+ * @author agent
+ * @since 4.3
+ */
+class TypeHelper {
+
+	private final Elements elements;
+
+	private final Types types;
+
+
+	public TypeHelper(ProcessingEnvironment env) {
+		this.elements = env.getElementUtils();
+		this.types = env.getTypeUtils();
+	}
+
+
+	/**
+	 * Return the binary name of the given type element, i.e. using a "$"
+	 * separator for nested types as expected by class loading facilities.
+	 */
+	public String getType(TypeElement element) {
+		return this.elements.getBinaryName(element).toString();
+	}
+
+	/**
+	 * Return the fully qualified name of the type of the given annotation.
+	 */
+	public String getType(AnnotationMirror annotation) {
+		return getType((TypeElement) annotation.getAnnotationType().asElement());
+	}
+
+	/**
+	 * Return the type element for the given binary name, or {@code null}
+	 * if no such type exists (any more).
+	 */
+	public TypeElement getTypeElement(String binaryName) {
+		return this.elements.getTypeElement(binaryName.replace('$', '.'));
+	}
+
+	/**
+	 * Return the annotations present on the given element, including inherited ones.
+	 */
+	public List<? extends AnnotationMirror> getAllAnnotationMirrors(Element element) {
+		try {
+			return this.elements.getAllAnnotationMirrors(element);
+		}
+		catch (Exception ex) {
+			// This may fail if one of the annotations is not available.
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Return the super class of the specified {@link Element} or {@code null}
+	 * if the element represents {@link Object}.
+	 */
+	public Element getSuperClass(Element element) {
+		List<? extends TypeMirror> superTypes = this.types.directSupertypes(element.asType());
+		if (superTypes.isEmpty()) {
+			return null;  // reached java.lang.Object
+		}
+		return this.types.asElement(superTypes.get(0));
+	}
+
+	/**
+	 * Return the interfaces that are <strong>directly</strong> implemented by
+	 * the specified {@link Element} or an empty list if this element does not
+	 * implement any interface.
+	 */
+	public List<Element> getDirectInterfaces(Element element) {
+		List<? extends TypeMirror> superTypes = this.types.directSupertypes(element.asType());
+		List<Element> directInterfaces = new ArrayList<Element>();
+		if (superTypes.size() > 1) {  // index 0 is the super class
+			for (int i = 1; i < superTypes.size(); i++) {
+				TypeMirror superType = superTypes.get(i);
+				if (superType.getKind() == TypeKind.DECLARED) {
+					directInterfaces.add(((DeclaredType) superType).asElement());
+				}
+			}
+		}
+		return directInterfaces;
+	}
+
+}
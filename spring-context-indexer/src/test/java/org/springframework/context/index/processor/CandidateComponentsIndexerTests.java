@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.index.processor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.context.index.sample.SampleComponent;
+import org.springframework.context.index.sample.SampleController;
+import org.springframework.context.index.sample.SampleEmbedded;
+import org.springframework.context.index.sample.SampleIndexedImplementation;
+import org.springframework.context.index.sample.SampleIndexedInterface;
+import org.springframework.context.index.sample.SampleMetaController;
+import org.springframework.context.index.sample.SampleMetaControllerBean;
+import org.springframework.context.index.sample.SampleNamed;
+import org.springframework.context.index.sample.SampleNone;
+import org.springframework.context.index.sample.SampleRepository;
+import org.springframework.context.index.sample.SampleService;
+import org.springframework.stereotype.Component;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CandidateComponentsIndexer}.
+ *
+ * @author agent
+ */
+public class CandidateComponentsIndexerTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private TestCompiler compiler;
+
+
+	@Before
+	public void createCompiler() throws IOException {
+		this.compiler = new TestCompiler(this.temporaryFolder.newFolder());
+	}
+
+
+	@Test
+	public void noCandidate() throws IOException {
+		assertTrue(this.compiler.compile(new CandidateComponentsIndexer(), SampleNone.class));
+		assertFalse(getIndexFile().exists());
+	}
+
+	@Test
+	public void stereotypeComponent() throws IOException {
+		testComponent(SampleComponent.class);
+	}
+
+	@Test
+	public void stereotypeService() throws IOException {
+		testComponent(SampleService.class);
+	}
+
+	@Test
+	public void stereotypeController() throws IOException {
+		testComponent(SampleController.class);
+	}
+
+	@Test
+	public void stereotypeRepository() throws IOException {
+		testComponent(SampleRepository.class);
+	}
+
+	@Test
+	public void stereotypeOnNestedType() throws IOException {
+		Properties index = compile(SampleEmbedded.class);
+		assertEquals(Component.class.getName(), index.getProperty(SampleEmbedded.Another.class.getName()));
+		assertFalse(index.containsKey(SampleEmbedded.class.getName()));
+	}
+
+	@Test
+	public void customStereotypeOnMetaAnnotation() throws IOException {
+		Properties index = compile(SampleMetaControllerBean.class, SampleMetaController.class);
+		assertEquals(SampleMetaController.class.getName() + "," + Component.class.getName(),
+				index.getProperty(SampleMetaControllerBean.class.getName()));
+	}
+
+	@Test
+	public void stereotypeOnIndexedInterface() throws IOException {
+		Properties index = compile(SampleIndexedImplementation.class, SampleIndexedInterface.class);
+		assertEquals(SampleIndexedInterface.class.getName(),
+				index.getProperty(SampleIndexedImplementation.class.getName()));
+		assertEquals(SampleIndexedInterface.class.getName(),
+				index.getProperty(SampleIndexedInterface.class.getName()));
+	}
+
+	@Test
+	public void javaxStereotype() throws IOException {
+		Properties index = compile(SampleNamed.class);
+		assertEquals("javax.inject.Named", index.getProperty(SampleNamed.class.getName()));
+	}
+
+	@Test
+	public void severalCandidates() throws IOException {
+		Properties index = compile(SampleComponent.class, SampleService.class, SampleNone.class);
+		assertEquals(2, index.size());
+		assertTrue(index.containsKey(SampleComponent.class.getName()));
+		assertTrue(index.containsKey(SampleService.class.getName()));
+	}
+
+	@Test
+	public void incrementalCompilationKeepsPreviousCandidates() throws IOException {
+		compile(SampleComponent.class);
+		Properties index = compile(SampleService.class);
+		assertEquals(2, index.size());
+		assertTrue(index.containsKey(SampleComponent.class.getName()));
+		assertTrue(index.containsKey(SampleService.class.getName()));
+	}
+
+
+	private void testComponent(Class<?> type) throws IOException {
+		Properties index = compile(type);
+		assertEquals(1, index.size());
+		assertEquals(Component.class.getName(), index.getProperty(type.getName()));
+	}
+
+	private Properties compile(Class<?>... types) throws IOException {
+		assertTrue(this.compiler.compile(new CandidateComponentsIndexer(), types));
+		File indexFile = getIndexFile();
+		assertTrue("Index not generated", indexFile.exists());
+		Properties index = new Properties();
+		InputStream in = new FileInputStream(indexFile);
+		try {
+			index.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return index;
+	}
+
+	private File getIndexFile() {
+		return new File(this.compiler.getOutputLocation(), MetadataStore.METADATA_PATH);
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.index.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Wrapper to make the {@link JavaCompiler} easier to use in tests.
+ *
+ * @author agent
+ */
+class TestCompiler {
+
+	public static final File ORIGINAL_SOURCE_FOLDER = new File("src/test/java");
+
+
+	private final JavaCompiler compiler;
+
+	private final StandardJavaFileManager fileManager;
+
+	private final File outputLocation;
+
+
+	public TestCompiler(File outputLocation) throws IOException {
+		this.compiler = ToolProvider.getSystemJavaCompiler();
+		this.fileManager = this.compiler.getStandardFileManager(null, null, null);
+		this.outputLocation = outputLocation;
+		this.fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(outputLocation));
+		this.fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Arrays.asList(outputLocation));
+	}
+
+
+	/**
+	 * Compile the given types with the given annotation processor.
+	 * @return whether the compilation succeeded
+	 */
+	public boolean compile(Processor processor, Class<?>... types) {
+		List<File> files = new ArrayList<File>();
+		for (Class<?> type : types) {
+			files.add(getSourceFile(type));
+		}
+		Iterable<? extends JavaFileObject> compilationUnits = this.fileManager.getJavaFileObjectsFromFiles(files);
+		JavaCompiler.CompilationTask task = this.compiler.getTask(null, this.fileManager, null,
+				Arrays.asList("-classpath", System.getProperty("java.class.path")), null, compilationUnits);
+		task.setProcessors(Arrays.asList(processor));
+		return task.call();
+	}
+
+	public File getOutputLocation() {
+		return this.outputLocation;
+	}
+
+	private static File getSourceFile(Class<?> type) {
+		return new File(ORIGINAL_SOURCE_FOLDER, type.getName().replace('.', '/') + ".java");
+	}
+
+}
@@ -57,6 +57,15 @@ public interface ConfigurableApplicationContext extends ApplicationContext, Life
 	 */
 	String CONVERSION_SERVICE_BEAN_NAME = "conversionService";
 
+	/**
+	 * Name of the bootstrap Executor bean in the factory. If such a bean is
+	 * supplied, independent non-lazy-init singletons will be instantiated
+	 * concurrently on it; otherwise, they are instantiated one after the other.
+	 * @since 4.3
+	 * @see org.springframework.beans.factory.support.DefaultListableBeanFactory#setBootstrapExecutor
+	 */
+	String BOOTSTRAP_EXECUTOR_BEAN_NAME = "bootstrapExecutor";
+
 	/**
 	 * Name of the LoadTimeWeaver bean in the factory. If such a bean is supplied,
 	 * the context will use a temporary ClassLoader for type matching, in order
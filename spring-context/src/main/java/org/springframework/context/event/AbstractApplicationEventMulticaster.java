@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,9 +19,10 @@ package org.springframework.context.event;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.BeanFactory;
@@ -49,6 +50,11 @@ import org.springframework.util.ObjectUtils;
  * all events to all registered listeners, invoking them in the calling thread.
  * Alternative implementations could be more sophisticated in those respects.
  *
+ * <p>Listener registration is synchronized, whereas the retrieval of the
+ * listeners for a given event type does not hold any lock: retrieval works on
+ * a snapshot of the registered listeners, and a retrieval result only gets cached
+ * if no listener has been registered or removed in the meantime.
+ *
  * @author Juergen Hoeller
  * @author Stephane Nicoll
  * @since 1.2.3
@@ -60,7 +66,7 @@ public abstract class AbstractApplicationEventMulticaster
 
 	private final ListenerRetriever defaultRetriever = new ListenerRetriever(false);
 
-	final Map<ListenerCacheKey, ListenerRetriever> retrieverCache =
+	final ConcurrentMap<ListenerCacheKey, ListenerRetriever> retrieverCache =
 			new ConcurrentHashMap<ListenerCacheKey, ListenerRetriever>(64);
 
 	private ClassLoader beanClassLoader;
@@ -69,6 +75,9 @@ public abstract class AbstractApplicationEventMulticaster
 
 	private Object retrievalMutex = this.defaultRetriever;
 
+	/** Incremented on every listener registration change, guarded by the retrieval mutex */
+	private volatile long listenerVersion;
+
 
 	@Override
 	public void setBeanClassLoader(ClassLoader classLoader) {
@@ -100,6 +109,7 @@ public abstract class AbstractApplicationEventMulticaster
 	public void addApplicationListener(ApplicationListener<?> listener) {
 		synchronized (this.retrievalMutex) {
 			this.defaultRetriever.applicationListeners.add(listener);
+			this.listenerVersion++;
 			this.retrieverCache.clear();
 		}
 	}
@@ -108,6 +118,7 @@ public abstract class AbstractApplicationEventMulticaster
 	public void addApplicationListenerBean(String listenerBeanName) {
 		synchronized (this.retrievalMutex) {
 			this.defaultRetriever.applicationListenerBeans.add(listenerBeanName);
+			this.listenerVersion++;
 			this.retrieverCache.clear();
 		}
 	}
@@ -116,6 +127,7 @@ public abstract class AbstractApplicationEventMulticaster
 	public void removeApplicationListener(ApplicationListener<?> listener) {
 		synchronized (this.retrievalMutex) {
 			this.defaultRetriever.applicationListeners.remove(listener);
+			this.listenerVersion++;
 			this.retrieverCache.clear();
 		}
 	}
@@ -124,6 +136,7 @@ public abstract class AbstractApplicationEventMulticaster
 	public void removeApplicationListenerBean(String listenerBeanName) {
 		synchronized (this.retrievalMutex) {
 			this.defaultRetriever.applicationListenerBeans.remove(listenerBeanName);
+			this.listenerVersion++;
 			this.retrieverCache.clear();
 		}
 	}
@@ -133,6 +146,7 @@ public abstract class AbstractApplicationEventMulticaster
 		synchronized (this.retrievalMutex) {
 			this.defaultRetriever.applicationListeners.clear();
 			this.defaultRetriever.applicationListenerBeans.clear();
+			this.listenerVersion++;
 			this.retrieverCache.clear();
 		}
 	}
@@ -174,21 +188,21 @@ public abstract class AbstractApplicationEventMulticaster
 		if (this.beanClassLoader == null ||
 				(ClassUtils.isCacheSafe(event.getClass(), this.beanClassLoader) &&
 						(sourceType == null || ClassUtils.isCacheSafe(sourceType, this.beanClassLoader)))) {
-			// Fully synchronized building and caching of a ListenerRetriever
-			synchronized (this.retrievalMutex) {
-				retriever = this.retrieverCache.get(cacheKey);
-				if (retriever != null) {
-					return retriever.getApplicationListeners();
-				}
-				retriever = new ListenerRetriever(true);
-				Collection<ApplicationListener<?>> listeners =
-						retrieveApplicationListeners(eventType, sourceType, retriever);
-				this.retrieverCache.put(cacheKey, retriever);
-				return listeners;
+			// Lock-free building of a ListenerRetriever, only to be cached if the
+			// registered listeners did not change while it was being built
+			long version = this.listenerVersion;
+			retriever = new ListenerRetriever(true);
+			Collection<ApplicationListener<?>> listeners =
+					retrieveApplicationListeners(eventType, sourceType, retriever);
+			if (this.listenerVersion == version && this.retrieverCache.putIfAbsent(cacheKey, retriever) == null &&
+					this.listenerVersion != version) {
+				// Registration changed concurrently - don't keep a potentially stale retriever around
+				this.retrieverCache.remove(cacheKey, retriever);
 			}
+			return listeners;
 		}
 		else {
-			// No ListenerRetriever caching -> no synchronization necessary
+			// No ListenerRetriever caching
 			return retrieveApplicationListeners(eventType, sourceType, null);
 		}
 	}
@@ -204,12 +218,9 @@ public abstract class AbstractApplicationEventMulticaster
 			ResolvableType eventType, Class<?> sourceType, ListenerRetriever retriever) {
 
 		LinkedList<ApplicationListener<?>> allListeners = new LinkedList<ApplicationListener<?>>();
-		Set<ApplicationListener<?>> listeners;
-		Set<String> listenerBeans;
-		synchronized (this.retrievalMutex) {
-			listeners = new LinkedHashSet<ApplicationListener<?>>(this.defaultRetriever.applicationListeners);
-			listenerBeans = new LinkedHashSet<String>(this.defaultRetriever.applicationListenerBeans);
-		}
+		Set<ApplicationListener<?>> listeners =
+				new LinkedHashSet<ApplicationListener<?>>(this.defaultRetriever.applicationListeners);
+		Set<String> listenerBeans = new LinkedHashSet<String>(this.defaultRetriever.applicationListenerBeans);
 		for (ApplicationListener<?> listener : listeners) {
 			if (supportsEvent(listener, eventType, sourceType)) {
 				if (retriever != null) {
@@ -318,6 +329,8 @@ public abstract class AbstractApplicationEventMulticaster
 	 * Helper class that encapsulates a specific set of target listeners,
 	 * allowing for efficient retrieval of pre-filtered listeners.
 	 * <p>An instance of this helper gets cached per event type and source type.
+	 * The default retriever holding all registered listeners uses copy-on-write
+	 * sets, so that it can be read without synchronization.
 	 */
 	private class ListenerRetriever {
 
@@ -328,8 +341,14 @@ public abstract class AbstractApplicationEventMulticaster
 		private final boolean preFiltered;
 
 		public ListenerRetriever(boolean preFiltered) {
-			this.applicationListeners = new LinkedHashSet<ApplicationListener<?>>();
-			this.applicationListenerBeans = new LinkedHashSet<String>();
+			if (preFiltered) {
+				this.applicationListeners = new LinkedHashSet<ApplicationListener<?>>();
+				this.applicationListenerBeans = new LinkedHashSet<String>();
+			}
+			else {
+				this.applicationListeners = new CopyOnWriteArraySet<ApplicationListener<?>>();
+				this.applicationListenerBeans = new CopyOnWriteArraySet<String>();
+			}
 			this.preFiltered = preFiltered;
 		}
 
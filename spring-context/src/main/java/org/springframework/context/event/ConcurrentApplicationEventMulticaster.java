@@ -0,0 +1,558 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.event;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.SingletonBeanRegistry;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.NamedThreadLocal;
+import org.springframework.core.ResolvableType;
+import org.springframework.util.Assert;
+
+/**
+ * {@link SimpleApplicationEventMulticaster} variant for high event volumes,
+ * dispatching events to each listener through a bounded queue of its own
+ * when a {@link #setTaskExecutor task executor} has been specified.
+ *
+ * <p>Each listener receives its events in publication order, one at a time,
+ * from whatever executor thread currently drains its queue, so that a slow
+ * listener neither holds up the publisher nor the other listeners. If the
+ * queue of a listener is full, the {@link OverflowPolicy} determines whether
+ * the publisher waits for space (the default, applying backpressure), invokes
+ * the listener itself, or discards the event for that listener.
+ *
+ * <p>Without a task executor, all listeners are invoked in the calling thread,
+ * just like with {@code SimpleApplicationEventMulticaster}.
+ *
+ * <p>For every listener, the number of dispatched and discarded events as well
+ * as the dispatch latency - from the publication of an event to the completion
+ * of the listener invocation - are recorded and exposed through
+ * {@link #getListenerStats()}.
+ *
+ * <p>Dispatchers are kept per listener instance, referencing the listener weakly
+ * while no events are queued for it, so that the dispatchers of listeners no
+ * longer in use (e.g. prototype listener beans) do not accumulate.
+ *
+ * <p>Note that with {@link OverflowPolicy#BLOCK}, listeners that in turn publish
+ * events to other listeners with full queues may exhaust a bounded executor;
+ * make sure the executor provides sufficient threads for such scenarios.
+ *
+ * @author agent
+ * @since 4.3
+ * @see #setTaskExecutor
+ * @see #setQueueCapacity
+ * @see #setOverflowPolicy
+ */
+public class ConcurrentApplicationEventMulticaster extends SimpleApplicationEventMulticaster {
+
+	/** Default capacity of each listener's queue: 1024 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/** Maximum number of events to dispatch before handing the executor thread back */
+	private static final int MAX_DRAIN_COUNT = 64;
+
+	private static final ThreadLocal<ListenerDispatcher> currentDispatcher =
+			new NamedThreadLocal<ListenerDispatcher>("Current event listener dispatcher");
+
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	/** Dispatchers keyed by ListenerKey, looked up through a ListenerLookupKey */
+	private final ConcurrentMap<Object, ListenerDispatcher> dispatchers =
+			new ConcurrentHashMap<Object, ListenerDispatcher>(64);
+
+	private final ReferenceQueue<ApplicationListener<?>> staleListeners =
+			new ReferenceQueue<ApplicationListener<?>>();
+
+	private BeanFactory beanFactory;
+
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+
+	/**
+	 * Create a new ConcurrentApplicationEventMulticaster.
+	 */
+	public ConcurrentApplicationEventMulticaster() {
+	}
+
+	/**
+	 * Create a new ConcurrentApplicationEventMulticaster for the given BeanFactory.
+	 */
+	public ConcurrentApplicationEventMulticaster(BeanFactory beanFactory) {
+		super(beanFactory);
+	}
+
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		super.setBeanFactory(beanFactory);
+		this.beanFactory = beanFactory;
+	}
+
+
+	/**
+	 * Set the maximum number of events that may be queued for each listener.
+	 * Default is {@link #DEFAULT_QUEUE_CAPACITY 1024}.
+	 * <p>Only applies to listeners that have not received any event yet.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		Assert.isTrue(queueCapacity > 0, "Queue capacity must be greater than 0");
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Return the maximum number of events that may be queued for each listener.
+	 */
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	/**
+	 * Specify what to do when the queue of a listener is full.
+	 * Default is {@link OverflowPolicy#BLOCK}.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		Assert.notNull(overflowPolicy, "OverflowPolicy must not be null");
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Return what to do when the queue of a listener is full.
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+
+	@Override
+	public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+		ResolvableType type = (eventType != null ? eventType : ResolvableType.forInstance(event));
+		Executor executor = getTaskExecutor();
+		for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+			ListenerDispatcher dispatcher = getDispatcher(listener);
+			if (executor != null) {
+				dispatcher.enqueue(new QueuedEvent(listener, event, System.nanoTime()), executor);
+			}
+			else {
+				dispatcher.dispatch(new QueuedEvent(listener, event, System.nanoTime()), true);
+			}
+		}
+	}
+
+	private ListenerDispatcher getDispatcher(ApplicationListener<?> listener) {
+		ListenerDispatcher dispatcher = this.dispatchers.get(new ListenerLookupKey(listener));
+		if (dispatcher == null) {
+			purgeStaleDispatchers();
+			ListenerKey key = new ListenerKey(listener, this.staleListeners);
+			dispatcher = new ListenerDispatcher(key, this.queueCapacity);
+			ListenerDispatcher existing = this.dispatchers.putIfAbsent(key, dispatcher);
+			if (existing != null) {
+				dispatcher = existing;
+			}
+		}
+		return dispatcher;
+	}
+
+	/**
+	 * Remove the dispatchers of listeners that have been garbage collected.
+	 */
+	private void purgeStaleDispatchers() {
+		Reference<? extends ApplicationListener<?>> ref;
+		while ((ref = this.staleListeners.poll()) != null) {
+			this.dispatchers.remove(ref);
+		}
+	}
+
+	@Override
+	public void removeApplicationListener(ApplicationListener<?> listener) {
+		super.removeApplicationListener(listener);
+		this.dispatchers.remove(new ListenerLookupKey(listener));
+	}
+
+	@Override
+	public void removeApplicationListenerBean(String listenerBeanName) {
+		super.removeApplicationListenerBean(listenerBeanName);
+		if (this.beanFactory instanceof SingletonBeanRegistry) {
+			Object listener = ((SingletonBeanRegistry) this.beanFactory).getSingleton(listenerBeanName);
+			if (listener instanceof ApplicationListener) {
+				this.dispatchers.remove(new ListenerLookupKey((ApplicationListener<?>) listener));
+			}
+		}
+	}
+
+	@Override
+	public void removeAllListeners() {
+		super.removeAllListeners();
+		this.dispatchers.clear();
+	}
+
+
+	/**
+	 * Return the dispatch statistics of all listeners that received events so far.
+	 */
+	public Collection<ListenerStats> getListenerStats() {
+		purgeStaleDispatchers();
+		return new ArrayList<ListenerStats>(this.dispatchers.values());
+	}
+
+	@Override
+	public String toString() {
+		long dispatched = 0;
+		long discarded = 0;
+		int queued = 0;
+		for (ListenerDispatcher dispatcher : this.dispatchers.values()) {
+			dispatched += dispatcher.getDispatchCount();
+			discarded += dispatcher.getDiscardCount();
+			queued += dispatcher.getQueueSize();
+		}
+		return getClass().getSimpleName() + "[listeners=" + this.dispatchers.size() + ", dispatched=" +
+				dispatched + ", discarded=" + discarded + ", queued=" + queued + "]";
+	}
+
+
+	/**
+	 * What to do when an event cannot be queued because the queue of the
+	 * target listener is full.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * Wait for space in the queue of the listener, applying backpressure
+		 * to the publisher. If the listener itself publishes an event that it
+		 * receives, it is invoked directly instead, to avoid waiting for itself.
+		 */
+		BLOCK,
+
+		/**
+		 * Invoke the listener in the publishing thread, bypassing the queue.
+		 * Note that the listener may then see this event before earlier,
+		 * still queued events.
+		 */
+		CALLER_RUNS,
+
+		/**
+		 * Drop the event for the listener, counting it as discarded.
+		 */
+		DISCARD
+	}
+
+
+	/**
+	 * Dispatch statistics for a single listener.
+	 */
+	public interface ListenerStats {
+
+		/**
+		 * Return the listener that these statistics apply to.
+		 */
+		ApplicationListener<?> getListener();
+
+		/**
+		 * Return the number of events currently waiting in the listener's queue.
+		 */
+		int getQueueSize();
+
+		/**
+		 * Return the number of events dispatched to the listener.
+		 */
+		long getDispatchCount();
+
+		/**
+		 * Return the number of events discarded because the listener's queue was full.
+		 */
+		long getDiscardCount();
+
+		/**
+		 * Return the mean time in nanoseconds from the publication of an event
+		 * to the completion of the listener invocation.
+		 */
+		long getMeanLatencyNanos();
+
+		/**
+		 * Return the maximum time in nanoseconds from the publication of an event
+		 * to the completion of the listener invocation.
+		 */
+		long getMaxLatencyNanos();
+	}
+
+
+	/**
+	 * Weak reference to a listener, comparing listeners by identity.
+	 * Used as the key of the dispatchers map.
+	 */
+	private static class ListenerKey extends WeakReference<ApplicationListener<?>> {
+
+		private final int hash;
+
+		public ListenerKey(ApplicationListener<?> listener, ReferenceQueue<ApplicationListener<?>> queue) {
+			super(listener, queue);
+			this.hash = System.identityHashCode(listener);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			ApplicationListener<?> listener = get();
+			if (listener == null) {
+				return false;
+			}
+			if (other instanceof ListenerLookupKey) {
+				return (listener == ((ListenerLookupKey) other).listener);
+			}
+			return (other instanceof ListenerKey && listener == ((ListenerKey) other).get());
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+
+	/**
+	 * Plain key for looking up the dispatcher of a listener, equal to the
+	 * {@link ListenerKey} for the same listener instance. Unlike a reference,
+	 * it does not need to be registered with the garbage collector and can
+	 * be eliminated by the JIT compiler on the dispatch path.
+	 */
+	private static class ListenerLookupKey {
+
+		private final ApplicationListener<?> listener;
+
+		public ListenerLookupKey(ApplicationListener<?> listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (other instanceof ListenerKey) {
+				return (this.listener == ((ListenerKey) other).get());
+			}
+			return (other instanceof ListenerLookupKey && this.listener == ((ListenerLookupKey) other).listener);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.listener);
+		}
+	}
+
+
+	/**
+	 * An event to be dispatched, holding on to the target listener until then.
+	 */
+	private static class QueuedEvent {
+
+		private final ApplicationListener<?> listener;
+
+		private final ApplicationEvent event;
+
+		private final long publishTime;
+
+		public QueuedEvent(ApplicationListener<?> listener, ApplicationEvent event, long publishTime) {
+			this.listener = listener;
+			this.event = event;
+			this.publishTime = publishTime;
+		}
+	}
+
+
+	/**
+	 * Queue and statistics for a single listener. At most one thread at a time
+	 * drains the queue, so events are delivered in the order they were queued.
+	 */
+	private class ListenerDispatcher implements Runnable, ListenerStats {
+
+		private final ListenerKey listenerKey;
+
+		private final BlockingQueue<QueuedEvent> queue;
+
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		private final AtomicLong dispatchCount = new AtomicLong();
+
+		private final AtomicLong discardCount = new AtomicLong();
+
+		private final AtomicLong totalLatency = new AtomicLong();
+
+		private final AtomicLong maxLatency = new AtomicLong();
+
+		private volatile Executor executor;
+
+		public ListenerDispatcher(ListenerKey listenerKey, int queueCapacity) {
+			this.listenerKey = listenerKey;
+			this.queue = new LinkedBlockingQueue<QueuedEvent>(queueCapacity);
+		}
+
+		public void enqueue(QueuedEvent queuedEvent, Executor executor) {
+			this.executor = executor;
+			if (!this.queue.offer(queuedEvent)) {
+				switch (getOverflowPolicy()) {
+					case DISCARD:
+						this.discardCount.incrementAndGet();
+						if (logger.isDebugEnabled()) {
+							logger.debug("Queue full - discarding " + queuedEvent.event + " for " + queuedEvent.listener);
+						}
+						break;
+					case CALLER_RUNS:
+						dispatch(queuedEvent, true);
+						break;
+					default:
+						if (currentDispatcher.get() == this) {
+							// Listener publishing to itself - can't wait for its own queue to drain.
+							dispatch(queuedEvent, true);
+						}
+						else {
+							try {
+								this.queue.put(queuedEvent);
+							}
+							catch (InterruptedException ex) {
+								Thread.currentThread().interrupt();
+								dispatch(queuedEvent, true);
+							}
+						}
+				}
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (!this.queue.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+				try {
+					this.executor.execute(this);
+				}
+				catch (RejectedExecutionException ex) {
+					// Executor saturated or shut down - drain in the calling thread.
+					run();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			ListenerDispatcher previous = currentDispatcher.get();
+			currentDispatcher.set(this);
+			try {
+				QueuedEvent queuedEvent;
+				int count = 0;
+				while (count++ < MAX_DRAIN_COUNT && (queuedEvent = this.queue.poll()) != null) {
+					dispatch(queuedEvent, false);
+				}
+			}
+			finally {
+				currentDispatcher.set(previous);
+				this.scheduled.set(false);
+			}
+			// Reschedule if more events arrived or remained after the batch
+			schedule();
+		}
+
+		public void dispatch(QueuedEvent queuedEvent, boolean propagateErrors) {
+			try {
+				invokeListener(queuedEvent.listener, queuedEvent.event);
+			}
+			catch (RuntimeException ex) {
+				if (propagateErrors) {
+					throw ex;
+				}
+				logger.error("Unexpected exception from " + queuedEvent.listener + " for " + queuedEvent.event, ex);
+			}
+			catch (Error err) {
+				if (propagateErrors) {
+					throw err;
+				}
+				logger.error("Unexpected error from " + queuedEvent.listener + " for " + queuedEvent.event, err);
+			}
+			finally {
+				recordDispatch(System.nanoTime() - queuedEvent.publishTime);
+			}
+		}
+
+		private void recordDispatch(long latency) {
+			this.dispatchCount.incrementAndGet();
+			this.totalLatency.addAndGet(latency);
+			long max = this.maxLatency.get();
+			while (latency > max && !this.maxLatency.compareAndSet(max, latency)) {
+				max = this.maxLatency.get();
+			}
+		}
+
+		@Override
+		public ApplicationListener<?> getListener() {
+			return this.listenerKey.get();
+		}
+
+		@Override
+		public int getQueueSize() {
+			return this.queue.size();
+		}
+
+		@Override
+		public long getDispatchCount() {
+			return this.dispatchCount.get();
+		}
+
+		@Override
+		public long getDiscardCount() {
+			return this.discardCount.get();
+		}
+
+		@Override
+		public long getMeanLatencyNanos() {
+			long count = this.dispatchCount.get();
+			return (count > 0 ? this.totalLatency.get() / count : 0);
+		}
+
+		@Override
+		public long getMaxLatencyNanos() {
+			return this.maxLatency.get();
+		}
+
+		@Override
+		public String toString() {
+			return "ListenerStats[listener=" + getListener() + ", queued=" + getQueueSize() +
+					", dispatched=" + getDispatchCount() + ", discarded=" + getDiscardCount() +
+					", meanLatencyNanos=" + getMeanLatencyNanos() + ", maxLatencyNanos=" + getMaxLatencyNanos() + "]";
+		}
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Support package for reading and managing the components index.
+ */
+package org.springframework.context.index;
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.context.annotation;
 
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.Set;
@@ -36,8 +37,11 @@ import org.aspectj.lang.annotation.Aspect;
 import org.junit.Test;
 
 import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.index.CandidateComponentsTestClassLoader;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.springframework.core.type.filter.RegexPatternTypeFilter;
@@ -53,6 +57,7 @@ import static org.junit.Assert.*;
  * @author Mark Fisher
  * @author Juergen Hoeller
  * @author Chris Beams
+ * @author Stephane Nicoll
  */
 public class ClassPathScanningCandidateComponentProviderTests {
 
@@ -73,6 +78,48 @@ public class ClassPathScanningCandidateComponentProviderTests {
 		assertTrue(containsBeanClass(candidates, ServiceInvocationCounter.class));
 	}
 
+	@Test
+	public void testWithDefaultsFromIndex() throws IOException {
+		ClassPathScanningCandidateComponentProvider provider = createIndexedProvider(true);
+		Set<BeanDefinition> candidates = provider.findCandidateComponents(TEST_BASE_PACKAGE);
+		// Only the indexed components, with the index entry lacking @Component filtered out
+		assertEquals(3, candidates.size());
+		assertTrue(containsBeanClass(candidates, NamedComponent.class));
+		assertTrue(containsBeanClass(candidates, FooServiceImpl.class));
+		assertTrue(containsBeanClass(candidates, StubFooDao.class));
+		for (BeanDefinition candidate : candidates) {
+			assertNotNull(((ScannedGenericBeanDefinition) candidate).getResource());
+		}
+	}
+
+	@Test
+	public void testWithComponentAnnotationOnlyFromIndex() throws IOException {
+		ClassPathScanningCandidateComponentProvider provider = createIndexedProvider(false);
+		provider.addIncludeFilter(new AnnotationTypeFilter(Component.class));
+		provider.addExcludeFilter(new AnnotationTypeFilter(Repository.class));
+		provider.addExcludeFilter(new AnnotationTypeFilter(Service.class));
+		provider.addExcludeFilter(new AnnotationTypeFilter(Controller.class));
+		Set<BeanDefinition> candidates = provider.findCandidateComponents(TEST_BASE_PACKAGE);
+		assertEquals(1, candidates.size());
+		assertTrue(containsBeanClass(candidates, NamedComponent.class));
+	}
+
+	@Test
+	public void testWithBogusBasePackageFromIndex() throws IOException {
+		ClassPathScanningCandidateComponentProvider provider = createIndexedProvider(true);
+		Set<BeanDefinition> candidates = provider.findCandidateComponents("bogus");
+		assertEquals(0, candidates.size());
+	}
+
+	@Test
+	public void testWithUnindexedFilterIgnoresIndex() throws IOException {
+		ClassPathScanningCandidateComponentProvider provider = createIndexedProvider(false);
+		provider.addIncludeFilter(new AnnotationTypeFilter(Aspect.class));
+		Set<BeanDefinition> candidates = provider.findCandidateComponents(TEST_BASE_PACKAGE);
+		assertEquals(1, candidates.size());
+		assertTrue(containsBeanClass(candidates, ServiceInvocationCounter.class));
+	}
+
 	@Test
 	public void testWithBogusBasePackage() {
 		ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(true);
@@ -304,6 +351,16 @@ public class ClassPathScanningCandidateComponentProviderTests {
 		}
 	}
 
+	private ClassPathScanningCandidateComponentProvider createIndexedProvider(boolean useDefaultFilters)
+			throws IOException {
+
+		ClassPathScanningCandidateComponentProvider provider =
+				new ClassPathScanningCandidateComponentProvider(useDefaultFilters);
+		provider.setResourceLoader(new DefaultResourceLoader(CandidateComponentsTestClassLoader.index(
+				getClass().getClassLoader(), new ClassPathResource("spring.components", NamedComponent.class))));
+		return provider;
+	}
+
 	private boolean containsBeanClass(Set<BeanDefinition> candidates, Class<?> beanClass) {
 		for (BeanDefinition candidate : candidates) {
 			ScannedGenericBeanDefinition definition = (ScannedGenericBeanDefinition) candidate;
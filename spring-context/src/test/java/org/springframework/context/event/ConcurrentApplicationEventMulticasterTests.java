@@ -0,0 +1,317 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ConcurrentApplicationEventMulticaster.ListenerStats;
+import org.springframework.context.event.ConcurrentApplicationEventMulticaster.OverflowPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ConcurrentApplicationEventMulticaster}.
+ *
+ * @author agent
+ */
+public class ConcurrentApplicationEventMulticasterTests {
+
+	private final ConcurrentApplicationEventMulticaster multicaster = new ConcurrentApplicationEventMulticaster();
+
+	private ExecutorService executor;
+
+
+	@After
+	public void shutdown() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
+
+	@Test
+	public void listenersInvokedInCallingThreadWithoutExecutor() {
+		RecordingListener listener = new RecordingListener(1);
+		this.multicaster.addApplicationListener(listener);
+		this.multicaster.multicastEvent(new TestEvent(1));
+
+		assertEquals(Collections.singletonList(1), listener.values);
+		assertSame(Thread.currentThread(), listener.lastThread);
+		ListenerStats stats = this.multicaster.getListenerStats().iterator().next();
+		assertSame(listener, stats.getListener());
+		assertEquals(1, stats.getDispatchCount());
+		assertEquals(0, stats.getQueueSize());
+		assertTrue(stats.getMaxLatencyNanos() > 0);
+	}
+
+	@Test
+	public void exceptionPropagatedWithoutExecutor() {
+		this.multicaster.addApplicationListener(new ApplicationListener<TestEvent>() {
+			@Override
+			public void onApplicationEvent(TestEvent event) {
+				throw new IllegalStateException("Failing on purpose");
+			}
+		});
+		try {
+			this.multicaster.multicastEvent(new TestEvent(1));
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			assertEquals(1, this.multicaster.getListenerStats().iterator().next().getDispatchCount());
+		}
+	}
+
+	@Test
+	public void eventsDeliveredInOrderPerListener() throws Exception {
+		this.executor = Executors.newFixedThreadPool(4);
+		this.multicaster.setTaskExecutor(this.executor);
+		RecordingListener listener1 = new RecordingListener(1000);
+		RecordingListener listener2 = new RecordingListener(1000);
+		this.multicaster.addApplicationListener(listener1);
+		this.multicaster.addApplicationListener(listener2);
+		for (int i = 0; i < 1000; i++) {
+			this.multicaster.multicastEvent(new TestEvent(i));
+		}
+
+		assertTrue(listener1.await());
+		assertTrue(listener2.await());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(Integer.valueOf(i), listener1.values.get(i));
+			assertEquals(Integer.valueOf(i), listener2.values.get(i));
+		}
+		for (ListenerStats stats : this.multicaster.getListenerStats()) {
+			assertEquals(1000, stats.getDispatchCount());
+			assertEquals(0, stats.getDiscardCount());
+			assertTrue(stats.getMaxLatencyNanos() >= stats.getMeanLatencyNanos());
+		}
+	}
+
+	@Test
+	public void slowListenerDoesNotHoldUpOtherListeners() throws Exception {
+		this.executor = Executors.newFixedThreadPool(2);
+		this.multicaster.setTaskExecutor(this.executor);
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingListener slowListener = new RecordingListener(10) {
+			@Override
+			public void onApplicationEvent(TestEvent event) {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				super.onApplicationEvent(event);
+			}
+		};
+		RecordingListener fastListener = new RecordingListener(10);
+		this.multicaster.addApplicationListener(slowListener);
+		this.multicaster.addApplicationListener(fastListener);
+		for (int i = 0; i < 10; i++) {
+			this.multicaster.multicastEvent(new TestEvent(i));
+		}
+
+		assertTrue(fastListener.await());
+		assertTrue(slowListener.values.isEmpty());
+		release.countDown();
+		assertTrue(slowListener.await());
+	}
+
+	@Test
+	public void discardWhenQueueFull() {
+		ManualExecutor executor = new ManualExecutor();
+		this.multicaster.setTaskExecutor(executor);
+		this.multicaster.setQueueCapacity(2);
+		this.multicaster.setOverflowPolicy(OverflowPolicy.DISCARD);
+		RecordingListener listener = new RecordingListener(2);
+		this.multicaster.addApplicationListener(listener);
+		for (int i = 0; i < 10; i++) {
+			this.multicaster.multicastEvent(new TestEvent(i));
+		}
+
+		ListenerStats stats = this.multicaster.getListenerStats().iterator().next();
+		assertEquals(2, stats.getQueueSize());
+		assertEquals(8, stats.getDiscardCount());
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+		assertEquals(2, stats.getDispatchCount());
+		assertEquals(0, stats.getQueueSize());
+		assertEquals(listOf(0, 1), listener.values);
+	}
+
+	@Test
+	public void callerRunsWhenQueueFull() {
+		ManualExecutor executor = new ManualExecutor();
+		this.multicaster.setTaskExecutor(executor);
+		this.multicaster.setQueueCapacity(1);
+		this.multicaster.setOverflowPolicy(OverflowPolicy.CALLER_RUNS);
+		RecordingListener listener = new RecordingListener(3);
+		this.multicaster.addApplicationListener(listener);
+		for (int i = 0; i < 3; i++) {
+			this.multicaster.multicastEvent(new TestEvent(i));
+		}
+
+		assertEquals(listOf(1, 2), listener.values);
+		assertSame(Thread.currentThread(), listener.lastThread);
+		executor.runAll();
+		assertEquals(listOf(1, 2, 0), listener.values);
+	}
+
+	@Test
+	public void blockWhenQueueFull() throws Exception {
+		this.executor = Executors.newSingleThreadExecutor();
+		this.multicaster.setTaskExecutor(this.executor);
+		this.multicaster.setQueueCapacity(1);
+		RecordingListener listener = new RecordingListener(100) {
+			@Override
+			public void onApplicationEvent(TestEvent event) {
+				try {
+					Thread.sleep(1);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				super.onApplicationEvent(event);
+			}
+		};
+		this.multicaster.addApplicationListener(listener);
+		for (int i = 0; i < 100; i++) {
+			this.multicaster.multicastEvent(new TestEvent(i));
+		}
+
+		assertTrue(listener.await());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(Integer.valueOf(i), listener.values.get(i));
+		}
+		assertEquals(0, this.multicaster.getListenerStats().iterator().next().getDiscardCount());
+	}
+
+	@Test
+	public void dispatcherReusedPerListenerInstance() {
+		RecordingListener listener1 = new RecordingListener(2);
+		RecordingListener listener2 = new RecordingListener(2);
+		this.multicaster.addApplicationListener(listener1);
+		this.multicaster.addApplicationListener(listener2);
+		this.multicaster.multicastEvent(new TestEvent(1));
+		this.multicaster.multicastEvent(new TestEvent(2));
+
+		assertEquals(2, this.multicaster.getListenerStats().size());
+		for (ListenerStats stats : this.multicaster.getListenerStats()) {
+			assertEquals(2, stats.getDispatchCount());
+		}
+	}
+
+	@Test
+	public void removedListenerNoLongerTracked() {
+		RecordingListener listener = new RecordingListener(1);
+		this.multicaster.addApplicationListener(listener);
+		this.multicaster.multicastEvent(new TestEvent(1));
+		assertEquals(1, this.multicaster.getListenerStats().size());
+
+		this.multicaster.removeApplicationListener(listener);
+		this.multicaster.multicastEvent(new TestEvent(2));
+		assertTrue(this.multicaster.getListenerStats().isEmpty());
+		assertEquals(1, listener.values.size());
+	}
+
+	@Test
+	public void removedListenerBeanNoLongerTracked() {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		RecordingListener listener = new RecordingListener(1);
+		beanFactory.registerSingleton("listener", listener);
+		this.multicaster.setBeanFactory(beanFactory);
+		this.multicaster.addApplicationListenerBean("listener");
+		this.multicaster.multicastEvent(new TestEvent(1));
+		assertEquals(1, this.multicaster.getListenerStats().size());
+
+		this.multicaster.removeApplicationListenerBean("listener");
+		this.multicaster.multicastEvent(new TestEvent(2));
+		assertTrue(this.multicaster.getListenerStats().isEmpty());
+		assertEquals(1, listener.values.size());
+	}
+
+
+	private static List<Integer> listOf(Integer... values) {
+		List<Integer> list = new ArrayList<Integer>();
+		Collections.addAll(list, values);
+		return list;
+	}
+
+
+	@SuppressWarnings("serial")
+	private static class TestEvent extends ApplicationEvent {
+
+		public TestEvent(int value) {
+			super(value);
+		}
+	}
+
+
+	private static class RecordingListener implements ApplicationListener<TestEvent> {
+
+		final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+
+		final CountDownLatch latch;
+
+		volatile Thread lastThread;
+
+		public RecordingListener(int expectedEvents) {
+			this.latch = new CountDownLatch(expectedEvents);
+		}
+
+		@Override
+		public void onApplicationEvent(TestEvent event) {
+			this.values.add((Integer) event.getSource());
+			this.lastThread = Thread.currentThread();
+			this.latch.countDown();
+		}
+
+		public boolean await() throws InterruptedException {
+			return this.latch.await(10, TimeUnit.SECONDS);
+		}
+	}
+
+
+	private static class ManualExecutor implements Executor {
+
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(Runnable task) {
+			this.tasks.add(task);
+		}
+
+		public void runAll() {
+			while (!this.tasks.isEmpty()) {
+				this.tasks.remove(0).run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.index;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A test {@link ClassLoader} that can be used in testing context to control the
+ * {@code spring.components} resource that should be read.
+ *
+ * @author agent
+ */
+public class CandidateComponentsTestClassLoader extends ClassLoader {
+
+	/**
+	 * Create a test {@link ClassLoader} that disables the use of the index, even
+	 * if resources are present at the standard location.
+	 * @param classLoader the classloader to use for all other operations
+	 * @return a test {@link ClassLoader} that has no index
+	 * @see CandidateComponentsIndexLoader#COMPONENTS_RESOURCE_LOCATION
+	 */
+	public static ClassLoader disableIndex(ClassLoader classLoader) {
+		return new CandidateComponentsTestClassLoader(classLoader, Collections.<URL>emptyList());
+	}
+
+	/**
+	 * Create a test {@link ClassLoader} that creates an index with the
+	 * specified {@link Resource} instances.
+	 * @param classLoader the classloader to use for all other operations
+	 * @param resources the resources for index files
+	 * @return a test {@link ClassLoader} with an index built based on the
+	 * specified resources.
+	 */
+	public static ClassLoader index(ClassLoader classLoader, Resource... resources) throws IOException {
+		URL[] urls = new URL[resources.length];
+		for (int i = 0; i < resources.length; i++) {
+			urls[i] = resources[i].getURL();
+		}
+		return new CandidateComponentsTestClassLoader(classLoader, Arrays.asList(urls));
+	}
+
+
+	private final List<URL> resourceUrls;
+
+
+	public CandidateComponentsTestClassLoader(ClassLoader parent, List<URL> resourceUrls) {
+		super(parent);
+		this.resourceUrls = resourceUrls;
+	}
+
+
+	@Override
+	public Enumeration<URL> getResources(String name) throws IOException {
+		if (CandidateComponentsIndexLoader.COMPONENTS_RESOURCE_LOCATION.equals(name)) {
+			return Collections.enumeration(this.resourceUrls);
+		}
+		return super.getResources(name);
+	}
+
+}
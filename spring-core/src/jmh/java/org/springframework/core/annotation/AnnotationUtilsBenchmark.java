@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link AnnotationUtils#findAnnotation}, covering annotations
+ * declared directly, on interfaces, and as meta-annotations.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AnnotationUtilsBenchmark {
+
+	private Method method;
+
+	private Method interfaceMethod;
+
+
+	@Setup
+	public void setup() throws Exception {
+		this.method = Service.class.getMethod("handle");
+		this.interfaceMethod = Service.class.getMethod("process");
+	}
+
+
+	@Benchmark
+	public Object findAnnotationOnClass() {
+		return AnnotationUtils.findAnnotation(Service.class, Marker.class);
+	}
+
+	@Benchmark
+	public Object findMetaAnnotationOnClass() {
+		return AnnotationUtils.findAnnotation(Service.class, Meta.class);
+	}
+
+	@Benchmark
+	public Object findAnnotationOnMethod() {
+		return AnnotationUtils.findAnnotation(this.method, Marker.class);
+	}
+
+	@Benchmark
+	public Object findAnnotationOnInterfaceMethod() {
+		return AnnotationUtils.findAnnotation(this.interfaceMethod, Marker.class);
+	}
+
+	@Benchmark
+	public Object findMissingAnnotationOnMethod() {
+		return AnnotationUtils.findAnnotation(this.method, Deprecated.class);
+	}
+
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Meta {
+	}
+
+	@Meta
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Marker {
+	}
+
+	public interface Processor {
+
+		@Marker
+		void process();
+	}
+
+	@Marker
+	public static class Service implements Processor {
+
+		@Marker
+		public void handle() {
+		}
+
+		@Override
+		public void process() {
+		}
+	}
+
+}
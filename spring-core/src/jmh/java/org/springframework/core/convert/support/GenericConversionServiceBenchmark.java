@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.convert.support;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.core.convert.TypeDescriptor;
+
+/**
+ * Benchmarks for {@link GenericConversionService#convert}, as configured
+ * with the default converters.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class GenericConversionServiceBenchmark {
+
+	private final GenericConversionService conversionService = new DefaultConversionService();
+
+	private final List<String> numbers = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+
+	private final TypeDescriptor sourceListType = TypeDescriptor.forObject(this.numbers);
+
+	private final TypeDescriptor targetListType =
+			TypeDescriptor.collection(List.class, TypeDescriptor.valueOf(Integer.class));
+
+
+	@Benchmark
+	public Integer convertStringToInteger() {
+		return this.conversionService.convert("42", Integer.class);
+	}
+
+	@Benchmark
+	public String convertIntegerToString() {
+		return this.conversionService.convert(42, String.class);
+	}
+
+	@Benchmark
+	public Object convertStringToEnum() {
+		return this.conversionService.convert("MILLISECONDS", TimeUnit.class);
+	}
+
+	@Benchmark
+	public Object convertListOfStringsToListOfIntegers() {
+		return this.conversionService.convert(this.numbers, this.sourceListType, this.targetListType);
+	}
+
+	@Benchmark
+	public Object convertStringToArray() {
+		return this.conversionService.convert("1,2,3,4,5", int[].class);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link AntPathMatcher}.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AntPathMatcherBenchmark {
+
+	private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+
+	@Benchmark
+	public boolean matchLiteral() {
+		return this.pathMatcher.match("/hotels/bookings/new", "/hotels/bookings/new");
+	}
+
+	@Benchmark
+	public boolean matchWildcards() {
+		return this.pathMatcher.match("/resources/**/*.css", "/resources/css/themes/default/main.css");
+	}
+
+	@Benchmark
+	public boolean matchUriVariables() {
+		return this.pathMatcher.match("/hotels/{hotel}/bookings/{booking}", "/hotels/42/bookings/21");
+	}
+
+	@Benchmark
+	public Object extractUriTemplateVariables() {
+		return this.pathMatcher.extractUriTemplateVariables("/hotels/{hotel}/bookings/{booking}", "/hotels/42/bookings/21");
+	}
+
+	@Benchmark
+	public int comparePatterns() {
+		return this.pathMatcher.getPatternComparator("/hotels/42/bookings/21")
+				.compare("/hotels/{hotel}/bookings/{booking}", "/hotels/**");
+	}
+
+}
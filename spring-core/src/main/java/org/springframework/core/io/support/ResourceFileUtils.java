@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.io.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Utility methods for accessing the file system representation of a
+ * {@link Resource}, e.g. in order to transfer its content via a
+ * {@link java.nio.channels.FileChannel} or the container's sendfile support.
+ *
+ * @author agent
+ * @since 4.3
+ */
+public abstract class ResourceFileUtils {
+
+	/**
+	 * Return the regular file behind the given resource, if it is backed by
+	 * a {@code file:} URL and the file exists.
+	 * @param resource the resource to check
+	 * @return the corresponding {@link File}, or {@code null} if the resource
+	 * is not resolvable in the file system or does not denote a regular file
+	 */
+	public static File getFileIfResolvable(Resource resource) {
+		try {
+			URL url = resource.getURL();
+			if (url != null && ResourceUtils.isFileURL(url)) {
+				File file = resource.getFile();
+				return (file.isFile() ? file : null);
+			}
+		}
+		catch (IOException ex) {
+			// not resolvable in the file system
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.type.classreading;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentLruCache;
+import org.springframework.util.DigestUtils;
+
+/**
+ * {@link MetadataReaderFactory} implementation that persists the class and
+ * annotation metadata of every class it reads to a cache directory, in a compact
+ * binary format. On subsequent runs - typically in a new JVM - the metadata is
+ * restored from that directory instead of parsing the class file with ASM again,
+ * speeding up the startup of applications that run configuration class
+ * processing and component scanning over the same, unchanged classes.
+ *
+ * <p>Cache entries are keyed by the URL of the class file resource and are only
+ * used while the last-modified timestamp and the content length of the resource
+ * match the values recorded in the entry; otherwise the class file is parsed
+ * again and the entry rewritten. Resources that do not expose a URL or a
+ * last-modified timestamp are always parsed. An entry that cannot be restored,
+ * e.g. because it refers to an annotation or enum type that is no longer
+ * present, is treated like a stale entry as well.
+ *
+ * <p>Each entry is written to a file of its own, replacing any previous file
+ * through a rename, so that several JVMs may share a cache directory.
+ * Like {@link CachingMetadataReaderFactory}, this factory also keeps a bounded
+ * number of {@link MetadataReader} instances in memory.
+ *
+ * <p>To be passed to {@code ConfigurationClassPostProcessor} and
+ * {@code ClassPathScanningCandidateComponentProvider} through their
+ * {@code setMetadataReaderFactory} methods.
+ *
+ * @author agent
+ * @since 4.3
+ * @see CachingMetadataReaderFactory
+ */
+public class PersistentMetadataReaderFactory extends SimpleMetadataReaderFactory {
+
+	/** Suffix of the files in the cache directory */
+	public static final String CACHE_FILE_SUFFIX = ".metadata";
+
+	private static final int MAGIC = 0x53504d44;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final Log logger = LogFactory.getLog(PersistentMetadataReaderFactory.class);
+
+
+	private final File cacheDirectory;
+
+	private volatile ConcurrentLruCache<Resource, MetadataReader> metadataReaderCache =
+			new ConcurrentLruCache<Resource, MetadataReader>(CachingMetadataReaderFactory.DEFAULT_CACHE_LIMIT);
+
+
+	/**
+	 * Create a new PersistentMetadataReaderFactory for the default class loader.
+	 * @param cacheDirectory the directory to keep the metadata in
+	 * (created if it does not exist yet)
+	 */
+	public PersistentMetadataReaderFactory(File cacheDirectory) {
+		super();
+		this.cacheDirectory = initCacheDirectory(cacheDirectory);
+	}
+
+	/**
+	 * Create a new PersistentMetadataReaderFactory for the given resource loader.
+	 * @param cacheDirectory the directory to keep the metadata in
+	 * (created if it does not exist yet)
+	 * @param resourceLoader the Spring ResourceLoader to use
+	 * (also determines the ClassLoader to use)
+	 */
+	public PersistentMetadataReaderFactory(File cacheDirectory, ResourceLoader resourceLoader) {
+		super(resourceLoader);
+		this.cacheDirectory = initCacheDirectory(cacheDirectory);
+	}
+
+	/**
+	 * Create a new PersistentMetadataReaderFactory for the given class loader.
+	 * @param cacheDirectory the directory to keep the metadata in
+	 * (created if it does not exist yet)
+	 * @param classLoader the ClassLoader to use
+	 */
+	public PersistentMetadataReaderFactory(File cacheDirectory, ClassLoader classLoader) {
+		super(classLoader);
+		this.cacheDirectory = initCacheDirectory(cacheDirectory);
+	}
+
+	private static File initCacheDirectory(File cacheDirectory) {
+		Assert.notNull(cacheDirectory, "Cache directory must not be null");
+		if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+			throw new IllegalArgumentException("Cannot create cache directory: " + cacheDirectory);
+		}
+		return cacheDirectory;
+	}
+
+
+	/**
+	 * Return the directory that the metadata is kept in.
+	 */
+	public final File getCacheDirectory() {
+		return this.cacheDirectory;
+	}
+
+	/**
+	 * Specify the maximum number of MetadataReader instances to keep in memory.
+	 * Default is {@link CachingMetadataReaderFactory#DEFAULT_CACHE_LIMIT 256};
+	 * a value of 0 or less disables in-memory caching.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		this.metadataReaderCache = (cacheLimit > 0 ?
+				new ConcurrentLruCache<Resource, MetadataReader>(cacheLimit) : null);
+	}
+
+	/**
+	 * Return the maximum number of MetadataReader instances kept in memory.
+	 */
+	public int getCacheLimit() {
+		ConcurrentLruCache<Resource, MetadataReader> cache = this.metadataReaderCache;
+		return (cache != null ? cache.getCapacity() : 0);
+	}
+
+
+	@Override
+	public MetadataReader getMetadataReader(Resource resource) throws IOException {
+		ConcurrentLruCache<Resource, MetadataReader> cache = this.metadataReaderCache;
+		if (cache == null) {
+			return loadMetadataReader(resource);
+		}
+		MetadataReader metadataReader = cache.get(resource);
+		if (metadataReader == null) {
+			metadataReader = cache.put(resource, loadMetadataReader(resource));
+		}
+		return metadataReader;
+	}
+
+	/**
+	 * Clear the in-memory cache of MetadataReader instances.
+	 * <p>The files in the cache directory are kept; simply delete the
+	 * directory (while no application is using it) to discard them.
+	 */
+	public void clearCache() {
+		ConcurrentLruCache<Resource, MetadataReader> cache = this.metadataReaderCache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+
+	private MetadataReader loadMetadataReader(Resource resource) throws IOException {
+		CacheKey key = getCacheKey(resource);
+		if (key == null) {
+			return super.getMetadataReader(resource);
+		}
+		File cacheFile = new File(this.cacheDirectory, key.getFileName());
+		MetadataReader metadataReader = readCacheFile(cacheFile, key, resource);
+		if (metadataReader == null) {
+			metadataReader = super.getMetadataReader(resource);
+			writeCacheFile(cacheFile, key, metadataReader);
+		}
+		return metadataReader;
+	}
+
+	private CacheKey getCacheKey(Resource resource) {
+		try {
+			String url = resource.getURL().toExternalForm();
+			long lastModified = resource.lastModified();
+			if (lastModified <= 0) {
+				return null;
+			}
+			return new CacheKey(url, lastModified, resource.contentLength());
+		}
+		catch (IOException ex) {
+			// No URL or timestamp available - can't cache this resource persistently.
+			return null;
+		}
+	}
+
+	private MetadataReader readCacheFile(File cacheFile, CacheKey key, Resource resource) {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+		}
+		catch (FileNotFoundException ex) {
+			return null;
+		}
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.url.equals(in.readUTF()) ||
+					in.readLong() != key.lastModified || in.readLong() != key.contentLength) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Ignoring stale metadata cache entry for " + resource);
+				}
+				return null;
+			}
+			return new SerializedMetadataReader(resource, getResourceLoader().getClassLoader(), in);
+		}
+		catch (Exception ex) {
+			// A corrupt entry may fail with any kind of exception - parse the class file instead.
+			if (logger.isDebugEnabled()) {
+				logger.debug("Ignoring unreadable metadata cache entry for " + resource, ex);
+			}
+			return null;
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException ex) {
+				// ignore
+			}
+		}
+	}
+
+	private void writeCacheFile(File cacheFile, CacheKey key, MetadataReader metadataReader) {
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile(cacheFile.getName(), ".tmp", this.cacheDirectory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(key.url);
+				out.writeLong(key.lastModified);
+				out.writeLong(key.contentLength);
+				SerializedMetadataReader.write(metadataReader, out);
+			}
+			finally {
+				out.close();
+			}
+			if (!tempFile.renameTo(cacheFile) && !(cacheFile.delete() && tempFile.renameTo(cacheFile))) {
+				throw new IOException("Cannot rename " + tempFile + " to " + cacheFile);
+			}
+			tempFile = null;
+		}
+		catch (Exception ex) {
+			// Caching is a mere optimization - the metadata has been read fine anyway.
+			if (logger.isDebugEnabled()) {
+				logger.debug("Could not write metadata cache entry for " + metadataReader.getResource(), ex);
+			}
+		}
+		finally {
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+		}
+	}
+
+
+	/**
+	 * Identifies the state of a class file resource that a cache entry is valid for.
+	 */
+	private static class CacheKey {
+
+		private final String url;
+
+		private final long lastModified;
+
+		private final long contentLength;
+
+		public CacheKey(String url, long lastModified, long contentLength) {
+			this.url = url;
+			this.lastModified = lastModified;
+			this.contentLength = contentLength;
+		}
+
+		public String getFileName() throws IOException {
+			return DigestUtils.md5DigestAsHex(this.url.getBytes("UTF-8")) + CACHE_FILE_SUFFIX;
+		}
+	}
+
+}
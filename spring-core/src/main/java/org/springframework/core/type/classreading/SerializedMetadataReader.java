@@ -0,0 +1,457 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.type.classreading;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.core.annotation.AnnotationAttributes;
+import org.springframework.core.io.Resource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * {@link MetadataReader} implementation restoring the metadata of a class
+ * from the compact binary format written by {@link #write}, as an alternative
+ * to parsing the class file with ASM again.
+ *
+ * <p>The binary format captures the state of an {@link AnnotationMetadataReadingVisitor}
+ * (including the metadata of annotated methods), so that the restored metadata
+ * behaves exactly like metadata read through a {@link SimpleMetadataReader}.
+ *
+ * @author agent
+ * @since 4.3
+ * @see PersistentMetadataReaderFactory
+ */
+final class SerializedMetadataReader implements MetadataReader {
+
+	private static final int NULL = 0;
+
+	private static final int STRING = 1;
+
+	private static final int BOOLEAN = 2;
+
+	private static final int BYTE = 3;
+
+	private static final int CHAR = 4;
+
+	private static final int SHORT = 5;
+
+	private static final int INT = 6;
+
+	private static final int LONG = 7;
+
+	private static final int FLOAT = 8;
+
+	private static final int DOUBLE = 9;
+
+	private static final int TYPE = 10;
+
+	private static final int CLASS = 11;
+
+	private static final int ENUM = 12;
+
+	private static final int ATTRIBUTES = 13;
+
+	private static final int ARRAY = 14;
+
+
+	private final Resource resource;
+
+	private final AnnotationMetadataReadingVisitor metadata;
+
+
+	/**
+	 * Restore the metadata for the given resource from the given input.
+	 * @param resource the class file resource that the metadata was read from
+	 * @param classLoader the ClassLoader to resolve class and enum values against
+	 * @param in the input to read the binary metadata from
+	 * @throws IOException in case of an I/O error, or if the metadata refers
+	 * to classes that cannot be resolved anymore
+	 */
+	SerializedMetadataReader(Resource resource, ClassLoader classLoader, DataInputStream in) throws IOException {
+		AnnotationMetadataReadingVisitor visitor = new AnnotationMetadataReadingVisitor(classLoader);
+
+		// Replay the class-level events that the ASM ClassReader would have emitted
+		String internalName = ClassUtils.convertClassNameToResourcePath(in.readUTF());
+		int access = in.readInt();
+		String superClassName = readNullableString(in);
+		String[] interfaces = new String[in.readInt()];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = ClassUtils.convertClassNameToResourcePath(in.readUTF());
+		}
+		visitor.visit(0, access, internalName, null,
+				(superClassName != null ? ClassUtils.convertClassNameToResourcePath(superClassName) : null),
+				interfaces);
+		String enclosingClassName = readNullableString(in);
+		boolean independent = in.readBoolean();
+		if (enclosingClassName != null) {
+			visitor.visitInnerClass(internalName, ClassUtils.convertClassNameToResourcePath(enclosingClassName),
+					null, (independent ? Opcodes.ACC_STATIC : 0));
+		}
+		int memberClassCount = in.readInt();
+		for (int i = 0; i < memberClassCount; i++) {
+			visitor.visitInnerClass(ClassUtils.convertClassNameToResourcePath(in.readUTF()), internalName, null, 0);
+		}
+
+		int annotationCount = in.readInt();
+		for (int i = 0; i < annotationCount; i++) {
+			visitor.annotationSet.add(in.readUTF());
+		}
+		readMetaAnnotationMap(in, visitor.metaAnnotationMap);
+		readAttributesMap(in, classLoader, visitor.attributesMap);
+
+		int methodCount = in.readInt();
+		for (int i = 0; i < methodCount; i++) {
+			MethodMetadataReadingVisitor method = new MethodMetadataReadingVisitor(in.readUTF(), in.readInt(),
+					in.readUTF(), in.readUTF(), classLoader, visitor.methodMetadataSet);
+			readMetaAnnotationMap(in, method.metaAnnotationMap);
+			readAttributesMap(in, classLoader, method.attributesMap);
+			visitor.methodMetadataSet.add(method);
+		}
+
+		this.resource = resource;
+		this.metadata = visitor;
+	}
+
+
+	@Override
+	public Resource getResource() {
+		return this.resource;
+	}
+
+	@Override
+	public ClassMetadata getClassMetadata() {
+		return this.metadata;
+	}
+
+	@Override
+	public AnnotationMetadata getAnnotationMetadata() {
+		return this.metadata;
+	}
+
+
+	/**
+	 * Write the metadata exposed by the given reader in binary format.
+	 * @param metadataReader a reader obtained from a {@link SimpleMetadataReader}
+	 * or a {@code SerializedMetadataReader}
+	 * @param out the output to write to
+	 * @throws IOException in case of an I/O error
+	 * @throws IllegalArgumentException if the reader does not expose visitor-based
+	 * metadata, or if an annotation attribute holds an unsupported type of value
+	 */
+	static void write(MetadataReader metadataReader, DataOutputStream out) throws IOException {
+		if (!(metadataReader.getAnnotationMetadata() instanceof AnnotationMetadataReadingVisitor)) {
+			throw new IllegalArgumentException("Unsupported metadata: " + metadataReader.getAnnotationMetadata());
+		}
+		AnnotationMetadataReadingVisitor metadata =
+				(AnnotationMetadataReadingVisitor) metadataReader.getAnnotationMetadata();
+
+		out.writeUTF(metadata.getClassName());
+		int access = 0;
+		if (metadata.isInterface()) {
+			access |= Opcodes.ACC_INTERFACE;
+		}
+		if (metadata.isAnnotation()) {
+			access |= Opcodes.ACC_ANNOTATION;
+		}
+		if (metadata.isAbstract()) {
+			access |= Opcodes.ACC_ABSTRACT;
+		}
+		if (metadata.isFinal()) {
+			access |= Opcodes.ACC_FINAL;
+		}
+		out.writeInt(access);
+		writeNullableString(out, metadata.getSuperClassName());
+		writeStrings(out, metadata.getInterfaceNames());
+		writeNullableString(out, metadata.getEnclosingClassName());
+		out.writeBoolean(metadata.hasEnclosingClass() && metadata.isIndependent());
+		writeStrings(out, metadata.getMemberClassNames());
+
+		writeStrings(out, metadata.annotationSet.toArray(new String[metadata.annotationSet.size()]));
+		writeMetaAnnotationMap(out, metadata.metaAnnotationMap);
+		writeAttributesMap(out, metadata.attributesMap);
+
+		out.writeInt(metadata.methodMetadataSet.size());
+		for (MethodMetadata methodMetadata : metadata.methodMetadataSet) {
+			if (!(methodMetadata instanceof MethodMetadataReadingVisitor)) {
+				throw new IllegalArgumentException("Unsupported method metadata: " + methodMetadata);
+			}
+			MethodMetadataReadingVisitor method = (MethodMetadataReadingVisitor) methodMetadata;
+			out.writeUTF(method.methodName);
+			out.writeInt(method.access);
+			out.writeUTF(method.declaringClassName);
+			out.writeUTF(method.returnTypeName);
+			writeMetaAnnotationMap(out, method.metaAnnotationMap);
+			writeAttributesMap(out, method.attributesMap);
+		}
+	}
+
+
+	private static void writeMetaAnnotationMap(DataOutputStream out, Map<String, Set<String>> metaAnnotationMap)
+			throws IOException {
+
+		out.writeInt(metaAnnotationMap.size());
+		for (Map.Entry<String, Set<String>> entry : metaAnnotationMap.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeStrings(out, entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+	}
+
+	private static void readMetaAnnotationMap(DataInputStream in, Map<String, Set<String>> metaAnnotationMap)
+			throws IOException {
+
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String annotationName = in.readUTF();
+			int metaAnnotationCount = in.readInt();
+			Set<String> metaAnnotationNames = new LinkedHashSet<String>(metaAnnotationCount);
+			for (int j = 0; j < metaAnnotationCount; j++) {
+				metaAnnotationNames.add(in.readUTF());
+			}
+			metaAnnotationMap.put(annotationName, metaAnnotationNames);
+		}
+	}
+
+	private static void writeAttributesMap(DataOutputStream out,
+			LinkedMultiValueMap<String, AnnotationAttributes> attributesMap) throws IOException {
+
+		out.writeInt(attributesMap.size());
+		for (Map.Entry<String, List<AnnotationAttributes>> entry : attributesMap.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (AnnotationAttributes attributes : entry.getValue()) {
+				writeValue(out, attributes);
+			}
+		}
+	}
+
+	private static void readAttributesMap(DataInputStream in, ClassLoader classLoader,
+			LinkedMultiValueMap<String, AnnotationAttributes> attributesMap) throws IOException {
+
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			String annotationName = in.readUTF();
+			int count = in.readInt();
+			for (int j = 0; j < count; j++) {
+				Object attributes = readValue(in, classLoader);
+				if (!(attributes instanceof AnnotationAttributes)) {
+					throw new IOException("Corrupt metadata: expected attributes for annotation " + annotationName);
+				}
+				attributesMap.add(annotationName, (AnnotationAttributes) attributes);
+			}
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Character) {
+			out.writeByte(CHAR);
+			out.writeChar((Character) value);
+		}
+		else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Type) {
+			out.writeByte(TYPE);
+			out.writeUTF(((Type) value).getDescriptor());
+		}
+		else if (value instanceof Class) {
+			out.writeByte(CLASS);
+			out.writeUTF(((Class<?>) value).getName());
+		}
+		else if (value instanceof Enum) {
+			out.writeByte(ENUM);
+			out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+			out.writeUTF(((Enum<?>) value).name());
+		}
+		else if (value instanceof AnnotationAttributes) {
+			AnnotationAttributes attributes = (AnnotationAttributes) value;
+			out.writeByte(ATTRIBUTES);
+			Class<? extends Annotation> annotationType = attributes.annotationType();
+			writeNullableString(out, (annotationType != null ? annotationType.getName() : null));
+			out.writeInt(attributes.size());
+			for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		}
+		else if (value.getClass().isArray()) {
+			out.writeByte(ARRAY);
+			out.writeUTF(value.getClass().getComponentType().getName());
+			int length = Array.getLength(value);
+			out.writeInt(length);
+			for (int i = 0; i < length; i++) {
+				writeValue(out, Array.get(value, i));
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported annotation attribute value: " + value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object readValue(DataInputStream in, ClassLoader classLoader) throws IOException {
+		int tag = in.readByte();
+		switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case BOOLEAN:
+				return in.readBoolean();
+			case BYTE:
+				return in.readByte();
+			case CHAR:
+				return in.readChar();
+			case SHORT:
+				return in.readShort();
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case TYPE:
+				return Type.getType(in.readUTF());
+			case CLASS:
+				return resolveClass(in.readUTF(), classLoader);
+			case ENUM:
+				Class<?> enumType = resolveClass(in.readUTF(), classLoader);
+				String constantName = in.readUTF();
+				Field enumConstant = ReflectionUtils.findField(enumType, constantName);
+				if (enumConstant == null) {
+					throw new IOException("Enum constant " + constantName + " not found in " + enumType);
+				}
+				return ReflectionUtils.getField(enumConstant, null);
+			case ATTRIBUTES:
+				String annotationTypeName = readNullableString(in);
+				AnnotationAttributes attributes = (annotationTypeName != null ? new AnnotationAttributes(
+						(Class<? extends Annotation>) resolveClass(annotationTypeName, classLoader)) :
+						new AnnotationAttributes());
+				int size = in.readInt();
+				for (int i = 0; i < size; i++) {
+					String attributeName = in.readUTF();
+					attributes.put(attributeName, readValue(in, classLoader));
+				}
+				return attributes;
+			case ARRAY:
+				Class<?> componentType = resolveClass(in.readUTF(), classLoader);
+				int length = in.readInt();
+				Object array = Array.newInstance(componentType, length);
+				for (int i = 0; i < length; i++) {
+					Array.set(array, i, readValue(in, classLoader));
+				}
+				return array;
+			default:
+				throw new IOException("Corrupt metadata: unknown value tag " + tag);
+		}
+	}
+
+	private static Class<?> resolveClass(String className, ClassLoader classLoader) throws IOException {
+		try {
+			return ClassUtils.forName(className, classLoader);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new IOException("Class referenced in metadata not found: " + className, ex);
+		}
+		catch (LinkageError err) {
+			throw new IOException("Class referenced in metadata not loadable: " + className, err);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+		out.writeInt(values.length);
+		for (String value : values) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullableString(DataInputStream in) throws IOException {
+		return (in.readBoolean() ? in.readUTF() : null);
+	}
+
+	/**
+	 * Write a String attribute value without the 64K limit of {@link DataOutputStream#writeUTF}.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+}
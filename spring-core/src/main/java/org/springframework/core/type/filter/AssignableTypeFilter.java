@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,6 +40,14 @@ public class AssignableTypeFilter extends AbstractTypeHierarchyTraversingFilter
 		this.targetType = targetType;
 	}
 
+	/**
+	 * Return the {@code type} that this instance is using to filter candidates.
+	 * @since 4.3
+	 */
+	public final Class<?> getTargetType() {
+		return this.targetType;
+	}
+
 
 	@Override
 	protected boolean matchClassName(String className) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,7 +21,6 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -70,7 +69,8 @@ public class AntPathMatcher implements PathMatcher {
 	/** Default path separator: "/" */
 	public static final String DEFAULT_PATH_SEPARATOR = "/";
 
-	private static final int CACHE_TURNOFF_THRESHOLD = 65536;
+	/** Default maximum number of entries in each pattern cache: 65536 */
+	public static final int DEFAULT_CACHE_LIMIT = 65536;
 
 	private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{[^/]+?\\}");
 
@@ -87,9 +87,13 @@ public class AntPathMatcher implements PathMatcher {
 
 	private volatile Boolean cachePatterns;
 
-	private final Map<String, String[]> tokenizedPatternCache = new ConcurrentHashMap<String, String[]>(256);
+	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
 
-	final Map<String, AntPathStringMatcher> stringMatcherCache = new ConcurrentHashMap<String, AntPathStringMatcher>(256);
+	private volatile ConcurrentLruCache<String, String[]> tokenizedPatternCache =
+			new ConcurrentLruCache<String, String[]>(DEFAULT_CACHE_LIMIT);
+
+	volatile ConcurrentLruCache<String, AntPathStringMatcher> stringMatcherCache =
+			new ConcurrentLruCache<String, AntPathStringMatcher>(DEFAULT_CACHE_LIMIT);
 
 
 	/**
@@ -121,6 +125,14 @@ public class AntPathMatcher implements PathMatcher {
 		this.pathSeparatorPatternCache = new PathSeparatorPatternCache(this.pathSeparator);
 	}
 
+	/**
+	 * Return the path separator used for pattern parsing.
+	 * @since 4.3
+	 */
+	public String getPathSeparator() {
+		return this.pathSeparator;
+	}
+
 	/**
 	 * Specify whether to perform pattern matching in a case-sensitive fashion.
 	 * <p>Default is {@code true}. Switch this to {@code false} for case-insensitive matching.
@@ -130,6 +142,14 @@ public class AntPathMatcher implements PathMatcher {
 		this.caseSensitive = caseSensitive;
 	}
 
+	/**
+	 * Return whether pattern matching is performed in a case-sensitive fashion.
+	 * @since 4.3
+	 */
+	public boolean isCaseSensitive() {
+		return this.caseSensitive;
+	}
+
 	/**
 	 * Specify whether to trim tokenized paths and patterns.
 	 * <p>Default is {@code true}.
@@ -143,21 +163,63 @@ public class AntPathMatcher implements PathMatcher {
 	 * into this matcher's {@link #match} method. A value of {@code true}
 	 * activates an unlimited pattern cache; a value of {@code false} turns
 	 * the pattern cache off completely.
-	 * <p>Default is for the cache to be on, but with the variant to automatically
-	 * turn it off when encountering too many patterns to cache at runtime
-	 * (the threshold is 65536), assuming that arbitrary permutations of patterns
-	 * are coming in, with little chance for encountering a recurring pattern.
+	 * <p>Default is for the cache to be on but bounded (see {@link #setCacheLimit}),
+	 * evicting the least recently used patterns when encountering too many
+	 * patterns to cache at runtime, so that recurring patterns remain cached
+	 * even when arbitrary permutations of patterns are coming in as well.
 	 * @since 4.0.1
 	 * @see #getStringMatcher(String)
 	 */
 	public void setCachePatterns(boolean cachePatterns) {
 		this.cachePatterns = cachePatterns;
+		initPatternCaches();
 	}
 
-	private void deactivatePatternCache() {
-		this.cachePatterns = false;
-		this.tokenizedPatternCache.clear();
-		this.stringMatcherCache.clear();
+	/**
+	 * Specify the maximum number of entries in each of the pattern caches,
+	 * unless the cache has been explicitly set to unlimited through
+	 * {@link #setCachePatterns}.
+	 * <p>Default is 65536.
+	 * @since 4.3
+	 * @see #DEFAULT_CACHE_LIMIT
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		Assert.isTrue(cacheLimit > 0, "Cache limit must be greater than 0");
+		this.cacheLimit = cacheLimit;
+		initPatternCaches();
+	}
+
+	private void initPatternCaches() {
+		int capacity = (Boolean.TRUE.equals(this.cachePatterns) ? Integer.MAX_VALUE : this.cacheLimit);
+		this.tokenizedPatternCache = new ConcurrentLruCache<String, String[]>(capacity);
+		this.stringMatcherCache = new ConcurrentLruCache<String, AntPathStringMatcher>(capacity);
+	}
+
+	/**
+	 * Return the number of pattern lookups served from the pattern caches,
+	 * accumulated over the tokenized pattern and the string matcher cache.
+	 * @since 4.3
+	 */
+	public long getCacheHitCount() {
+		return this.tokenizedPatternCache.getHitCount() + this.stringMatcherCache.getHitCount();
+	}
+
+	/**
+	 * Return the number of pattern lookups that required parsing a pattern,
+	 * accumulated over the tokenized pattern and the string matcher cache.
+	 * @since 4.3
+	 */
+	public long getCacheMissCount() {
+		return this.tokenizedPatternCache.getMissCount() + this.stringMatcherCache.getMissCount();
+	}
+
+	/**
+	 * Return the number of parsed patterns evicted from the pattern caches,
+	 * accumulated over the tokenized pattern and the string matcher cache.
+	 * @since 4.3
+	 */
+	public long getCacheEvictionCount() {
+		return this.tokenizedPatternCache.getEvictionCount() + this.stringMatcherCache.getEvictionCount();
 	}
 
 
@@ -363,23 +425,14 @@ public class AntPathMatcher implements PathMatcher {
 	 * @return the tokenized pattern parts
 	 */
 	protected String[] tokenizePattern(String pattern) {
-		String[] tokenized = null;
-		Boolean cachePatterns = this.cachePatterns;
-		if (cachePatterns == null || cachePatterns.booleanValue()) {
-			tokenized = this.tokenizedPatternCache.get(pattern);
+		if (Boolean.FALSE.equals(this.cachePatterns)) {
+			return tokenizePath(pattern);
 		}
+		ConcurrentLruCache<String, String[]> cache = this.tokenizedPatternCache;
+		String[] tokenized = cache.get(pattern);
 		if (tokenized == null) {
 			tokenized = tokenizePath(pattern);
-			if (cachePatterns == null && this.tokenizedPatternCache.size() >= CACHE_TURNOFF_THRESHOLD) {
-				// Try to adapt to the runtime situation that we're encountering:
-				// There are obviously too many different patterns coming in here...
-				// So let's turn off the cache since the patterns are unlikely to be reoccurring.
-				deactivatePatternCache();
-				return tokenized;
-			}
-			if (cachePatterns == null || cachePatterns.booleanValue()) {
-				this.tokenizedPatternCache.put(pattern, tokenized);
-			}
+			cache.put(pattern, tokenized);
 		}
 		return tokenized;
 	}
@@ -408,32 +461,22 @@ public class AntPathMatcher implements PathMatcher {
 	 * <p>The default implementation checks this AntPathMatcher's internal cache
 	 * (see {@link #setCachePatterns}), creating a new AntPathStringMatcher instance
 	 * if no cached copy is found.
-	 * <p>When encountering too many patterns to cache at runtime (the threshold is 65536),
-	 * it turns the default cache off, assuming that arbitrary permutations of patterns
-	 * are coming in, with little chance for encountering a recurring pattern.
+	 * <p>When encountering more patterns than the cache limit at runtime (65536 by
+	 * default), the least recently used patterns are evicted from the default cache.
 	 * <p>This method may be overridden to implement a custom cache strategy.
 	 * @param pattern the pattern to match against (never {@code null})
 	 * @return a corresponding AntPathStringMatcher (never {@code null})
 	 * @see #setCachePatterns
 	 */
 	protected AntPathStringMatcher getStringMatcher(String pattern) {
-		AntPathStringMatcher matcher = null;
-		Boolean cachePatterns = this.cachePatterns;
-		if (cachePatterns == null || cachePatterns.booleanValue()) {
-			matcher = this.stringMatcherCache.get(pattern);
+		if (Boolean.FALSE.equals(this.cachePatterns)) {
+			return new AntPathStringMatcher(pattern, this.caseSensitive);
 		}
+		ConcurrentLruCache<String, AntPathStringMatcher> cache = this.stringMatcherCache;
+		AntPathStringMatcher matcher = cache.get(pattern);
 		if (matcher == null) {
 			matcher = new AntPathStringMatcher(pattern, this.caseSensitive);
-			if (cachePatterns == null && this.stringMatcherCache.size() >= CACHE_TURNOFF_THRESHOLD) {
-				// Try to adapt to the runtime situation that we're encountering:
-				// There are obviously too many different patterns coming in here...
-				// So let's turn off the cache since the patterns are unlikely to be reoccurring.
-				deactivatePatternCache();
-				return matcher;
-			}
-			if (cachePatterns == null || cachePatterns.booleanValue()) {
-				this.stringMatcherCache.put(pattern, matcher);
-			}
+			cache.put(pattern, matcher);
 		}
 		return matcher;
 	}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded cache backed by a {@link ConcurrentHashMap}, evicting entries in
+ * approximate least-recently-used order once its capacity has been reached.
+ *
+ * <p>Cache hits are lock-free: they only mark the entry as recently used.
+ * Eviction follows the "clock" (second chance) algorithm: on insertion into a
+ * full cache, a hand sweeps over the entries, giving recently used entries a
+ * second chance and evicting the first entry that has not been used since the
+ * last sweep. Only insertions synchronize, so frequently used entries stay
+ * cached without putting a global lock on the read path.
+ *
+ * <p>Neither keys nor values may be {@code null}. The number of hits, misses
+ * and evicted entries is kept for monitoring purposes. Hits and misses are
+ * counted in per-thread stripes, so that concurrent readers do not contend
+ * on a single counter.
+ *
+ * @author agent
+ * @since 4.3
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ConcurrentLruCache<K, V> {
+
+	private final int capacity;
+
+	private final ConcurrentMap<K, Entry<K, V>> cache;
+
+	private final List<Entry<K, V>> clock;
+
+	private int hand;
+
+	private final StripedCounter hitCount = new StripedCounter();
+
+	private final StripedCounter missCount = new StripedCounter();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+
+	/**
+	 * Create a new cache with the given capacity.
+	 * @param capacity the maximum number of entries to keep
+	 */
+	public ConcurrentLruCache(int capacity) {
+		Assert.isTrue(capacity > 0, "Capacity must be greater than 0");
+		this.capacity = capacity;
+		int initialCapacity = Math.min(capacity, 256);
+		this.cache = new ConcurrentHashMap<K, Entry<K, V>>(initialCapacity);
+		this.clock = new ArrayList<Entry<K, V>>(initialCapacity);
+	}
+
+
+	/**
+	 * Return the value cached for the given key, or {@code null} if none.
+	 */
+	public V get(K key) {
+		Entry<K, V> entry = this.cache.get(key);
+		if (entry == null) {
+			this.missCount.increment();
+			return null;
+		}
+		this.hitCount.increment();
+		if (!entry.used) {
+			entry.used = true;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Cache the given value for the given key, evicting an entry that has not
+	 * been used recently if the cache is full. If a value is already cached
+	 * for the key, the existing value is kept and returned.
+	 * @return the value now cached for the key
+	 */
+	public V put(K key, V value) {
+		Assert.notNull(key, "Key must not be null");
+		Assert.notNull(value, "Value must not be null");
+		synchronized (this.clock) {
+			Entry<K, V> existing = this.cache.get(key);
+			if (existing != null) {
+				return existing.value;
+			}
+			Entry<K, V> entry = new Entry<K, V>(key, value);
+			if (this.clock.size() < this.capacity) {
+				this.clock.add(entry);
+			}
+			else {
+				while (true) {
+					Entry<K, V> candidate = this.clock.get(this.hand);
+					if (candidate.used) {
+						candidate.used = false;
+						this.hand = (this.hand + 1) % this.capacity;
+					}
+					else {
+						this.cache.remove(candidate.key);
+						this.clock.set(this.hand, entry);
+						this.hand = (this.hand + 1) % this.capacity;
+						this.evictionCount.incrementAndGet();
+						break;
+					}
+				}
+			}
+			this.cache.put(key, entry);
+			return value;
+		}
+	}
+
+	/**
+	 * Remove all entries from the cache. The hit, miss and eviction counts are retained.
+	 */
+	public void clear() {
+		synchronized (this.clock) {
+			this.cache.clear();
+			this.clock.clear();
+			this.hand = 0;
+		}
+	}
+
+	/**
+	 * Return the current number of cached entries.
+	 */
+	public int size() {
+		return this.cache.size();
+	}
+
+	/**
+	 * Return whether the cache is currently empty.
+	 */
+	public boolean isEmpty() {
+		return this.cache.isEmpty();
+	}
+
+	/**
+	 * Return the maximum number of entries kept in this cache.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Return the number of {@link #get} calls that found a cached value.
+	 */
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	/**
+	 * Return the number of {@link #get} calls that did not find a cached value.
+	 */
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	/**
+	 * Return the number of entries evicted to make room for new entries.
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + this.capacity +
+				", hits=" + getHitCount() + ", misses=" + getMissCount() +
+				", evictions=" + getEvictionCount() + "]";
+	}
+
+
+	private static final class Entry<K, V> {
+
+		private final K key;
+
+		private final V value;
+
+		private volatile boolean used;
+
+		public Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+
+	/**
+	 * Counter spread over several slots, one of which is picked per thread,
+	 * so that threads updating the counter concurrently mostly write to
+	 * different cache lines.
+	 */
+	private static final class StripedCounter {
+
+		// Slots are spaced apart to avoid false sharing between stripes
+		private static final int SPACING = 8;
+
+		private static final int STRIPES;
+
+		static {
+			int stripes = 1;
+			while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64) {
+				stripes <<= 1;
+			}
+			STRIPES = stripes;
+		}
+
+		private final AtomicLongArray slots = new AtomicLongArray((STRIPES + 1) * SPACING);
+
+		public void increment() {
+			int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+			this.slots.incrementAndGet((stripe + 1) * SPACING);
+		}
+
+		public long sum() {
+			long sum = 0;
+			for (int i = 1; i <= STRIPES; i++) {
+				sum += this.slots.get(i * SPACING);
+			}
+			return sum;
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 /**
@@ -131,6 +134,84 @@ public abstract class StreamUtils {
 		return byteCount;
 	}
 
+	/**
+	 * Copy a range of content of the given InputStream to the given OutputStream.
+	 * <p>If the specified range exceeds the length of the InputStream, this copies
+	 * up to the end of the stream and returns the actual number of copied bytes.
+	 * <p>Leaves both streams open when done.
+	 * @param in the InputStream to copy from
+	 * @param out the OutputStream to copy to
+	 * @param start the position to start copying from
+	 * @param end the position to end copying (inclusive)
+	 * @return the number of bytes copied
+	 * @throws IOException in case of I/O errors
+	 * @since 4.3
+	 */
+	public static long copyRange(InputStream in, OutputStream out, long start, long end) throws IOException {
+		Assert.notNull(in, "No InputStream specified");
+		Assert.notNull(out, "No OutputStream specified");
+		long skipped = in.skip(start);
+		if (skipped < start) {
+			throw new IOException("Skipped only " + skipped + " bytes out of " + start + " required");
+		}
+
+		long bytesToCopy = end - start + 1;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (bytesToCopy > 0) {
+			int bytesRead = in.read(buffer);
+			if (bytesRead == -1) {
+				break;
+			}
+			else if (bytesRead <= bytesToCopy) {
+				out.write(buffer, 0, bytesRead);
+				bytesToCopy -= bytesRead;
+			}
+			else {
+				out.write(buffer, 0, (int) bytesToCopy);
+				bytesToCopy = 0;
+			}
+		}
+		out.flush();
+		return (end - start + 1 - bytesToCopy);
+	}
+
+	/**
+	 * Copy a range of content of the given FileChannel to the given OutputStream,
+	 * using {@link FileChannel#transferTo} from the start of the range instead of
+	 * skipping through the content of an InputStream.
+	 * <p>Note that the OutputStream is adapted through {@link Channels#newChannel},
+	 * so the content is still copied through an intermediate buffer; a transfer
+	 * without copying into user space is only possible for targets which are
+	 * file or socket channels themselves (e.g. through the container's sendfile).
+	 * <p>If the specified range exceeds the size of the file, this copies up to
+	 * the end of the file and returns the actual number of copied bytes.
+	 * <p>Leaves both the channel and the stream open when done; the position of
+	 * the channel is not modified.
+	 * @param in the FileChannel to copy from
+	 * @param out the OutputStream to copy to
+	 * @param start the position to start copying from
+	 * @param end the position to end copying (inclusive)
+	 * @return the number of bytes copied
+	 * @throws IOException in case of I/O errors
+	 * @since 4.3
+	 */
+	public static long copyRange(FileChannel in, OutputStream out, long start, long end) throws IOException {
+		Assert.notNull(in, "No FileChannel specified");
+		Assert.notNull(out, "No OutputStream specified");
+		long position = start;
+		long limit = Math.min(end + 1, in.size());
+		WritableByteChannel target = Channels.newChannel(out);
+		while (position < limit) {
+			long transferred = in.transferTo(position, limit - position, target);
+			if (transferred <= 0) {
+				break;
+			}
+			position += transferred;
+		}
+		out.flush();
+		return Math.max(position - start, 0);
+	}
+
 	/**
 	 * Return an efficient empty {@link InputStream}.
 	 * @return a {@link ByteArrayInputStream} based on an empty byte array
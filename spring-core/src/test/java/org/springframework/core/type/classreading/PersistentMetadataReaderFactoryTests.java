@@ -0,0 +1,321 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.type.classreading;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.ObjectUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PersistentMetadataReaderFactory}.
+ *
+ * @author agent
+ */
+public class PersistentMetadataReaderFactoryTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File cacheDirectory;
+
+
+	@Before
+	public void setup() throws Exception {
+		this.cacheDirectory = this.temporaryFolder.newFolder("metadata");
+	}
+
+
+	@Test
+	public void metadataRestoredFromCacheDirectory() throws Exception {
+		MetadataReader original = new PersistentMetadataReaderFactory(this.cacheDirectory)
+				.getMetadataReader(AnnotatedSample.class.getName());
+		assertTrue(original instanceof SimpleMetadataReader);
+		assertEquals(1, this.cacheDirectory.listFiles().length);
+
+		MetadataReader restored = new PersistentMetadataReaderFactory(this.cacheDirectory)
+				.getMetadataReader(AnnotatedSample.class.getName());
+		assertTrue(restored instanceof SerializedMetadataReader);
+		assertEquals(original.getResource(), restored.getResource());
+		assertSameMetadata(original.getAnnotationMetadata(), restored.getAnnotationMetadata());
+	}
+
+	@Test
+	public void memberClassMetadataRestored() throws Exception {
+		new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(AnnotatedSample.Member.class.getName());
+		AnnotationMetadata metadata = new PersistentMetadataReaderFactory(this.cacheDirectory)
+				.getMetadataReader(AnnotatedSample.Member.class.getName()).getAnnotationMetadata();
+		assertEquals(AnnotatedSample.class.getName(), metadata.getEnclosingClassName());
+		assertTrue(metadata.isIndependent());
+		assertTrue(metadata.isInterface());
+		assertFalse(metadata.hasSuperClass());
+	}
+
+	@Test
+	public void staleEntryIgnored() throws Exception {
+		File classFile = copyClassFile(AnnotatedSample.class);
+		Resource resource = new FileSystemResource(classFile);
+		new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+
+		assertTrue(classFile.setLastModified(classFile.lastModified() - 10000));
+		MetadataReader reread = new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		assertTrue(reread instanceof SimpleMetadataReader);
+		MetadataReader restored = new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		assertTrue(restored instanceof SerializedMetadataReader);
+		assertEquals(1, this.cacheDirectory.listFiles().length);
+	}
+
+	@Test
+	public void corruptEntryIgnored() throws Exception {
+		Resource resource = new ClassPathResource(ClassUtils.convertClassNameToResourcePath(
+				AnnotatedSample.class.getName()) + ClassUtils.CLASS_FILE_SUFFIX);
+		new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		File cacheFile = this.cacheDirectory.listFiles()[0];
+		byte[] content = FileCopyUtils.copyToByteArray(cacheFile);
+		byte[] truncated = new byte[content.length / 2];
+		System.arraycopy(content, 0, truncated, 0, truncated.length);
+		FileCopyUtils.copy(truncated, cacheFile);
+
+		MetadataReader reread = new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		assertTrue(reread instanceof SimpleMetadataReader);
+		assertEquals(AnnotatedSample.class.getName(), reread.getClassMetadata().getClassName());
+		assertEquals(content.length, cacheFile.length());
+	}
+
+	@Test
+	public void entryWithNegativeArraySizeIgnored() throws Exception {
+		Resource resource = new ClassPathResource(ClassUtils.convertClassNameToResourcePath(
+				AnnotatedSample.class.getName()) + ClassUtils.CLASS_FILE_SUFFIX);
+		new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		File cacheFile = this.cacheDirectory.listFiles()[0];
+		byte[] content = FileCopyUtils.copyToByteArray(cacheFile);
+
+		// Skip header, class name, access flags and super class name to reach the interface count
+		ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+		DataInputStream in = new DataInputStream(bytes);
+		in.readInt();
+		in.readInt();
+		in.readUTF();
+		in.readLong();
+		in.readLong();
+		in.readUTF();
+		in.readInt();
+		if (in.readBoolean()) {
+			in.readUTF();
+		}
+		int offset = content.length - bytes.available();
+		content[offset] = content[offset + 1] = content[offset + 2] = content[offset + 3] = (byte) 0xFF;
+		FileCopyUtils.copy(content, cacheFile);
+
+		MetadataReader reread = new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		assertTrue(reread instanceof SimpleMetadataReader);
+		assertEquals(AnnotatedSample.class.getName(), reread.getClassMetadata().getClassName());
+		MetadataReader restored = new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		assertTrue(restored instanceof SerializedMetadataReader);
+	}
+
+	@Test
+	public void resourceWithoutUrlNotPersisted() throws Exception {
+		Resource resource = new ByteArrayResource(FileCopyUtils.copyToByteArray(
+				new ClassPathResource(ClassUtils.getClassFileName(AnnotatedSample.class), AnnotatedSample.class)
+						.getInputStream()));
+		MetadataReader metadataReader =
+				new PersistentMetadataReaderFactory(this.cacheDirectory).getMetadataReader(resource);
+		assertEquals(AnnotatedSample.class.getName(), metadataReader.getClassMetadata().getClassName());
+		assertEquals(0, this.cacheDirectory.listFiles().length);
+	}
+
+	@Test
+	public void metadataReadersCachedInMemory() throws Exception {
+		PersistentMetadataReaderFactory factory = new PersistentMetadataReaderFactory(this.cacheDirectory);
+		MetadataReader metadataReader = factory.getMetadataReader(AnnotatedSample.class.getName());
+		assertSame(metadataReader, factory.getMetadataReader(AnnotatedSample.class.getName()));
+
+		factory.setCacheLimit(0);
+		assertEquals(0, factory.getCacheLimit());
+		assertNotSame(metadataReader, factory.getMetadataReader(AnnotatedSample.class.getName()));
+	}
+
+
+	private File copyClassFile(Class<?> clazz) throws Exception {
+		File file = this.temporaryFolder.newFile(ClassUtils.getClassFileName(clazz));
+		FileCopyUtils.copy(new ClassPathResource(ClassUtils.getClassFileName(clazz), clazz).getInputStream(),
+				new FileOutputStream(file));
+		return file;
+	}
+
+	private static void assertSameMetadata(AnnotationMetadata expected, AnnotationMetadata actual) {
+		assertEquals(expected.getClassName(), actual.getClassName());
+		assertEquals(expected.isInterface(), actual.isInterface());
+		assertEquals(expected.isAnnotation(), actual.isAnnotation());
+		assertEquals(expected.isAbstract(), actual.isAbstract());
+		assertEquals(expected.isFinal(), actual.isFinal());
+		assertEquals(expected.isIndependent(), actual.isIndependent());
+		assertEquals(expected.getEnclosingClassName(), actual.getEnclosingClassName());
+		assertEquals(expected.getSuperClassName(), actual.getSuperClassName());
+		assertArrayEquals(expected.getInterfaceNames(), actual.getInterfaceNames());
+		assertArrayEquals(expected.getMemberClassNames(), actual.getMemberClassNames());
+
+		Set<String> annotationTypes = expected.getAnnotationTypes();
+		assertEquals(annotationTypes, actual.getAnnotationTypes());
+		assertTrue(annotationTypes.contains(ComposedAnno.class.getName()));
+		for (String annotationType : annotationTypes) {
+			assertEquals(expected.getMetaAnnotationTypes(annotationType), actual.getMetaAnnotationTypes(annotationType));
+		}
+		for (String annotationType : new String[] {ComposedAnno.class.getName(), MetaAnno.class.getName()}) {
+			assertTrue(actual.isAnnotated(annotationType));
+			assertDeepEquals(expected.getAnnotationAttributes(annotationType), actual.getAnnotationAttributes(annotationType));
+			assertDeepEquals(expected.getAnnotationAttributes(annotationType, true),
+					actual.getAnnotationAttributes(annotationType, true));
+			assertDeepEquals(expected.getAllAnnotationAttributes(annotationType),
+					actual.getAllAnnotationAttributes(annotationType));
+		}
+		assertEquals("composed", actual.getAnnotationAttributes(MetaAnno.class.getName()).get("value"));
+
+		Set<MethodMetadata> expectedMethods = expected.getAnnotatedMethods(ComposedAnno.class.getName());
+		Set<MethodMetadata> actualMethods = actual.getAnnotatedMethods(ComposedAnno.class.getName());
+		assertEquals(1, actualMethods.size());
+		MethodMetadata expectedMethod = expectedMethods.iterator().next();
+		MethodMetadata actualMethod = actualMethods.iterator().next();
+		assertEquals(expectedMethod.getMethodName(), actualMethod.getMethodName());
+		assertEquals(expectedMethod.getDeclaringClassName(), actualMethod.getDeclaringClassName());
+		assertEquals(expectedMethod.getReturnTypeName(), actualMethod.getReturnTypeName());
+		assertEquals(expectedMethod.isStatic(), actualMethod.isStatic());
+		assertEquals(expectedMethod.isOverridable(), actualMethod.isOverridable());
+		assertTrue(actualMethod.isAnnotated(MetaAnno.class.getName()));
+		assertDeepEquals(expectedMethod.getAnnotationAttributes(ComposedAnno.class.getName()),
+				actualMethod.getAnnotationAttributes(ComposedAnno.class.getName()));
+	}
+
+	private static void assertDeepEquals(Object expected, Object actual) {
+		if (expected instanceof Map) {
+			assertTrue("Expected map but was " + actual, actual instanceof Map);
+			Map<?, ?> expectedMap = (Map<?, ?>) expected;
+			Map<?, ?> actualMap = (Map<?, ?>) actual;
+			assertEquals(expectedMap.keySet(), actualMap.keySet());
+			for (Map.Entry<?, ?> entry : expectedMap.entrySet()) {
+				assertDeepEquals(entry.getValue(), actualMap.get(entry.getKey()));
+			}
+		}
+		else if (expected != null && expected.getClass().isArray()) {
+			assertNotNull(actual);
+			assertEquals(expected.getClass(), actual.getClass());
+			assertEquals(Array.getLength(expected), Array.getLength(actual));
+			for (int i = 0; i < Array.getLength(expected); i++) {
+				assertDeepEquals(Array.get(expected, i), Array.get(actual, i));
+			}
+		}
+		else if (expected instanceof List) {
+			assertTrue(actual instanceof List);
+			assertDeepEquals(((List<?>) expected).toArray(), ((List<?>) actual).toArray());
+		}
+		else {
+			assertTrue("Expected " + expected + " but was " + actual, ObjectUtils.nullSafeEquals(expected, actual));
+		}
+	}
+
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface MetaAnno {
+
+		String value() default "meta";
+	}
+
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface NestedAnno {
+
+		String value() default "default";
+
+		Class<?>[] classes() default {};
+	}
+
+
+	@MetaAnno("composed")
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface ComposedAnno {
+
+		String name() default "";
+
+		int[] numbers() default {};
+
+		char character() default 'c';
+
+		long number() default 1L;
+
+		double fraction() default 0.5;
+
+		boolean flag() default false;
+
+		Class<?> type() default Object.class;
+
+		Class<?>[] types() default {};
+
+		TimeUnit unit() default TimeUnit.SECONDS;
+
+		TimeUnit[] units() default {};
+
+		NestedAnno nested() default @NestedAnno;
+
+		NestedAnno[] nestedArray() default {};
+	}
+
+
+	@ComposedAnno(name = "sample", numbers = {1, 2}, flag = true, type = String.class,
+			types = {Integer.class, Number.class}, unit = TimeUnit.MINUTES, units = TimeUnit.HOURS,
+			nested = @NestedAnno("x"), nestedArray = {@NestedAnno(value = "a", classes = Long.class), @NestedAnno("b")})
+	@SuppressWarnings("serial")
+	public static abstract class AnnotatedSample implements Serializable {
+
+		@ComposedAnno(name = "method", unit = TimeUnit.DAYS)
+		public String annotatedMethod() {
+			return null;
+		}
+
+		public void plainMethod() {
+		}
+
+		public interface Member {
+		}
+	}
+
+}
@@ -607,11 +607,50 @@ public class AntPathMatcherTests {
 		match();
 		assertTrue(pathMatcher.stringMatcherCache.size() > 20);
 
-		for (int i = 0; i < 65536; i++) {
-			pathMatcher.match("test" + i, "test");
+		for (int i = 0; i < 70000; i++) {
+			pathMatcher.match("test" + i, "test" + i);
 		}
-		// Cache turned off because it went beyond the threshold
-		assertTrue(pathMatcher.stringMatcherCache.isEmpty());
+		// Cache bounded, evicting least recently used patterns beyond the limit
+		assertEquals(AntPathMatcher.DEFAULT_CACHE_LIMIT, pathMatcher.stringMatcherCache.size());
+		assertTrue(pathMatcher.getCacheEvictionCount() > 0);
+	}
+
+	@Test
+	public void cacheLimit() {
+		pathMatcher.setCacheLimit(10);
+
+		for (int i = 0; i < 100; i++) {
+			pathMatcher.match("/hot/*", "/hot/" + i);
+			pathMatcher.match("/cold" + i + "/*", "/cold/" + i);
+		}
+		assertEquals(10, pathMatcher.stringMatcherCache.size());
+		assertTrue(pathMatcher.getCacheEvictionCount() > 0);
+
+		// Frequently used pattern still cached
+		assertNotNull(pathMatcher.stringMatcherCache.get("hot"));
+	}
+
+	@Test
+	public void cacheStatistics() {
+		pathMatcher.setCacheLimit(4);
+		assertEquals(0, pathMatcher.getCacheHitCount());
+		assertEquals(0, pathMatcher.getCacheMissCount());
+
+		assertTrue(pathMatcher.match("/hotels/*", "/hotels/1"));
+		long misses = pathMatcher.getCacheMissCount();
+		assertTrue(misses > 0);
+		assertEquals(0, pathMatcher.getCacheHitCount());
+
+		assertTrue(pathMatcher.match("/hotels/*", "/hotels/2"));
+		assertEquals(misses, pathMatcher.getCacheHitCount());
+		assertEquals(misses, pathMatcher.getCacheMissCount());
+		assertEquals(0, pathMatcher.getCacheEvictionCount());
+
+		for (int i = 0; i < 10; i++) {
+			pathMatcher.match("/hotels" + i + "/*", "/hotels" + i + "/1");
+		}
+		assertTrue(pathMatcher.getCacheMissCount() > misses);
+		assertTrue(pathMatcher.getCacheEvictionCount() > 0);
 	}
 
 	@Test
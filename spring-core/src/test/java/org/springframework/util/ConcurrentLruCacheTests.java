@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ConcurrentLruCache}.
+ *
+ * @author agent
+ */
+public class ConcurrentLruCacheTests {
+
+	private final ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2);
+
+
+	@Test
+	public void getAndPut() {
+		assertNull(this.cache.get("k1"));
+		assertEquals("v1", this.cache.put("k1", "v1"));
+		assertEquals("v1", this.cache.get("k1"));
+		assertEquals(1, this.cache.size());
+	}
+
+	@Test
+	public void putKeepsExistingValue() {
+		this.cache.put("k1", "v1");
+		assertEquals("v1", this.cache.put("k1", "v2"));
+		assertEquals("v1", this.cache.get("k1"));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		this.cache.put("k1", "v1");
+		this.cache.put("k2", "v2");
+		this.cache.get("k1");
+
+		this.cache.put("k3", "v3");
+		assertEquals(2, this.cache.size());
+		assertEquals(1, this.cache.getEvictionCount());
+		assertEquals("v1", this.cache.get("k1"));
+		assertNull(this.cache.get("k2"));
+		assertEquals("v3", this.cache.get("k3"));
+	}
+
+	@Test
+	public void evictsWhenAllRecentlyUsed() {
+		this.cache.put("k1", "v1");
+		this.cache.put("k2", "v2");
+		this.cache.get("k1");
+		this.cache.get("k2");
+
+		this.cache.put("k3", "v3");
+		assertEquals(2, this.cache.size());
+		assertEquals(1, this.cache.getEvictionCount());
+		assertEquals("v3", this.cache.get("k3"));
+	}
+
+	@Test
+	public void hitAndMissCounts() {
+		assertNull(this.cache.get("k1"));
+		this.cache.put("k1", "v1");
+		this.cache.get("k1");
+		this.cache.get("k1");
+		assertNull(this.cache.get("k2"));
+
+		assertEquals(2, this.cache.getHitCount());
+		assertEquals(2, this.cache.getMissCount());
+		assertEquals(0, this.cache.getEvictionCount());
+	}
+
+	@Test
+	public void hitCountFromConcurrentThreads() throws Exception {
+		this.cache.put("k1", "v1");
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						cache.get("k1");
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4000, this.cache.getHitCount());
+		assertEquals(0, this.cache.getMissCount());
+	}
+
+	@Test
+	public void clear() {
+		this.cache.put("k1", "v1");
+		this.cache.put("k2", "v2");
+		this.cache.clear();
+		assertTrue(this.cache.isEmpty());
+
+		this.cache.put("k3", "v3");
+		assertEquals("v3", this.cache.get("k3"));
+		assertEquals(0, this.cache.getEvictionCount());
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2013 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,9 +18,14 @@ package org.springframework.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.UUID;
 
@@ -93,6 +98,52 @@ public class StreamUtilsTests {
 		verify(out, never()).close();
 	}
 
+	@Test
+	public void copyRange() throws Exception {
+		ByteArrayOutputStream out = spy(new ByteArrayOutputStream());
+		long copied = StreamUtils.copyRange(new ByteArrayInputStream(bytes), out, 100, 4199);
+		assertEquals(4100, copied);
+		assertThat(out.toByteArray(), equalTo(Arrays.copyOfRange(bytes, 100, 4200)));
+		verify(out, never()).close();
+	}
+
+	@Test
+	public void copyRangeBeyondEnd() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long copied = StreamUtils.copyRange(new ByteArrayInputStream(bytes), out, 10, bytes.length + 100);
+		assertEquals(bytes.length - 10, copied);
+		assertThat(out.toByteArray(), equalTo(Arrays.copyOfRange(bytes, 10, bytes.length)));
+	}
+
+	@Test
+	public void copyRangeFromFileChannel() throws Exception {
+		File file = File.createTempFile("StreamUtilsTests", ".bin");
+		file.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(bytes);
+		fos.close();
+
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			ByteArrayOutputStream out = spy(new ByteArrayOutputStream());
+			long copied = StreamUtils.copyRange(channel, out, 100, 4199);
+			assertEquals(4100, copied);
+			assertThat(out.toByteArray(), equalTo(Arrays.copyOfRange(bytes, 100, 4200)));
+			verify(out, never()).close();
+			assertTrue(channel.isOpen());
+			assertEquals(0, channel.position());
+
+			out = new ByteArrayOutputStream();
+			copied = StreamUtils.copyRange(channel, out, 10, bytes.length + 100);
+			assertEquals(bytes.length - 10, copied);
+			assertThat(out.toByteArray(), equalTo(Arrays.copyOfRange(bytes, 10, bytes.length)));
+		}
+		finally {
+			channel.close();
+			file.delete();
+		}
+	}
+
 	@Test
 	public void nonClosingInputStream() throws Exception {
 		InputStream source = mock(InputStream.class);
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.expression.spel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * Benchmarks for {@link org.springframework.expression.spel.standard.SpelExpression#getValue}
+ * in interpreted as well as in compiled mode.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SpelExpressionBenchmark {
+
+	private final Inventor inventor = new Inventor("Nikola Tesla", 1856);
+
+	private final Map<String, Object> headers = new HashMap<String, Object>();
+
+	private StandardEvaluationContext context;
+
+	private Expression propertyExpression;
+
+	private Expression methodExpression;
+
+	private Expression mapExpression;
+
+	private Expression compiledPropertyExpression;
+
+	private Expression compiledMethodExpression;
+
+
+	@Setup
+	public void setup() {
+		this.headers.put("foo", "bar");
+		this.context = new StandardEvaluationContext(this.inventor);
+
+		SpelExpressionParser parser = new SpelExpressionParser();
+		this.propertyExpression = parser.parseExpression("name");
+		this.methodExpression = parser.parseExpression("name.substring(0, 6).toUpperCase()");
+		this.mapExpression = parser.parseExpression("['foo'] == 'bar'");
+
+		SpelExpressionParser compilingParser = new SpelExpressionParser(
+				new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, getClass().getClassLoader()));
+		this.compiledPropertyExpression = compilingParser.parseExpression("name");
+		this.compiledMethodExpression = compilingParser.parseExpression("name.substring(0, 6).toUpperCase()");
+	}
+
+
+	@Benchmark
+	public Object property() {
+		return this.propertyExpression.getValue(this.inventor);
+	}
+
+	@Benchmark
+	public Object propertyWithContext() {
+		return this.propertyExpression.getValue(this.context);
+	}
+
+	@Benchmark
+	public Object methodInvocation() {
+		return this.methodExpression.getValue(this.inventor);
+	}
+
+	@Benchmark
+	public Object mapAccessAndComparison() {
+		return this.mapExpression.getValue(this.headers, Boolean.class);
+	}
+
+	@Benchmark
+	public Object compiledProperty() {
+		return this.compiledPropertyExpression.getValue(this.inventor);
+	}
+
+	@Benchmark
+	public Object compiledMethodInvocation() {
+		return this.compiledMethodExpression.getValue(this.inventor);
+	}
+
+
+	public static class Inventor {
+
+		private final String name;
+
+		private final int birthYear;
+
+		public Inventor(String name, int birthYear) {
+			this.name = name;
+			this.birthYear = birthYear;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public int getBirthYear() {
+			return this.birthYear;
+		}
+	}
+
+}
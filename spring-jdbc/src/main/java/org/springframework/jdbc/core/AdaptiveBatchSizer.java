@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * Determines the size of the chunks sent by the chunked {@code batchUpdate}
+ * variants of {@link JdbcTemplate}, adapting it to the observed execution time.
+ *
+ * <p>Starting out at the minimum batch size, the batch size is adjusted after
+ * every chunk towards the number of items that could have been executed within
+ * the target latency at the rate just observed, growing by at most a factor of
+ * two per chunk and staying within the configured bounds. Round-trip bound loads
+ * thereby quickly move to large chunks, while slow statements settle on chunks
+ * that keep locks and driver-side buffers short-lived.
+ *
+ * <p>An instance may be shared across concurrent chunk executions and across
+ * subsequent batch updates for the same statement, carrying over the size
+ * reached so far. Use the same minimum and maximum for a fixed batch size.
+ *
+ * @author agent
+ * @since 4.3
+ * @see JdbcTemplate#batchUpdate(String, java.util.Collection, AdaptiveBatchSizer, ParameterizedPreparedStatementSetter, BatchChunkCallback)
+ */
+public class AdaptiveBatchSizer {
+
+	private final int minBatchSize;
+
+	private final int maxBatchSize;
+
+	private final long targetNanos;
+
+	private int batchSize;
+
+
+	/**
+	 * Create a new AdaptiveBatchSizer.
+	 * @param minBatchSize the minimum (and initial) number of items per chunk
+	 * @param maxBatchSize the maximum number of items per chunk
+	 * @param targetLatency the execution time per chunk to aim for, in milliseconds
+	 */
+	public AdaptiveBatchSizer(int minBatchSize, int maxBatchSize, long targetLatency) {
+		Assert.isTrue(minBatchSize > 0, "Minimum batch size must be greater than 0");
+		Assert.isTrue(maxBatchSize >= minBatchSize, "Maximum batch size must not be smaller than minimum batch size");
+		Assert.isTrue(targetLatency > 0, "Target latency must be greater than 0");
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+		this.batchSize = minBatchSize;
+	}
+
+
+	/**
+	 * Return the minimum number of items per chunk.
+	 */
+	public int getMinBatchSize() {
+		return this.minBatchSize;
+	}
+
+	/**
+	 * Return the maximum number of items per chunk.
+	 */
+	public int getMaxBatchSize() {
+		return this.maxBatchSize;
+	}
+
+	/**
+	 * Return the number of items to put into the next chunk.
+	 */
+	public synchronized int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Record the execution of a chunk, adjusting the batch size accordingly.
+	 * @param itemCount the number of items in the chunk
+	 * @param elapsedNanos the time it took to set the values for the chunk and
+	 * to execute it, in nanoseconds
+	 */
+	public synchronized void batchCompleted(int itemCount, long elapsedNanos) {
+		if (itemCount <= 0) {
+			return;
+		}
+		long limit = Math.min((long) this.batchSize * 2, this.maxBatchSize);
+		long size;
+		if (elapsedNanos <= 0) {
+			size = limit;
+		}
+		else {
+			size = (long) ((double) this.targetNanos * itemCount / elapsedNanos);
+			if (itemCount < this.batchSize && size < this.batchSize) {
+				// A short final chunk does not tell us much about a full one...
+				return;
+			}
+			size = Math.min(size, limit);
+		}
+		this.batchSize = (int) Math.max(size, this.minBatchSize);
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveBatchSizer: min=" + this.minBatchSize + ", max=" + this.maxBatchSize +
+				", targetLatency=" + TimeUnit.NANOSECONDS.toMillis(this.targetNanos) + "ms, current=" + getBatchSize();
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+/**
+ * Callback interface used by the chunked {@code batchUpdate} variants of
+ * {@link JdbcTemplate}, notified whenever a chunk of the batch has been executed.
+ * Allows for reporting progress or for passing update counts on to downstream
+ * processing while the remaining chunks are still being executed.
+ *
+ * <p>When chunks are executed concurrently, implementations will be called from
+ * multiple threads and need to be thread-safe. Chunks may complete out of order;
+ * the chunk index and item offset identify the chunk within the overall batch.
+ *
+ * @author agent
+ * @since 4.3
+ * @see JdbcTemplate#batchUpdate(String, java.util.Collection, AdaptiveBatchSizer, ParameterizedPreparedStatementSetter, BatchChunkCallback)
+ */
+public interface BatchChunkCallback {
+
+	/**
+	 * Called after a chunk has been executed successfully.
+	 * @param chunkIndex the index of the chunk, in the order in which chunks
+	 * have been taken from the batch arguments (starting at 0)
+	 * @param itemOffset the index of the first item of the chunk within the
+	 * batch arguments
+	 * @param updateCounts the update counts for the items in the chunk
+	 */
+	void chunkCompleted(int chunkIndex, int itemOffset, int[] updateCounts);
+
+}
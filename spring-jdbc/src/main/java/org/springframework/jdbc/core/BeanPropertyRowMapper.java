@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -201,6 +201,22 @@ public class BeanPropertyRowMapper<T> implements RowMapper<T> {
 		}
 	}
 
+	/**
+	 * Return the property that the given column is mapped to, if any.
+	 * @param column the column name as obtained from result set metadata
+	 * @return the property descriptor, or {@code null} if the column is not mapped
+	 */
+	PropertyDescriptor getMappedProperty(String column) {
+		return this.mappedFields.get(lowerCaseName(column.replaceAll(" ", "")));
+	}
+
+	/**
+	 * Return the names of all bean properties that this mapper provides mapping for.
+	 */
+	Set<String> getMappedProperties() {
+		return this.mappedProperties;
+	}
+
 	/**
 	 * Convert a name in camelCase to an underscored name in lower case.
 	 * Any upper case letters are converted to lower case with a preceding underscore.
@@ -0,0 +1,529 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.beans.PropertyDescriptor;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * A {@link BeanPropertyRowMapper} that generates a specialized mapper class for
+ * each combination of mapped class and result set column layout. The generated
+ * class instantiates the mapped class and calls the typed {@code ResultSet}
+ * getters and the property setters directly, without a
+ * {@link org.springframework.beans.BeanWrapper} and without reflection.
+ *
+ * <p>Columns are matched to properties exactly as with {@link BeanPropertyRowMapper}.
+ * Code is generated for properties of the types that
+ * {@link JdbcUtils#getResultSetValue(ResultSet, int, Class)} extracts with a
+ * typed getter: String, the primitive types and their wrappers, Number,
+ * BigDecimal, {@code java.util.Date}, {@code java.sql.Date}, Time, Timestamp,
+ * byte[], Blob and Clob. Mapping a {@code null} value to a primitive property
+ * behaves as with {@link BeanPropertyRowMapper}, see
+ * {@link #setPrimitivesDefaultedForNullValue}.
+ *
+ * <p>Mapping falls back to {@link BeanPropertyRowMapper} for a column layout
+ * with a mapped property of any other type, for a mapped class or setter that
+ * is not public, for a mapped class without a public no-arg constructor, and
+ * for subclasses that override {@link #initBeanWrapper} or
+ * {@link #getColumnValue}, since generated code bypasses both.
+ *
+ * <p>Generated classes are defined in a child class loader of the mapped class's
+ * class loader, which must therefore be able to see Spring's JDBC classes, and are
+ * shared by all instances of this mapper.
+ *
+ * @author agent
+ * @since 4.3
+ * @param <T> the mapped type
+ */
+public class GeneratedBeanPropertyRowMapper<T> extends BeanPropertyRowMapper<T> {
+
+	/** Generated mappings per mapped class, keyed by column layout */
+	private static final Map<Class<?>, Map<String, Object>> mappingCache =
+			new ConcurrentReferenceHashMap<Class<?>, Map<String, Object>>();
+
+	/** Class loaders for generated classes, per mapped class loader */
+	private static final Map<ClassLoader, MappingClassLoader> classLoaders =
+			new ConcurrentReferenceHashMap<ClassLoader, MappingClassLoader>();
+
+	/** Marker for a column layout that cannot be mapped with generated code */
+	private static final Object NO_MAPPING = new Object();
+
+	private static final AtomicInteger classCounter = new AtomicInteger();
+
+	private static final Map<Class<?>, String[]> primitiveGetters = new HashMap<Class<?>, String[]>(16);
+
+	private static final Map<Class<?>, String[]> objectGetters = new HashMap<Class<?>, String[]>(16);
+
+	static {
+		// Getter name, getter return type descriptor, wrapper type
+		primitiveGetters.put(boolean.class, new String[] {"getBoolean", "Z", null});
+		primitiveGetters.put(byte.class, new String[] {"getByte", "B", null});
+		primitiveGetters.put(short.class, new String[] {"getShort", "S", null});
+		primitiveGetters.put(int.class, new String[] {"getInt", "I", null});
+		primitiveGetters.put(long.class, new String[] {"getLong", "J", null});
+		primitiveGetters.put(float.class, new String[] {"getFloat", "F", null});
+		primitiveGetters.put(double.class, new String[] {"getDouble", "D", null});
+		primitiveGetters.put(Boolean.class, new String[] {"getBoolean", "Z", "java/lang/Boolean"});
+		primitiveGetters.put(Byte.class, new String[] {"getByte", "B", "java/lang/Byte"});
+		primitiveGetters.put(Short.class, new String[] {"getShort", "S", "java/lang/Short"});
+		primitiveGetters.put(Integer.class, new String[] {"getInt", "I", "java/lang/Integer"});
+		primitiveGetters.put(Long.class, new String[] {"getLong", "J", "java/lang/Long"});
+		primitiveGetters.put(Float.class, new String[] {"getFloat", "F", "java/lang/Float"});
+		primitiveGetters.put(Double.class, new String[] {"getDouble", "D", "java/lang/Double"});
+		primitiveGetters.put(Number.class, new String[] {"getDouble", "D", "java/lang/Double"});
+
+		objectGetters.put(String.class, new String[] {"getString", "Ljava/lang/String;"});
+		objectGetters.put(BigDecimal.class, new String[] {"getBigDecimal", "Ljava/math/BigDecimal;"});
+		objectGetters.put(java.sql.Date.class, new String[] {"getDate", "Ljava/sql/Date;"});
+		objectGetters.put(Time.class, new String[] {"getTime", "Ljava/sql/Time;"});
+		objectGetters.put(Timestamp.class, new String[] {"getTimestamp", "Ljava/sql/Timestamp;"});
+		objectGetters.put(java.util.Date.class, new String[] {"getTimestamp", "Ljava/sql/Timestamp;"});
+		objectGetters.put(byte[].class, new String[] {"getBytes", "[B"});
+		objectGetters.put(Blob.class, new String[] {"getBlob", "Ljava/sql/Blob;"});
+		objectGetters.put(Clob.class, new String[] {"getClob", "Ljava/sql/Clob;"});
+	}
+
+
+	/** The mapping for the most recently seen result set */
+	private volatile CachedMapping cachedMapping;
+
+	private volatile Boolean customized;
+
+
+	/**
+	 * Create a new {@code GeneratedBeanPropertyRowMapper} for bean-style configuration.
+	 * @see #setMappedClass
+	 * @see #setCheckFullyPopulated
+	 */
+	public GeneratedBeanPropertyRowMapper() {
+	}
+
+	/**
+	 * Create a new {@code GeneratedBeanPropertyRowMapper}, accepting unpopulated
+	 * properties in the target bean.
+	 * @param mappedClass the class that each row should be mapped to
+	 */
+	public GeneratedBeanPropertyRowMapper(Class<T> mappedClass) {
+		super(mappedClass);
+	}
+
+	/**
+	 * Create a new {@code GeneratedBeanPropertyRowMapper}.
+	 * @param mappedClass the class that each row should be mapped to
+	 * @param checkFullyPopulated whether we're strictly validating that
+	 * all bean properties have been mapped from corresponding database fields
+	 */
+	public GeneratedBeanPropertyRowMapper(Class<T> mappedClass, boolean checkFullyPopulated) {
+		super(mappedClass, checkFullyPopulated);
+	}
+
+
+	/**
+	 * Map the current row with the mapper generated for the column layout
+	 * of the given result set, generating it first if necessary. The column
+	 * layout is read once per result set, and the mapping of the previous
+	 * result set is reused if it has the same column names.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T mapRow(ResultSet rs, int rowNumber) throws SQLException {
+		Class<T> mappedClass = getMappedClass();
+		Assert.state(mappedClass != null, "Mapped class was not specified");
+		CachedMapping cached = this.cachedMapping;
+		if (cached == null || cached.resultSet.get() != rs || cached.mappedClass != mappedClass) {
+			String[] columnNames = getColumnNames(rs.getMetaData());
+			GeneratedMapping mapping = (cached != null && cached.mappedClass == mappedClass &&
+					Arrays.equals(cached.columnNames, columnNames) ? cached.mapping : getMapping(columnNames));
+			cached = new CachedMapping(rs, mappedClass, columnNames, mapping);
+			this.cachedMapping = cached;
+		}
+		if (cached.mapping == null) {
+			return super.mapRow(rs, rowNumber);
+		}
+		if (isCheckFullyPopulated() && !cached.mapping.fullyPopulated) {
+			throw new InvalidDataAccessApiUsageException("Given ResultSet does not contain all fields " +
+					"necessary to populate object of class [" + mappedClass.getName() + "]: " +
+					getMappedProperties());
+		}
+		return (T) cached.mapping.mapRow(rs, this);
+	}
+
+	private static String[] getColumnNames(ResultSetMetaData rsmd) throws SQLException {
+		String[] columnNames = new String[rsmd.getColumnCount()];
+		for (int index = 1; index <= columnNames.length; index++) {
+			columnNames[index - 1] = JdbcUtils.lookupColumnName(rsmd, index);
+		}
+		return columnNames;
+	}
+
+	/**
+	 * Return the generated mapping for the given column layout,
+	 * or {@code null} if the layout cannot be mapped with generated code.
+	 */
+	private GeneratedMapping getMapping(String[] columnNames) {
+		if (isCustomized()) {
+			return null;
+		}
+		PropertyDescriptor[] pds = new PropertyDescriptor[columnNames.length];
+		StringBuilder layout = new StringBuilder();
+		for (int index = 0; index < columnNames.length; index++) {
+			PropertyDescriptor pd = getMappedProperty(columnNames[index]);
+			pds[index] = pd;
+			layout.append(pd != null ? pd.getName() : "").append(',');
+		}
+
+		Class<T> mappedClass = getMappedClass();
+		Map<String, Object> mappings = mappingCache.get(mappedClass);
+		if (mappings == null) {
+			mappings = new ConcurrentHashMap<String, Object>(4);
+			mappingCache.put(mappedClass, mappings);
+		}
+		String key = layout.toString();
+		Object mapping = mappings.get(key);
+		if (mapping == null) {
+			mapping = generateMapping(mappedClass, pds);
+			mappings.put(key, mapping);
+		}
+		return (mapping != NO_MAPPING ? (GeneratedMapping) mapping : null);
+	}
+
+	private boolean isCustomized() {
+		Boolean customized = this.customized;
+		if (customized == null) {
+			Method initMethod = ReflectionUtils.findMethod(getClass(), "initBeanWrapper", BeanWrapper.class);
+			Method valueMethod = ReflectionUtils.findMethod(getClass(), "getColumnValue",
+					ResultSet.class, int.class, PropertyDescriptor.class);
+			customized = (initMethod.getDeclaringClass() != BeanPropertyRowMapper.class ||
+					valueMethod.getDeclaringClass() != BeanPropertyRowMapper.class);
+			this.customized = customized;
+		}
+		return customized;
+	}
+
+	/**
+	 * Handle a {@code null} value for a primitive property, as with
+	 * {@link BeanPropertyRowMapper}: raise a {@link TypeMismatchException}
+	 * unless primitives are defaulted for {@code null} values.
+	 */
+	void handleNullValue(Object mappedObject, String propertyName) {
+		BeanWrapper bw = PropertyAccessorFactory.forBeanPropertyAccess(mappedObject);
+		try {
+			bw.setPropertyValue(propertyName, null);
+		}
+		catch (TypeMismatchException ex) {
+			if (!isPrimitivesDefaultedForNullValue()) {
+				throw ex;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Intercepted TypeMismatchException with null value when setting property '" +
+						propertyName + "' on object: " + mappedObject, ex);
+			}
+		}
+	}
+
+
+	private Object generateMapping(Class<T> mappedClass, PropertyDescriptor[] pds) {
+		if (!isAccessible(mappedClass)) {
+			return NO_MAPPING;
+		}
+		Set<String> populatedProperties = new HashSet<String>();
+		for (PropertyDescriptor pd : pds) {
+			if (pd != null) {
+				Method writeMethod = pd.getWriteMethod();
+				Class<?> type = pd.getPropertyType();
+				if (!Modifier.isPublic(writeMethod.getModifiers()) || writeMethod.getParameterTypes()[0] != type ||
+						(!primitiveGetters.containsKey(type) && !objectGetters.containsKey(type))) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Not generating mapper for " + mappedClass.getName() +
+								": property '" + pd.getName() + "' cannot be set directly");
+					}
+					return NO_MAPPING;
+				}
+				populatedProperties.add(pd.getName());
+			}
+		}
+
+		String className = "jdbc/RowMapper" + classCounter.incrementAndGet();
+		MappingClassLoader classLoader = getClassLoader(mappedClass);
+		try {
+			byte[] bytes = generateClass(className, mappedClass, pds, classLoader);
+			Class<?> generatedClass = classLoader.defineClass(className.replace('/', '.'), bytes);
+			GeneratedMapping mapping = (GeneratedMapping) generatedClass.newInstance();
+			mapping.fullyPopulated = populatedProperties.equals(getMappedProperties());
+			if (logger.isDebugEnabled()) {
+				logger.debug("Generated " + className + " for " + mappedClass.getName() +
+						" and properties " + populatedProperties);
+			}
+			return mapping;
+		}
+		catch (Throwable ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to generate mapper for " + mappedClass.getName(), ex);
+			}
+			return NO_MAPPING;
+		}
+	}
+
+	private static boolean isAccessible(Class<?> mappedClass) {
+		if (Modifier.isAbstract(mappedClass.getModifiers())) {
+			return false;
+		}
+		for (Class<?> clazz = mappedClass; clazz != null; clazz = clazz.getEnclosingClass()) {
+			if (!Modifier.isPublic(clazz.getModifiers()) ||
+					(clazz.isMemberClass() && !Modifier.isStatic(clazz.getModifiers()))) {
+				return false;
+			}
+		}
+		Constructor<?> ctor = ClassUtils.getConstructorIfAvailable(mappedClass);
+		return (ctor != null && Modifier.isPublic(ctor.getModifiers()));
+	}
+
+	private static MappingClassLoader getClassLoader(Class<?> mappedClass) {
+		ClassLoader parent = mappedClass.getClassLoader();
+		if (parent == null) {
+			parent = GeneratedBeanPropertyRowMapper.class.getClassLoader();
+		}
+		MappingClassLoader classLoader = classLoaders.get(parent);
+		if (classLoader == null) {
+			classLoader = new MappingClassLoader(parent);
+			classLoaders.put(parent, classLoader);
+		}
+		return classLoader;
+	}
+
+	/**
+	 * Generate a subclass of {@link GeneratedMapping} that maps a row by calling
+	 * the typed {@code ResultSet} getter for each mapped column and the setter
+	 * of the corresponding property.
+	 */
+	private static byte[] generateClass(String className, Class<?> mappedClass, PropertyDescriptor[] pds,
+			final ClassLoader classLoader) {
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+			@Override
+			protected ClassLoader getClassLoader() {
+				return classLoader;
+			}
+		};
+		String superName = Type.getInternalName(GeneratedMapping.class);
+		cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+				className, null, superName, null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		// Locals: 0 this, 1 ResultSet, 2 GeneratedBeanPropertyRowMapper, 3 mapped object, 4-5 column value
+		String mapperDesc = Type.getDescriptor(GeneratedBeanPropertyRowMapper.class);
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "mapRow",
+				"(Ljava/sql/ResultSet;" + mapperDesc + ")Ljava/lang/Object;", null,
+				new String[] {"java/sql/SQLException"});
+		mv.visitCode();
+		String mappedClassName = Type.getInternalName(mappedClass);
+		mv.visitTypeInsn(Opcodes.NEW, mappedClassName);
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, mappedClassName, "<init>", "()V", false);
+		mv.visitVarInsn(Opcodes.ASTORE, 3);
+
+		for (int i = 0; i < pds.length; i++) {
+			PropertyDescriptor pd = pds[i];
+			if (pd == null) {
+				continue;
+			}
+			Class<?> type = pd.getPropertyType();
+			Method writeMethod = pd.getWriteMethod();
+			String[] objectGetter = objectGetters.get(type);
+			if (objectGetter != null) {
+				mv.visitVarInsn(Opcodes.ALOAD, 3);
+				visitGetter(mv, i + 1, objectGetter[0], objectGetter[1]);
+				visitSetter(mv, mappedClassName, writeMethod);
+				continue;
+			}
+			String[] primitiveGetter = primitiveGetters.get(type);
+			Type valueType = Type.getType(primitiveGetter[1]);
+			visitGetter(mv, i + 1, primitiveGetter[0], primitiveGetter[1]);
+			mv.visitVarInsn(valueType.getOpcode(Opcodes.ISTORE), 4);
+			Label notNull = new Label();
+			Label next = new Label();
+			mv.visitVarInsn(Opcodes.ALOAD, 1);
+			mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/sql/ResultSet", "wasNull", "()Z", true);
+			mv.visitJumpInsn(Opcodes.IFEQ, notNull);
+			if (primitiveGetter[2] == null) {
+				mv.visitVarInsn(Opcodes.ALOAD, 2);
+				mv.visitVarInsn(Opcodes.ALOAD, 3);
+				mv.visitLdcInsn(pd.getName());
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, superName, "handleNullValue",
+						"(" + mapperDesc + "Ljava/lang/Object;Ljava/lang/String;)V", false);
+			}
+			else {
+				mv.visitVarInsn(Opcodes.ALOAD, 3);
+				mv.visitInsn(Opcodes.ACONST_NULL);
+				visitSetter(mv, mappedClassName, writeMethod);
+			}
+			mv.visitJumpInsn(Opcodes.GOTO, next);
+			mv.visitLabel(notNull);
+			mv.visitVarInsn(Opcodes.ALOAD, 3);
+			mv.visitVarInsn(valueType.getOpcode(Opcodes.ILOAD), 4);
+			if (primitiveGetter[2] != null) {
+				mv.visitMethodInsn(Opcodes.INVOKESTATIC, primitiveGetter[2], "valueOf",
+						"(" + primitiveGetter[1] + ")L" + primitiveGetter[2] + ";", false);
+			}
+			visitSetter(mv, mappedClassName, writeMethod);
+			mv.visitLabel(next);
+		}
+
+		mv.visitVarInsn(Opcodes.ALOAD, 3);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static void visitGetter(MethodVisitor mv, int index, String name, String returnDesc) {
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitLdcInsn(index);
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/sql/ResultSet", name, "(I)" + returnDesc, true);
+	}
+
+	private static void visitSetter(MethodVisitor mv, String mappedClassName, Method writeMethod) {
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, mappedClassName, writeMethod.getName(),
+				Type.getMethodDescriptor(writeMethod), false);
+		Class<?> returnType = writeMethod.getReturnType();
+		if (returnType == long.class || returnType == double.class) {
+			mv.visitInsn(Opcodes.POP2);
+		}
+		else if (returnType != void.class) {
+			mv.visitInsn(Opcodes.POP);
+		}
+	}
+
+
+	/**
+	 * Static factory method to create a new {@code GeneratedBeanPropertyRowMapper}
+	 * (with the mapped class specified only once).
+	 * @param mappedClass the class that each row should be mapped to
+	 */
+	public static <T> GeneratedBeanPropertyRowMapper<T> newInstance(Class<T> mappedClass) {
+		return new GeneratedBeanPropertyRowMapper<T>(mappedClass);
+	}
+
+
+	/**
+	 * Base class for generated mapper classes. Public only so that it is
+	 * accessible from the class loader of generated classes; not intended
+	 * for direct use.
+	 */
+	public abstract static class GeneratedMapping {
+
+		private volatile boolean fullyPopulated;
+
+		/**
+		 * Map the current row of the given result set to a new instance of the
+		 * mapped class.
+		 */
+		public abstract Object mapRow(ResultSet rs, GeneratedBeanPropertyRowMapper<?> mapper) throws SQLException;
+
+		protected static void handleNullValue(GeneratedBeanPropertyRowMapper<?> mapper,
+				Object mappedObject, String propertyName) {
+
+			mapper.handleNullValue(mappedObject, propertyName);
+		}
+	}
+
+
+	/**
+	 * The generated mapping for a result set, referencing the result set weakly.
+	 */
+	private static class CachedMapping {
+
+		private final WeakReference<ResultSet> resultSet;
+
+		private final Class<?> mappedClass;
+
+		private final String[] columnNames;
+
+		private final GeneratedMapping mapping;
+
+		public CachedMapping(ResultSet resultSet, Class<?> mappedClass, String[] columnNames,
+				GeneratedMapping mapping) {
+
+			this.resultSet = new WeakReference<ResultSet>(resultSet);
+			this.mappedClass = mappedClass;
+			this.columnNames = columnNames;
+			this.mapping = mapping;
+		}
+	}
+
+
+	/**
+	 * Class loader for generated mapper classes, a child of the mapped class's
+	 * class loader.
+	 */
+	private static class MappingClassLoader extends URLClassLoader {
+
+		private static final URL[] NO_URLS = new URL[0];
+
+		public MappingClassLoader(ClassLoader parent) {
+			super(NO_URLS, parent);
+		}
+
+		public Class<?> defineClass(String name, byte[] bytes) {
+			return super.defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -32,9 +32,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
@@ -48,6 +53,7 @@ import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.springframework.util.LinkedCaseInsensitiveMap;
 import org.springframework.util.StringUtils;
@@ -1047,6 +1053,315 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		});
 	}
 
+	/**
+	 * Execute a batch using the supplied SQL statement with the batch of supplied
+	 * arguments, sending the arguments in chunks whose size is determined by the
+	 * given {@link AdaptiveBatchSizer}, on a single Connection.
+	 * @param sql the SQL statement to execute
+	 * @param batchArgs the List of Object arrays containing the batch of arguments for the query
+	 * @param batchSizer the strategy determining the number of items per chunk
+	 * @param pss ParameterizedPreparedStatementSetter to use
+	 * @param chunkCallback callback to notify of each completed chunk (may be {@code null})
+	 * @return an array containing for each chunk another array containing the numbers
+	 * of rows affected by each update in the chunk
+	 * @throws DataAccessException if there is any problem issuing the update
+	 * @since 4.3
+	 * @see #batchUpdate(String, Collection, int, ParameterizedPreparedStatementSetter)
+	 */
+	public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, AdaptiveBatchSizer batchSizer,
+			ParameterizedPreparedStatementSetter<T> pss, BatchChunkCallback chunkCallback) throws DataAccessException {
+
+		return batchUpdate(sql, batchArgs, batchSizer, pss, chunkCallback, null, 1);
+	}
+
+	/**
+	 * Execute a batch using the supplied SQL statement with the batch of supplied
+	 * arguments, sending the arguments in chunks whose size is determined by the
+	 * given {@link AdaptiveBatchSizer}, spread over up to the given number of
+	 * Connections.
+	 * <p>Each Connection is driven by a worker which repeatedly takes the next
+	 * chunk from the batch arguments, sets its values on the worker's
+	 * PreparedStatement and executes it, so that one chunk is being prepared
+	 * while others are in flight. The calling thread acts as one of the workers;
+	 * the others are run on the given Executor. As the chunks are executed on
+	 * separate Connections, they are committed independently of each other:
+	 * if a chunk fails, the remaining chunks are not started but chunks that
+	 * have completed are not rolled back.
+	 * <p>Within an active transaction, all chunks are executed on the
+	 * transactional Connection in the calling thread instead.
+	 * @param sql the SQL statement to execute
+	 * @param batchArgs the List of Object arrays containing the batch of arguments for the query
+	 * @param batchSizer the strategy determining the number of items per chunk
+	 * @param pss ParameterizedPreparedStatementSetter to use, which needs to be
+	 * thread-safe when executing chunks concurrently
+	 * @param chunkCallback callback to notify of each completed chunk (may be {@code null}),
+	 * which needs to be thread-safe when executing chunks concurrently
+	 * @param executor the Executor to run additional workers on
+	 * (may be {@code null} for executing all chunks in the calling thread)
+	 * @param concurrency the maximum number of Connections to use
+	 * @return an array containing for each chunk another array containing the numbers
+	 * of rows affected by each update in the chunk, in the order of the batch arguments
+	 * @throws DataAccessException if there is any problem issuing the update
+	 * @since 4.3
+	 */
+	public <T> int[][] batchUpdate(final String sql, Collection<T> batchArgs, AdaptiveBatchSizer batchSizer,
+			final ParameterizedPreparedStatementSetter<T> pss, BatchChunkCallback chunkCallback,
+			Executor executor, int concurrency) throws DataAccessException {
+
+		Assert.notNull(batchArgs, "Batch arguments must not be null");
+		Assert.notNull(batchSizer, "AdaptiveBatchSizer must not be null");
+		Assert.notNull(pss, "ParameterizedPreparedStatementSetter must not be null");
+		Assert.isTrue(concurrency > 0, "Concurrency must be greater than 0");
+
+		int workers = 1;
+		if (executor != null && concurrency > 1) {
+			if (TransactionSynchronizationManager.hasResource(getDataSource()) ||
+					TransactionSynchronizationManager.isSynchronizationActive()) {
+				logger.debug("Transaction active - executing all batch chunks on the current Connection");
+			}
+			else {
+				workers = concurrency;
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Executing SQL batch update [" + sql + "] in chunks determined by " + batchSizer +
+					(workers > 1 ? " on up to " + workers + " Connections" : ""));
+		}
+
+		final ChunkedBatch<T> batch = new ChunkedBatch<T>(batchArgs, batchSizer, chunkCallback);
+		try {
+			final CountDownLatch latch = new CountDownLatch(workers - 1);
+			for (int i = 1; i < workers; i++) {
+				try {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								executeBatchChunks(sql, batch, pss);
+							}
+							catch (Throwable ex) {
+								batch.setFailure(ex);
+							}
+							finally {
+								latch.countDown();
+							}
+						}
+					});
+				}
+				catch (RejectedExecutionException ex) {
+					logger.debug("Executor rejected additional batch worker - continuing with fewer Connections");
+					latch.countDown();
+				}
+			}
+			try {
+				executeBatchChunks(sql, batch, pss);
+			}
+			catch (RuntimeException ex) {
+				batch.setFailure(ex);
+			}
+			catch (Error err) {
+				batch.setFailure(err);
+			}
+			boolean interrupted = false;
+			while (true) {
+				try {
+					latch.await();
+					break;
+				}
+				catch (InterruptedException ex) {
+					// Workers still hold Connections: stop taking chunks, but wait for them.
+					interrupted = true;
+					batch.cancel();
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return batch.getResult();
+		}
+		finally {
+			if (pss instanceof ParameterDisposer) {
+				((ParameterDisposer) pss).cleanupParameters();
+			}
+		}
+	}
+
+	private <T> void executeBatchChunks(String sql, final ChunkedBatch<T> batch,
+			final ParameterizedPreparedStatementSetter<T> pss) {
+
+		if (!batch.hasMoreChunks()) {
+			return;
+		}
+		execute(sql, new PreparedStatementCallback<Object>() {
+			@Override
+			public Object doInPreparedStatement(PreparedStatement ps) throws SQLException {
+				boolean batchSupported = true;
+				if (!JdbcUtils.supportsBatchUpdates(ps.getConnection())) {
+					batchSupported = false;
+					logger.warn("JDBC Driver does not support Batch updates; resorting to single statement execution");
+				}
+				BatchChunk<T> chunk = batch.nextChunk();
+				while (chunk != null) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Sending SQL batch update #" + (chunk.index + 1) + " with " +
+								chunk.items.size() + " items");
+					}
+					long start = System.nanoTime();
+					int[] updateCounts;
+					if (batchSupported) {
+						for (T obj : chunk.items) {
+							pss.setValues(ps, obj);
+							ps.addBatch();
+						}
+						updateCounts = ps.executeBatch();
+					}
+					else {
+						updateCounts = new int[chunk.items.size()];
+						for (int i = 0; i < updateCounts.length; i++) {
+							pss.setValues(ps, chunk.items.get(i));
+							updateCounts[i] = ps.executeUpdate();
+						}
+					}
+					batch.chunkCompleted(chunk, updateCounts, System.nanoTime() - start);
+					chunk = batch.nextChunk();
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list of
+	 * arguments to bind to the query, returning an iterator that maps each row
+	 * to a result object via a RowMapper on demand.
+	 * <p>In contrast to {@link #query(String, RowMapper, Object...)}, rows are
+	 * not collected into a List upfront: the returned iterator keeps the
+	 * underlying Connection, PreparedStatement and ResultSet open while the
+	 * caller pulls rows, with the configured {@link #setFetchSize fetch size}
+	 * determining how many rows the driver retrieves per round trip. The
+	 * iterator releases its resources once exhausted; it has to be
+	 * {@link RowIterator#close() closed} explicitly if iteration stops early.
+	 * @param sql SQL query to execute
+	 * @param rowMapper object that will map one object per row
+	 * @param args arguments to bind to the query
+	 * (leaving it to the PreparedStatement to guess the corresponding SQL type);
+	 * may also contain {@link SqlParameterValue} objects which indicate not
+	 * only the argument value but also the SQL type and optionally the scale
+	 * @return an open iterator over the mapped rows
+	 * @throws DataAccessException if the query fails
+	 * @since 4.3
+	 * @see RowIterator#close()
+	 */
+	public <T> RowIterator<T> queryForIterator(String sql, RowMapper<T> rowMapper, Object... args)
+			throws DataAccessException {
+
+		return queryForIterator(new SimplePreparedStatementCreator(sql),
+				newArgPreparedStatementSetter(args), rowMapper);
+	}
+
+	/**
+	 * Query given SQL to create a prepared statement from SQL and a list of
+	 * arguments to bind to the query, returning an iterator that maps each row
+	 * to a result object via a RowMapper on demand.
+	 * @param sql SQL query to execute
+	 * @param args arguments to bind to the query
+	 * @param argTypes SQL types of the arguments
+	 * (constants from {@code java.sql.Types})
+	 * @param rowMapper object that will map one object per row
+	 * @return an open iterator over the mapped rows
+	 * @throws DataAccessException if the query fails
+	 * @since 4.3
+	 * @see #queryForIterator(String, RowMapper, Object...)
+	 * @see java.sql.Types
+	 */
+	public <T> RowIterator<T> queryForIterator(String sql, Object[] args, int[] argTypes, RowMapper<T> rowMapper)
+			throws DataAccessException {
+
+		return queryForIterator(new SimplePreparedStatementCreator(sql),
+				newArgTypePreparedStatementSetter(args, argTypes), rowMapper);
+	}
+
+	/**
+	 * Query using a prepared statement, returning an iterator that maps each
+	 * row to a result object via a RowMapper on demand.
+	 * <p>The Connection is obtained through {@link DataSourceUtils}, so a
+	 * transactional Connection bound to the current thread is used if present
+	 * and left open on close. The iterator must not be used outside of the
+	 * scope of such a transaction.
+	 * @param psc object that can create a PreparedStatement given a Connection
+	 * @param pss object that knows how to set values on the prepared statement.
+	 * If this is {@code null}, the SQL will be assumed to contain no bind parameters.
+	 * @param rowMapper object that will map one object per row
+	 * @return an open iterator over the mapped rows
+	 * @throws DataAccessException if the query fails
+	 * @since 4.3
+	 * @see #queryForIterator(String, RowMapper, Object...)
+	 */
+	public <T> RowIterator<T> queryForIterator(PreparedStatementCreator psc, PreparedStatementSetter pss,
+			RowMapper<T> rowMapper) throws DataAccessException {
+
+		Assert.notNull(psc, "PreparedStatementCreator must not be null");
+		Assert.notNull(rowMapper, "RowMapper must not be null");
+		if (logger.isDebugEnabled()) {
+			String sql = getSql(psc);
+			logger.debug("Executing prepared SQL query for iteration" + (sql != null ? " [" + sql + "]" : ""));
+		}
+
+		Connection con = DataSourceUtils.getConnection(getDataSource());
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		boolean handedOver = false;
+		try {
+			Connection conToUse = con;
+			if (this.nativeJdbcExtractor != null &&
+					this.nativeJdbcExtractor.isNativeConnectionNecessaryForNativePreparedStatements()) {
+				conToUse = this.nativeJdbcExtractor.getNativeConnection(con);
+			}
+			ps = psc.createPreparedStatement(conToUse);
+			applyStatementSettings(ps);
+			PreparedStatement psToUse = ps;
+			if (this.nativeJdbcExtractor != null) {
+				psToUse = this.nativeJdbcExtractor.getNativePreparedStatement(ps);
+			}
+			if (pss != null) {
+				pss.setValues(psToUse);
+			}
+			rs = psToUse.executeQuery();
+			ResultSet rsToUse = rs;
+			if (this.nativeJdbcExtractor != null) {
+				rsToUse = this.nativeJdbcExtractor.getNativeResultSet(rs);
+			}
+			RowIterator<T> iterator = new ResultSetRowIterator<T>(con, ps, rs, rsToUse, psc, pss, rowMapper);
+			handedOver = true;
+			return iterator;
+		}
+		catch (SQLException ex) {
+			// Release Connection early, to avoid potential connection pool deadlock
+			// in the case when the exception translator hasn't been initialized yet.
+			String sql = getSql(psc);
+			releaseIterationResources(con, ps, rs, psc, pss);
+			handedOver = true;
+			throw getExceptionTranslator().translate("PreparedStatementCallback", sql, ex);
+		}
+		finally {
+			if (!handedOver) {
+				releaseIterationResources(con, ps, rs, psc, pss);
+			}
+		}
+	}
+
+	private void releaseIterationResources(Connection con, Statement stmt, ResultSet rs, Object psc, Object pss) {
+		JdbcUtils.closeResultSet(rs);
+		if (pss instanceof ParameterDisposer) {
+			((ParameterDisposer) pss).cleanupParameters();
+		}
+		if (psc instanceof ParameterDisposer) {
+			((ParameterDisposer) psc).cleanupParameters();
+		}
+		JdbcUtils.closeStatement(stmt);
+		DataSourceUtils.releaseConnection(con, getDataSource());
+	}
+
 	//-------------------------------------------------------------------------
 	// Methods dealing with callable statements
 	//-------------------------------------------------------------------------
@@ -1499,6 +1814,223 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 	}
 
 
+	/**
+	 * RowIterator implementation that holds on to the JDBC resources of a query
+	 * until it is exhausted or closed, mapping each row as it is requested.
+	 */
+	private class ResultSetRowIterator<T> implements RowIterator<T> {
+
+		private final Connection connection;
+
+		private final PreparedStatement statement;
+
+		private final ResultSet resultSet;
+
+		private final ResultSet resultSetToUse;
+
+		private final PreparedStatementCreator psc;
+
+		private final PreparedStatementSetter pss;
+
+		private final RowMapper<T> rowMapper;
+
+		private int rowNum = 0;
+
+		/** Whether the ResultSet has been advanced to a row not returned yet, or null if unknown */
+		private Boolean rowAvailable;
+
+		private boolean closed = false;
+
+		public ResultSetRowIterator(Connection connection, PreparedStatement statement, ResultSet resultSet,
+				ResultSet resultSetToUse, PreparedStatementCreator psc, PreparedStatementSetter pss,
+				RowMapper<T> rowMapper) {
+
+			this.connection = connection;
+			this.statement = statement;
+			this.resultSet = resultSet;
+			this.resultSetToUse = resultSetToUse;
+			this.psc = psc;
+			this.pss = pss;
+			this.rowMapper = rowMapper;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.closed) {
+				return false;
+			}
+			if (this.rowAvailable == null) {
+				try {
+					this.rowAvailable = this.resultSetToUse.next();
+				}
+				catch (SQLException ex) {
+					throw translateAndClose(ex);
+				}
+				if (!this.rowAvailable) {
+					close();
+				}
+			}
+			return this.rowAvailable;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more rows in ResultSet");
+			}
+			this.rowAvailable = null;
+			try {
+				return this.rowMapper.mapRow(this.resultSetToUse, this.rowNum++);
+			}
+			catch (SQLException ex) {
+				throw translateAndClose(ex);
+			}
+			catch (RuntimeException ex) {
+				close();
+				throw ex;
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
+		}
+
+		@Override
+		public void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			SQLException warningEx = null;
+			try {
+				handleWarnings(this.statement);
+			}
+			catch (SQLException ex) {
+				warningEx = ex;
+			}
+			finally {
+				releaseIterationResources(this.connection, this.statement, this.resultSet, this.psc, this.pss);
+			}
+			if (warningEx != null) {
+				throw getExceptionTranslator().translate("PreparedStatementCallback", getSql(this.psc), warningEx);
+			}
+		}
+
+		private DataAccessException translateAndClose(SQLException ex) {
+			// Release Connection early, as in JdbcTemplate's execute methods.
+			if (!this.closed) {
+				this.closed = true;
+				releaseIterationResources(this.connection, this.statement, this.resultSet, this.psc, this.pss);
+			}
+			return getExceptionTranslator().translate("PreparedStatementCallback", getSql(this.psc), ex);
+		}
+	}
+
+
+	/**
+	 * The state of a chunked batch update, shared between the workers
+	 * taking chunks from the batch arguments.
+	 */
+	private static class ChunkedBatch<T> {
+
+		private final Iterator<T> batchArgs;
+
+		private final AdaptiveBatchSizer batchSizer;
+
+		private final BatchChunkCallback chunkCallback;
+
+		private final List<int[]> updateCounts = new ArrayList<int[]>();
+
+		private int itemCount = 0;
+
+		private boolean cancelled = false;
+
+		private Throwable failure;
+
+		public ChunkedBatch(Collection<T> batchArgs, AdaptiveBatchSizer batchSizer, BatchChunkCallback chunkCallback) {
+			this.batchArgs = batchArgs.iterator();
+			this.batchSizer = batchSizer;
+			this.chunkCallback = chunkCallback;
+		}
+
+		public synchronized boolean hasMoreChunks() {
+			return (!this.cancelled && this.failure == null && this.batchArgs.hasNext());
+		}
+
+		public synchronized BatchChunk<T> nextChunk() {
+			if (!hasMoreChunks()) {
+				return null;
+			}
+			int batchSize = this.batchSizer.getBatchSize();
+			List<T> items = new ArrayList<T>(batchSize);
+			while (items.size() < batchSize && this.batchArgs.hasNext()) {
+				items.add(this.batchArgs.next());
+			}
+			BatchChunk<T> chunk = new BatchChunk<T>(this.updateCounts.size(), this.itemCount, items);
+			this.updateCounts.add(null);
+			this.itemCount += items.size();
+			return chunk;
+		}
+
+		public void chunkCompleted(BatchChunk<T> chunk, int[] updateCounts, long elapsedNanos) {
+			this.batchSizer.batchCompleted(chunk.items.size(), elapsedNanos);
+			synchronized (this) {
+				this.updateCounts.set(chunk.index, updateCounts);
+			}
+			if (this.chunkCallback != null) {
+				this.chunkCallback.chunkCompleted(chunk.index, chunk.offset, updateCounts);
+			}
+		}
+
+		public synchronized void cancel() {
+			this.cancelled = true;
+		}
+
+		public synchronized void setFailure(Throwable ex) {
+			if (this.failure == null) {
+				this.failure = ex;
+			}
+		}
+
+		public synchronized int[][] getResult() {
+			if (this.failure instanceof RuntimeException) {
+				throw (RuntimeException) this.failure;
+			}
+			if (this.failure instanceof Error) {
+				throw (Error) this.failure;
+			}
+			if (this.failure != null) {
+				throw new IllegalStateException("Batch update failed", this.failure);
+			}
+			if (this.cancelled && this.batchArgs.hasNext()) {
+				throw new InvalidDataAccessApiUsageException(
+						"Interrupted during chunked batch update after " + this.updateCounts.size() + " chunks");
+			}
+			return this.updateCounts.toArray(new int[this.updateCounts.size()][]);
+		}
+	}
+
+
+	/**
+	 * A chunk of batch arguments, together with its position in the batch.
+	 */
+	private static class BatchChunk<T> {
+
+		private final int index;
+
+		private final int offset;
+
+		private final List<T> items;
+
+		public BatchChunk(int index, int offset, List<T> items) {
+			this.index = index;
+			this.offset = offset;
+			this.items = items;
+		}
+	}
+
+
 	/**
 	 * Simple adapter for PreparedStatementCreator, allowing to use a plain SQL statement.
 	 */
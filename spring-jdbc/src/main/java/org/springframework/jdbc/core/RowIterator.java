@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * Iterator over the rows of an open JDBC {@link java.sql.ResultSet}, as returned
+ * by {@link JdbcTemplate#queryForIterator}. Each row is mapped lazily through a
+ * {@link RowMapper} when {@link #next()} is called, so that large result sets can
+ * be processed in constant memory.
+ *
+ * <p>An iterator holds on to its JDBC Connection, Statement and ResultSet until
+ * it has been exhausted or explicitly closed. It must therefore always be closed,
+ * typically in a finally block or - on Java 7 and higher - through a
+ * try-with-resources statement. Closing an iterator more than once is harmless.
+ *
+ * <p>Any {@link java.sql.SQLException} encountered while iterating is translated
+ * into a {@link DataAccessException}, after the JDBC resources have been released.
+ * Instances are not thread-safe.
+ *
+ * @author agent
+ * @since 4.3
+ * @param <T> the type of the mapped rows
+ * @see JdbcTemplate#queryForIterator(String, RowMapper, Object...)
+ */
+public interface RowIterator<T> extends Iterator<T>, Closeable {
+
+	/**
+	 * Close the underlying ResultSet and Statement and release the Connection
+	 * (or rather leave it to the current transaction, if any).
+	 * @throws DataAccessException if warnings are not ignored and the
+	 * statement reported any (see {@link JdbcTemplate#setIgnoreWarnings})
+	 */
+	@Override
+	void close() throws DataAccessException;
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -90,6 +90,9 @@ public class CallMetaDataContext {
 	/** The provider of call meta data */
 	private CallMetaDataProvider metaDataProvider;
 
+	/** Optional cache to share the provider of call meta data with other contexts */
+	private MetaDataProviderCache metaDataProviderCache;
+
 
 	/**
 	 * Specify the name used for the return value of the function.
@@ -233,6 +236,15 @@ public class CallMetaDataContext {
 		return this.namedBinding;
 	}
 
+	/**
+	 * Specify a {@link MetaDataProviderCache} to obtain the metadata provider from,
+	 * sharing it with other contexts for the same procedure or function.
+	 * @since 4.3
+	 */
+	public void setMetaDataProviderCache(MetaDataProviderCache metaDataProviderCache) {
+		this.metaDataProviderCache = metaDataProviderCache;
+	}
+
 
 	/**
 	 * Create a ReturnResultSetParameter/SqlOutParameter depending on the support provided
@@ -283,7 +295,12 @@ public class CallMetaDataContext {
 	 * @param dataSource the DataSource used to retrieve metadata
 	 */
 	public void initializeMetaData(DataSource dataSource) {
-		this.metaDataProvider = CallMetaDataProviderFactory.createMetaDataProvider(dataSource, this);
+		if (this.metaDataProviderCache != null) {
+			this.metaDataProvider = this.metaDataProviderCache.getCallMetaDataProvider(dataSource, this);
+		}
+		else {
+			this.metaDataProvider = CallMetaDataProviderFactory.createMetaDataProvider(dataSource, this);
+		}
 	}
 
 	/**
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core.metadata;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
+import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Cache for {@link TableMetaDataProvider} and {@link CallMetaDataProvider}
+ * instances, allowing any number of {@code SimpleJdbcInsert} and
+ * {@code SimpleJdbcCall} objects to share the metadata retrieved for the same
+ * table or procedure instead of each of them querying the database catalog
+ * on compilation.
+ *
+ * <p>Providers are cached per {@link DataSource} (held through a weak reference)
+ * and keyed by catalog, schema and table or procedure name, along with the
+ * settings and {@link NativeJdbcExtractor} that affect the metadata retrieved.
+ * Cached metadata is not refreshed automatically: after a schema change,
+ * {@link #evictTable evict} the affected entries so that subsequently compiled
+ * objects pick up the new metadata. Objects that have been compiled already
+ * keep using the metadata they were compiled with.
+ *
+ * <p>The cache can be {@link #preloadTableMetaData preloaded} at startup,
+ * typically from an initializing bean, so that the metadata lookups do not
+ * happen on first use of the individual insert and call objects.
+ *
+ * <p>This class is thread-safe; a single instance is meant to be shared.
+ *
+ * @author agent
+ * @since 4.3
+ * @see org.springframework.jdbc.core.simple.AbstractJdbcInsert#setMetaDataProviderCache
+ * @see org.springframework.jdbc.core.simple.AbstractJdbcCall#setMetaDataProviderCache
+ */
+public class MetaDataProviderCache {
+
+	private static final Log logger = LogFactory.getLog(MetaDataProviderCache.class);
+
+	private final ConcurrentMap<DataSource, ConcurrentMap<ProviderKey, Object>> providerCache =
+			new ConcurrentReferenceHashMap<DataSource, ConcurrentMap<ProviderKey, Object>>(
+					16, ConcurrentReferenceHashMap.ReferenceType.WEAK);
+
+	private NativeJdbcExtractor nativeJdbcExtractor;
+
+
+	/**
+	 * Set the {@link NativeJdbcExtractor} to {@link #preloadTableMetaData preload}
+	 * table metadata with. Cached metadata is only shared with insert objects
+	 * that use the same NativeJdbcExtractor, so this should match the one of
+	 * their {@code JdbcTemplate}.
+	 * <p>The default is none.
+	 */
+	public void setNativeJdbcExtractor(NativeJdbcExtractor nativeJdbcExtractor) {
+		this.nativeJdbcExtractor = nativeJdbcExtractor;
+	}
+
+	/**
+	 * Return the {@link NativeJdbcExtractor} to preload table metadata with, if any.
+	 */
+	public NativeJdbcExtractor getNativeJdbcExtractor() {
+		return this.nativeJdbcExtractor;
+	}
+
+	/**
+	 * Return the TableMetaDataProvider for the table described by the given
+	 * context, creating and caching it if necessary.
+	 * @param dataSource the DataSource to retrieve metadata from
+	 * @param context the context holding the table name and metadata settings
+	 * @param nativeJdbcExtractor the NativeJdbcExtractor to use (may be {@code null})
+	 * @return the (possibly shared) TableMetaDataProvider
+	 * @see TableMetaDataProviderFactory#createMetaDataProvider
+	 */
+	public TableMetaDataProvider getTableMetaDataProvider(DataSource dataSource, TableMetaDataContext context,
+			NativeJdbcExtractor nativeJdbcExtractor) {
+
+		ProviderKey key = new ProviderKey(ProviderKey.TABLE, context.getCatalogName(), context.getSchemaName(),
+				context.getTableName(), context.isAccessTableColumnMetaData(),
+				context.isOverrideIncludeSynonymsDefault(), nativeJdbcExtractor);
+		ConcurrentMap<ProviderKey, Object> providers = getProviders(dataSource);
+		TableMetaDataProvider provider = (TableMetaDataProvider) providers.get(key);
+		if (provider == null) {
+			provider = TableMetaDataProviderFactory.createMetaDataProvider(dataSource, context, nativeJdbcExtractor);
+			TableMetaDataProvider existing = (TableMetaDataProvider) providers.putIfAbsent(key, provider);
+			if (existing != null) {
+				provider = existing;
+			}
+			else if (logger.isDebugEnabled()) {
+				logger.debug("Cached metadata provider for " + key);
+			}
+		}
+		return provider;
+	}
+
+	/**
+	 * Return the CallMetaDataProvider for the procedure or function described
+	 * by the given context, creating and caching it if necessary.
+	 * @param dataSource the DataSource to retrieve metadata from
+	 * @param context the context holding the procedure name and metadata settings
+	 * @return the (possibly shared) CallMetaDataProvider
+	 * @see CallMetaDataProviderFactory#createMetaDataProvider
+	 */
+	public CallMetaDataProvider getCallMetaDataProvider(DataSource dataSource, CallMetaDataContext context) {
+		ProviderKey key = new ProviderKey((context.isFunction() ? ProviderKey.FUNCTION : ProviderKey.PROCEDURE),
+				context.getCatalogName(), context.getSchemaName(), context.getProcedureName(),
+				context.isAccessCallParameterMetaData(), false, null);
+		ConcurrentMap<ProviderKey, Object> providers = getProviders(dataSource);
+		CallMetaDataProvider provider = (CallMetaDataProvider) providers.get(key);
+		if (provider == null) {
+			provider = CallMetaDataProviderFactory.createMetaDataProvider(dataSource, context);
+			CallMetaDataProvider existing = (CallMetaDataProvider) providers.putIfAbsent(key, provider);
+			if (existing != null) {
+				provider = existing;
+			}
+			else if (logger.isDebugEnabled()) {
+				logger.debug("Cached metadata provider for " + key);
+			}
+		}
+		return provider;
+	}
+
+	private ConcurrentMap<ProviderKey, Object> getProviders(DataSource dataSource) {
+		Assert.notNull(dataSource, "DataSource must not be null");
+		ConcurrentMap<ProviderKey, Object> providers = this.providerCache.get(dataSource);
+		if (providers == null) {
+			providers = new ConcurrentHashMap<ProviderKey, Object>(64);
+			ConcurrentMap<ProviderKey, Object> existing = this.providerCache.putIfAbsent(dataSource, providers);
+			if (existing != null) {
+				providers = existing;
+			}
+		}
+		return providers;
+	}
+
+	/**
+	 * Retrieve and cache the metadata for the given tables, using the default
+	 * metadata settings of {@code SimpleJdbcInsert} and the configured
+	 * {@link #setNativeJdbcExtractor NativeJdbcExtractor}.
+	 * @param dataSource the DataSource to retrieve metadata from
+	 * @param catalogName the catalog name (may be {@code null})
+	 * @param schemaName the schema name (may be {@code null})
+	 * @param tableNames the names of the tables
+	 */
+	public void preloadTableMetaData(DataSource dataSource, String catalogName, String schemaName,
+			String... tableNames) {
+
+		for (String tableName : tableNames) {
+			TableMetaDataContext context = new TableMetaDataContext();
+			context.setCatalogName(catalogName);
+			context.setSchemaName(schemaName);
+			context.setTableName(tableName);
+			getTableMetaDataProvider(dataSource, context, this.nativeJdbcExtractor);
+		}
+	}
+
+	/**
+	 * Retrieve and cache the metadata for the given procedures or functions,
+	 * using the default metadata settings of {@code SimpleJdbcCall}.
+	 * @param dataSource the DataSource to retrieve metadata from
+	 * @param catalogName the catalog name (may be {@code null})
+	 * @param schemaName the schema name (may be {@code null})
+	 * @param function whether the given names refer to functions rather than procedures
+	 * @param procedureNames the names of the procedures or functions
+	 */
+	public void preloadCallMetaData(DataSource dataSource, String catalogName, String schemaName,
+			boolean function, String... procedureNames) {
+
+		for (String procedureName : procedureNames) {
+			CallMetaDataContext context = new CallMetaDataContext();
+			context.setCatalogName(catalogName);
+			context.setSchemaName(schemaName);
+			context.setProcedureName(procedureName);
+			context.setFunction(function);
+			getCallMetaDataProvider(dataSource, context);
+		}
+	}
+
+	/**
+	 * Remove the cached metadata for the given table, whatever metadata
+	 * settings it was retrieved with. Names are matched case-insensitively.
+	 * @param dataSource the DataSource the metadata was retrieved from
+	 * @param catalogName the catalog name (may be {@code null})
+	 * @param schemaName the schema name (may be {@code null})
+	 * @param tableName the name of the table
+	 */
+	public void evictTable(DataSource dataSource, String catalogName, String schemaName, String tableName) {
+		evict(dataSource, ProviderKey.TABLE, catalogName, schemaName, tableName);
+	}
+
+	/**
+	 * Remove the cached metadata for the given procedure or function, whatever
+	 * metadata settings it was retrieved with. Names are matched case-insensitively.
+	 * @param dataSource the DataSource the metadata was retrieved from
+	 * @param catalogName the catalog name (may be {@code null})
+	 * @param schemaName the schema name (may be {@code null})
+	 * @param procedureName the name of the procedure or function
+	 */
+	public void evictCall(DataSource dataSource, String catalogName, String schemaName, String procedureName) {
+		evict(dataSource, ProviderKey.PROCEDURE, catalogName, schemaName, procedureName);
+		evict(dataSource, ProviderKey.FUNCTION, catalogName, schemaName, procedureName);
+	}
+
+	private void evict(DataSource dataSource, String type, String catalogName, String schemaName, String name) {
+		ConcurrentMap<ProviderKey, Object> providers = this.providerCache.get(dataSource);
+		if (providers != null) {
+			for (Iterator<ProviderKey> it = providers.keySet().iterator(); it.hasNext();) {
+				if (it.next().matches(type, catalogName, schemaName, name)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached metadata for the given DataSource.
+	 * @param dataSource the DataSource the metadata was retrieved from
+	 */
+	public void evict(DataSource dataSource) {
+		this.providerCache.remove(dataSource);
+	}
+
+	/**
+	 * Remove all cached metadata.
+	 */
+	public void clear() {
+		this.providerCache.clear();
+	}
+
+	/**
+	 * Return the number of metadata providers currently cached for the given DataSource.
+	 */
+	public int getCachedProviderCount(DataSource dataSource) {
+		ConcurrentMap<ProviderKey, Object> providers = this.providerCache.get(dataSource);
+		return (providers != null ? providers.size() : 0);
+	}
+
+
+	/**
+	 * Key for a cached metadata provider.
+	 */
+	private static class ProviderKey {
+
+		public static final String TABLE = "table";
+
+		public static final String PROCEDURE = "procedure";
+
+		public static final String FUNCTION = "function";
+
+		private final String type;
+
+		private final String catalogName;
+
+		private final String schemaName;
+
+		private final String name;
+
+		private final boolean accessMetaData;
+
+		private final boolean overrideIncludeSynonymsDefault;
+
+		private final NativeJdbcExtractor nativeJdbcExtractor;
+
+		public ProviderKey(String type, String catalogName, String schemaName, String name,
+				boolean accessMetaData, boolean overrideIncludeSynonymsDefault,
+				NativeJdbcExtractor nativeJdbcExtractor) {
+
+			this.type = type;
+			this.catalogName = catalogName;
+			this.schemaName = schemaName;
+			this.name = name;
+			this.accessMetaData = accessMetaData;
+			this.overrideIncludeSynonymsDefault = overrideIncludeSynonymsDefault;
+			this.nativeJdbcExtractor = nativeJdbcExtractor;
+		}
+
+		public boolean matches(String type, String catalogName, String schemaName, String name) {
+			return (this.type.equals(type) && equalsIgnoreCase(this.catalogName, catalogName) &&
+					equalsIgnoreCase(this.schemaName, schemaName) && equalsIgnoreCase(this.name, name));
+		}
+
+		private static boolean equalsIgnoreCase(String name, String otherName) {
+			return (name != null ? name.equalsIgnoreCase(otherName) : otherName == null);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ProviderKey)) {
+				return false;
+			}
+			ProviderKey otherKey = (ProviderKey) other;
+			return (this.type.equals(otherKey.type) &&
+					ObjectUtils.nullSafeEquals(this.catalogName, otherKey.catalogName) &&
+					ObjectUtils.nullSafeEquals(this.schemaName, otherKey.schemaName) &&
+					ObjectUtils.nullSafeEquals(this.name, otherKey.name) &&
+					this.accessMetaData == otherKey.accessMetaData &&
+					this.overrideIncludeSynonymsDefault == otherKey.overrideIncludeSynonymsDefault &&
+					ObjectUtils.nullSafeEquals(this.nativeJdbcExtractor, otherKey.nativeJdbcExtractor));
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = this.type.hashCode();
+			hashCode = 29 * hashCode + ObjectUtils.nullSafeHashCode(this.catalogName);
+			hashCode = 29 * hashCode + ObjectUtils.nullSafeHashCode(this.schemaName);
+			hashCode = 29 * hashCode + ObjectUtils.nullSafeHashCode(this.name);
+			hashCode = 29 * hashCode + (this.accessMetaData ? 1 : 0);
+			hashCode = 29 * hashCode + (this.overrideIncludeSynonymsDefault ? 1 : 0);
+			return 29 * hashCode + ObjectUtils.nullSafeHashCode(this.nativeJdbcExtractor);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(this.type).append(" [");
+			if (this.catalogName != null) {
+				sb.append(this.catalogName).append('.');
+			}
+			if (this.schemaName != null) {
+				sb.append(this.schemaName).append('.');
+			}
+			return sb.append(this.name).append("]").toString();
+		}
+	}
+
+}
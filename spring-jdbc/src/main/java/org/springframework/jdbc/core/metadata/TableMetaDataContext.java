@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -74,6 +74,9 @@ public class TableMetaDataContext {
 	/** NativeJdbcExtractor to be used to retrieve the native connection */
 	NativeJdbcExtractor nativeJdbcExtractor;
 
+	/** optional cache to share the provider of table meta data with other contexts */
+	private MetaDataProviderCache metaDataProviderCache;
+
 
 	/**
 	 * Set the name of the table for this context.
@@ -194,6 +197,15 @@ public class TableMetaDataContext {
 		this.nativeJdbcExtractor = nativeJdbcExtractor;
 	}
 
+	/**
+	 * Specify a {@link MetaDataProviderCache} to obtain the metadata provider from,
+	 * sharing it with other contexts for the same table.
+	 * @since 4.3
+	 */
+	public void setMetaDataProviderCache(MetaDataProviderCache metaDataProviderCache) {
+		this.metaDataProviderCache = metaDataProviderCache;
+	}
+
 
 	/**
 	 * Process the current meta data with the provided configuration options.
@@ -202,8 +214,14 @@ public class TableMetaDataContext {
 	 * @param generatedKeyNames name of generated keys
 	 */
 	public void processMetaData(DataSource dataSource, List<String> declaredColumns, String[] generatedKeyNames) {
-		this.metaDataProvider =
-				TableMetaDataProviderFactory.createMetaDataProvider(dataSource, this, this.nativeJdbcExtractor);
+		if (this.metaDataProviderCache != null) {
+			this.metaDataProvider =
+					this.metaDataProviderCache.getTableMetaDataProvider(dataSource, this, this.nativeJdbcExtractor);
+		}
+		else {
+			this.metaDataProvider =
+					TableMetaDataProviderFactory.createMetaDataProvider(dataSource, this, this.nativeJdbcExtractor);
+		}
 		this.tableColumns = reconcileColumnsToUse(declaredColumns, generatedKeyNames);
 	}
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -250,12 +250,69 @@ public abstract class NamedParameterUtils {
 	 * be used for a select list. Select lists should be limited to 100 or fewer elements.
 	 * A larger number of elements is not guaranteed to be supported by the database and
 	 * is strictly vendor-dependent.
+	 * <p>As of 4.3, the resulting SQL is cached in the given {@link ParsedSql}
+	 * for the number of elements in any select list, so that repeated calls
+	 * for a cached ParsedSql do not rebuild the same SQL String.
 	 * @param parsedSql the parsed representation of the SQL statement
 	 * @param paramSource the source for named parameters
 	 * @return the SQL statement with substituted parameters
 	 * @see #parseSqlStatement
 	 */
 	public static String substituteNamedParameters(ParsedSql parsedSql, SqlParameterSource paramSource) {
+		String expansionKey = buildExpansionKey(parsedSql, paramSource);
+		String actualSql = parsedSql.getSubstitutedSql(expansionKey);
+		if (actualSql == null) {
+			actualSql = buildSubstitutedSql(parsedSql, paramSource);
+			parsedSql.cacheSubstitutedSql(expansionKey, actualSql);
+		}
+		return actualSql;
+	}
+
+	/**
+	 * Build a key identifying the expansion of the given parameter values:
+	 * the position of each collection parameter along with its number of
+	 * elements, and the length of each element that is an array.
+	 * @return the expansion key, or {@code null} if there are no collection values
+	 */
+	private static String buildExpansionKey(ParsedSql parsedSql, SqlParameterSource paramSource) {
+		if (paramSource == null) {
+			return null;
+		}
+		StringBuilder key = null;
+		List<String> paramNames = parsedSql.getParameterNames();
+		for (int i = 0; i < paramNames.size(); i++) {
+			String paramName = paramNames.get(i);
+			if (paramSource.hasValue(paramName)) {
+				Object value = paramSource.getValue(paramName);
+				if (value instanceof SqlParameterValue) {
+					value = ((SqlParameterValue) value).getValue();
+				}
+				if (value instanceof Collection) {
+					if (key == null) {
+						key = new StringBuilder();
+					}
+					key.append(i).append(':');
+					int plainCount = 0;
+					for (Object entryItem : (Collection<?>) value) {
+						if (entryItem instanceof Object[]) {
+							if (plainCount > 0) {
+								key.append(plainCount);
+								plainCount = 0;
+							}
+							key.append('(').append(((Object[]) entryItem).length).append(')');
+						}
+						else {
+							plainCount++;
+						}
+					}
+					key.append(plainCount).append(';');
+				}
+			}
+		}
+		return (key != null ? key.toString() : null);
+	}
+
+	private static String buildSubstitutedSql(ParsedSql parsedSql, SqlParameterSource paramSource) {
 		String originalSql = parsedSql.getOriginalSql();
 		StringBuilder actualSql = new StringBuilder();
 		List<String> paramNames = parsedSql.getParameterNames();
@@ -454,7 +511,7 @@ public abstract class NamedParameterUtils {
 	 */
 	public static String substituteNamedParameters(String sql, SqlParameterSource paramSource) {
 		ParsedSql parsedSql = parseSqlStatement(sql);
-		return substituteNamedParameters(parsedSql, paramSource);
+		return buildSubstitutedSql(parsedSql, paramSource);
 	}
 
 	/**
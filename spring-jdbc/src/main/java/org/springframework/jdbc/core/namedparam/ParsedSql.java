@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,8 @@ package org.springframework.jdbc.core.namedparam;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.util.ConcurrentLruCache;
+
 /**
  * Holds information about a parsed SQL statement.
  *
@@ -28,6 +30,9 @@ import java.util.List;
  */
 public class ParsedSql {
 
+	/** Maximum number of distinct collection expansions to cache the SQL for */
+	private static final int EXPANDED_SQL_CACHE_LIMIT = 64;
+
 	private String originalSql;
 
 	private List<String> parameterNames = new ArrayList<String>();
@@ -40,6 +45,12 @@ public class ParsedSql {
 
 	private int totalParameterCount;
 
+	/** Substituted SQL for parameter values without collections */
+	private volatile String substitutedSql;
+
+	/** Substituted SQL for parameter values with collections, keyed by expansion */
+	private volatile ConcurrentLruCache<String, String> expandedSqlCache;
+
 
 	/**
 	 * Create a new instance of the {@link ParsedSql} class.
@@ -133,6 +144,46 @@ public class ParsedSql {
 		return this.totalParameterCount;
 	}
 
+	/**
+	 * Return the SQL String with substituted parameters previously cached for
+	 * the given expansion of collection parameters, if any.
+	 * @param expansionKey the expansion key, or {@code null} for parameter
+	 * values without collections
+	 * @see #cacheSubstitutedSql
+	 */
+	String getSubstitutedSql(String expansionKey) {
+		if (expansionKey == null) {
+			return this.substitutedSql;
+		}
+		ConcurrentLruCache<String, String> cache = this.expandedSqlCache;
+		return (cache != null ? cache.get(expansionKey) : null);
+	}
+
+	/**
+	 * Cache the SQL String with substituted parameters for the given
+	 * expansion of collection parameters.
+	 * @param expansionKey the expansion key, or {@code null} for parameter
+	 * values without collections
+	 * @param substitutedSql the SQL String with substituted parameters
+	 */
+	void cacheSubstitutedSql(String expansionKey, String substitutedSql) {
+		if (expansionKey == null) {
+			this.substitutedSql = substitutedSql;
+			return;
+		}
+		ConcurrentLruCache<String, String> cache = this.expandedSqlCache;
+		if (cache == null) {
+			synchronized (this) {
+				cache = this.expandedSqlCache;
+				if (cache == null) {
+					cache = new ConcurrentLruCache<String, String>(EXPANDED_SQL_CACHE_LIMIT);
+					this.expandedSqlCache = cache;
+				}
+			}
+		}
+		cache.put(expansionKey, substitutedSql);
+	}
+
 
 	/**
 	 * Exposes the original SQL String.
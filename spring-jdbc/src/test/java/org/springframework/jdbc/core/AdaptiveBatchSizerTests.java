@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent
+ */
+public class AdaptiveBatchSizerTests {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+
+	@Test
+	public void startsAtMinimum() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1000, 100);
+		assertEquals(10, sizer.getBatchSize());
+	}
+
+	@Test
+	public void growsByAtMostFactorTwo() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1000, 100);
+		sizer.batchCompleted(10, MILLIS);
+		assertEquals(20, sizer.getBatchSize());
+		sizer.batchCompleted(20, 0);
+		assertEquals(40, sizer.getBatchSize());
+	}
+
+	@Test
+	public void growsTowardsTargetLatency() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1000, 100);
+		sizer.batchCompleted(10, 80 * MILLIS);
+		assertEquals(12, sizer.getBatchSize());
+	}
+
+	@Test
+	public void staysWithinMaximum() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 50, 100);
+		for (int i = 0; i < 10; i++) {
+			sizer.batchCompleted(sizer.getBatchSize(), MILLIS);
+		}
+		assertEquals(50, sizer.getBatchSize());
+	}
+
+	@Test
+	public void shrinksWhenTooSlow() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1000, 100);
+		for (int i = 0; i < 5; i++) {
+			sizer.batchCompleted(sizer.getBatchSize(), MILLIS);
+		}
+		assertEquals(320, sizer.getBatchSize());
+		sizer.batchCompleted(320, 400 * MILLIS);
+		assertEquals(80, sizer.getBatchSize());
+		sizer.batchCompleted(80, 10000 * MILLIS);
+		assertEquals(10, sizer.getBatchSize());
+	}
+
+	@Test
+	public void shortChunkDoesNotShrink() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 1000, 100);
+		sizer.batchCompleted(10, MILLIS);
+		sizer.batchCompleted(3, 90 * MILLIS);
+		assertEquals(20, sizer.getBatchSize());
+	}
+
+	@Test
+	public void fixedBatchSize() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(25, 25, 100);
+		sizer.batchCompleted(25, MILLIS);
+		assertEquals(25, sizer.getBatchSize());
+		sizer.batchCompleted(25, 10000 * MILLIS);
+		assertEquals(25, sizer.getBatchSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBounds() {
+		new AdaptiveBatchSizer(10, 5, 100);
+	}
+
+}
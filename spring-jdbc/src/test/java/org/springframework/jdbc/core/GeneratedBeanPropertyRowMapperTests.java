@@ -0,0 +1,193 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.test.ConcretePerson;
+import org.springframework.jdbc.core.test.ExtendedPerson;
+import org.springframework.jdbc.core.test.Person;
+import org.springframework.jdbc.core.test.SpacePerson;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+
+/**
+ * Unit tests for {@link GeneratedBeanPropertyRowMapper}.
+ *
+ * @author agent
+ */
+public class GeneratedBeanPropertyRowMapperTests extends AbstractRowMapperTests {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+
+	@Test
+	public void staticQueryWithRowMapper() throws Exception {
+		Mock mock = new Mock();
+		List<Person> result = mock.getJdbcTemplate().query(
+				"select name, age, birth_date, balance from people",
+				GeneratedBeanPropertyRowMapper.newInstance(Person.class));
+		assertEquals(1, result.size());
+		verifyPerson(result.get(0));
+		mock.verifyClosed();
+	}
+
+	@Test
+	public void mapperReusedAcrossQueries() throws Exception {
+		GeneratedBeanPropertyRowMapper<Person> mapper = GeneratedBeanPropertyRowMapper.newInstance(Person.class);
+		for (int i = 0; i < 3; i++) {
+			Mock mock = new Mock();
+			List<Person> result = mock.getJdbcTemplate().query(
+					"select name, age, birth_date, balance from people", mapper);
+			assertEquals(1, result.size());
+			verifyPerson(result.get(0));
+		}
+	}
+
+	@Test
+	public void columnLayoutReadOncePerResultSet() throws Exception {
+		GeneratedBeanPropertyRowMapper<Person> mapper = GeneratedBeanPropertyRowMapper.newInstance(Person.class);
+		for (int i = 0; i < 2; i++) {
+			ResultSet resultSet = mockPersonResultSet();
+			for (int rowNumber = 0; rowNumber < 3; rowNumber++) {
+				verifyPerson(mapper.mapRow(resultSet, rowNumber));
+			}
+			verify(resultSet, times(1)).getMetaData();
+		}
+	}
+
+	@Test
+	public void mappingWithInheritance() throws Exception {
+		Mock mock = new Mock();
+		List<ConcretePerson> result = mock.getJdbcTemplate().query(
+				"select name, age, birth_date, balance from people",
+				new GeneratedBeanPropertyRowMapper<ConcretePerson>(ConcretePerson.class, true));
+		assertEquals(1, result.size());
+		verifyConcretePerson(result.get(0));
+		mock.verifyClosed();
+	}
+
+	@Test
+	public void mappingWithUnpopulatedFieldsNotChecked() throws Exception {
+		Mock mock = new Mock();
+		List<ExtendedPerson> result = mock.getJdbcTemplate().query(
+				"select name, age, birth_date, balance from people",
+				new GeneratedBeanPropertyRowMapper<ExtendedPerson>(ExtendedPerson.class));
+		assertEquals(1, result.size());
+		verifyConcretePerson(result.get(0));
+		mock.verifyClosed();
+	}
+
+	@Test
+	public void mappingWithUnpopulatedFieldsNotAccepted() throws Exception {
+		Mock mock = new Mock();
+		thrown.expect(InvalidDataAccessApiUsageException.class);
+		mock.getJdbcTemplate().query(
+				"select name, age, birth_date, balance from people",
+				new GeneratedBeanPropertyRowMapper<ExtendedPerson>(ExtendedPerson.class, true));
+	}
+
+	@Test
+	public void mappingNullValue() throws Exception {
+		Mock mock = new Mock(MockType.TWO);
+		thrown.expect(TypeMismatchException.class);
+		mock.getJdbcTemplate().query(
+				"select name, null as age, birth_date, balance from people",
+				new GeneratedBeanPropertyRowMapper<Person>(Person.class));
+	}
+
+	@Test
+	public void mappingNullValueWithPrimitivesDefaulted() throws Exception {
+		GeneratedBeanPropertyRowMapper<Person> mapper = new GeneratedBeanPropertyRowMapper<Person>(Person.class);
+		mapper.setPrimitivesDefaultedForNullValue(true);
+		Mock mock = new Mock(MockType.TWO);
+		List<Person> result = mock.getJdbcTemplate().query(
+				"select name, null as age, birth_date, balance from people", mapper);
+		assertEquals(1, result.size());
+		assertEquals("Bubba", result.get(0).getName());
+		assertEquals(0L, result.get(0).getAge());
+	}
+
+	@Test
+	public void queryWithSpaceInColumnName() throws Exception {
+		Mock mock = new Mock(MockType.THREE);
+		List<SpacePerson> result = mock.getJdbcTemplate().query(
+				"select last_name as \"Last Name\", age, birth_date, balance from people",
+				new GeneratedBeanPropertyRowMapper<SpacePerson>(SpacePerson.class));
+		assertEquals(1, result.size());
+		verifySpacePerson(result.get(0));
+		mock.verifyClosed();
+	}
+
+	@Test
+	public void customizedMapperFallsBackToBeanWrapper() throws Exception {
+		final List<Object> wrappedInstances = new ArrayList<Object>();
+		GeneratedBeanPropertyRowMapper<Person> mapper = new GeneratedBeanPropertyRowMapper<Person>(Person.class) {
+			@Override
+			protected void initBeanWrapper(BeanWrapper bw) {
+				wrappedInstances.add(bw.getWrappedInstance());
+			}
+		};
+		Mock mock = new Mock();
+		List<Person> result = mock.getJdbcTemplate().query(
+				"select name, age, birth_date, balance from people", mapper);
+		assertEquals(1, result.size());
+		verifyPerson(result.get(0));
+		assertEquals(1, wrappedInstances.size());
+		assertSame(result.get(0), wrappedInstances.get(0));
+	}
+
+
+	private static ResultSet mockPersonResultSet() throws Exception {
+		ResultSet resultSet = mock(ResultSet.class);
+		// Some drivers return a new metadata object on every call
+		given(resultSet.getMetaData()).willAnswer(new Answer<ResultSetMetaData>() {
+			@Override
+			public ResultSetMetaData answer(InvocationOnMock invocation) throws Throwable {
+				ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+				given(metaData.getColumnCount()).willReturn(4);
+				given(metaData.getColumnLabel(1)).willReturn("name");
+				given(metaData.getColumnLabel(2)).willReturn("age");
+				given(metaData.getColumnLabel(3)).willReturn("birth_date");
+				given(metaData.getColumnLabel(4)).willReturn("balance");
+				return metaData;
+			}
+		});
+		given(resultSet.getString(1)).willReturn("Bubba");
+		given(resultSet.getLong(2)).willReturn(22L);
+		given(resultSet.getTimestamp(3)).willReturn(new Timestamp(1221222L));
+		given(resultSet.getBigDecimal(4)).willReturn(new BigDecimal("1234.56"));
+		return resultSet;
+	}
+
+}
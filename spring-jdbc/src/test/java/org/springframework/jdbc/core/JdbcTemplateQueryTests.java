@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,8 +24,10 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import javax.sql.DataSource;
 
 import org.junit.Before;
@@ -33,6 +35,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 
 import static org.junit.Assert.*;
@@ -391,4 +394,89 @@ public class JdbcTemplateQueryTests {
 		verify(this.preparedStatement).close();
 	}
 
+	@Test
+	public void testQueryForIterator() throws Exception {
+		String sql = "SELECT AGE FROM CUSTMR WHERE ID < ?";
+		given(this.resultSet.next()).willReturn(true, true, false);
+		given(this.resultSet.getInt(1)).willReturn(11, 12);
+		this.template.setFetchSize(50);
+		RowIterator<Integer> it = this.template.queryForIterator(sql, new RowMapper<Integer>() {
+			@Override
+			public Integer mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return rs.getInt(1) * 10 + rowNum;
+			}
+		}, 3);
+		verify(this.preparedStatement).setFetchSize(50);
+		verify(this.preparedStatement).setObject(1, 3);
+		verify(this.resultSet, never()).next();
+		List<Integer> result = new ArrayList<Integer>();
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		assertEquals(2, result.size());
+		assertEquals(110, result.get(0).intValue());
+		assertEquals(121, result.get(1).intValue());
+		verify(this.resultSet).close();
+		verify(this.preparedStatement).close();
+		verify(this.connection).close();
+		it.close();
+		verify(this.resultSet).close();
+		verify(this.connection).close();
+	}
+
+	@Test
+	public void testQueryForIteratorClosedEarly() throws Exception {
+		String sql = "SELECT AGE FROM CUSTMR";
+		given(this.resultSet.next()).willReturn(true, true, false);
+		given(this.resultSet.getInt(1)).willReturn(11, 12);
+		RowIterator<Integer> it = this.template.queryForIterator(sql, new RowMapper<Integer>() {
+			@Override
+			public Integer mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return rs.getInt(1);
+			}
+		});
+		assertEquals(11, it.next().intValue());
+		verify(this.connection, never()).close();
+		it.close();
+		assertFalse(it.hasNext());
+		verify(this.resultSet).close();
+		verify(this.preparedStatement).close();
+		verify(this.connection).close();
+	}
+
+	@Test
+	public void testQueryForIteratorWithNoMoreRows() throws Exception {
+		String sql = "SELECT AGE FROM CUSTMR";
+		given(this.resultSet.next()).willReturn(false);
+		RowIterator<Integer> it = this.template.queryForIterator(sql, new SingleColumnRowMapper<Integer>());
+		assertFalse(it.hasNext());
+		verify(this.connection).close();
+		this.thrown.expect(NoSuchElementException.class);
+		it.next();
+	}
+
+	@Test
+	public void testQueryForIteratorWithSQLExceptionWhileIterating() throws Exception {
+		String sql = "SELECT AGE FROM CUSTMR";
+		given(this.resultSet.next()).willReturn(true);
+		given(this.resultSet.getInt(1)).willThrow(new SQLException("bad column"));
+		RowIterator<Integer> it = this.template.queryForIterator(sql, new RowMapper<Integer>() {
+			@Override
+			public Integer mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return rs.getInt(1);
+			}
+		});
+		try {
+			it.next();
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			// expected
+		}
+		assertFalse(it.hasNext());
+		verify(this.resultSet).close();
+		verify(this.preparedStatement).close();
+		verify(this.connection, atLeastOnce()).close();
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -31,6 +31,10 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.sql.DataSource;
 
 import org.junit.Before;
@@ -50,6 +54,7 @@ import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLStateSQLExceptionTranslator;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
 import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractorAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.LinkedCaseInsensitiveMap;
 
 import static org.hamcrest.Matchers.*;
@@ -823,6 +828,182 @@ public class JdbcTemplateTests {
 		verify(this.connection, atLeastOnce()).close();
 	}
 
+	@Test
+	public void testChunkedBatchUpdateWithCollectionOfObjects() throws Exception {
+		final String sql = "UPDATE NOSUCHTABLE SET DATE_DISPATCHED = SYSDATE WHERE ID = ?";
+		final List<Integer> ids = Arrays.asList(100, 200, 300);
+		final int[] rowsAffected1 = new int[] { 1, 2 };
+		final int[] rowsAffected2 = new int[] { 3 };
+
+		given(this.preparedStatement.executeBatch()).willReturn(rowsAffected1, rowsAffected2);
+		mockDatabaseMetaData(true);
+
+		ParameterizedPreparedStatementSetter<Integer> setter = new ParameterizedPreparedStatementSetter<Integer>() {
+			@Override
+			public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+				ps.setInt(1, argument.intValue());
+			}
+		};
+		final List<String> chunks = new ArrayList<String>();
+		BatchChunkCallback callback = new BatchChunkCallback() {
+			@Override
+			public void chunkCompleted(int chunkIndex, int itemOffset, int[] updateCounts) {
+				chunks.add(chunkIndex + ":" + itemOffset + ":" + updateCounts.length);
+			}
+		};
+
+		JdbcTemplate template = new JdbcTemplate(this.dataSource, false);
+
+		int[][] actualRowsAffected = template.batchUpdate(sql, ids, new AdaptiveBatchSizer(2, 2, 100), setter, callback);
+		assertEquals(2, actualRowsAffected.length);
+		assertEquals(rowsAffected1[0], actualRowsAffected[0][0]);
+		assertEquals(rowsAffected1[1], actualRowsAffected[0][1]);
+		assertEquals(rowsAffected2[0], actualRowsAffected[1][0]);
+		assertEquals(Arrays.asList("0:0:2", "1:2:1"), chunks);
+
+		verify(this.preparedStatement, times(3)).addBatch();
+		verify(this.preparedStatement, times(2)).executeBatch();
+		verify(this.preparedStatement).setInt(1, ids.get(0));
+		verify(this.preparedStatement).setInt(1, ids.get(1));
+		verify(this.preparedStatement).setInt(1, ids.get(2));
+		verify(this.preparedStatement).close();
+		verify(this.connection, atLeastOnce()).close();
+	}
+
+	@Test
+	public void testChunkedBatchUpdateWithNoBatchSupport() throws Exception {
+		final String sql = "UPDATE NOSUCHTABLE SET DATE_DISPATCHED = SYSDATE WHERE ID = ?";
+		final List<Integer> ids = Arrays.asList(100, 200, 300);
+
+		given(this.preparedStatement.executeUpdate()).willReturn(1, 2, 3);
+		mockDatabaseMetaData(false);
+
+		ParameterizedPreparedStatementSetter<Integer> setter = new ParameterizedPreparedStatementSetter<Integer>() {
+			@Override
+			public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+				ps.setInt(1, argument.intValue());
+			}
+		};
+
+		JdbcTemplate template = new JdbcTemplate(this.dataSource, false);
+
+		int[][] actualRowsAffected = template.batchUpdate(sql, ids, new AdaptiveBatchSizer(2, 2, 100), setter, null);
+		assertEquals(2, actualRowsAffected.length);
+		assertArrayEquals(new int[] {1, 2}, actualRowsAffected[0]);
+		assertArrayEquals(new int[] {3}, actualRowsAffected[1]);
+
+		verify(this.preparedStatement, never()).addBatch();
+		verify(this.preparedStatement, times(3)).executeUpdate();
+		verify(this.preparedStatement).close();
+		verify(this.connection, atLeastOnce()).close();
+	}
+
+	@Test
+	public void testChunkedBatchUpdateOnMultipleConnections() throws Exception {
+		final String sql = "UPDATE NOSUCHTABLE SET DATE_DISPATCHED = SYSDATE WHERE ID = ?";
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < 25; i++) {
+			ids.add(i);
+		}
+
+		given(this.preparedStatement.executeBatch()).willReturn(new int[] { 1, 1 });
+		mockDatabaseMetaData(true);
+
+		ParameterizedPreparedStatementSetter<Integer> setter = new ParameterizedPreparedStatementSetter<Integer>() {
+			@Override
+			public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+				ps.setInt(1, argument.intValue());
+			}
+		};
+		final AtomicInteger completedChunks = new AtomicInteger();
+		BatchChunkCallback callback = new BatchChunkCallback() {
+			@Override
+			public void chunkCompleted(int chunkIndex, int itemOffset, int[] updateCounts) {
+				assertEquals(chunkIndex * 2, itemOffset);
+				completedChunks.incrementAndGet();
+			}
+		};
+
+		JdbcTemplate template = new JdbcTemplate(this.dataSource, false);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			int[][] actualRowsAffected = template.batchUpdate(
+					sql, ids, new AdaptiveBatchSizer(2, 2, 100), setter, callback, executor, 4);
+			assertEquals(13, actualRowsAffected.length);
+			assertEquals(13, completedChunks.get());
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		verify(this.preparedStatement, times(25)).addBatch();
+		verify(this.preparedStatement, times(13)).executeBatch();
+		verify(this.preparedStatement, atLeastOnce()).close();
+		verify(this.connection, atLeastOnce()).close();
+	}
+
+	@Test
+	public void testChunkedBatchUpdateWithinTransaction() throws Exception {
+		final String sql = "UPDATE NOSUCHTABLE SET DATE_DISPATCHED = SYSDATE WHERE ID = ?";
+		final List<Integer> ids = Arrays.asList(100, 200, 300);
+
+		given(this.preparedStatement.executeBatch()).willReturn(new int[] { 1, 1 }, new int[] { 1 });
+		mockDatabaseMetaData(true);
+
+		ParameterizedPreparedStatementSetter<Integer> setter = new ParameterizedPreparedStatementSetter<Integer>() {
+			@Override
+			public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+				ps.setInt(1, argument.intValue());
+			}
+		};
+		Executor executor = mock(Executor.class);
+
+		JdbcTemplate template = new JdbcTemplate(this.dataSource, false);
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			int[][] actualRowsAffected = template.batchUpdate(
+					sql, ids, new AdaptiveBatchSizer(2, 2, 100), setter, null, executor, 4);
+			assertEquals(2, actualRowsAffected.length);
+		}
+		finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		verifyZeroInteractions(executor);
+		verify(this.preparedStatement, times(3)).addBatch();
+	}
+
+	@Test
+	public void testChunkedBatchUpdateFails() throws Exception {
+		final String sql = "UPDATE NOSUCHTABLE SET DATE_DISPATCHED = SYSDATE WHERE ID = ?";
+		final List<Integer> ids = Arrays.asList(100, 200, 300);
+		SQLException sqlException = new SQLException("I'm afraid I can't do that...");
+
+		given(this.preparedStatement.executeBatch()).willThrow(sqlException);
+		mockDatabaseMetaData(true);
+
+		ParameterizedPreparedStatementSetter<Integer> setter = new ParameterizedPreparedStatementSetter<Integer>() {
+			@Override
+			public void setValues(PreparedStatement ps, Integer argument) throws SQLException {
+				ps.setInt(1, argument.intValue());
+			}
+		};
+
+		JdbcTemplate template = new JdbcTemplate(this.dataSource, false);
+		try {
+			template.batchUpdate(sql, ids, new AdaptiveBatchSizer(2, 2, 100), setter, null);
+			fail("Should have thrown DataAccessException");
+		}
+		catch (DataAccessException ex) {
+			assertSame(sqlException, ex.getCause());
+		}
+
+		verify(this.preparedStatement, times(2)).addBatch();
+		verify(this.preparedStatement).executeBatch();
+		verify(this.preparedStatement).close();
+		verify(this.connection, atLeastOnce()).close();
+	}
+
 	@Test
 	public void testCouldntGetConnectionForOperationOrExceptionTranslator() throws SQLException {
 		SQLException sqlException = new SQLException("foo", "07xxx");
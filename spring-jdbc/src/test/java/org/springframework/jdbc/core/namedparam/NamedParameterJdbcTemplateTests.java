@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2013 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -107,6 +107,23 @@ public class NamedParameterJdbcTemplateTests {
 		new NamedParameterJdbcTemplate((JdbcOperations) null);
 	}
 
+	@Test
+	public void testParsedSqlCache() {
+		String sql = "SELECT * FROM CUSTMR WHERE ID = :id";
+		ParsedSql parsedSql = namedParameterTemplate.getParsedSql(sql);
+		assertSame(parsedSql, namedParameterTemplate.getParsedSql(sql));
+		assertSame(parsedSql, namedParameterTemplate.getParsedSql(new String(sql)));
+
+		namedParameterTemplate.setCacheLimit(1);
+		ParsedSql parsedSql2 = namedParameterTemplate.getParsedSql(sql);
+		assertNotSame(parsedSql, parsedSql2);
+		namedParameterTemplate.getParsedSql("SELECT * FROM CUSTMR WHERE NAME = :name");
+		assertNotSame(parsedSql2, namedParameterTemplate.getParsedSql(sql));
+
+		namedParameterTemplate.setCacheLimit(0);
+		assertNotSame(namedParameterTemplate.getParsedSql(sql), namedParameterTemplate.getParsedSql(sql));
+	}
+
 	@Test
 	public void testExecute() throws SQLException {
 		given(preparedStatement.executeUpdate()).willReturn(1);
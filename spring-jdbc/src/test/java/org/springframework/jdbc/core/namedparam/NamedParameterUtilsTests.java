@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.jdbc.core.namedparam;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -68,6 +69,36 @@ public class NamedParameterUtilsTests {
 				NamedParameterUtils.substituteNamedParameters("xxx :a :b :c xx :a :a", namedParams));
 	}
 
+	@Test
+	public void substituteNamedParametersCachedPerExpansion() {
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement("xxx :a IN (:b) yyy");
+		MapSqlParameterSource namedParams = new MapSqlParameterSource("a", "a").addValue("b", "b");
+		String sql = NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams);
+		assertEquals("xxx ? IN (?) yyy", sql);
+		assertSame(sql, NamedParameterUtils.substituteNamedParameters(parsedSql, new MapSqlParameterSource("a", 1)));
+
+		namedParams.addValue("b", Arrays.asList(1, 2, 3));
+		sql = NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams);
+		assertEquals("xxx ? IN (?, ?, ?) yyy", sql);
+		assertSame(sql, NamedParameterUtils.substituteNamedParameters(parsedSql,
+				new MapSqlParameterSource("b", Arrays.asList("x", "y", "z"))));
+
+		namedParams.addValue("b", Arrays.asList(1, 2));
+		assertEquals("xxx ? IN (?, ?) yyy", NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+		namedParams.addValue("a", Arrays.asList(1, 2));
+		assertEquals("xxx ?, ? IN (?, ?) yyy", NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+
+		namedParams.addValue("b", Arrays.asList(new Object[] {1, 2}, new Object[] {3, 4}));
+		assertEquals("xxx ?, ? IN ((?, ?), (?, ?)) yyy",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+		namedParams.addValue("b", Arrays.asList(new Object[] {1, 2, 3}, new Object[] {4}));
+		assertEquals("xxx ?, ? IN ((?, ?, ?), (?)) yyy",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+		namedParams.addValue("b", Arrays.asList(new Object[] {1}, 2, new Object[] {3}));
+		assertEquals("xxx ?, ? IN ((?), ?, (?)) yyy",
+				NamedParameterUtils.substituteNamedParameters(parsedSql, namedParams));
+	}
+
 	@Test
 	public void convertParamMapToArray() {
 		Map<String, String> paramMap = new HashMap<String, String>();
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jdbc.core.simple;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.jdbc.core.metadata.MetaDataProviderCache;
+import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
+import org.springframework.jdbc.support.nativejdbc.SimpleNativeJdbcExtractor;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.*;
+
+/**
+ * Mock object based tests for MetaDataProviderCache.
+ *
+ * @author agent
+ */
+public class MetaDataProviderCacheTests {
+
+	private Connection connection;
+
+	private DataSource dataSource;
+
+	private DatabaseMetaData databaseMetaData;
+
+	private MetaDataProviderCache cache = new MetaDataProviderCache();
+
+
+	@Before
+	public void setUp() throws Exception {
+		connection = mock(Connection.class);
+		dataSource = mock(DataSource.class);
+		databaseMetaData = mock(DatabaseMetaData.class);
+		given(connection.getMetaData()).willReturn(databaseMetaData);
+		given(dataSource.getConnection()).willReturn(connection);
+		given(databaseMetaData.getDatabaseProductName()).willReturn("MyDB");
+	}
+
+
+	@Test
+	public void insertsShareTableMetaData() throws Exception {
+		createInsert("customers").compile();
+		createInsert("customers").compile();
+		assertEquals(1, cache.getCachedProviderCount(dataSource));
+		verify(dataSource, times(1)).getConnection();
+
+		createInsert("orders").compile();
+		assertEquals(2, cache.getCachedProviderCount(dataSource));
+		verify(dataSource, times(2)).getConnection();
+	}
+
+	@Test
+	public void insertWithoutCacheRetrievesTableMetaData() throws Exception {
+		createInsert("customers").compile();
+		SimpleJdbcInsert insert = createInsert("customers");
+		insert.setMetaDataProviderCache(null);
+		insert.compile();
+		verify(dataSource, times(2)).getConnection();
+	}
+
+	@Test
+	public void evictTable() throws Exception {
+		createInsert("customers").compile();
+		createInsert("orders").compile();
+		cache.evictTable(dataSource, null, null, "CUSTOMERS");
+		assertEquals(1, cache.getCachedProviderCount(dataSource));
+
+		createInsert("customers").compile();
+		createInsert("orders").compile();
+		verify(dataSource, times(3)).getConnection();
+
+		cache.evict(dataSource);
+		assertEquals(0, cache.getCachedProviderCount(dataSource));
+	}
+
+	@Test
+	public void preloadTableMetaData() throws Exception {
+		cache.preloadTableMetaData(dataSource, null, null, "customers", "orders");
+		verify(dataSource, times(2)).getConnection();
+		assertEquals(2, cache.getCachedProviderCount(dataSource));
+
+		SimpleJdbcInsert insert = new SimpleJdbcInsert(dataSource).withTableName("customers").usingColumns("id");
+		insert.setMetaDataProviderCache(cache);
+		insert.compile();
+		verify(dataSource, times(2)).getConnection();
+	}
+
+	@Test
+	public void insertsWithDifferentNativeJdbcExtractorsDoNotShareTableMetaData() throws Exception {
+		NativeJdbcExtractor extractor = new SimpleNativeJdbcExtractor();
+		createInsert("customers").compile();
+		SimpleJdbcInsert insert = createInsert("customers");
+		insert.setNativeJdbcExtractor(extractor);
+		insert.compile();
+		verify(dataSource, times(2)).getConnection();
+		assertEquals(2, cache.getCachedProviderCount(dataSource));
+
+		insert = createInsert("customers");
+		insert.setNativeJdbcExtractor(extractor);
+		insert.compile();
+		verify(dataSource, times(2)).getConnection();
+	}
+
+	@Test
+	public void preloadTableMetaDataWithNativeJdbcExtractor() throws Exception {
+		NativeJdbcExtractor extractor = new SimpleNativeJdbcExtractor();
+		cache.setNativeJdbcExtractor(extractor);
+		cache.preloadTableMetaData(dataSource, null, null, "customers");
+		verify(dataSource, times(1)).getConnection();
+
+		SimpleJdbcInsert insert = new SimpleJdbcInsert(dataSource).withTableName("customers").usingColumns("id");
+		insert.setNativeJdbcExtractor(extractor);
+		insert.setMetaDataProviderCache(cache);
+		insert.compile();
+		verify(dataSource, times(1)).getConnection();
+
+		insert = new SimpleJdbcInsert(dataSource).withTableName("customers").usingColumns("id");
+		insert.setMetaDataProviderCache(cache);
+		insert.compile();
+		verify(dataSource, times(2)).getConnection();
+	}
+
+	@Test
+	public void callsShareCallMetaData() throws Exception {
+		createCall("add_customer", false).compile();
+		createCall("add_customer", false).compile();
+		verify(dataSource, times(1)).getConnection();
+
+		createCall("add_customer", true).compile();
+		verify(dataSource, times(2)).getConnection();
+		assertEquals(2, cache.getCachedProviderCount(dataSource));
+
+		cache.evictCall(dataSource, null, null, "add_customer");
+		assertEquals(0, cache.getCachedProviderCount(dataSource));
+	}
+
+
+	private SimpleJdbcInsert createInsert(String tableName) {
+		SimpleJdbcInsert insert = new SimpleJdbcInsert(dataSource).withTableName(tableName).usingColumns("id");
+		insert.setAccessTableColumnMetaData(false);
+		insert.setMetaDataProviderCache(cache);
+		return insert;
+	}
+
+	private SimpleJdbcCall createCall(String procedureName, boolean function) {
+		SimpleJdbcCall call = new SimpleJdbcCall(dataSource).withProcedureName(procedureName)
+				.withoutProcedureColumnMetaDataAccess();
+		call.setFunction(function);
+		call.setMetaDataProviderCache(cache);
+		return call;
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.broker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * Benchmarks for {@link SubscriptionRegistry} implementations, with sessions
+ * subscribed to a mix of distinct and shared destinations and patterns.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SubscriptionRegistryBenchmark {
+
+	@Param({"default", "trie"})
+	public String registryType;
+
+	@Param({"1000", "10000", "50000"})
+	public int sessionCount;
+
+
+	private SubscriptionRegistry registry;
+
+	private Message<?> sharedMessage;
+
+	private Message<?> privateMessage;
+
+	private int counter;
+
+
+	@Setup
+	public void setup() {
+		this.registry = ("trie".equals(this.registryType) ?
+				new TrieSubscriptionRegistry() : new DefaultSubscriptionRegistry());
+		for (int i = 0; i < this.sessionCount; i++) {
+			String sessionId = "sess" + i;
+			this.registry.registerSubscription(subscribeMessage(sessionId, "0", "/user/queue/" + sessionId));
+			this.registry.registerSubscription(subscribeMessage(sessionId, "1", "/topic/price.stock." + (i % 100)));
+			if (i % 10 == 0) {
+				this.registry.registerSubscription(subscribeMessage(sessionId, "2", "/topic/price.stock.*"));
+			}
+		}
+		this.sharedMessage = message("/topic/price.stock.42");
+		this.privateMessage = message("/user/queue/sess" + (this.sessionCount - 1));
+	}
+
+
+	@Benchmark
+	public Object findSubscriptionsForSharedDestination() {
+		return this.registry.findSubscriptions(this.sharedMessage);
+	}
+
+	@Benchmark
+	public Object findSubscriptionsForPrivateDestination() {
+		return this.registry.findSubscriptions(this.privateMessage);
+	}
+
+	@Benchmark
+	public Object subscribeFindAndUnsubscribe() {
+		String sessionId = "churn" + (this.counter++ % 100);
+		this.registry.registerSubscription(subscribeMessage(sessionId, "0", "/topic/price.stock.7"));
+		Object result = this.registry.findSubscriptions(this.sharedMessage);
+		this.registry.unregisterAllSubscriptions(sessionId);
+		return result;
+	}
+
+
+	private static Message<?> subscribeMessage(String sessionId, String subscriptionId, String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+	}
+
+	private static Message<?> message(String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.stomp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link StompDecoder#decode}.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StompDecoderBenchmark {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	private final StompDecoder decoder = new StompDecoder();
+
+	private byte[] sendFrame;
+
+	private byte[] subscribeFrame;
+
+	private byte[] escapedHeadersFrame;
+
+	private byte[] multipleFrames;
+
+
+	@Setup
+	public void setup() {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 32; i++) {
+			body.append("{\"ticker\":\"IBM\",\"price\":").append(100 + i).append("}");
+		}
+		String send = "SEND\ndestination:/app/trade\ncontent-type:application/json;charset=UTF-8\n" +
+				"content-length:" + body.length() + "\n\n" + body + "\0";
+		this.sendFrame = send.getBytes(UTF_8);
+		this.subscribeFrame = "SUBSCRIBE\nid:sub-0\ndestination:/topic/price.stock.IBM\n\n\0".getBytes(UTF_8);
+		this.escapedHeadersFrame = "SEND\ndestination:/app/a\\cb\nfoo:bar\\nbaz\\\\\n\nbody\0".getBytes(UTF_8);
+
+		StringBuilder frames = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			frames.append("SEND\ndestination:/app/trade\n\n").append(i).append("\0\n");
+		}
+		this.multipleFrames = frames.toString().getBytes(UTF_8);
+	}
+
+
+	@Benchmark
+	public Object decodeSendFrame() {
+		return this.decoder.decode(ByteBuffer.wrap(this.sendFrame));
+	}
+
+	@Benchmark
+	public Object decodeSendFrameToSlices() {
+		return this.decoder.decodeToSlices(ByteBuffer.wrap(this.sendFrame));
+	}
+
+	@Benchmark
+	public Object decodeSubscribeFrame() {
+		return this.decoder.decode(ByteBuffer.wrap(this.subscribeFrame));
+	}
+
+	@Benchmark
+	public Object decodeEscapedHeaders() {
+		return this.decoder.decode(ByteBuffer.wrap(this.escapedHeadersFrame));
+	}
+
+	@Benchmark
+	public Object decodeMultipleFrames() {
+		return this.decoder.decode(ByteBuffer.wrap(this.multipleFrames));
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.stomp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Benchmarks for {@link StompEncoder#encode}, encoding the MESSAGE frames of a
+ * broadcast to many subscriptions.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class StompEncoderBenchmark {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int SUBSCRIPTION_COUNT = 64;
+
+
+	private final StompEncoder encoder = new StompEncoder();
+
+	private final StompEncoder cachingEncoder = new StompEncoder();
+
+	private final ByteBuffer directBuffer = ByteBuffer.allocateDirect(8192);
+
+	private Map<String, Object>[] messageHeaders;
+
+	private byte[] payload;
+
+	private int index;
+
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		this.cachingEncoder.setHeaderBlockCacheLimit(256);
+		this.payload = "{\"ticker\":\"IBM\",\"price\":100.25}".getBytes(UTF_8);
+		this.messageHeaders = new Map[SUBSCRIPTION_COUNT];
+		for (int i = 0; i < SUBSCRIPTION_COUNT; i++) {
+			StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+			accessor.setDestination("/topic/price.stock.IBM");
+			accessor.setSubscriptionId("sub-" + i);
+			accessor.setMessageId("message-" + i);
+			accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+			this.messageHeaders[i] = accessor.getMessageHeaders();
+		}
+	}
+
+
+	@Benchmark
+	public byte[] encode() {
+		return this.encoder.encode(nextHeaders(), this.payload);
+	}
+
+	@Benchmark
+	public byte[] encodeWithHeaderBlockCache() {
+		return this.cachingEncoder.encode(nextHeaders(), this.payload);
+	}
+
+	@Benchmark
+	public int encodeToDirectBuffer() {
+		this.directBuffer.clear();
+		return this.cachingEncoder.encode(nextHeaders(), this.payload, this.directBuffer);
+	}
+
+	private Map<String, Object> nextHeaders() {
+		this.index = (this.index + 1) % SUBSCRIPTION_COUNT;
+		return this.messageHeaders[this.index];
+	}
+
+}
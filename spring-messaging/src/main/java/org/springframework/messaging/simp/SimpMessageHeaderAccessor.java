@@ -80,6 +80,16 @@ public class SimpMessageHeaderAccessor extends NativeMessageHeaderAccessor {
 	 */
 	public static final String IGNORE_ERROR = "simpIgnoreError";
 
+	/**
+	 * A header set by the broker on the messages of a broadcast, i.e. on all
+	 * copies of a message sent to several subscribers with the same payload.
+	 * The value is a {@link java.util.concurrent.ConcurrentMap} shared by those
+	 * copies, which allows message handlers to prepare the common payload for
+	 * sending only once, e.g. to decode it into text.
+	 * @since 4.3
+	 */
+	public static final String BROADCAST_HEADER = "simpBroadcast";
+
 
 	/**
 	 * A constructor for creating new message headers.
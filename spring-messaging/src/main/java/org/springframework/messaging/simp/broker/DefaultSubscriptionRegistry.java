@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,19 +26,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
-import org.springframework.expression.AccessException;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.PropertyAccessor;
-import org.springframework.expression.TypedValue;
-import org.springframework.expression.spel.SpelEvaluationException;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.messaging.Message;
-import org.springframework.messaging.MessageHeaders;
-import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.util.Assert;
 import org.springframework.util.LinkedMultiValueMap;
@@ -74,7 +64,7 @@ public class DefaultSubscriptionRegistry extends AbstractSubscriptionRegistry {
 
 	private volatile boolean selectorHeaderInUse = false;
 
-	private final ExpressionParser expressionParser = new SpelExpressionParser();
+	private final SubscriptionSelectorSupport selectorSupport = new SubscriptionSelectorSupport(logger);
 
 	private final DestinationCache destinationCache = new DestinationCache();
 
@@ -139,22 +129,9 @@ public class DefaultSubscriptionRegistry extends AbstractSubscriptionRegistry {
 	protected void addSubscriptionInternal(String sessionId, String subsId, String destination,
 			Message<?> message) {
 
-		Expression expression = null;
-		MessageHeaders headers = message.getHeaders();
-		String selector = SimpMessageHeaderAccessor.getFirstNativeHeader(getSelectorHeaderName(), headers);
-		if (selector != null) {
-			try {
-				expression = this.expressionParser.parseExpression(selector);
-				this.selectorHeaderInUse = true;
-				if (logger.isTraceEnabled()) {
-					logger.trace("Subscription selector: [" + selector + "]");
-				}
-			}
-			catch (Throwable ex) {
-				if (logger.isDebugEnabled()) {
-					logger.debug("Failed to parse selector: " + selector, ex);
-				}
-			}
+		Expression expression = this.selectorSupport.parseSelector(getSelectorHeaderName(), message);
+		if (expression != null) {
+			this.selectorHeaderInUse = true;
 		}
 		this.subscriptionRegistry.addSubscription(sessionId, subsId, destination, expression);
 		this.destinationCache.updateAfterNewSubscription(destination, sessionId, subsId);
@@ -209,21 +186,10 @@ public class DefaultSubscriptionRegistry extends AbstractSubscriptionRegistry {
 					continue;
 				}
 				if (context == null) {
-					context = new StandardEvaluationContext(message);
-					context.getPropertyAccessors().add(new SimpMessageHeaderPropertyAccessor());
-				}
-				try {
-					if (expression.getValue(context, boolean.class)) {
-						result.add(sessionId, subId);
-					}
-				}
-				catch (SpelEvaluationException ex) {
-					if (logger.isDebugEnabled()) {
-						logger.debug("Failed to evaluate selector: " + ex.getMessage());
-					}
+					context = this.selectorSupport.createEvaluationContext(message);
 				}
-				catch (Throwable ex) {
-					logger.debug("Failed to evaluate selector", ex);
+				if (this.selectorSupport.matches(expression, context)) {
+					result.add(sessionId, subId);
 				}
 			}
 		}
@@ -505,45 +471,4 @@ public class DefaultSubscriptionRegistry extends AbstractSubscriptionRegistry {
 		}
 	}
 
-
-	private static class SimpMessageHeaderPropertyAccessor implements PropertyAccessor {
-
-		@Override
-		public Class<?>[] getSpecificTargetClasses() {
-			return new Class<?>[] {MessageHeaders.class};
-		}
-
-		@Override
-		public boolean canRead(EvaluationContext context, Object target, String name) {
-			return true;
-		}
-
-		@Override
-		public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
-			MessageHeaders headers = (MessageHeaders) target;
-			SimpMessageHeaderAccessor accessor =
-					MessageHeaderAccessor.getAccessor(headers, SimpMessageHeaderAccessor.class);
-			Object value;
-			if ("destination".equalsIgnoreCase(name)) {
-				value = accessor.getDestination();
-			}
-			else {
-				value = accessor.getFirstNativeHeader(name);
-				if (value == null) {
-					value = headers.get(name);
-				}
-			}
-			return new TypedValue(value);
-		}
-
-		@Override
-		public boolean canWrite(EvaluationContext context, Object target, String name) {
-			return false;
-		}
-
-		@Override
-		public void write(EvaluationContext context, Object target, String name, Object value) {
-		}
-	}
-
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,21 +18,31 @@ package org.springframework.messaging.simp.broker;
 
 import java.security.Principal;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.SubscribableChannel;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.messaging.support.MessageHeaderInitializer;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentLruCache;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.PathMatcher;
 
@@ -41,6 +51,12 @@ import org.springframework.util.PathMatcher;
  * {@link SimpMessageType}, keeps track of subscriptions with the help of a
  * {@link SubscriptionRegistry} and sends messages to subscribers.
  *
+ * <p>Destinations where only the latest value matters, e.g. price updates, can
+ * be {@link #setConflatedDestinations conflated}: as long as a message to such
+ * a destination has not been handled by the client outbound channel yet, a
+ * newer message for the same subscription and destination replaces it rather
+ * than being queued in addition to it.
+ *
  * @author Rossen Stoyanchev
  * @since 4.0
  */
@@ -48,6 +64,10 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 
 	private static final byte[] EMPTY_PAYLOAD = new byte[0];
 
+	private static final String CONFLATION_KEY_HEADER = "simpConflationKey";
+
+	private static final int CONFLATED_DESTINATION_CACHE_LIMIT = 1024;
+
 	private final Map<String, SessionInfo> sessions = new ConcurrentHashMap<String, SessionInfo>();
 
 	private SubscriptionRegistry subscriptionRegistry;
@@ -62,6 +82,15 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 
 	private MessageHeaderInitializer headerInitializer;
 
+	private String[] conflatedDestinations;
+
+	private final ConcurrentLruCache<String, Boolean> conflatedDestinationCache =
+			new ConcurrentLruCache<String, Boolean>(CONFLATED_DESTINATION_CACHE_LIMIT);
+
+	private volatile boolean conflationEnabled;
+
+	private final AtomicLong conflatedMessageCount = new AtomicLong();
+
 
 	/**
 	 * Create a SimpleBrokerMessageHandler instance with the given message channels
@@ -83,8 +112,9 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 	 * Configure a custom SubscriptionRegistry to use for storing subscriptions.
 	 * <p><strong>Note</strong> that when a custom PathMatcher is configured via
 	 * {@link #setPathMatcher}, if the custom registry is not an instance of
-	 * {@link DefaultSubscriptionRegistry}, the provided PathMatcher is not used
-	 * and must be configured directly on the custom registry.
+	 * {@link DefaultSubscriptionRegistry} or {@link TrieSubscriptionRegistry},
+	 * the provided PathMatcher is not used and must be configured directly on
+	 * the custom registry.
 	 */
 	public void setSubscriptionRegistry(SubscriptionRegistry subscriptionRegistry) {
 		Assert.notNull(subscriptionRegistry, "SubscriptionRegistry must not be null");
@@ -97,6 +127,9 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 			if (this.subscriptionRegistry instanceof DefaultSubscriptionRegistry) {
 				((DefaultSubscriptionRegistry) this.subscriptionRegistry).setPathMatcher(this.pathMatcher);
 			}
+			else if (this.subscriptionRegistry instanceof TrieSubscriptionRegistry) {
+				((TrieSubscriptionRegistry) this.subscriptionRegistry).setPathMatcher(this.pathMatcher);
+			}
 		}
 	}
 
@@ -111,6 +144,7 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 	public void setPathMatcher(PathMatcher pathMatcher) {
 		this.pathMatcher = pathMatcher;
 		initPathMatcherToUse();
+		this.conflatedDestinationCache.clear();
 	}
 
 	/**
@@ -172,9 +206,47 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 		return this.headerInitializer;
 	}
 
+	/**
+	 * Configure destination patterns, e.g. "/topic/price.**", for which only
+	 * the newest message per subscription and destination is to be kept while
+	 * earlier messages are still waiting to be handled by the client outbound
+	 * channel, so that stale updates for slow clients are neither queued nor
+	 * sent. Patterns are matched with the configured {@link #setPathMatcher
+	 * PathMatcher}, or an {@link AntPathMatcher} by default.
+	 * <p>Conflation relies on the client outbound channel being an
+	 * {@link ExecutorSubscribableChannel} with a single subscriber, such as
+	 * the one set up by the STOMP over WebSocket configuration; otherwise
+	 * messages are not conflated.
+	 * <p>By default this is not set.
+	 * @since 4.3
+	 */
+	public void setConflatedDestinations(String... conflatedDestinations) {
+		this.conflatedDestinations = conflatedDestinations;
+		this.conflatedDestinationCache.clear();
+	}
+
+	/**
+	 * Return the configured destination patterns to conflate messages for.
+	 * @since 4.3
+	 */
+	public String[] getConflatedDestinations() {
+		return this.conflatedDestinations;
+	}
+
+	/**
+	 * Return the number of messages replaced by a newer message for the same
+	 * subscription and destination before they were handled.
+	 * @since 4.3
+	 * @see #setConflatedDestinations
+	 */
+	public long getConflatedMessageCount() {
+		return this.conflatedMessageCount.get();
+	}
+
 
 	@Override
 	public void startInternal() {
+		initConflation();
 		publishBrokerAvailableEvent();
 		if (getTaskScheduler() != null) {
 			long interval = initHeartbeatTaskDelay();
@@ -189,6 +261,21 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 		}
 	}
 
+	private void initConflation() {
+		if (this.conflationEnabled || this.conflatedDestinations == null || this.conflatedDestinations.length == 0) {
+			return;
+		}
+		if (getClientOutboundChannel() instanceof ExecutorSubscribableChannel) {
+			// First in line, so that other interceptors see the newest message
+			((ExecutorSubscribableChannel) getClientOutboundChannel()).addInterceptor(0, new ConflatingInterceptor());
+			this.conflationEnabled = true;
+		}
+		else if (logger.isWarnEnabled()) {
+			logger.warn("Messages to conflated destinations are not conflated: client outbound channel " +
+					getClientOutboundChannel() + " is not an ExecutorSubscribableChannel");
+		}
+	}
+
 	private long initHeartbeatTaskDelay() {
 		if (getHeartbeatValue() == null) {
 			return 0;
@@ -258,6 +345,12 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 		else if (SimpMessageType.UNSUBSCRIBE.equals(messageType)) {
 			logMessage(message);
 			this.subscriptionRegistry.unregisterSubscription(message);
+			if (this.conflationEnabled) {
+				SessionInfo info = this.sessions.get(sessionId);
+				if (info != null) {
+					info.removePendingMessages(SimpMessageHeaderAccessor.getSubscriptionId(headers));
+				}
+			}
 		}
 	}
 
@@ -301,22 +394,43 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 			logger.debug("Broadcasting to " + subscriptions.size() + " sessions.");
 		}
 		long now = System.currentTimeMillis();
+		boolean conflate = isConflatedDestination(destination);
+		Map<String, Object> broadcast = (isBroadcast(subscriptions) ? new ConcurrentHashMap<String, Object>(4) : null);
 		for (String sessionId : subscriptions.keySet()) {
+			SessionInfo sessionInfo = (conflate ? this.sessions.get(sessionId) : null);
 			for (String subscriptionId : subscriptions.get(sessionId)) {
 				SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
 				initHeaders(headerAccessor);
 				headerAccessor.setSessionId(sessionId);
 				headerAccessor.setSubscriptionId(subscriptionId);
+				if (broadcast != null) {
+					headerAccessor.setHeader(SimpMessageHeaderAccessor.BROADCAST_HEADER, broadcast);
+				}
+				String conflationKey = null;
+				if (sessionInfo != null) {
+					conflationKey = subscriptionId + "\n" + destination;
+					headerAccessor.setHeader(CONFLATION_KEY_HEADER, conflationKey);
+				}
 				headerAccessor.copyHeadersIfAbsent(message.getHeaders());
 				Object payload = message.getPayload();
 				Message<?> reply = MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders());
+				if (conflationKey != null && !sessionInfo.addPendingMessage(conflationKey, reply)) {
+					// Replaced a message still waiting to be handled, which now carries this content
+					this.conflatedMessageCount.incrementAndGet();
+					continue;
+				}
+				boolean sent = false;
 				try {
-					getClientOutboundChannel().send(reply);
+					sent = getClientOutboundChannel().send(reply);
 				}
 				catch (Throwable ex) {
 					logger.error("Failed to send " + message, ex);
 				}
 				finally {
+					if (conflationKey != null && !sent) {
+						// Not going to be handled: let the next message be sent again
+						sessionInfo.removePendingMessage(conflationKey);
+					}
 					SessionInfo info = this.sessions.get(sessionId);
 					if (info != null) {
 						info.setLastWriteTime(now);
@@ -326,6 +440,36 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 		}
 	}
 
+	private boolean isBroadcast(MultiValueMap<String, String> subscriptions) {
+		int count = 0;
+		for (List<String> subscriptionIds : subscriptions.values()) {
+			count += subscriptionIds.size();
+			if (count > 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isConflatedDestination(String destination) {
+		if (!this.conflationEnabled || destination == null) {
+			return false;
+		}
+		Boolean conflated = this.conflatedDestinationCache.get(destination);
+		if (conflated == null) {
+			PathMatcher matcher = (this.pathMatcher != null ? this.pathMatcher : new AntPathMatcher());
+			conflated = Boolean.FALSE;
+			for (String pattern : this.conflatedDestinations) {
+				if (matcher.match(pattern, destination)) {
+					conflated = Boolean.TRUE;
+					break;
+				}
+			}
+			this.conflatedDestinationCache.put(destination, conflated);
+		}
+		return conflated;
+	}
+
 	@Override
 	public String toString() {
 		return "SimpleBrokerMessageHandler [" + this.subscriptionRegistry + "]";
@@ -349,6 +493,9 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 
 		private volatile long lastWriteTime;
 
+		/* Conflated messages sent but not yet handled, by subscription id and destination */
+		private final Map<String, Message<?>> pendingMessages = new HashMap<String, Message<?>>(4);
+
 		public SessionInfo(String sessiondId, Principal user, long[] clientHeartbeat, long[] serverHeartbeat) {
 			this.sessiondId = sessiondId;
 			this.user = user;
@@ -396,6 +543,65 @@ public class SimpleBrokerMessageHandler extends AbstractBrokerMessageHandler {
 		public void setLastWriteTime(long lastWriteTime) {
 			this.lastWriteTime = lastWriteTime;
 		}
+
+		/**
+		 * Register a message about to be sent, or replace the pending message
+		 * with the same key.
+		 * @return {@code true} if the message needs to be sent, {@code false}
+		 * if it replaced a pending message that has already been sent
+		 */
+		public boolean addPendingMessage(String key, Message<?> message) {
+			synchronized (this.pendingMessages) {
+				return (this.pendingMessages.put(key, message) == null);
+			}
+		}
+
+		/**
+		 * Remove and return the newest message for the given key.
+		 */
+		public Message<?> removePendingMessage(String key) {
+			synchronized (this.pendingMessages) {
+				return this.pendingMessages.remove(key);
+			}
+		}
+
+		/**
+		 * Discard pending messages for the given subscription.
+		 */
+		public void removePendingMessages(String subscriptionId) {
+			String prefix = subscriptionId + "\n";
+			synchronized (this.pendingMessages) {
+				for (Iterator<String> it = this.pendingMessages.keySet().iterator(); it.hasNext();) {
+					if (it.next().startsWith(prefix)) {
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Replaces a conflated message with the newest message for the same
+	 * subscription and destination when it is about to be handled.
+	 */
+	private class ConflatingInterceptor extends ChannelInterceptorAdapter implements ExecutorChannelInterceptor {
+
+		@Override
+		public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+			String key = (String) message.getHeaders().get(CONFLATION_KEY_HEADER);
+			if (key == null) {
+				return message;
+			}
+			SessionInfo info = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+			// Null if the session disconnected or unsubscribed in the meantime
+			return (info != null ? info.removePendingMessage(key) : null);
+		}
+
+		@Override
+		public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+				Exception ex) {
+		}
 	}
 
 
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.messaging.simp.broker;
+
+import org.apache.commons.logging.Log;
+
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+/**
+ * Parses and evaluates the Spring EL selector expressions of subscriptions
+ * on behalf of {@link DefaultSubscriptionRegistry} and
+ * {@link TrieSubscriptionRegistry}.
+ *
+ * @author agent
+ * @since 4.3
+ */
+class SubscriptionSelectorSupport {
+
+	private final ExpressionParser expressionParser = new SpelExpressionParser();
+
+	private final Log logger;
+
+
+	public SubscriptionSelectorSupport(Log logger) {
+		this.logger = logger;
+	}
+
+
+	/**
+	 * Parse the selector header of the given subscription message, if any.
+	 * @return the parsed expression, or {@code null} if the message has no
+	 * selector header or if the selector could not be parsed
+	 */
+	public Expression parseSelector(String selectorHeaderName, Message<?> message) {
+		MessageHeaders headers = message.getHeaders();
+		String selector = SimpMessageHeaderAccessor.getFirstNativeHeader(selectorHeaderName, headers);
+		if (selector == null) {
+			return null;
+		}
+		try {
+			Expression expression = this.expressionParser.parseExpression(selector);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Subscription selector: [" + selector + "]");
+			}
+			return expression;
+		}
+		catch (Throwable ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to parse selector: " + selector, ex);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Create the context for evaluating selectors against the given message.
+	 * The same context may be used for all subscriptions matching the message.
+	 */
+	public EvaluationContext createEvaluationContext(Message<?> message) {
+		StandardEvaluationContext context = new StandardEvaluationContext(message);
+		context.getPropertyAccessors().add(new SimpMessageHeaderPropertyAccessor());
+		return context;
+	}
+
+	/**
+	 * Evaluate the given selector expression.
+	 * @return whether the message matches, or {@code false} if evaluation failed
+	 */
+	public boolean matches(Expression expression, EvaluationContext context) {
+		try {
+			return expression.getValue(context, boolean.class);
+		}
+		catch (SpelEvaluationException ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Failed to evaluate selector: " + ex.getMessage());
+			}
+		}
+		catch (Throwable ex) {
+			logger.debug("Failed to evaluate selector", ex);
+		}
+		return false;
+	}
+
+
+	private static class SimpMessageHeaderPropertyAccessor implements PropertyAccessor {
+
+		@Override
+		public Class<?>[] getSpecificTargetClasses() {
+			return new Class<?>[] {MessageHeaders.class};
+		}
+
+		@Override
+		public boolean canRead(EvaluationContext context, Object target, String name) {
+			return true;
+		}
+
+		@Override
+		public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
+			MessageHeaders headers = (MessageHeaders) target;
+			SimpMessageHeaderAccessor accessor =
+					MessageHeaderAccessor.getAccessor(headers, SimpMessageHeaderAccessor.class);
+			Object value;
+			if ("destination".equalsIgnoreCase(name)) {
+				value = accessor.getDestination();
+			}
+			else {
+				value = accessor.getFirstNativeHeader(name);
+				if (value == null) {
+					value = headers.get(name);
+				}
+			}
+			return new TypedValue(value);
+		}
+
+		@Override
+		public boolean canWrite(EvaluationContext context, Object target, String name) {
+			return false;
+		}
+
+		@Override
+		public void write(EvaluationContext context, Object target, String name, Object value) {
+		}
+	}
+
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.broker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.messaging.Message;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
+
+/**
+ * Implementation of {@link SubscriptionRegistry} that indexes subscriptions by
+ * the segments of their destination patterns in a trie, as an alternative to
+ * {@link DefaultSubscriptionRegistry} for brokers with a large number of
+ * sessions and frequent subscription changes.
+ *
+ * <p>Looking up the subscriptions for a destination walks the trie along the
+ * segments of the destination, following literal segments as well as single
+ * segment wildcards (e.g. "*" or "{id}") and "**" wildcards. Candidate patterns
+ * found that way are then checked with the configured {@link PathMatcher}, so
+ * the cost of a lookup depends on the number of matching patterns rather than
+ * on the total number of subscriptions.
+ *
+ * <p>Subscriptions for the same destination pattern are kept together in a leaf
+ * of the trie along with a read-only snapshot of the session and subscription
+ * ids, which is handed out to lookups and discarded when a subscription is
+ * added to or removed from that leaf. Subscribing or unsubscribing therefore
+ * only locks and invalidates the leaf for the affected destination pattern.
+ *
+ * <p>Destinations are split into segments with the path separator of the
+ * configured {@link AntPathMatcher}; other {@code PathMatcher} implementations
+ * are not supported. Literal segments are compared in a case-sensitive fashion,
+ * unless the matcher is {@link AntPathMatcher#setCaseSensitive case-insensitive}.
+ *
+ * <p>Like {@link DefaultSubscriptionRegistry}, this class supports a
+ * {@link #setSelectorHeaderName selector} header on subscription messages.
+ *
+ * @author agent
+ * @since 4.3
+ * @see SimpleBrokerMessageHandler#setSubscriptionRegistry
+ */
+public class TrieSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+	private static final MultiValueMap<String, String> EMPTY_MAP =
+			CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<String, String>(0));
+
+
+	private AntPathMatcher pathMatcher = new AntPathMatcher();
+
+	private String pathSeparator = AntPathMatcher.DEFAULT_PATH_SEPARATOR;
+
+	private boolean caseSensitive = true;
+
+	private String selectorHeaderName = "selector";
+
+	private final SubscriptionSelectorSupport selectorSupport = new SubscriptionSelectorSupport(logger);
+
+	private final Node root = new Node(null, null);
+
+	// sessionId -> (subscriptionId -> Subscription)
+	private final ConcurrentMap<String, ConcurrentMap<String, Subscription>> sessions =
+			new ConcurrentHashMap<String, ConcurrentMap<String, Subscription>>();
+
+
+	/**
+	 * Specify the {@link PathMatcher} to use for matching candidate destination
+	 * patterns against destinations. Destinations are split into segments with
+	 * the path separator of the given matcher, e.g. "." for an
+	 * {@code AntPathMatcher} created with {@code new AntPathMatcher(".")}.
+	 * <p>The separator and the case sensitivity of the matcher are applied as
+	 * configured at the time of this call, so the matcher is not to be modified
+	 * afterwards.
+	 * <p>By default this is an {@link AntPathMatcher} with "/" as separator.
+	 * @throws IllegalArgumentException if the given matcher is not an
+	 * {@link AntPathMatcher}, since the trie relies on its segment semantics
+	 */
+	public void setPathMatcher(PathMatcher pathMatcher) {
+		Assert.isInstanceOf(AntPathMatcher.class, pathMatcher,
+				"TrieSubscriptionRegistry requires an AntPathMatcher");
+		if (!this.sessions.isEmpty()) {
+			throw new IllegalStateException("Cannot change the PathMatcher once subscriptions are registered");
+		}
+		this.pathMatcher = (AntPathMatcher) pathMatcher;
+		this.pathSeparator = this.pathMatcher.getPathSeparator();
+		this.caseSensitive = this.pathMatcher.isCaseSensitive();
+	}
+
+	/**
+	 * Return the configured {@link PathMatcher}.
+	 */
+	public PathMatcher getPathMatcher() {
+		return this.pathMatcher;
+	}
+
+	/**
+	 * Configure the name of a selector header that a subscription message can
+	 * have in order to filter messages based on their headers.
+	 * <p>By default this is set to "selector".
+	 * @see DefaultSubscriptionRegistry#setSelectorHeaderName
+	 */
+	public void setSelectorHeaderName(String selectorHeaderName) {
+		Assert.notNull(selectorHeaderName);
+		this.selectorHeaderName = selectorHeaderName;
+	}
+
+	/**
+	 * Return the name for the selector header.
+	 */
+	public String getSelectorHeaderName() {
+		return this.selectorHeaderName;
+	}
+
+
+	@Override
+	protected void addSubscriptionInternal(String sessionId, String subsId, String destination,
+			Message<?> message) {
+
+		Expression expression = this.selectorSupport.parseSelector(getSelectorHeaderName(), message);
+		ConcurrentMap<String, Subscription> subscriptions = this.sessions.get(sessionId);
+		if (subscriptions == null) {
+			subscriptions = new ConcurrentHashMap<String, Subscription>(4);
+			ConcurrentMap<String, Subscription> existing = this.sessions.putIfAbsent(sessionId, subscriptions);
+			if (existing != null) {
+				subscriptions = existing;
+			}
+		}
+		Subscription subscription = new Subscription(sessionId, subsId, destination, expression);
+		Subscription previous = subscriptions.put(subsId, subscription);
+		if (previous != null) {
+			removeFromTrie(previous);
+		}
+		addToTrie(subscription);
+	}
+
+	@Override
+	protected void removeSubscriptionInternal(String sessionId, String subsId, Message<?> message) {
+		Map<String, Subscription> subscriptions = this.sessions.get(sessionId);
+		if (subscriptions != null) {
+			Subscription subscription = subscriptions.remove(subsId);
+			if (subscription != null) {
+				removeFromTrie(subscription);
+			}
+		}
+	}
+
+	@Override
+	public void unregisterAllSubscriptions(String sessionId) {
+		Map<String, Subscription> subscriptions = this.sessions.remove(sessionId);
+		if (subscriptions != null) {
+			for (Subscription subscription : subscriptions.values()) {
+				removeFromTrie(subscription);
+			}
+		}
+	}
+
+	@Override
+	protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+		List<Leaf> leaves = new ArrayList<Leaf>(4);
+		collectLeaves(this.root, tokenize(destination), 0, destination, leaves);
+		if (leaves.isEmpty()) {
+			return EMPTY_MAP;
+		}
+		if (leaves.size() == 1) {
+			Snapshot snapshot = leaves.get(0).getSnapshot();
+			if (!snapshot.hasSelectors) {
+				return snapshot.subscriptionIds;
+			}
+		}
+		EvaluationContext context = null;
+		MultiValueMap<String, String> result = new LinkedMultiValueMap<String, String>();
+		for (Leaf leaf : leaves) {
+			Snapshot snapshot = leaf.getSnapshot();
+			if (!snapshot.hasSelectors) {
+				for (Map.Entry<String, List<String>> entry : snapshot.subscriptionIds.entrySet()) {
+					for (String subsId : entry.getValue()) {
+						result.add(entry.getKey(), subsId);
+					}
+				}
+				continue;
+			}
+			for (Subscription subscription : snapshot.subscriptions) {
+				Expression expression = subscription.selectorExpression;
+				if (expression == null) {
+					result.add(subscription.sessionId, subscription.id);
+					continue;
+				}
+				if (context == null) {
+					context = this.selectorSupport.createEvaluationContext(message);
+				}
+				if (this.selectorSupport.matches(expression, context)) {
+					result.add(subscription.sessionId, subscription.id);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void collectLeaves(Node node, String[] segments, int index, String destination, List<Leaf> leaves) {
+		Node doubleWildcardChild = node.doubleWildcardChild;
+		if (doubleWildcardChild != null) {
+			// "**" consumes zero or more of the remaining segments
+			for (int i = index; i <= segments.length; i++) {
+				collectLeaves(doubleWildcardChild, segments, i, destination, leaves);
+			}
+		}
+		Node wildcardChild = node.wildcardChild;
+		if (index == segments.length) {
+			addMatchingLeaves(node, destination, leaves);
+			if (wildcardChild != null) {
+				// "/foo/*" also matches "/foo/"
+				addMatchingLeaves(wildcardChild, destination, leaves);
+			}
+			return;
+		}
+		if (wildcardChild != null) {
+			collectLeaves(wildcardChild, segments, index + 1, destination, leaves);
+		}
+		Node literalChild = node.literalChildren.get(segments[index]);
+		if (literalChild != null) {
+			collectLeaves(literalChild, segments, index + 1, destination, leaves);
+		}
+	}
+
+	private void addMatchingLeaves(Node node, String destination, List<Leaf> leaves) {
+		for (Leaf leaf : node.leaves.values()) {
+			if (leaf.pattern.equals(destination) || getPathMatcher().match(leaf.pattern, destination)) {
+				if (!leaves.contains(leaf)) {
+					leaves.add(leaf);
+				}
+			}
+		}
+	}
+
+	private void addToTrie(Subscription subscription) {
+		String[] segments = tokenize(subscription.destination);
+		while (true) {
+			Node node = this.root;
+			for (int i = 0; i < segments.length && node != null; i++) {
+				node = node.getOrCreateChild(segments[i]);
+			}
+			if (node != null && node.addSubscription(subscription)) {
+				if (subscription.cancelled && node.removeSubscription(subscription)) {
+					// Unsubscribed concurrently: remove nodes created for it
+					prune(node);
+				}
+				return;
+			}
+			// A node along the way was concurrently pruned: try again
+		}
+	}
+
+	private void removeFromTrie(Subscription subscription) {
+		subscription.cancelled = true;
+		Node node = subscription.node;
+		if (node != null && node.removeSubscription(subscription)) {
+			prune(node);
+		}
+	}
+
+	/**
+	 * Remove empty nodes, starting from the given node and moving up towards
+	 * the root. Locks are always acquired parent first, then child.
+	 */
+	private void prune(Node node) {
+		while (node.parent != null) {
+			Node parent = node.parent;
+			synchronized (parent) {
+				synchronized (node) {
+					if (node.removed || !node.isEmpty()) {
+						return;
+					}
+					node.removed = true;
+					parent.removeChild(node.segment);
+				}
+			}
+			node = parent;
+		}
+	}
+
+	private String[] tokenize(String destination) {
+		if (!this.caseSensitive) {
+			// Trie keys only: candidate patterns are still checked by the PathMatcher
+			destination = destination.toLowerCase(Locale.ENGLISH);
+		}
+		return StringUtils.tokenizeToStringArray(destination, this.pathSeparator);
+	}
+
+	@Override
+	public String toString() {
+		return "TrieSubscriptionRegistry[" + this.sessions.size() + " sessions]";
+	}
+
+
+	private static boolean isDoubleWildcardSegment(String segment) {
+		return segment.contains("**");
+	}
+
+	private static boolean isWildcardSegment(String segment) {
+		return (segment.indexOf('*') != -1 || segment.indexOf('?') != -1 || segment.indexOf('{') != -1);
+	}
+
+
+	/**
+	 * A node in the trie of destination segments. Structural changes are made
+	 * while holding the lock of the node; lookups read without locking.
+	 */
+	private static class Node {
+
+		private final Node parent;
+
+		private final String segment;
+
+		private final ConcurrentMap<String, Node> literalChildren = new ConcurrentHashMap<String, Node>(4);
+
+		private volatile Node wildcardChild;
+
+		private volatile Node doubleWildcardChild;
+
+		// destination pattern -> Leaf
+		private final ConcurrentMap<String, Leaf> leaves = new ConcurrentHashMap<String, Leaf>(2);
+
+		private boolean removed;
+
+		public Node(Node parent, String segment) {
+			this.parent = parent;
+			this.segment = segment;
+		}
+
+		/**
+		 * Return the child for the given segment, creating it if necessary,
+		 * or {@code null} if this node has been removed from the trie.
+		 */
+		public synchronized Node getOrCreateChild(String segment) {
+			if (this.removed) {
+				return null;
+			}
+			if (isDoubleWildcardSegment(segment)) {
+				if (this.doubleWildcardChild == null) {
+					this.doubleWildcardChild = new Node(this, segment);
+				}
+				return this.doubleWildcardChild;
+			}
+			else if (isWildcardSegment(segment)) {
+				if (this.wildcardChild == null) {
+					this.wildcardChild = new Node(this, segment);
+				}
+				return this.wildcardChild;
+			}
+			else {
+				Node child = this.literalChildren.get(segment);
+				if (child == null) {
+					child = new Node(this, segment);
+					this.literalChildren.put(segment, child);
+				}
+				return child;
+			}
+		}
+
+		public synchronized void removeChild(String segment) {
+			if (isDoubleWildcardSegment(segment)) {
+				this.doubleWildcardChild = null;
+			}
+			else if (isWildcardSegment(segment)) {
+				this.wildcardChild = null;
+			}
+			else {
+				this.literalChildren.remove(segment);
+			}
+		}
+
+		/**
+		 * Add the subscription to the leaf for its destination pattern.
+		 * @return {@code false} if this node has been removed from the trie
+		 */
+		public synchronized boolean addSubscription(Subscription subscription) {
+			if (this.removed) {
+				return false;
+			}
+			subscription.node = this;
+			if (subscription.cancelled) {
+				// Concurrently unsubscribed before it could be added
+				return true;
+			}
+			Leaf leaf = this.leaves.get(subscription.destination);
+			if (leaf == null) {
+				leaf = new Leaf(this, subscription.destination);
+				this.leaves.put(subscription.destination, leaf);
+			}
+			leaf.add(subscription);
+			return true;
+		}
+
+		/**
+		 * Remove the subscription from the leaf for its destination pattern.
+		 * @return whether this node has become empty as a result
+		 */
+		public synchronized boolean removeSubscription(Subscription subscription) {
+			Leaf leaf = this.leaves.get(subscription.destination);
+			if (leaf != null && leaf.remove(subscription) && leaf.isEmpty()) {
+				this.leaves.remove(subscription.destination);
+			}
+			return isEmpty();
+		}
+
+		public synchronized boolean isEmpty() {
+			return (this.leaves.isEmpty() && this.literalChildren.isEmpty() &&
+					this.wildcardChild == null && this.doubleWildcardChild == null);
+		}
+	}
+
+
+	/**
+	 * The subscriptions for a destination pattern. Modified under the lock of
+	 * the owning node, with a snapshot created lazily for lookups.
+	 */
+	private static class Leaf {
+
+		private final Node node;
+
+		private final String pattern;
+
+		// sessionId -> (subscriptionId -> Subscription)
+		private final Map<String, Map<String, Subscription>> subscriptions =
+				new LinkedHashMap<String, Map<String, Subscription>>(4);
+
+		private volatile Snapshot snapshot;
+
+		public Leaf(Node node, String pattern) {
+			this.node = node;
+			this.pattern = pattern;
+		}
+
+		public void add(Subscription subscription) {
+			Map<String, Subscription> sessionSubscriptions = this.subscriptions.get(subscription.sessionId);
+			if (sessionSubscriptions == null) {
+				sessionSubscriptions = new LinkedHashMap<String, Subscription>(2);
+				this.subscriptions.put(subscription.sessionId, sessionSubscriptions);
+			}
+			sessionSubscriptions.put(subscription.id, subscription);
+			this.snapshot = null;
+		}
+
+		public boolean remove(Subscription subscription) {
+			Map<String, Subscription> sessionSubscriptions = this.subscriptions.get(subscription.sessionId);
+			if (sessionSubscriptions == null || sessionSubscriptions.get(subscription.id) != subscription) {
+				return false;
+			}
+			sessionSubscriptions.remove(subscription.id);
+			if (sessionSubscriptions.isEmpty()) {
+				this.subscriptions.remove(subscription.sessionId);
+			}
+			this.snapshot = null;
+			return true;
+		}
+
+		public boolean isEmpty() {
+			return this.subscriptions.isEmpty();
+		}
+
+		public Snapshot getSnapshot() {
+			Snapshot snapshot = this.snapshot;
+			if (snapshot == null) {
+				synchronized (this.node) {
+					snapshot = this.snapshot;
+					if (snapshot == null) {
+						snapshot = new Snapshot(this.subscriptions);
+						this.snapshot = snapshot;
+					}
+				}
+			}
+			return snapshot;
+		}
+
+		@Override
+		public String toString() {
+			return "leaf[pattern=" + this.pattern + ", sessions=" + this.subscriptions.keySet() + "]";
+		}
+	}
+
+
+	/**
+	 * Read-only view of the subscriptions of a {@link Leaf} at a point in time.
+	 */
+	private static class Snapshot {
+
+		private final MultiValueMap<String, String> subscriptionIds;
+
+		private final List<Subscription> subscriptions;
+
+		private final boolean hasSelectors;
+
+		public Snapshot(Map<String, Map<String, Subscription>> source) {
+			LinkedMultiValueMap<String, String> ids = new LinkedMultiValueMap<String, String>(source.size());
+			List<Subscription> subscriptions = new ArrayList<Subscription>(source.size());
+			boolean hasSelectors = false;
+			for (Map.Entry<String, Map<String, Subscription>> entry : source.entrySet()) {
+				for (Subscription subscription : entry.getValue().values()) {
+					ids.add(entry.getKey(), subscription.id);
+					subscriptions.add(subscription);
+					hasSelectors |= (subscription.selectorExpression != null);
+				}
+			}
+			this.subscriptionIds = CollectionUtils.unmodifiableMultiValueMap(ids);
+			this.subscriptions = subscriptions;
+			this.hasSelectors = hasSelectors;
+		}
+	}
+
+
+	private static class Subscription {
+
+		private final String sessionId;
+
+		private final String id;
+
+		private final String destination;
+
+		private final Expression selectorExpression;
+
+		/** The node holding this subscription, set once added to the trie */
+		private volatile Node node;
+
+		private volatile boolean cancelled;
+
+		public Subscription(String sessionId, String id, String destination, Expression selectorExpression) {
+			this.sessionId = sessionId;
+			this.id = id;
+			this.destination = destination;
+			this.selectorExpression = selectorExpression;
+		}
+
+		@Override
+		public String toString() {
+			return "subscription(id=" + this.id + ", destination=" + this.destination + ")";
+		}
+	}
+
+}
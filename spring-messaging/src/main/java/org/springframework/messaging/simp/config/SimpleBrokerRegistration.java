@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.messaging.simp.config;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.SubscribableChannel;
 import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
 import org.springframework.scheduling.TaskScheduler;
 
 /**
@@ -33,6 +34,10 @@ public class SimpleBrokerRegistration extends AbstractBrokerRegistration {
 
 	private long[] heartbeat;
 
+	private String[] conflatedDestinations;
+
+	private SubscriptionRegistry subscriptionRegistry;
+
 
 	public SimpleBrokerRegistration(SubscribableChannel inChannel, MessageChannel outChannel, String[] prefixes) {
 		super(inChannel, outChannel, prefixes);
@@ -65,6 +70,37 @@ public class SimpleBrokerRegistration extends AbstractBrokerRegistration {
 		return this;
 	}
 
+	/**
+	 * Configure destination patterns, e.g. "/topic/price.**", for which only
+	 * the newest message per subscription and destination is kept while
+	 * earlier messages are still waiting to be sent to the client, so that
+	 * stale updates for slow clients are neither queued nor sent.
+	 * <p>By default this is not set.
+	 * @since 4.3
+	 * @see SimpleBrokerMessageHandler#setConflatedDestinations
+	 */
+	public SimpleBrokerRegistration setConflatedDestinations(String... destinationPatterns) {
+		this.conflatedDestinations = destinationPatterns;
+		return this;
+	}
+
+	/**
+	 * Configure the {@link SubscriptionRegistry} for the broker to use, e.g. a
+	 * {@link org.springframework.messaging.simp.broker.TrieSubscriptionRegistry}
+	 * for brokers with many sessions and frequent subscription changes.
+	 * The {@link MessageBrokerRegistry#setPathMatcher PathMatcher} is passed
+	 * on to the given registry.
+	 * <p>By default a
+	 * {@link org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry}
+	 * is used.
+	 * @since 4.3
+	 * @see SimpleBrokerMessageHandler#setSubscriptionRegistry
+	 */
+	public SimpleBrokerRegistration setSubscriptionRegistry(SubscriptionRegistry subscriptionRegistry) {
+		this.subscriptionRegistry = subscriptionRegistry;
+		return this;
+	}
+
 
 	@Override
 	protected SimpleBrokerMessageHandler getMessageHandler(SubscribableChannel brokerChannel) {
@@ -76,6 +112,12 @@ public class SimpleBrokerRegistration extends AbstractBrokerRegistration {
 		if (this.heartbeat != null) {
 			handler.setHeartbeatValue(this.heartbeat);
 		}
+		if (this.conflatedDestinations != null) {
+			handler.setConflatedDestinations(this.conflatedDestinations);
+		}
+		if (this.subscriptionRegistry != null) {
+			handler.setSubscriptionRegistry(this.subscriptionRegistry);
+		}
 		return handler;
 	}
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2013 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -47,6 +47,12 @@ public class StompBrokerRelayRegistration extends AbstractBrokerRegistration {
 
 	private String virtualHost;
 
+	private Integer maxPendingWrites;
+
+	private Long pendingWriteTimeout;
+
+	private Integer multiplexedConnectionCount;
+
 	private boolean autoStartup = true;
 
 	private String userDestinationBroadcast;
@@ -160,6 +166,43 @@ public class StompBrokerRelayRegistration extends AbstractBrokerRegistration {
 		return this;
 	}
 
+	/**
+	 * Set the maximum number of messages per TCP connection that have been
+	 * forwarded to the STOMP broker but not yet written.
+	 * <p>By default there is no limit.
+	 * @since 4.3
+	 * @see StompBrokerRelayMessageHandler#setMaxPendingWrites(int)
+	 */
+	public StompBrokerRelayRegistration setMaxPendingWrites(int maxPendingWrites) {
+		this.maxPendingWrites = maxPendingWrites;
+		return this;
+	}
+
+	/**
+	 * Set the time, in milliseconds, to wait for pending writes to complete once
+	 * the maximum number of pending writes of a TCP connection is reached,
+	 * before the client session is rejected.
+	 * <p>By default this is set to 0, i.e. no waiting.
+	 * @since 4.3
+	 * @see StompBrokerRelayMessageHandler#setPendingWriteTimeout(long)
+	 */
+	public StompBrokerRelayRegistration setPendingWriteTimeout(long pendingWriteTimeout) {
+		this.pendingWriteTimeout = pendingWriteTimeout;
+		return this;
+	}
+
+	/**
+	 * Set the number of shared TCP connections to the STOMP broker to multiplex
+	 * client sessions over, instead of opening one TCP connection per client session.
+	 * <p>By default this is not set, i.e. each client session has its own connection.
+	 * @since 4.3
+	 * @see StompBrokerRelayMessageHandler#setMultiplexedConnectionCount(int)
+	 */
+	public StompBrokerRelayRegistration setMultiplexedConnectionCount(int multiplexedConnectionCount) {
+		this.multiplexedConnectionCount = multiplexedConnectionCount;
+		return this;
+	}
+
 	/**
 	 * Configure whether the {@link StompBrokerRelayMessageHandler} should start
 	 * automatically when the Spring ApplicationContext is refreshed.
@@ -231,6 +274,15 @@ public class StompBrokerRelayRegistration extends AbstractBrokerRegistration {
 		if (this.virtualHost != null) {
 			handler.setVirtualHost(this.virtualHost);
 		}
+		if (this.maxPendingWrites != null) {
+			handler.setMaxPendingWrites(this.maxPendingWrites);
+		}
+		if (this.pendingWriteTimeout != null) {
+			handler.setPendingWriteTimeout(this.pendingWriteTimeout);
+		}
+		if (this.multiplexedConnectionCount != null) {
+			handler.setMultiplexedConnectionCount(this.multiplexedConnectionCount);
+		}
 
 		handler.setAutoStartup(this.autoStartup);
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,8 +20,6 @@ package org.springframework.messaging.simp.stomp;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.springframework.messaging.Message;
 import org.springframework.util.Assert;
@@ -43,16 +41,29 @@ import org.springframework.util.MultiValueMap;
  * be used any more as its internal state is not guaranteed to be consistent.
  * It is expected that the underlying session is closed at that point.
  *
+ * <p>Incomplete content is kept in a single buffer owned by this decoder that is
+ * compacted and reused across calls, so only the bytes of the partial frame are
+ * copied, and only once, rather than re-assembling all received chunks on every
+ * attempt to decode.
+ *
  * @author Rossen Stoyanchev
  * @since 4.0.3
  */
 public class BufferingStompDecoder {
 
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+
+
 	private final StompDecoder stompDecoder;
 
 	private final int bufferSizeLimit;
 
-	private final Queue<ByteBuffer> chunks = new LinkedBlockingQueue<ByteBuffer>();
+	/** Buffered content of an incomplete frame, in write mode */
+	private ByteBuffer partialBuffer;
+
+	private volatile int bufferSize;
 
 	private volatile Integer expectedContentLength;
 
@@ -84,11 +95,7 @@ public class BufferingStompDecoder {
 	 * Calculate the current buffer size.
 	 */
 	public int getBufferSize() {
-		int size = 0;
-		for (ByteBuffer buffer : this.chunks) {
-			size = size + buffer.remaining();
-		}
-		return size;
+		return this.bufferSize;
 	}
 
 	/**
@@ -119,28 +126,43 @@ public class BufferingStompDecoder {
 	 */
 	public List<Message<byte[]>> decode(ByteBuffer newBuffer) {
 
-		this.chunks.add(newBuffer);
+		checkBufferLimits(this.bufferSize + newBuffer.remaining());
 
-		checkBufferLimits();
-
-		if (getExpectedContentLength() != null && getBufferSize() < this.expectedContentLength) {
-			return Collections.<Message<byte[]>>emptyList();
+		ByteBuffer bufferToDecode;
+		if (this.bufferSize == 0) {
+			bufferToDecode = newBuffer;
 		}
-
-		ByteBuffer bufferToDecode = assembleChunksAndReset();
+		else {
+			appendToPartialBuffer(newBuffer);
+			if (getExpectedContentLength() != null && this.bufferSize < this.expectedContentLength) {
+				return Collections.<Message<byte[]>>emptyList();
+			}
+			this.partialBuffer.flip();
+			bufferToDecode = this.partialBuffer;
+		}
+		this.expectedContentLength = null;
 
 		MultiValueMap<String, String> headers = new LinkedMultiValueMap<String, String>();
 		List<Message<byte[]>> messages = this.stompDecoder.decode(bufferToDecode, headers);
 
 		if (bufferToDecode.hasRemaining()) {
-			this.chunks.add(bufferToDecode);
+			if (bufferToDecode == this.partialBuffer) {
+				this.partialBuffer.compact();
+				this.bufferSize = this.partialBuffer.position();
+			}
+			else {
+				appendToPartialBuffer(bufferToDecode);
+			}
 			this.expectedContentLength = StompHeaderAccessor.getContentLength(headers);
 		}
+		else if (bufferToDecode == this.partialBuffer) {
+			resetPartialBuffer();
+		}
 
 		return messages;
 	}
 
-	private void checkBufferLimits() {
+	private void checkBufferLimits(int bufferSize) {
 		if (getExpectedContentLength() != null) {
 			if (getExpectedContentLength() > getBufferSizeLimit()) {
 				throw new StompConversionException(
@@ -148,28 +170,38 @@ public class BufferingStompDecoder {
 								"  exceeds the configured message buffer size limit " + getBufferSizeLimit());
 			}
 		}
-		if (getBufferSize() > getBufferSizeLimit()) {
+		if (bufferSize > getBufferSizeLimit()) {
 			throw new StompConversionException("The configured stomp frame buffer size limit of " +
 					getBufferSizeLimit() + " bytes has been exceeded");
 
 		}
 	}
 
-	private ByteBuffer assembleChunksAndReset() {
-		ByteBuffer result;
-		if (this.chunks.size() == 1) {
-			result = this.chunks.remove();
+	private void appendToPartialBuffer(ByteBuffer content) {
+		int required = this.bufferSize + content.remaining();
+		if (this.partialBuffer == null || this.partialBuffer.capacity() < required) {
+			int capacity = (this.partialBuffer != null ? this.partialBuffer.capacity() * 2 : INITIAL_CAPACITY);
+			capacity = Math.max(required, Math.min(capacity, getBufferSizeLimit()));
+			ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+			if (this.partialBuffer != null) {
+				this.partialBuffer.flip();
+				newBuffer.put(this.partialBuffer);
+			}
+			this.partialBuffer = newBuffer;
+		}
+		this.partialBuffer.put(content);
+		this.bufferSize = this.partialBuffer.position();
+	}
+
+	private void resetPartialBuffer() {
+		// Keep a moderately sized buffer for reuse but release larger ones
+		if (this.partialBuffer.capacity() > MAX_RETAINED_CAPACITY) {
+			this.partialBuffer = null;
 		}
 		else {
-			result = ByteBuffer.allocate(getBufferSize());
-			for (ByteBuffer partial : this.chunks) {
-				result.put(partial);
-			}
-			result.flip();
+			this.partialBuffer.clear();
 		}
-		this.chunks.clear();
-		this.expectedContentLength = null;
-		return result;
+		this.bufferSize = 0;
 	}
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,13 +16,19 @@
 
 package org.springframework.messaging.simp.stomp;
 
+import java.security.Principal;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
@@ -42,6 +48,7 @@ import org.springframework.messaging.tcp.TcpConnectionHandler;
 import org.springframework.messaging.tcp.TcpOperations;
 import org.springframework.messaging.tcp.reactor.Reactor2TcpClient;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
 import org.springframework.util.concurrent.ListenableFutureTask;
@@ -71,6 +78,24 @@ import org.springframework.util.concurrent.ListenableFutureTask;
  * <li>{@link #setSystemHeartbeatReceiveInterval(long)}</li>
  * </ul>
  *
+ * <p>The number of messages forwarded on a TCP connection but not yet written can be
+ * limited through {@link #setMaxPendingWrites(int)}. Once that limit is reached,
+ * senders wait up to {@link #setPendingWriteTimeout(long)} for earlier writes to
+ * complete, which slows down clients sending faster than the broker can accept.
+ * If writes still do not complete in time, the client session is rejected with a
+ * STOMP ERROR frame rather than buffering messages without limit.
+ *
+ * <p>Alternatively, through {@link #setMultiplexedConnectionCount(int)}, client
+ * sessions can share a fixed pool of TCP connections to the broker instead of
+ * opening one connection each. Client subscription ids, receipts and transaction
+ * ids are then mapped to ids that are unique per shared connection, and messages,
+ * receipts and errors received from the broker are routed back to the client
+ * session they belong to. The STOMP CONNECTED frame is sent to the client by the
+ * relay itself with the STOMP version negotiated by the shared connection.
+ * Since the broker closes a connection after reporting an error, frames are
+ * checked by the relay before they are forwarded, see
+ * {@link #setMultiplexedConnectionCount(int)}.
+ *
  * @author Rossen Stoyanchev
  * @author Andy Wilkinson
  * @since 4.0
@@ -79,6 +104,10 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 
 	public static final String SYSTEM_SESSION_ID = "_system_";
 
+	private static final String MULTIPLEXED_SESSION_ID_PREFIX = "_multiplexed_";
+
+	private static final String TRANSACTION_HEADER = "transaction";
+
 	private static final byte[] EMPTY_PAYLOAD = new byte[0];
 
 	private static final ListenableFutureTask<Void> EMPTY_TASK = new ListenableFutureTask<Void>(new VoidCallable());
@@ -114,6 +143,12 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 
 	private String virtualHost;
 
+	private int maxPendingWrites = -1;
+
+	private long pendingWriteTimeout = 0;
+
+	private int multiplexedConnectionCount = 0;
+
 	private final Map<String, MessageHandler> systemSubscriptions = new HashMap<String, MessageHandler>(4);
 
 	private TcpOperations<byte[]> tcpClient;
@@ -123,6 +158,11 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 	private final Map<String, StompConnectionHandler> connectionHandlers =
 			new ConcurrentHashMap<String, StompConnectionHandler>();
 
+	private final Map<String, MultiplexedSession> multiplexedSessions =
+			new ConcurrentHashMap<String, MultiplexedSession>();
+
+	private volatile MultiplexedStompConnectionHandler[] multiplexedConnections;
+
 	private final Stats stats = new Stats();
 
 
@@ -325,6 +365,88 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 		return this.virtualHost;
 	}
 
+	/**
+	 * Set the maximum number of messages per TCP connection that have been
+	 * forwarded to the STOMP broker but not yet written. Once the limit is
+	 * reached, further messages on the same connection wait for earlier writes
+	 * to complete, see {@link #setPendingWriteTimeout(long)}.
+	 * <p>By default this is set to -1, i.e. there is no limit.
+	 * @since 4.3
+	 */
+	public void setMaxPendingWrites(int maxPendingWrites) {
+		this.maxPendingWrites = maxPendingWrites;
+	}
+
+	/**
+	 * Return the configured maximum number of pending writes per TCP connection.
+	 * @since 4.3
+	 */
+	public int getMaxPendingWrites() {
+		return this.maxPendingWrites;
+	}
+
+	/**
+	 * Set the amount of time, in milliseconds, to wait for pending writes to
+	 * complete when the {@link #setMaxPendingWrites(int) maximum number of
+	 * pending writes} of a TCP connection has been reached. Waiting blocks the
+	 * thread forwarding the message, typically a thread of the client inbound
+	 * channel, and thereby slows down the sending client. If no write completes
+	 * in time, the client session is sent a STOMP ERROR frame and its TCP
+	 * connection is closed, while messages from within the application fail
+	 * with a {@link MessageDeliveryException}.
+	 * <p>By default this is set to 0, i.e. sessions are rejected as soon as the
+	 * limit is exceeded.
+	 * @since 4.3
+	 */
+	public void setPendingWriteTimeout(long pendingWriteTimeout) {
+		this.pendingWriteTimeout = pendingWriteTimeout;
+	}
+
+	/**
+	 * Return the configured pending write timeout in milliseconds.
+	 * @since 4.3
+	 */
+	public long getPendingWriteTimeout() {
+		return this.pendingWriteTimeout;
+	}
+
+	/**
+	 * Set the number of shared TCP connections to the STOMP broker that client
+	 * sessions are multiplexed over. When set, no TCP connection is opened per
+	 * client session, so the number of connections to the broker, and the memory
+	 * held for them, depends on this setting rather than on the number of clients.
+	 * Client sessions are assigned to the connected shared connection with the
+	 * fewest sessions, and fail with a STOMP ERROR frame if their shared
+	 * connection is lost.
+	 * <p>Shared connections use the {@link #setClientLogin client login and passcode}
+	 * and the heartbeat settings of the "system" connection. Heartbeats from
+	 * clients are not forwarded to the broker in this mode.
+	 * <p>A STOMP broker closes the connection after sending an ERROR frame, so an
+	 * error caused by one client fails all client sessions of the same shared
+	 * connection. To limit this, frames the broker is bound to reject, i.e. with
+	 * a missing destination, subscription, message or transaction id, with a body
+	 * where none is allowed, or referring to a transaction the client session has
+	 * not begun, are rejected by the relay and fail only the client session that
+	 * sent them. Errors the relay cannot anticipate, e.g. a destination the broker
+	 * does not accept or a broker-side authorization failure, still close the
+	 * shared connection and fail all of its client sessions with a STOMP ERROR
+	 * frame, so this mode is best suited to clients that can reconnect.
+	 * <p>By default this is set to 0, i.e. each client session has its own
+	 * TCP connection to the broker.
+	 * @since 4.3
+	 */
+	public void setMultiplexedConnectionCount(int multiplexedConnectionCount) {
+		this.multiplexedConnectionCount = multiplexedConnectionCount;
+	}
+
+	/**
+	 * Return the configured number of shared TCP connections for client sessions.
+	 * @since 4.3
+	 */
+	public int getMultiplexedConnectionCount() {
+		return this.multiplexedConnectionCount;
+	}
+
 	/**
 	 * Configure a TCP client for managing TCP connections to the STOMP broker.
 	 * By default {@link Reactor2TcpClient} is used.
@@ -349,6 +471,72 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 		return this.connectionHandlers.size();
 	}
 
+	/**
+	 * Return the current number of client sessions multiplexed over shared TCP
+	 * connections to the broker.
+	 * @since 4.3
+	 * @see #setMultiplexedConnectionCount(int)
+	 */
+	public int getMultiplexedSessionCount() {
+		return this.multiplexedSessions.size();
+	}
+
+	/**
+	 * Return the current number of messages forwarded to the broker but not yet
+	 * written, across all TCP connections.
+	 * @since 4.3
+	 */
+	public int getPendingWriteCount() {
+		return this.stats.getPendingWriteCount();
+	}
+
+	/**
+	 * Return the highest number of pending writes observed across all TCP
+	 * connections at any one time.
+	 * @since 4.3
+	 */
+	public int getPeakPendingWriteCount() {
+		return this.stats.getPeakPendingWriteCount();
+	}
+
+	/**
+	 * Return the number of messages that had to wait for pending writes to
+	 * complete before they could be forwarded.
+	 * @since 4.3
+	 * @see #setPendingWriteTimeout(long)
+	 */
+	public int getThrottledWriteCount() {
+		return this.stats.getThrottledWriteCount();
+	}
+
+	/**
+	 * Return the number of messages rejected because the maximum number of
+	 * pending writes of their TCP connection was exceeded.
+	 * @since 4.3
+	 * @see #setMaxPendingWrites(int)
+	 */
+	public int getRejectedWriteCount() {
+		return this.stats.getRejectedWriteCount();
+	}
+
+	/**
+	 * Return the average time, in milliseconds, between forwarding a message
+	 * and the completion of its write to the broker.
+	 * @since 4.3
+	 */
+	public long getAverageWriteTime() {
+		return this.stats.getAverageWriteTime();
+	}
+
+	/**
+	 * Return the longest time, in milliseconds, between forwarding a message
+	 * and the completion of its write to the broker.
+	 * @since 4.3
+	 */
+	public long getMaxWriteTime() {
+		return this.stats.getMaxWriteTime();
+	}
+
 	/**
 	 * Configure a {@link MessageHeaderInitializer} to apply to the headers of all
 	 * messages created through the {@code StompBrokerRelayMessageHandler} that
@@ -403,6 +591,35 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 
 		this.stats.incrementConnectCount();
 		this.tcpClient.connect(handler, new FixedIntervalReconnectStrategy(5000));
+
+		if (this.multiplexedConnectionCount > 0) {
+			initMultiplexedConnections();
+		}
+	}
+
+	private void initMultiplexedConnections() {
+		MultiplexedStompConnectionHandler[] handlers =
+				new MultiplexedStompConnectionHandler[this.multiplexedConnectionCount];
+		for (int i = 0; i < handlers.length; i++) {
+			StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+			accessor.setAcceptVersion("1.1,1.2");
+			accessor.setLogin(this.clientLogin);
+			accessor.setPasscode(this.clientPasscode);
+			accessor.setHeartbeat(this.systemHeartbeatSendInterval, this.systemHeartbeatReceiveInterval);
+			accessor.setHost(getVirtualHost());
+			accessor.setSessionId(MULTIPLEXED_SESSION_ID_PREFIX + i);
+			handlers[i] = new MultiplexedStompConnectionHandler(accessor);
+			this.connectionHandlers.put(handlers[i].getSessionId(), handlers[i]);
+		}
+		this.multiplexedConnections = handlers;
+		if (logger.isInfoEnabled()) {
+			logger.info("Connecting " + handlers.length + " multiplexed sessions to " +
+					this.relayHost + ":" + this.relayPort);
+		}
+		for (MultiplexedStompConnectionHandler handler : handlers) {
+			this.stats.incrementConnectCount();
+			this.tcpClient.connect(handler, new FixedIntervalReconnectStrategy(5000));
+		}
 	}
 
 	@Override
@@ -431,15 +648,12 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 				handler.clearConnection();
 			}
 			else {
-				StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
-				if (getHeaderInitializer() != null) {
-					getHeaderInitializer().initHeaders(accessor);
+				MultiplexedSession session = this.multiplexedSessions.get(sessionId);
+				if (session != null) {
+					session.getConnection().removeSession(session, false);
 				}
-				accessor.setSessionId(sessionId);
-				accessor.setUser(SimpMessageHeaderAccessor.getUser(message.getHeaders()));
-				accessor.setMessage("Broker not available.");
-				MessageHeaders headers = accessor.getMessageHeaders();
-				getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, headers));
+				sendErrorFrameToClient(sessionId, SimpMessageHeaderAccessor.getUser(message.getHeaders()),
+						"Broker not available.");
 			}
 			return;
 		}
@@ -484,7 +698,10 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 			return;
 		}
 
-		if (StompCommand.CONNECT.equals(command)) {
+		if (this.multiplexedConnections != null && !SYSTEM_SESSION_ID.equals(sessionId)) {
+			handleMultiplexedMessage(sessionId, command, message, stompAccessor);
+		}
+		else if (StompCommand.CONNECT.equals(command)) {
 			if (logger.isDebugEnabled()) {
 				logger.debug(stompAccessor.getShortLogMessage(EMPTY_PAYLOAD));
 			}
@@ -522,6 +739,100 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 		}
 	}
 
+	private void handleMultiplexedMessage(String sessionId, StompCommand command, Message<?> message,
+			StompHeaderAccessor stompAccessor) {
+
+		if (StompCommand.CONNECT.equals(command)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(stompAccessor.getShortLogMessage(EMPTY_PAYLOAD));
+			}
+			this.stats.incrementConnectCount();
+			MultiplexedStompConnectionHandler connection = selectMultiplexedConnection();
+			if (connection == null) {
+				sendErrorFrameToClient(sessionId, stompAccessor.getUser(), "Broker not available.");
+				return;
+			}
+			MultiplexedSession existing = this.multiplexedSessions.get(sessionId);
+			if (existing != null) {
+				// Repeated CONNECT: start over rather than leak the subscriptions of the old session
+				if (logger.isDebugEnabled()) {
+					logger.debug("Replacing multiplexed session " + sessionId + " on repeated CONNECT");
+				}
+				existing.getConnection().removeSession(existing, true);
+			}
+			MultiplexedSession session = new MultiplexedSession(sessionId, stompAccessor.getUser(), connection);
+			this.multiplexedSessions.put(sessionId, session);
+			connection.addSession(session);
+			this.stats.incrementConnectedCount();
+
+			StompHeaderAccessor connectedAccessor = StompHeaderAccessor.create(StompCommand.CONNECTED);
+			if (getHeaderInitializer() != null) {
+				getHeaderInitializer().initHeaders(connectedAccessor);
+			}
+			connectedAccessor.setVersion(connection.getVersion());
+			connectedAccessor.setHeartbeat(0, 0);
+			connectedAccessor.setSessionId(sessionId);
+			connectedAccessor.setUser(session.getUser());
+			MessageHeaders headers = connectedAccessor.getMessageHeaders();
+			getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, headers));
+			return;
+		}
+
+		MultiplexedSession session = this.multiplexedSessions.get(sessionId);
+		if (session == null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("No multiplexed session " + sessionId + " for " + message);
+			}
+			return;
+		}
+
+		if (StompCommand.DISCONNECT.equals(command)) {
+			this.stats.incrementDisconnectCount();
+			session.getConnection().removeSession(session, true);
+			String receipt = stompAccessor.getReceipt();
+			if (receipt != null) {
+				StompHeaderAccessor receiptAccessor = StompHeaderAccessor.create(StompCommand.RECEIPT);
+				if (getHeaderInitializer() != null) {
+					getHeaderInitializer().initHeaders(receiptAccessor);
+				}
+				receiptAccessor.setReceiptId(receipt);
+				receiptAccessor.setSessionId(sessionId);
+				receiptAccessor.setUser(session.getUser());
+				MessageHeaders headers = receiptAccessor.getMessageHeaders();
+				getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, headers));
+			}
+		}
+		else if (command != null) {
+			session.getConnection().forward(session, message, command);
+		}
+	}
+
+	/**
+	 * Select the connected shared connection with the fewest sessions.
+	 */
+	private MultiplexedStompConnectionHandler selectMultiplexedConnection() {
+		MultiplexedStompConnectionHandler selected = null;
+		for (MultiplexedStompConnectionHandler handler : this.multiplexedConnections) {
+			if (handler.isStompConnected() &&
+					(selected == null || handler.getSessionCount() < selected.getSessionCount())) {
+				selected = handler;
+			}
+		}
+		return selected;
+	}
+
+	private void sendErrorFrameToClient(String sessionId, Principal user, String errorText) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+		if (getHeaderInitializer() != null) {
+			getHeaderInitializer().initHeaders(accessor);
+		}
+		accessor.setSessionId(sessionId);
+		accessor.setUser(user);
+		accessor.setMessage(errorText);
+		MessageHeaders headers = accessor.getMessageHeaders();
+		getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, headers));
+	}
+
 	@Override
 	public String toString() {
 		return "StompBrokerRelay[" + this.relayHost + ":" + this.relayPort + "]";
@@ -536,6 +847,9 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 
 		private final StompHeaderAccessor connectHeaders;
 
+		/** Permits for pending writes, or {@code null} if not limited */
+		private final Semaphore writePermits;
+
 		private volatile TcpConnection<byte[]> tcpConnection;
 
 		private volatile boolean isStompConnected;
@@ -551,6 +865,7 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 			this.sessionId = sessionId;
 			this.connectHeaders = connectHeaders;
 			this.isRemoteClientSession = isClientSession;
+			this.writePermits = (maxPendingWrites > 0 ? new Semaphore(maxPendingWrites) : null);
 		}
 
 		public String getSessionId() {
@@ -561,6 +876,10 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 			return this.tcpConnection;
 		}
 
+		public boolean isStompConnected() {
+			return this.isStompConnected;
+		}
+
 		@Override
 		public void afterConnected(TcpConnection<byte[]> connection) {
 			if (logger.isDebugEnabled()) {
@@ -747,8 +1066,24 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 		 * @param message the message to send (never {@code null})
 		 * @return a future to wait for the result
 		 */
+		public ListenableFuture<Void> forward(Message<?> message, StompHeaderAccessor accessor) {
+			return forward(message, accessor, true);
+		}
+
+		/**
+		 * Variant of {@link #forward(Message, StompHeaderAccessor)} for frames
+		 * that may have to bypass the maximum number of pending writes.
+		 * @param message the message to send (never {@code null})
+		 * @param accessor the headers of the message
+		 * @param acquirePermit whether the write counts against the maximum
+		 * number of pending writes; {@code false} for cleanup frames that must
+		 * go out even when that maximum has been reached
+		 * @return a future to wait for the result
+		 */
 		@SuppressWarnings("unchecked")
-		public ListenableFuture<Void> forward(final Message<?> message, final StompHeaderAccessor accessor) {
+		protected ListenableFuture<Void> forward(final Message<?> message, final StompHeaderAccessor accessor,
+				final boolean acquirePermit) {
+
 			TcpConnection<byte[]> conn = this.tcpConnection;
 
 			if (!this.isStompConnected) {
@@ -780,16 +1115,32 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 				logger.trace("Forwarding " + accessor.getDetailedLogMessage(message.getPayload()));
 			}
 
-			ListenableFuture<Void> future = conn.send((Message<byte[]>) messageToSend);
+			if (acquirePermit && !acquireWritePermit()) {
+				stats.incrementRejectedWriteCount();
+				return handleRejectedWrite(message, accessor);
+			}
+
+			final long startTime = System.nanoTime();
+			stats.writeStarted();
+			ListenableFuture<Void> future;
+			try {
+				future = conn.send((Message<byte[]>) messageToSend);
+			}
+			catch (RuntimeException ex) {
+				afterWriteCompleted(startTime, acquirePermit);
+				throw ex;
+			}
 			future.addCallback(new ListenableFutureCallback<Void>() {
 				@Override
 				public void onSuccess(Void result) {
+					afterWriteCompleted(startTime, acquirePermit);
 					if (accessor.getCommand() == StompCommand.DISCONNECT) {
 						afterDisconnectSent(accessor);
 					}
 				}
 				@Override
 				public void onFailure(Throwable ex) {
+					afterWriteCompleted(startTime, acquirePermit);
 					if (tcpConnection != null) {
 						handleTcpConnectionFailure("failed to forward " +
 								accessor.getShortLogMessage(message.getPayload()), ex);
@@ -802,6 +1153,52 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 			return future;
 		}
 
+		/**
+		 * Invoked when a message cannot be forwarded because the maximum number
+		 * of pending writes has been exceeded.
+		 */
+		protected ListenableFuture<Void> handleRejectedWrite(Message<?> message, StompHeaderAccessor accessor) {
+			String error = "Exceeded " + maxPendingWrites + " pending writes to the broker";
+			if (this.isRemoteClientSession) {
+				handleTcpConnectionFailure(error + ".", null);
+				return EMPTY_TASK;
+			}
+			else {
+				throw new IllegalStateException(error + " on \"system\" connection. Dropped " +
+						accessor.getShortLogMessage(message.getPayload()));
+			}
+		}
+
+		/**
+		 * Obtain a permit for writing to the broker, waiting up to the configured
+		 * pending write timeout if the maximum number of pending writes is reached.
+		 * @return whether a permit was obtained
+		 */
+		private boolean acquireWritePermit() {
+			if (this.writePermits == null || this.writePermits.tryAcquire()) {
+				return true;
+			}
+			if (pendingWriteTimeout <= 0) {
+				return false;
+			}
+			stats.incrementThrottledWriteCount();
+			try {
+				return this.writePermits.tryAcquire(pendingWriteTimeout, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		private void afterWriteCompleted(long startTime, boolean releasePermit) {
+			// Record the completed write before a waiting writer can take the permit
+			stats.writeCompleted(System.nanoTime() - startTime);
+			if (releasePermit && this.writePermits != null) {
+				this.writePermits.release();
+			}
+		}
+
 		/**
 		 * After a DISCONNECT there should be no more client frames so we can
 		 * close the connection pro-actively. However, if the DISCONNECT has a
@@ -954,6 +1351,342 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 	}
 
 
+	/**
+	 * A shared connection to the broker carrying the messages of many client sessions.
+	 */
+	private class MultiplexedStompConnectionHandler extends StompConnectionHandler {
+
+		private final Map<String, MultiplexedSession> sessions = new ConcurrentHashMap<String, MultiplexedSession>();
+
+		/** Client references by the subscription id used with the broker */
+		private final Map<String, ClientReference> subscriptions = new ConcurrentHashMap<String, ClientReference>();
+
+		/** Client references by the receipt id used with the broker */
+		private final Map<String, ClientReference> receipts = new ConcurrentHashMap<String, ClientReference>();
+
+		private final AtomicLong idCounter = new AtomicLong();
+
+		private volatile String version = "1.2";
+
+		public MultiplexedStompConnectionHandler(StompHeaderAccessor connectHeaders) {
+			super(connectHeaders.getSessionId(), connectHeaders, false);
+		}
+
+		public String getVersion() {
+			return this.version;
+		}
+
+		public int getSessionCount() {
+			return this.sessions.size();
+		}
+
+		public void addSession(MultiplexedSession session) {
+			this.sessions.put(session.getSessionId(), session);
+		}
+
+		/**
+		 * Remove the given session along with its subscriptions and receipts.
+		 * UNSUBSCRIBE frames do not count against the maximum number of pending
+		 * writes, since the session may be removed for exceeding it.
+		 * @param unsubscribe whether to unsubscribe its subscriptions at the broker
+		 */
+		public void removeSession(MultiplexedSession session, boolean unsubscribe) {
+			multiplexedSessions.remove(session.getSessionId());
+			if (this.sessions.remove(session.getSessionId()) == null) {
+				return;
+			}
+			for (String brokerSubscriptionId : session.getSubscriptions().values()) {
+				this.subscriptions.remove(brokerSubscriptionId);
+				if (unsubscribe && isStompConnected()) {
+					StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+					accessor.setSubscriptionId(brokerSubscriptionId);
+					accessor.setSessionId(session.getSessionId());
+					try {
+						super.forward(MessageBuilder.createMessage(EMPTY_PAYLOAD, accessor.getMessageHeaders()), accessor, false);
+					}
+					catch (Throwable ex) {
+						if (logger.isDebugEnabled()) {
+							logger.debug("Failed to unsubscribe " + brokerSubscriptionId +
+									" of multiplexed session " + session.getSessionId(), ex);
+						}
+					}
+				}
+			}
+			session.getSubscriptions().clear();
+			for (Iterator<ClientReference> it = this.receipts.values().iterator(); it.hasNext();) {
+				if (it.next().getSession() == session) {
+					it.remove();
+				}
+			}
+		}
+
+		/**
+		 * Forward a message of the given client session, mapping its subscription,
+		 * receipt and transaction ids to ids unique within this connection.
+		 */
+		public void forward(MultiplexedSession session, Message<?> message, StompCommand command) {
+			if (!isStompConnected()) {
+				removeSession(session, false);
+				sendErrorFrameToClient(session.getSessionId(), session.getUser(), "Connection to broker closed.");
+				return;
+			}
+
+			StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+			String error = validate(session, message, accessor, command);
+			if (error != null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Rejecting multiplexed session " + session.getSessionId() + ": " + error);
+				}
+				removeSession(session, true);
+				sendErrorFrameToClient(session.getSessionId(), session.getUser(), error);
+				return;
+			}
+
+			if (StompCommand.SUBSCRIBE.equals(command)) {
+				String clientSubscriptionId = accessor.getSubscriptionId();
+				String brokerSubscriptionId = "sub-" + this.idCounter.incrementAndGet();
+				session.getSubscriptions().put(clientSubscriptionId, brokerSubscriptionId);
+				this.subscriptions.put(brokerSubscriptionId, new ClientReference(session, clientSubscriptionId));
+				accessor.setSubscriptionId(brokerSubscriptionId);
+			}
+			else if (StompCommand.UNSUBSCRIBE.equals(command)) {
+				String brokerSubscriptionId = session.getSubscriptions().remove(accessor.getSubscriptionId());
+				if (brokerSubscriptionId == null) {
+					return;
+				}
+				this.subscriptions.remove(brokerSubscriptionId);
+				accessor.setSubscriptionId(brokerSubscriptionId);
+			}
+			else if (StompCommand.ACK.equals(command) || StompCommand.NACK.equals(command)) {
+				// STOMP 1.1 identifies the subscription of the acknowledged message
+				String clientSubscriptionId = accessor.getFirstNativeHeader(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER);
+				String brokerSubscriptionId = (clientSubscriptionId != null ?
+						session.getSubscriptions().get(clientSubscriptionId) : null);
+				if (brokerSubscriptionId != null) {
+					accessor.setNativeHeader(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER, brokerSubscriptionId);
+				}
+			}
+
+			String receipt = accessor.getReceipt();
+			if (receipt != null) {
+				String brokerReceipt = "receipt-" + this.idCounter.incrementAndGet();
+				this.receipts.put(brokerReceipt, new ClientReference(session, receipt));
+				accessor.setReceipt(brokerReceipt);
+			}
+			String transaction = accessor.getFirstNativeHeader(TRANSACTION_HEADER);
+			if (transaction != null) {
+				if (StompCommand.BEGIN.equals(command)) {
+					session.getTransactions().add(transaction);
+				}
+				else if (StompCommand.COMMIT.equals(command) || StompCommand.ABORT.equals(command)) {
+					session.getTransactions().remove(transaction);
+				}
+				accessor.setNativeHeader(TRANSACTION_HEADER,
+						session.getSessionId() + "-" + transaction);
+			}
+
+			super.forward(message, accessor);
+		}
+
+		/**
+		 * Check a frame of the given client session for errors the broker would
+		 * report with an ERROR frame, closing the connection shared with other
+		 * client sessions.
+		 * @return the error to report to the client session, or {@code null}
+		 */
+		private String validate(MultiplexedSession session, Message<?> message,
+				StompHeaderAccessor accessor, StompCommand command) {
+
+			if (command.requiresDestination() && !StringUtils.hasText(accessor.getDestination())) {
+				return "Missing destination header in " + command + " frame.";
+			}
+			if (command.requiresSubscriptionId() && !StringUtils.hasText(accessor.getSubscriptionId())) {
+				return "Missing id header in " + command + " frame.";
+			}
+			if ((StompCommand.ACK.equals(command) || StompCommand.NACK.equals(command)) &&
+					!StringUtils.hasText(accessor.getFirstNativeHeader(StompHeaderAccessor.STOMP_ID_HEADER)) &&
+					!StringUtils.hasText(accessor.getFirstNativeHeader(StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER))) {
+				return "Missing id header in " + command + " frame.";
+			}
+			if (!command.isBodyAllowed() && message.getPayload() instanceof byte[] &&
+					((byte[]) message.getPayload()).length > 0) {
+				return command + " frame must not have a body.";
+			}
+			String transaction = accessor.getFirstNativeHeader(TRANSACTION_HEADER);
+			if (StompCommand.BEGIN.equals(command) || StompCommand.COMMIT.equals(command) ||
+					StompCommand.ABORT.equals(command)) {
+				if (!StringUtils.hasText(transaction)) {
+					return "Missing transaction header in " + command + " frame.";
+				}
+				if (StompCommand.BEGIN.equals(command) && session.getTransactions().contains(transaction)) {
+					return "Transaction " + transaction + " already begun.";
+				}
+			}
+			if (transaction != null && !StompCommand.BEGIN.equals(command) &&
+					!session.getTransactions().contains(transaction)) {
+				return "Transaction " + transaction + " not begun.";
+			}
+			return null;
+		}
+
+		@Override
+		protected ListenableFuture<Void> handleRejectedWrite(Message<?> message, StompHeaderAccessor accessor) {
+			// Reject only the client session, not all sessions sharing the connection
+			MultiplexedSession session = this.sessions.get(accessor.getSessionId());
+			if (session != null) {
+				removeSession(session, true);
+				sendErrorFrameToClient(session.getSessionId(), session.getUser(),
+						"Exceeded " + maxPendingWrites + " pending writes to the broker.");
+			}
+			return EMPTY_TASK;
+		}
+
+		@Override
+		protected void afterStompConnected(StompHeaderAccessor connectedHeaders) {
+			if (logger.isInfoEnabled()) {
+				logger.info("Multiplexed session " + getSessionId() + " connected.");
+			}
+			if (connectedHeaders.getVersion() != null) {
+				this.version = connectedHeaders.getVersion();
+			}
+			super.afterStompConnected(connectedHeaders);
+		}
+
+		@Override
+		protected void handleInboundMessage(Message<?> message) {
+			StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+			StompCommand command = accessor.getCommand();
+			if (StompCommand.MESSAGE.equals(command)) {
+				ClientReference reference = this.subscriptions.get(accessor.getSubscriptionId());
+				if (reference != null) {
+					accessor.setSubscriptionId(reference.getId());
+					sendToSession(reference.getSession(), message, accessor);
+				}
+				else if (logger.isDebugEnabled()) {
+					logger.debug("No multiplexed session for " + accessor.getShortLogMessage(message.getPayload()));
+				}
+			}
+			else if (StompCommand.RECEIPT.equals(command) || StompCommand.ERROR.equals(command)) {
+				String receiptId = accessor.getReceiptId();
+				ClientReference reference = (receiptId != null ? this.receipts.remove(receiptId) : null);
+				if (reference != null) {
+					accessor.setReceiptId(reference.getId());
+					sendToSession(reference.getSession(), message, accessor);
+				}
+				else if (StompCommand.ERROR.equals(command)) {
+					// The broker closes the connection after an ERROR frame
+					failSessions(accessor.getMessage() != null ? accessor.getMessage() : "Broker error.");
+				}
+			}
+		}
+
+		private void sendToSession(MultiplexedSession session, Message<?> message, StompHeaderAccessor accessor) {
+			accessor.setSessionId(session.getSessionId());
+			accessor.setUser(session.getUser());
+			accessor.setImmutable();
+			getClientOutboundChannel().send(message);
+		}
+
+		@Override
+		protected void handleTcpConnectionFailure(String error, Throwable ex) {
+			super.handleTcpConnectionFailure(error, ex);
+			failSessions(error);
+		}
+
+		@Override
+		public void afterConnectionClosed() {
+			super.afterConnectionClosed();
+			failSessions("Connection to broker closed.");
+		}
+
+		/**
+		 * Send a STOMP ERROR frame to all client sessions of this connection and remove them.
+		 */
+		private void failSessions(String errorText) {
+			for (MultiplexedSession session : this.sessions.values()) {
+				removeSession(session, false);
+				sendErrorFrameToClient(session.getSessionId(), session.getUser(), errorText);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "MultiplexedStompConnectionHandler[sessionId=" + getSessionId() +
+					", sessions=" + this.sessions.size() + "]";
+		}
+	}
+
+
+	/**
+	 * A client session multiplexed over a shared connection to the broker.
+	 */
+	private static class MultiplexedSession {
+
+		private final String sessionId;
+
+		private final Principal user;
+
+		private final MultiplexedStompConnectionHandler connection;
+
+		/** Subscription ids used with the broker by client subscription id */
+		private final Map<String, String> subscriptions = new ConcurrentHashMap<String, String>(4);
+
+		/** Transactions begun and not yet committed or aborted */
+		private final Set<String> transactions =
+				Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+
+		public MultiplexedSession(String sessionId, Principal user, MultiplexedStompConnectionHandler connection) {
+			this.sessionId = sessionId;
+			this.user = user;
+			this.connection = connection;
+		}
+
+		public String getSessionId() {
+			return this.sessionId;
+		}
+
+		public Principal getUser() {
+			return this.user;
+		}
+
+		public MultiplexedStompConnectionHandler getConnection() {
+			return this.connection;
+		}
+
+		public Map<String, String> getSubscriptions() {
+			return this.subscriptions;
+		}
+
+		public Set<String> getTransactions() {
+			return this.transactions;
+		}
+	}
+
+
+	/**
+	 * A subscription or receipt id of a client session.
+	 */
+	private static class ClientReference {
+
+		private final MultiplexedSession session;
+
+		private final String id;
+
+		public ClientReference(MultiplexedSession session, String id) {
+			this.session = session;
+			this.id = id;
+		}
+
+		public MultiplexedSession getSession() {
+			return this.session;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+	}
+
+
 	private static class StompTcpClientFactory {
 
 		public TcpOperations<byte[]> create(String relayHost, int relayPort, Reactor2StompCodec codec) {
@@ -979,6 +1712,20 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 
 		private final AtomicInteger disconnect = new AtomicInteger();
 
+		private final AtomicInteger pendingWrites = new AtomicInteger();
+
+		private final AtomicInteger peakPendingWrites = new AtomicInteger();
+
+		private final AtomicInteger throttledWrites = new AtomicInteger();
+
+		private final AtomicInteger rejectedWrites = new AtomicInteger();
+
+		private final AtomicLong completedWrites = new AtomicLong();
+
+		private final AtomicLong totalWriteTime = new AtomicLong();
+
+		private final AtomicLong maxWriteTime = new AtomicLong();
+
 		public void incrementConnectCount() {
 			this.connect.incrementAndGet();
 		}
@@ -991,6 +1738,57 @@ public class StompBrokerRelayMessageHandler extends AbstractBrokerMessageHandler
 			this.disconnect.incrementAndGet();
 		}
 
+		public void incrementThrottledWriteCount() {
+			this.throttledWrites.incrementAndGet();
+		}
+
+		public void incrementRejectedWriteCount() {
+			this.rejectedWrites.incrementAndGet();
+		}
+
+		public void writeStarted() {
+			int pending = this.pendingWrites.incrementAndGet();
+			int peak = this.peakPendingWrites.get();
+			while (pending > peak && !this.peakPendingWrites.compareAndSet(peak, pending)) {
+				peak = this.peakPendingWrites.get();
+			}
+		}
+
+		public void writeCompleted(long nanos) {
+			this.pendingWrites.decrementAndGet();
+			this.completedWrites.incrementAndGet();
+			this.totalWriteTime.addAndGet(nanos);
+			long max = this.maxWriteTime.get();
+			while (nanos > max && !this.maxWriteTime.compareAndSet(max, nanos)) {
+				max = this.maxWriteTime.get();
+			}
+		}
+
+		public int getPendingWriteCount() {
+			return this.pendingWrites.get();
+		}
+
+		public int getPeakPendingWriteCount() {
+			return this.peakPendingWrites.get();
+		}
+
+		public int getThrottledWriteCount() {
+			return this.throttledWrites.get();
+		}
+
+		public int getRejectedWriteCount() {
+			return this.rejectedWrites.get();
+		}
+
+		public long getAverageWriteTime() {
+			long completed = this.completedWrites.get();
+			return (completed > 0 ? TimeUnit.NANOSECONDS.toMillis(this.totalWriteTime.get() / completed) : 0);
+		}
+
+		public long getMaxWriteTime() {
+			return TimeUnit.NANOSECONDS.toMillis(this.maxWriteTime.get());
+		}
+
 		public String toString() {
 			return connectionHandlers.size() + " sessions, " + relayHost + ":" + relayPort +
 					(isBrokerAvailable() ? " (available)" : " (not available)") +
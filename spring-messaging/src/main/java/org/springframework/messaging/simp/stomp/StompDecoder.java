@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,11 +16,13 @@
 
 package org.springframework.messaging.simp.stomp;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +43,13 @@ import org.springframework.util.MultiValueMap;
  * partial content. The caller is then responsible for dealing with that
  * incomplete content by buffering until there is more input available.
  *
+ * <p>Frames are scanned in place, without intermediate copies of the command,
+ * header or body bytes. Header names, as well as the values of headers such as
+ * "destination", "subscription" and "content-type" that tend to repeat across
+ * frames, are served from a small cache of decoded strings. The body is either
+ * copied into the {@code byte[]} payload with a single bulk copy or, through
+ * {@link #decodeToSlices}, exposed as a read-only slice of the input buffer.
+ *
  * @author Andy Wilkinson
  * @author Rossen Stoyanchev
  * @since 4.0
@@ -53,9 +62,38 @@ public class StompDecoder {
 
 	private static final Log logger = LogFactory.getLog(StompDecoder.class);
 
+	private static final StompCommand[] COMMANDS = StompCommand.values();
+
+	private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+
+	static {
+		for (int i = 0; i < COMMANDS.length; i++) {
+			COMMAND_BYTES[i] = COMMANDS[i].name().getBytes(UTF8_CHARSET);
+		}
+	}
+
+	/** Headers whose values are likely to repeat and therefore cached */
+	private static final Set<String> CACHED_VALUE_HEADERS = new HashSet<String>(Arrays.asList(
+			StompHeaderAccessor.STOMP_DESTINATION_HEADER, StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER,
+			StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER, StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER,
+			StompHeaderAccessor.STOMP_ID_HEADER, StompHeaderAccessor.STOMP_ACK_HEADER,
+			StompHeaderAccessor.STOMP_ACCEPT_VERSION_HEADER, StompHeaderAccessor.STOMP_HEARTBEAT_HEADER,
+			StompHeaderAccessor.STOMP_HOST_HEADER, StompHeaderAccessor.STOMP_VERSION_HEADER));
+
+	private static final int STRING_CACHE_SIZE = 1024;
+
+	private static final int MAX_CACHED_STRING_LENGTH = 128;
+
 
 	private MessageHeaderInitializer headerInitializer;
 
+	/**
+	 * Direct-mapped cache of decoded header names and values. Entries are
+	 * immutable, so concurrent decoding threads at worst replace each other's
+	 * entries, never see partially initialized ones.
+	 */
+	private final CachedString[] stringCache = new CachedString[STRING_CACHE_SIZE];
+
 
 	/**
 	 * Configure a {@link MessageHeaderInitializer} to apply to the headers of
@@ -105,10 +143,37 @@ public class StompDecoder {
 	 * @return the decoded messages, or an empty list if none
 	 * @throws StompConversionException raised in case of decoding issues
 	 */
+	@SuppressWarnings("unchecked")
 	public List<Message<byte[]>> decode(ByteBuffer buffer, MultiValueMap<String, String> partialMessageHeaders) {
 		List<Message<byte[]>> messages = new ArrayList<Message<byte[]>>();
 		while (buffer.hasRemaining()) {
-			Message<byte[]> message = decodeMessage(buffer, partialMessageHeaders);
+			Message<byte[]> message = (Message<byte[]>) decodeMessage(buffer, partialMessageHeaders, false);
+			if (message != null) {
+				messages.add(message);
+			}
+			else {
+				break;
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * Variant of {@link #decode(ByteBuffer)} that does not copy the body of
+	 * each frame but exposes it as a read-only slice of the given buffer.
+	 * <p>The returned messages share the content of the given buffer, so the
+	 * caller must not modify or reuse the buffer for as long as the messages
+	 * are in use, e.g. while they are being handled on another thread.
+	 * @param buffer the buffer to decode the STOMP frames from
+	 * @return the decoded messages, or an empty list if none
+	 * @throws StompConversionException raised in case of decoding issues
+	 * @since 4.3
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Message<ByteBuffer>> decodeToSlices(ByteBuffer buffer) {
+		List<Message<ByteBuffer>> messages = new ArrayList<Message<ByteBuffer>>();
+		while (buffer.hasRemaining()) {
+			Message<ByteBuffer> message = (Message<ByteBuffer>) decodeMessage(buffer, null, true);
 			if (message != null) {
 				messages.add(message);
 			}
@@ -122,26 +187,30 @@ public class StompDecoder {
 	/**
 	 * Decode a single STOMP frame from the given {@code buffer} into a {@link Message}.
 	 */
-	private Message<byte[]> decodeMessage(ByteBuffer buffer, MultiValueMap<String, String> headers) {
-		Message<byte[]> decodedMessage = null;
+	private Message<?> decodeMessage(ByteBuffer buffer, MultiValueMap<String, String> headers, boolean slice) {
+		Message<?> decodedMessage = null;
 		skipLeadingEol(buffer);
 		buffer.mark();
 
-		String command = readCommand(buffer);
-		if (command.length() > 0) {
+		if (buffer.hasRemaining()) {
 			StompHeaderAccessor headerAccessor = null;
-			byte[] payload = null;
-			if (buffer.remaining() > 0) {
-				StompCommand stompCommand = StompCommand.valueOf(command);
-				headerAccessor = StompHeaderAccessor.create(stompCommand);
+			Object payload = null;
+			int payloadLength = 0;
+			StompCommand command = readCommand(buffer);
+			if (command != null && buffer.hasRemaining()) {
+				headerAccessor = StompHeaderAccessor.create(command);
 				initHeaders(headerAccessor);
-				readHeaders(buffer, headerAccessor);
-				payload = readPayload(buffer, headerAccessor);
+				if (readHeaders(buffer, headerAccessor)) {
+					payloadLength = findPayloadLength(buffer, headerAccessor);
+					if (payloadLength >= 0) {
+						payload = readPayload(buffer, payloadLength, slice);
+					}
+				}
 			}
 			if (payload != null) {
-				if (payload.length > 0 && !headerAccessor.getCommand().isBodyAllowed()) {
+				if (payloadLength > 0 && !headerAccessor.getCommand().isBodyAllowed()) {
 					throw new StompConversionException(headerAccessor.getCommand() +
-							" shouldn't have a payload: length=" + payload.length + ", headers=" + headers);
+							" shouldn't have a payload: length=" + payloadLength + ", headers=" + headers);
 				}
 				headerAccessor.updateSimpMessageHeadersFromStompHeaders();
 				headerAccessor.setLeaveMutable(true);
@@ -169,7 +238,8 @@ public class StompDecoder {
 			StompHeaderAccessor headerAccessor = StompHeaderAccessor.createForHeartbeat();
 			initHeaders(headerAccessor);
 			headerAccessor.setLeaveMutable(true);
-			decodedMessage = MessageBuilder.createMessage(HEARTBEAT_PAYLOAD, headerAccessor.getMessageHeaders());
+			Object payload = (slice ? ByteBuffer.wrap(HEARTBEAT_PAYLOAD).asReadOnlyBuffer() : HEARTBEAT_PAYLOAD);
+			decodedMessage = MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders());
 			if (logger.isTraceEnabled()) {
 				logger.trace("Decoded " + headerAccessor.getDetailedLogMessage(null));
 			}
@@ -197,53 +267,98 @@ public class StompDecoder {
 		}
 	}
 
-	private String readCommand(ByteBuffer buffer) {
-		ByteArrayOutputStream command = new ByteArrayOutputStream(256);
-		while (buffer.remaining() > 0 && !tryConsumeEndOfLine(buffer)) {
-			command.write(buffer.get());
+	/**
+	 * Read the command line, matching it against the known commands in place.
+	 * @return the command, or {@code null} if the line is incomplete
+	 */
+	private StompCommand readCommand(ByteBuffer buffer) {
+		int start = buffer.position();
+		int end = findEndOfLine(buffer, start);
+		if (end == -1) {
+			buffer.position(buffer.limit());
+			return null;
 		}
-		return new String(command.toByteArray(), UTF8_CHARSET);
+		consumeEndOfLine(buffer, end);
+		int length = end - start;
+		for (int i = 0; i < COMMANDS.length; i++) {
+			if (matches(buffer, start, length, COMMAND_BYTES[i])) {
+				return COMMANDS[i];
+			}
+		}
+		// Raise the same exception as for any other unknown enum constant
+		return StompCommand.valueOf(decodeString(buffer, start, end, false));
 	}
 
-	private void readHeaders(ByteBuffer buffer, StompHeaderAccessor headerAccessor) {
+	/**
+	 * Read the header lines up to and including the blank line ending them.
+	 * @return {@code true} if all headers were read, {@code false} if the
+	 * headers are incomplete
+	 */
+	private boolean readHeaders(ByteBuffer buffer, StompHeaderAccessor headerAccessor) {
 		while (true) {
-			ByteArrayOutputStream headerStream = new ByteArrayOutputStream(256);
-			boolean headerComplete = false;
-			while (buffer.hasRemaining()) {
-				if (tryConsumeEndOfLine(buffer)) {
-					headerComplete = true;
-					break;
-				}
-				headerStream.write(buffer.get());
+			int start = buffer.position();
+			int end = findEndOfLine(buffer, start);
+			if (end == -1) {
+				return false;
 			}
-			if (headerStream.size() > 0 && headerComplete) {
-				String header = new String(headerStream.toByteArray(), UTF8_CHARSET);
-				int colonIndex = header.indexOf(':');
-				if (colonIndex <= 0) {
-					if (buffer.remaining() > 0) {
-						throw new StompConversionException("Illegal header: '" + header +
-								"'. A header must be of the form <name>:[<value>].");
-					}
-				}
-				else {
-					String headerName = unescape(header.substring(0, colonIndex));
-					String headerValue = unescape(header.substring(colonIndex + 1));
-					try {
-						headerAccessor.addNativeHeader(headerName, headerValue);
-					}
-					catch (InvalidMimeTypeException ex) {
-						if (buffer.remaining() > 0) {
-							throw ex;
-						}
-					}
+			consumeEndOfLine(buffer, end);
+			if (end == start) {
+				return true;
+			}
+			int colonIndex = indexOf(buffer, start, end, (byte) ':');
+			if (colonIndex <= start) {
+				if (buffer.remaining() > 0) {
+					throw new StompConversionException("Illegal header: '" + decodeString(buffer, start, end, false) +
+							"'. A header must be of the form <name>:[<value>].");
 				}
+				return false;
 			}
-			else {
-				break;
+			String headerName = readHeaderString(buffer, start, colonIndex, true);
+			boolean cacheValue = CACHED_VALUE_HEADERS.contains(headerName);
+			String headerValue = readHeaderString(buffer, colonIndex + 1, end, cacheValue);
+			try {
+				headerAccessor.addNativeHeader(headerName, headerValue);
+			}
+			catch (InvalidMimeTypeException ex) {
+				if (buffer.remaining() > 0) {
+					throw ex;
+				}
+				return false;
 			}
 		}
 	}
 
+	private String readHeaderString(ByteBuffer buffer, int start, int end, boolean cache) {
+		if (indexOf(buffer, start, end, (byte) '\\') != -1) {
+			return unescape(decodeString(buffer, start, end, false));
+		}
+		return decodeString(buffer, start, end, cache);
+	}
+
+	/**
+	 * Decode the given range of the buffer, serving frequently used strings
+	 * from the cache if requested.
+	 */
+	private String decodeString(ByteBuffer buffer, int start, int end, boolean cache) {
+		int length = end - start;
+		if (!cache || length > MAX_CACHED_STRING_LENGTH) {
+			return new String(getBytes(buffer, start, length), UTF8_CHARSET);
+		}
+		int hash = length;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer.get(i);
+		}
+		int index = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+		CachedString cached = this.stringCache[index];
+		if (cached != null && matches(buffer, start, length, cached.bytes)) {
+			return cached.value;
+		}
+		byte[] bytes = getBytes(buffer, start, length);
+		String value = new String(bytes, UTF8_CHARSET);
+		this.stringCache[index] = new CachedString(bytes, value);
+		return value;
+	}
+
 	/**
 	 * See STOMP Spec 1.2:
 	 * <a href="http://stomp.github.io/stomp-specification-1.2.html#Value_Encoding">"Value Encoding"</a>.
@@ -283,7 +398,11 @@ public class StompDecoder {
 		return sb.toString();
 	}
 
-	private byte[] readPayload(ByteBuffer buffer, StompHeaderAccessor headerAccessor) {
+	/**
+	 * Determine the length of the body starting at the current position.
+	 * @return the length, or -1 if the body is incomplete
+	 */
+	private int findPayloadLength(ByteBuffer buffer, StompHeaderAccessor headerAccessor) {
 		Integer contentLength;
 		try {
 			contentLength = headerAccessor.getContentLength();
@@ -295,30 +414,37 @@ public class StompDecoder {
 
 		if (contentLength != null && contentLength >= 0) {
 			if (buffer.remaining() > contentLength) {
-				byte[] payload = new byte[contentLength];
-				buffer.get(payload);
-				if (buffer.get() != 0) {
+				if (buffer.get(buffer.position() + contentLength) != 0) {
 					throw new StompConversionException("Frame must be terminated with a null octet");
 				}
-				return payload;
-			}
-			else {
-				return null;
+				return contentLength;
 			}
+			return -1;
 		}
 		else {
-			ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
-			while (buffer.remaining() > 0) {
-				byte b = buffer.get();
-				if (b == 0) {
-					return payload.toByteArray();
-				}
-				else {
-					payload.write(b);
-				}
-			}
+			int end = indexOf(buffer, buffer.position(), buffer.limit(), (byte) 0);
+			return (end != -1 ? end - buffer.position() : -1);
 		}
-		return null;
+	}
+
+	/**
+	 * Read the body of the given length and consume the terminating null octet.
+	 */
+	private Object readPayload(ByteBuffer buffer, int length, boolean slice) {
+		Object payload;
+		if (slice) {
+			ByteBuffer body = buffer.slice();
+			body.limit(length);
+			payload = body.asReadOnlyBuffer();
+			buffer.position(buffer.position() + length);
+		}
+		else {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			payload = bytes;
+		}
+		buffer.get();
+		return payload;
 	}
 
 	/**
@@ -344,4 +470,77 @@ public class StompDecoder {
 		return false;
 	}
 
+	/**
+	 * Find the end of the line starting at the given index.
+	 * @return the index of the EOL, i.e. of "\n" or of the "\r" in "\r\n",
+	 * or -1 if the line is incomplete
+	 */
+	private static int findEndOfLine(ByteBuffer buffer, int start) {
+		int limit = buffer.limit();
+		for (int i = start; i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b == '\n') {
+				return i;
+			}
+			else if (b == '\r') {
+				if (i + 1 < limit && buffer.get(i + 1) == '\n') {
+					return i;
+				}
+				throw new StompConversionException("'\\r' must be followed by '\\n'");
+			}
+		}
+		return -1;
+	}
+
+	private static void consumeEndOfLine(ByteBuffer buffer, int eolIndex) {
+		buffer.position(eolIndex + (buffer.get(eolIndex) == '\r' ? 2 : 1));
+	}
+
+	private static int indexOf(ByteBuffer buffer, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int start, int length, byte[] bytes) {
+		if (bytes.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(start + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer, int start, int length) {
+		byte[] bytes = new byte[length];
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + start, bytes, 0, length);
+		}
+		else {
+			for (int i = 0; i < length; i++) {
+				bytes[i] = buffer.get(start + i);
+			}
+		}
+		return bytes;
+	}
+
+
+	private static final class CachedString {
+
+		private final byte[] bytes;
+
+		private final String value;
+
+		public CachedString(byte[] bytes, String value) {
+			this.bytes = bytes;
+			this.value = value;
+		}
+	}
+
 }
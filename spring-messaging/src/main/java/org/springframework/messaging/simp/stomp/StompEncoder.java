@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,10 +16,11 @@
 
 package org.springframework.messaging.simp.stomp;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.util.Arrays;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,10 +33,22 @@ import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.support.NativeMessageHeaderAccessor;
 import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentLruCache;
 
 /**
  * An encoder for STOMP frames.
  *
+ * <p>Frames are measured first and then written in a single pass, either into
+ * a {@code byte[]} of the exact frame size or into a {@link ByteBuffer} supplied
+ * by the caller, e.g. a pooled direct buffer of a transport that controls the
+ * lifecycle of its buffers. Header values are escaped and UTF-8 encoded on the
+ * fly, without intermediate Strings or byte arrays.
+ *
+ * <p>When a {@link #setHeaderBlockCacheLimit header block cache} is configured,
+ * the encoded headers of MESSAGE frames are cached, apart from the "subscription",
+ * "message-id" and "content-length" headers which are written for each frame.
+ * This pays off when the same message is broadcast to many subscribers.
+ *
  * @author Andy Wilkinson
  * @author Rossen Stoyanchev
  * @since 4.0
@@ -46,8 +59,47 @@ public final class StompEncoder  {
 
 	private static final byte COLON = ':';
 
+	private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StompDecoder.UTF8_CHARSET);
+
+	/** Headers written for each MESSAGE frame rather than as part of a cached header block */
+	private static final String[] VARIABLE_HEADERS = new String[] {StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER,
+			StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER, StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER};
+
+	private static final byte[][] COMMANDS = new byte[StompCommand.values().length][];
+
+	static {
+		for (StompCommand command : StompCommand.values()) {
+			COMMANDS[command.ordinal()] = command.name().getBytes(StompDecoder.UTF8_CHARSET);
+		}
+	}
+
+
 	private final Log logger = LogFactory.getLog(StompEncoder.class);
 
+	private volatile ConcurrentLruCache<HeaderBlockKey, HeaderBlock> headerBlockCache;
+
+
+	/**
+	 * Configure the maximum number of encoded MESSAGE header blocks to cache.
+	 * <p>By default this is 0, i.e. headers are encoded for every frame.
+	 * A limit of a few hundred entries is typically enough to cover the
+	 * messages concurrently being broadcast to subscribers.
+	 * @since 4.3
+	 */
+	public void setHeaderBlockCacheLimit(int cacheLimit) {
+		this.headerBlockCache = (cacheLimit > 0 ?
+				new ConcurrentLruCache<HeaderBlockKey, HeaderBlock>(cacheLimit) : null);
+	}
+
+	/**
+	 * Return the maximum number of encoded MESSAGE header blocks to cache.
+	 * @since 4.3
+	 */
+	public int getHeaderBlockCacheLimit() {
+		ConcurrentLruCache<HeaderBlockKey, HeaderBlock> cache = this.headerBlockCache;
+		return (cache != null ? cache.getCapacity() : 0);
+	}
+
 
 	/**
 	 * Encodes the given STOMP {@code message} into a {@code byte[]}
@@ -65,113 +117,527 @@ public final class StompEncoder  {
 	 * @return the encoded message
 	 */
 	public byte[] encode(Map<String, Object> headers, byte[] payload) {
+		Frame frame = prepareFrame(headers, payload, false);
+		byte[] bytes = new byte[frame.length];
+		int length = frame.writeTo(new Output(bytes, 0));
+		Assert.state(length == bytes.length, "Unexpected STOMP frame length");
+		return bytes;
+	}
+
+	/**
+	 * Encodes the given payload and headers into the given buffer, starting
+	 * at its current position. The buffer, typically a pooled direct buffer,
+	 * remains owned by the caller.
+	 * @param headers the headers
+	 * @param payload the payload
+	 * @param buffer the buffer to write to
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException if the remaining space in the buffer is
+	 * not enough for the frame, in which case nothing is written
+	 * @since 4.3
+	 */
+	public int encode(Map<String, Object> headers, byte[] payload, ByteBuffer buffer) {
+		Assert.notNull(buffer, "'buffer' is required");
+		Frame frame = prepareFrame(headers, payload, false);
+		if (buffer.remaining() < frame.length) {
+			throw new BufferOverflowException();
+		}
+		return frame.writeTo(new Output(buffer));
+	}
+
+	/**
+	 * Return the number of bytes that the given payload and headers encode to.
+	 * @param headers the headers
+	 * @param payload the payload
+	 * @return the frame length in bytes
+	 * @since 4.3
+	 */
+	public int getEncodedLength(Map<String, Object> headers, byte[] payload) {
+		return prepareFrame(headers, payload, false).length;
+	}
+
+	/**
+	 * Encodes the command and headers of a frame with the given payload, i.e.
+	 * the frame up to and including the blank line that precedes the body.
+	 * Followed by the payload and a NULL octet, this makes up the complete frame,
+	 * which allows a payload shared by many frames to be serialized only once.
+	 * @param headers the headers
+	 * @param payload the payload, used to determine the content length
+	 * @return the encoded command and headers
+	 * @since 4.3
+	 */
+	public byte[] encodeHeaders(Map<String, Object> headers, byte[] payload) {
+		Frame frame = prepareFrame(headers, payload, true);
+		byte[] bytes = new byte[frame.length];
+		frame.writeTo(new Output(bytes, 0));
+		return bytes;
+	}
+
+
+	private Frame prepareFrame(Map<String, Object> headers, byte[] payload, boolean headersOnly) {
 		Assert.notNull(headers, "'headers' is required");
 		Assert.notNull(payload, "'payload' is required");
 
-		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream(128 + payload.length);
-			DataOutputStream output = new DataOutputStream(baos);
+		if (SimpMessageType.HEARTBEAT.equals(SimpMessageHeaderAccessor.getMessageType(headers))) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("Encoding heartbeat");
+			}
+			return new Frame(null, headers, null, null, StompDecoder.HEARTBEAT_PAYLOAD, headersOnly);
+		}
 
-			if (SimpMessageType.HEARTBEAT.equals(SimpMessageHeaderAccessor.getMessageType(headers))) {
-				if (logger.isTraceEnabled()) {
-					logger.trace("Encoding heartbeat");
+		StompCommand command = StompHeaderAccessor.getCommand(headers);
+		Assert.notNull(command, "Missing STOMP command: " + headers);
+
+		@SuppressWarnings("unchecked")
+		Map<String, List<String>> nativeHeaders =
+				(Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+
+		if (logger.isTraceEnabled()) {
+			logger.trace("Encoding STOMP " + command + ", headers=" + nativeHeaders);
+		}
+
+		HeaderBlock headerBlock = null;
+		ConcurrentLruCache<HeaderBlockKey, HeaderBlock> cache = this.headerBlockCache;
+		if (cache != null && nativeHeaders != null && StompCommand.MESSAGE.equals(command)) {
+			headerBlock = cache.get(new HeaderBlockKey(nativeHeaders));
+			if (headerBlock == null) {
+				Map<String, List<String>> snapshot = copy(nativeHeaders);
+				headerBlock = cache.put(new HeaderBlockKey(snapshot), new HeaderBlock(snapshot));
+			}
+		}
+		return new Frame(command, headers, nativeHeaders, headerBlock, payload, headersOnly);
+	}
+
+	private static Map<String, List<String>> copy(Map<String, List<String>> nativeHeaders) {
+		Map<String, List<String>> copy = new LinkedHashMap<String, List<String>>(nativeHeaders.size());
+		for (Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+			copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+		}
+		return copy;
+	}
+
+	private static boolean isVariableHeader(String name) {
+		for (String variableHeader : VARIABLE_HEADERS) {
+			if (variableHeader.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the number of bytes the given header string encodes to.
+	 * <p>See STOMP Spec 1.2:
+	 * <a href="http://stomp.github.io/stomp-specification-1.2.html#Value_Encoding">"Value Encoding"</a>.
+	 */
+	private static int getEncodedLength(String input, boolean escape) {
+		int length = 0;
+		int inputLength = input.length();
+		for (int i = 0; i < inputLength; i++) {
+			char c = input.charAt(i);
+			if (escape && (c == '\\' || c == ':' || c == '\n' || c == '\r')) {
+				length += 2;
+			}
+			else if (c < 0x80) {
+				length += 1;
+			}
+			else if (c < 0x800) {
+				length += 2;
+			}
+			else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				if (Character.isHighSurrogate(c) && i + 1 < inputLength &&
+						Character.isLowSurrogate(input.charAt(i + 1))) {
+					length += 4;
+					i++;
+				}
+				else {
+					// malformed, replaced with '?' as by String.getBytes
+					length += 1;
 				}
-				output.write(StompDecoder.HEARTBEAT_PAYLOAD);
 			}
 			else {
-				StompCommand command = StompHeaderAccessor.getCommand(headers);
-				Assert.notNull(command, "Missing STOMP command: " + headers);
-				output.write(command.toString().getBytes(StompDecoder.UTF8_CHARSET));
-				output.write(LF);
-				writeHeaders(command, headers, payload, output);
-				output.write(LF);
-				writeBody(payload, output);
-				output.write((byte) 0);
+				length += 3;
 			}
-
-			return baos.toByteArray();
 		}
-		catch (IOException ex) {
-			throw new StompConversionException("Failed to encode STOMP frame, headers=" + headers,  ex);
+		return length;
+	}
+
+	private static int getDecimalLength(int value) {
+		int length = 1;
+		while (value >= 10) {
+			value /= 10;
+			length++;
 		}
+		return length;
 	}
 
-	private void writeHeaders(StompCommand command, Map<String, Object> headers, byte[] payload, DataOutputStream output)
-			throws IOException {
 
-		@SuppressWarnings("unchecked")
-		Map<String,List<String>> nativeHeaders =
-				(Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+	/**
+	 * A frame measured in preparation for writing it.
+	 */
+	private static final class Frame {
 
-		if (logger.isTraceEnabled()) {
-			logger.trace("Encoding STOMP " + command + ", headers=" + nativeHeaders);
+		private final StompCommand command;
+
+		private final Map<String, Object> headers;
+
+		private final Map<String, List<String>> nativeHeaders;
+
+		private final HeaderBlock headerBlock;
+
+		private final byte[] payload;
+
+		private final boolean headersOnly;
+
+		private final boolean escape;
+
+		private final int length;
+
+		public Frame(StompCommand command, Map<String, Object> headers, Map<String, List<String>> nativeHeaders,
+				HeaderBlock headerBlock, byte[] payload, boolean headersOnly) {
+
+			this.command = command;
+			this.headers = headers;
+			this.nativeHeaders = nativeHeaders;
+			this.headerBlock = headerBlock;
+			this.payload = payload;
+			this.headersOnly = headersOnly;
+			this.escape = (command != StompCommand.CONNECT && command != StompCommand.CONNECTED);
+			this.length = (command != null ? writeFrame(null) : (headersOnly ? 0 : payload.length));
 		}
 
-		if (nativeHeaders == null) {
-			return;
+		public int writeTo(Output output) {
+			if (this.command == null) {
+				if (this.headersOnly) {
+					return 0;
+				}
+				output.write(this.payload, 0, this.payload.length);
+				return this.payload.length;
+			}
+			return writeFrame(output);
 		}
 
-		boolean shouldEscape = (command != StompCommand.CONNECT && command != StompCommand.CONNECTED);
+		/**
+		 * Write the frame to the given output, or only measure it if the
+		 * output is {@code null}.
+		 * @return the number of bytes of the frame
+		 */
+		private int writeFrame(Output output) {
+			byte[] commandBytes = COMMANDS[this.command.ordinal()];
+			int length = write(output, commandBytes) + writeByte(output, LF);
+			if (this.headerBlock != null) {
+				length += writeHeaderBlock(output);
+			}
+			else if (this.nativeHeaders != null) {
+				length += writeHeaders(output);
+			}
+			if (this.command.requiresContentLength()) {
+				length += write(output, CONTENT_LENGTH);
+				length += writeDecimal(output, this.payload.length);
+				length += writeByte(output, LF);
+			}
+			length += writeByte(output, LF);
+			if (!this.headersOnly) {
+				length += write(output, this.payload);
+				length += writeByte(output, (byte) 0);
+			}
+			return length;
+		}
 
-		for (Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
-			byte[] key = encodeHeaderString(entry.getKey(), shouldEscape);
-			if (command.requiresContentLength() && "content-length".equals(entry.getKey())) {
-				continue;
+		private int writeHeaders(Output output) {
+			int length = 0;
+			for (Entry<String, List<String>> entry : this.nativeHeaders.entrySet()) {
+				if (this.command.requiresContentLength() &&
+						StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(entry.getKey())) {
+					continue;
+				}
+				List<String> values = entry.getValue();
+				if (StompCommand.CONNECT.equals(this.command) &&
+						StompHeaderAccessor.STOMP_PASSCODE_HEADER.equals(entry.getKey())) {
+					values = Collections.singletonList(StompHeaderAccessor.getPasscode(this.headers));
+				}
+				length += writeHeader(output, entry.getKey(), values, this.escape);
+			}
+			return length;
+		}
+
+		private int writeHeaderBlock(Output output) {
+			HeaderBlock block = this.headerBlock;
+			int length = 0;
+			int offset = 0;
+			for (int i = 0; i < block.variableHeaders.length; i++) {
+				length += write(output, block.bytes, offset, block.variableOffsets[i] - offset);
+				offset = block.variableOffsets[i];
+				String name = block.variableHeaders[i];
+				if (!StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(name)) {
+					List<String> values = this.nativeHeaders.get(name);
+					if (values != null) {
+						length += writeHeader(output, name, values, true);
+					}
+				}
 			}
-			List<String> values = entry.getValue();
-			if (StompCommand.CONNECT.equals(command) &&
-					StompHeaderAccessor.STOMP_PASSCODE_HEADER.equals(entry.getKey())) {
-				values = Arrays.asList(StompHeaderAccessor.getPasscode(headers));
+			length += write(output, block.bytes, offset, block.bytes.length - offset);
+			// Variable headers not present when the block was cached
+			for (String name : VARIABLE_HEADERS) {
+				if (!StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(name) &&
+						!block.containsVariableHeader(name)) {
+					List<String> values = this.nativeHeaders.get(name);
+					if (values != null) {
+						length += writeHeader(output, name, values, true);
+					}
+				}
 			}
-			for (String value : values) {
-				output.write(key);
-				output.write(COLON);
-				output.write(encodeHeaderString(value, shouldEscape));
-				output.write(LF);
+			return length;
+		}
+	}
+
+
+	/**
+	 * The encoded headers of a MESSAGE frame, with the positions at which the
+	 * headers that vary from frame to frame are to be inserted.
+	 */
+	private static final class HeaderBlock {
+
+		private final byte[] bytes;
+
+		private final String[] variableHeaders;
+
+		private final int[] variableOffsets;
+
+		public HeaderBlock(Map<String, List<String>> nativeHeaders) {
+			List<String> variableHeaders = new ArrayList<String>(3);
+			int length = 0;
+			for (Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+				if (!isVariableHeader(entry.getKey())) {
+					length += writeHeader(null, entry.getKey(), entry.getValue(), true);
+				}
+			}
+			this.bytes = new byte[length];
+			this.variableOffsets = new int[nativeHeaders.size()];
+			Output output = new Output(this.bytes, 0);
+			int offset = 0;
+			for (Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+				if (isVariableHeader(entry.getKey())) {
+					this.variableOffsets[variableHeaders.size()] = offset;
+					variableHeaders.add(entry.getKey());
+				}
+				else {
+					offset += writeHeader(output, entry.getKey(), entry.getValue(), true);
+				}
 			}
+			this.variableHeaders = variableHeaders.toArray(new String[variableHeaders.size()]);
 		}
-		if (command.requiresContentLength()) {
-			int contentLength = payload.length;
-			output.write("content-length:".getBytes(StompDecoder.UTF8_CHARSET));
-			output.write(Integer.toString(contentLength).getBytes(StompDecoder.UTF8_CHARSET));
-			output.write(LF);
+
+		public boolean containsVariableHeader(String name) {
+			for (String variableHeader : this.variableHeaders) {
+				if (variableHeader.equals(name)) {
+					return true;
+				}
+			}
+			return false;
 		}
 	}
 
-	private byte[] encodeHeaderString(String input, boolean escape) {
-		String inputToUse = (escape ? escape(input) : input);
-		return inputToUse.getBytes(StompDecoder.UTF8_CHARSET);
+
+	/**
+	 * Key for a cached header block: the native headers of a MESSAGE frame,
+	 * compared without the headers that vary from frame to frame.
+	 */
+	private static final class HeaderBlockKey {
+
+		private final Map<String, List<String>> nativeHeaders;
+
+		private final int hashCode;
+
+		public HeaderBlockKey(Map<String, List<String>> nativeHeaders) {
+			this.nativeHeaders = nativeHeaders;
+			int hashCode = 0;
+			for (Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+				if (!isVariableHeader(entry.getKey())) {
+					hashCode += entry.getKey().hashCode() ^ entry.getValue().hashCode();
+				}
+			}
+			this.hashCode = hashCode;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof HeaderBlockKey)) {
+				return false;
+			}
+			HeaderBlockKey otherKey = (HeaderBlockKey) other;
+			if (this.hashCode != otherKey.hashCode) {
+				return false;
+			}
+			return (containsAll(this.nativeHeaders, otherKey.nativeHeaders) &&
+					containsAll(otherKey.nativeHeaders, this.nativeHeaders));
+		}
+
+		private static boolean containsAll(Map<String, List<String>> headers, Map<String, List<String>> other) {
+			for (Entry<String, List<String>> entry : headers.entrySet()) {
+				if (!isVariableHeader(entry.getKey()) && !entry.getValue().equals(other.get(entry.getKey()))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
 	}
 
+
 	/**
-	 * See STOMP Spec 1.2:
-	 * <a href="http://stomp.github.io/stomp-specification-1.2.html#Value_Encoding">"Value Encoding"</a>.
+	 * Write a header with all of its values, or only measure it if the
+	 * output is {@code null}.
 	 */
-	private String escape(String inString) {
-		StringBuilder sb = new StringBuilder(inString.length());
-		for (int i = 0; i < inString.length(); i++) {
-			char c = inString.charAt(i);
-			if (c == '\\') {
-				sb.append("\\\\");
+	private static int writeHeader(Output output, String name, List<String> values, boolean escape) {
+		int length = 0;
+		for (String value : values) {
+			length += writeString(output, name, escape);
+			length += writeByte(output, COLON);
+			length += writeString(output, value, escape);
+			length += writeByte(output, LF);
+		}
+		return length;
+	}
+
+	private static int writeString(Output output, String input, boolean escape) {
+		if (output == null) {
+			return getEncodedLength(input, escape);
+		}
+		int start = output.position();
+		int inputLength = input.length();
+		for (int i = 0; i < inputLength; i++) {
+			char c = input.charAt(i);
+			if (escape && c == '\\') {
+				output.write((byte) '\\');
+				output.write((byte) '\\');
 			}
-			else if (c == ':') {
-				sb.append("\\c");
+			else if (escape && c == ':') {
+				output.write((byte) '\\');
+				output.write((byte) 'c');
 			}
-			else if (c == '\n') {
-				 sb.append("\\n");
+			else if (escape && c == '\n') {
+				output.write((byte) '\\');
+				output.write((byte) 'n');
 			}
-			else if (c == '\r') {
-				sb.append("\\r");
+			else if (escape && c == '\r') {
+				output.write((byte) '\\');
+				output.write((byte) 'r');
+			}
+			else if (c < 0x80) {
+				output.write((byte) c);
+			}
+			else if (c < 0x800) {
+				output.write((byte) (0xc0 | (c >> 6)));
+				output.write((byte) (0x80 | (c & 0x3f)));
+			}
+			else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				if (Character.isHighSurrogate(c) && i + 1 < inputLength &&
+						Character.isLowSurrogate(input.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, input.charAt(++i));
+					output.write((byte) (0xf0 | (codePoint >> 18)));
+					output.write((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+					output.write((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+					output.write((byte) (0x80 | (codePoint & 0x3f)));
+				}
+				else {
+					output.write((byte) '?');
+				}
 			}
 			else {
-				sb.append(c);
+				output.write((byte) (0xe0 | (c >> 12)));
+				output.write((byte) (0x80 | ((c >> 6) & 0x3f)));
+				output.write((byte) (0x80 | (c & 0x3f)));
 			}
 		}
-		return sb.toString();
+		return output.position() - start;
+	}
+
+	private static int writeDecimal(Output output, int value) {
+		int length = getDecimalLength(value);
+		if (output != null) {
+			int divisor = 1;
+			for (int i = 1; i < length; i++) {
+				divisor *= 10;
+			}
+			for (; divisor > 0; divisor /= 10) {
+				output.write((byte) ('0' + (value / divisor) % 10));
+			}
+		}
+		return length;
+	}
+
+	private static int write(Output output, byte[] bytes) {
+		return write(output, bytes, 0, bytes.length);
+	}
+
+	private static int write(Output output, byte[] bytes, int offset, int length) {
+		if (output != null) {
+			output.write(bytes, offset, length);
+		}
+		return length;
+	}
+
+	private static int writeByte(Output output, byte b) {
+		if (output != null) {
+			output.write(b);
+		}
+		return 1;
 	}
 
-	private void writeBody(byte[] payload, DataOutputStream output) throws IOException {
-		output.write(payload);
+
+	/**
+	 * Target of an encoded frame: either a {@code byte[]} or a {@link ByteBuffer}.
+	 */
+	private static final class Output {
+
+		private final byte[] array;
+
+		private final ByteBuffer buffer;
+
+		private int position;
+
+		public Output(byte[] array, int position) {
+			this.array = array;
+			this.buffer = null;
+			this.position = position;
+		}
+
+		public Output(ByteBuffer buffer) {
+			this.array = null;
+			this.buffer = buffer;
+		}
+
+		public void write(byte b) {
+			if (this.array != null) {
+				this.array[this.position] = b;
+			}
+			else {
+				this.buffer.put(b);
+			}
+			this.position++;
+		}
+
+		public void write(byte[] bytes, int offset, int length) {
+			if (this.array != null) {
+				System.arraycopy(bytes, offset, this.array, this.position, length);
+			}
+			else {
+				this.buffer.put(bytes, offset, length);
+			}
+			this.position += length;
+		}
+
+		public int position() {
+			return this.position;
+		}
 	}
 
 }
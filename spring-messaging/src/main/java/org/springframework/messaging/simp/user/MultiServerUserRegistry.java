@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,9 +18,14 @@ package org.springframework.messaging.simp.user;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -33,6 +38,7 @@ import org.springframework.messaging.Message;
 import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
 
 /**
  * A user registry that is a composite of the "local" user registry as well as
@@ -40,6 +46,19 @@ import org.springframework.util.ObjectUtils;
  * {@link UserRegistryMessageHandler} which broadcasts periodically the content
  * of the local registry and receives updates from other servers.
  *
+ * <p>As of 4.3, if {@link #setDeltaBroadcastEnabled delta broadcasts} are
+ * enabled, only the first broadcast of a server contains the full content of
+ * its local registry. Subsequent broadcasts contain the sessions added, changed
+ * or removed since the previous broadcast, along with a sequence number. A server
+ * that misses an update, or that starts after other servers, requests a full
+ * snapshot from the server in question through its own next broadcast. Remote
+ * registries are kept as flat per-session records, with {@link SimpUser},
+ * {@link SimpSession} and {@link SimpSubscription} views created only on access.
+ * Full snapshots use the same format as previous versions.
+ * If the local registry is updated through {@link SimpSessionEvent session events},
+ * the sessions to broadcast are tracked from those events, so that a delta
+ * broadcast does not go through all local sessions.
+ *
  * @author Rossen Stoyanchev
  * @since 4.2
  */
@@ -52,8 +71,26 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 
 	private final SmartApplicationListener listener;
 
-	private final Map<String, UserRegistryDto> remoteRegistries =
-			new ConcurrentHashMap<String, UserRegistryDto>();
+	private final Map<String, RemoteRegistry> remoteRegistries = new ConcurrentHashMap<String, RemoteRegistry>();
+
+	private volatile boolean deltaBroadcastEnabled;
+
+	/** The local sessions as of the last broadcast, guarded by this registry */
+	private Map<String, SessionDto> broadcastSessions;
+
+	/** User names of the local sessions changed since the last broadcast, by session id */
+	private final Map<String, String> changedSessions = new ConcurrentHashMap<String, String>();
+
+	/** Whether local changes were made through events not identifying their session */
+	private volatile boolean untrackedChanges;
+
+	private long broadcastSequence;
+
+	private volatile boolean snapshotRequested;
+
+	/** Ids of the servers to request a snapshot from */
+	private final Set<String> syncRequiredIds =
+			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
 
 	/**
@@ -80,14 +117,35 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 	}
 
 
+	/**
+	 * Whether to broadcast only the sessions changed since the previous broadcast
+	 * rather than a full snapshot of the local registry every time.
+	 * <p>Servers running versions prior to 4.3 understand full snapshots only,
+	 * so this should be enabled once all servers run 4.3 or higher.
+	 * <p>By default this is set to {@code false}.
+	 * @since 4.3
+	 */
+	public void setDeltaBroadcastEnabled(boolean deltaBroadcastEnabled) {
+		this.deltaBroadcastEnabled = deltaBroadcastEnabled;
+	}
+
+	/**
+	 * Whether only changes to the local registry are broadcast.
+	 * @since 4.3
+	 */
+	public boolean isDeltaBroadcastEnabled() {
+		return this.deltaBroadcastEnabled;
+	}
+
+
 	@Override
 	public SimpUser getUser(String userName) {
 		SimpUser user = this.localRegistry.getUser(userName);
 		if (user != null) {
 			return user;
 		}
-		for (UserRegistryDto registry : this.remoteRegistries.values()) {
-			user = registry.getUsers().get(userName);
+		for (RemoteRegistry registry : this.remoteRegistries.values()) {
+			user = registry.getUser(userName);
 			if (user != null) {
 				return user;
 			}
@@ -98,8 +156,8 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 	@Override
 	public Set<SimpUser> getUsers() {
 		Set<SimpUser> result = new HashSet<SimpUser>(this.localRegistry.getUsers());
-		for (UserRegistryDto registry : this.remoteRegistries.values()) {
-			result.addAll(registry.getUsers().values());
+		for (RemoteRegistry registry : this.remoteRegistries.values()) {
+			registry.addUsers(result);
 		}
 		return result;
 	}
@@ -107,8 +165,8 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 	@Override
 	public Set<SimpSubscription> findSubscriptions(SimpSubscriptionMatcher matcher) {
 		Set<SimpSubscription> result = new HashSet<SimpSubscription>(this.localRegistry.findSubscriptions(matcher));
-		for (UserRegistryDto registry : this.remoteRegistries.values()) {
-			result.addAll(registry.findSubscriptions(matcher));
+		for (RemoteRegistry registry : this.remoteRegistries.values()) {
+			registry.addSubscriptions(matcher, result);
 		}
 		return result;
 	}
@@ -126,6 +184,22 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 	@Override
 	public void onApplicationEvent(ApplicationEvent event) {
 		this.listener.onApplicationEvent(event);
+		if (!this.deltaBroadcastEnabled) {
+			return;
+		}
+		if (event instanceof SimpSessionEvent) {
+			SimpSessionEvent sessionEvent = (SimpSessionEvent) event;
+			String sessionId = sessionEvent.getSessionId();
+			if (sessionId != null) {
+				Principal user = sessionEvent.getUser();
+				String name = (user instanceof DestinationUserNameProvider ?
+						((DestinationUserNameProvider) user).getDestinationUserName() :
+						(user != null ? user.getName() : null));
+				this.changedSessions.put(sessionId, (name != null ? name : ""));
+				return;
+			}
+		}
+		this.untrackedChanges = true;
 	}
 
 	@Override
@@ -133,25 +207,122 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 		return this.listener.getOrder();
 	}
 
-	Object getLocalRegistryDto() {
-		return new UserRegistryDto(this.id, this.localRegistry);
+	/**
+	 * Return the next update to broadcast: a full snapshot of the local registry
+	 * unless {@link #setDeltaBroadcastEnabled delta broadcasts} are enabled, in
+	 * which case a snapshot is sent the first time and when requested by another
+	 * server, and otherwise the changes since the previous call.
+	 */
+	synchronized Object getLocalRegistryDto() {
+		UserRegistryDto dto = new UserRegistryDto(this.id, ++this.broadcastSequence);
+		if (!this.deltaBroadcastEnabled || this.broadcastSessions == null || this.snapshotRequested) {
+			this.snapshotRequested = false;
+			this.changedSessions.clear();
+			this.untrackedChanges = false;
+			Set<SimpUser> users = this.localRegistry.getUsers();
+			Map<String, SimpUserDto> userDtos = new HashMap<String, SimpUserDto>(users.size());
+			for (SimpUser user : users) {
+				userDtos.put(user.getName(), new SimpUserDto(user));
+			}
+			dto.setSnapshot(true);
+			dto.setUsers(userDtos);
+			this.broadcastSessions = (this.deltaBroadcastEnabled ? getLocalSessions(users) : null);
+		}
+		else {
+			List<SessionDto> changed = new ArrayList<SessionDto>();
+			List<String> removed = new ArrayList<String>();
+			if (this.untrackedChanges || !(this.localRegistry instanceof SmartApplicationListener)) {
+				// Changes not tracked by session: compare all local sessions
+				this.changedSessions.clear();
+				this.untrackedChanges = false;
+				Map<String, SessionDto> sessions = getLocalSessions(this.localRegistry.getUsers());
+				for (SessionDto session : sessions.values()) {
+					if (!session.equals(this.broadcastSessions.get(session.getSessionId()))) {
+						changed.add(session);
+					}
+				}
+				for (String sessionId : this.broadcastSessions.keySet()) {
+					if (!sessions.containsKey(sessionId)) {
+						removed.add(sessionId);
+					}
+				}
+				this.broadcastSessions = sessions;
+			}
+			else {
+				for (String sessionId : this.changedSessions.keySet()) {
+					// Removed before reading the session: later events mark it changed again
+					String userName = this.changedSessions.remove(sessionId);
+					SessionDto previous = this.broadcastSessions.get(sessionId);
+					if (!StringUtils.hasLength(userName) && previous != null) {
+						userName = previous.getUser();
+					}
+					SessionDto current = getLocalSession(userName, sessionId);
+					if (current != null) {
+						if (!current.equals(previous)) {
+							changed.add(current);
+							this.broadcastSessions.put(sessionId, current);
+						}
+					}
+					else if (previous != null) {
+						removed.add(sessionId);
+						this.broadcastSessions.remove(sessionId);
+					}
+				}
+			}
+			dto.setSessions(changed);
+			dto.setRemovedSessions(removed);
+		}
+		if (!this.syncRequiredIds.isEmpty()) {
+			List<String> syncRequests = new ArrayList<String>(this.syncRequiredIds);
+			this.syncRequiredIds.removeAll(syncRequests);
+			dto.setSyncRequests(syncRequests);
+		}
+		return dto;
+	}
+
+	private static Map<String, SessionDto> getLocalSessions(Set<SimpUser> users) {
+		Map<String, SessionDto> sessions = new HashMap<String, SessionDto>();
+		for (SimpUser user : users) {
+			for (SimpSession session : user.getSessions()) {
+				sessions.put(session.getId(), new SessionDto(user.getName(), session));
+			}
+		}
+		return sessions;
+	}
+
+	private SessionDto getLocalSession(String userName, String sessionId) {
+		if (!StringUtils.hasLength(userName)) {
+			return null;
+		}
+		SimpUser user = this.localRegistry.getUser(userName);
+		SimpSession session = (user != null ? user.getSession(sessionId) : null);
+		return (session != null ? new SessionDto(user.getName(), session) : null);
 	}
 
 	void addRemoteRegistryDto(Message<?> message, MessageConverter converter, long expirationPeriod) {
 		UserRegistryDto registryDto = (UserRegistryDto) converter.fromMessage(message, UserRegistryDto.class);
-		if (registryDto != null && !registryDto.getId().equals(this.id)) {
-			long expirationTime = System.currentTimeMillis() + expirationPeriod;
-			registryDto.setExpirationTime(expirationTime);
-			registryDto.restoreParentReferences();
-			this.remoteRegistries.put(registryDto.getId(), registryDto);
+		if (registryDto == null || registryDto.getId().equals(this.id)) {
+			return;
+		}
+		if (registryDto.getSyncRequests() != null && registryDto.getSyncRequests().contains(this.id)) {
+			this.snapshotRequested = true;
+		}
+		RemoteRegistry registry = this.remoteRegistries.get(registryDto.getId());
+		if (registry == null) {
+			registry = new RemoteRegistry(registryDto.getId());
+			this.remoteRegistries.put(registryDto.getId(), registry);
+		}
+		registry.setExpirationTime(System.currentTimeMillis() + expirationPeriod);
+		if (!registry.update(registryDto)) {
+			this.syncRequiredIds.add(registryDto.getId());
 		}
 	}
 
 	void purgeExpiredRegistries() {
 		long now = System.currentTimeMillis();
-		Iterator<Map.Entry<String, UserRegistryDto>> iterator = this.remoteRegistries.entrySet().iterator();
+		Iterator<Map.Entry<String, RemoteRegistry>> iterator = this.remoteRegistries.entrySet().iterator();
 		while (iterator.hasNext()) {
-			Map.Entry<String, UserRegistryDto> entry = iterator.next();
+			Map.Entry<String, RemoteRegistry> entry = iterator.next();
 			if (now > entry.getValue().getExpirationTime()) {
 				iterator.remove();
 			}
@@ -164,99 +335,232 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 	}
 
 
-	@SuppressWarnings("unused")
-	private static class UserRegistryDto {
+	/**
+	 * The user registry content of a remote server, kept as one compact record
+	 * per session, indexed by session id and by user name. A snapshot replaces
+	 * both indexes at once, while deltas are applied in place, replacing the
+	 * sessions of each affected user at once.
+	 */
+	private static class RemoteRegistry {
 
-		private String id;
+		private final String id;
 
-		private Map<String, SimpUserDto> users;
+		/** Sessions by id, guarded by this registry */
+		private Map<String, RemoteSession> sessions = new HashMap<String, RemoteSession>();
 
-		private long expirationTime;
+		private volatile Map<String, RemoteSession[]> userSessions = new ConcurrentHashMap<String, RemoteSession[]>();
 
-		public UserRegistryDto() {
-		}
+		private long sequence;
 
-		public UserRegistryDto(String id, SimpUserRegistry registry) {
-			this.id = id;
-			Set<SimpUser> users = registry.getUsers();
-			this.users = new HashMap<String, SimpUserDto>(users.size());
-			for (SimpUser user : users) {
-				this.users.put(user.getName(), new SimpUserDto(user));
-			}
-		}
+		private boolean synced;
 
-		public void setId(String id) {
+		private volatile long expirationTime;
+
+		public RemoteRegistry(String id) {
 			this.id = id;
 		}
 
-		public String getId() {
-			return this.id;
+		public void setExpirationTime(long expirationTime) {
+			this.expirationTime = expirationTime;
 		}
 
-		public void setUsers(Map<String, SimpUserDto> users) {
-			this.users = users;
+		public long getExpirationTime() {
+			return this.expirationTime;
 		}
 
-		public Map<String, SimpUserDto> getUsers() {
-			return this.users;
+		/**
+		 * Apply the given update.
+		 * @return {@code false} if the update could not be applied because
+		 * previous updates were missed, {@code true} otherwise
+		 */
+		public synchronized boolean update(UserRegistryDto dto) {
+			if (dto.getUsers() != null) {
+				// Full snapshot, possibly from a server running a previous version
+				Map<String, RemoteSession> sessions = new HashMap<String, RemoteSession>();
+				Map<String, RemoteSession[]> userSessions = new ConcurrentHashMap<String, RemoteSession[]>();
+				for (SimpUserDto user : dto.getUsers().values()) {
+					for (SimpSessionDto session : user.getSessions()) {
+						addSession(sessions, userSessions, new RemoteSession(user.getName(), session));
+					}
+				}
+				this.sessions = sessions;
+				this.userSessions = userSessions;
+				// Previous versions send neither a sequence nor deltas
+				this.synced = dto.isSnapshot();
+			}
+			else if (!this.synced || dto.getSequence() != this.sequence + 1) {
+				this.synced = false;
+				return false;
+			}
+			else {
+				if (dto.getRemovedSessions() != null) {
+					for (String sessionId : dto.getRemovedSessions()) {
+						removeSession(this.sessions, this.userSessions, sessionId);
+					}
+				}
+				if (dto.getSessions() != null) {
+					for (SessionDto session : dto.getSessions()) {
+						addSession(this.sessions, this.userSessions, new RemoteSession(session));
+					}
+				}
+			}
+			this.sequence = dto.getSequence();
+			return true;
 		}
 
-		public Set<SimpSubscription> findSubscriptions(SimpSubscriptionMatcher matcher) {
-			Set<SimpSubscription> result = new HashSet<SimpSubscription>();
-			for (SimpUserDto user : this.users.values()) {
-				for (SimpSessionDto session : user.sessions) {
-					for (SimpSubscription subscription : session.subscriptions) {
-						if (matcher.match(subscription)) {
-							result.add(subscription);
-						}
+		/**
+		 * Add the given session, replacing an existing session with the same id.
+		 */
+		private static void addSession(Map<String, RemoteSession> sessions,
+				Map<String, RemoteSession[]> userSessions, RemoteSession session) {
+
+			RemoteSession previous = sessions.get(session.id);
+			if (previous != null && !previous.userName.equals(session.userName)) {
+				removeSession(sessions, userSessions, session.id);
+				previous = null;
+			}
+			sessions.put(session.id, session);
+			RemoteSession[] existing = userSessions.get(session.userName);
+			RemoteSession[] updated;
+			if (existing == null) {
+				updated = new RemoteSession[] {session};
+			}
+			else if (previous != null) {
+				updated = existing.clone();
+				for (int i = 0; i < updated.length; i++) {
+					if (updated[i] == previous) {
+						updated[i] = session;
 					}
 				}
 			}
-			return result;
+			else {
+				updated = new RemoteSession[existing.length + 1];
+				System.arraycopy(existing, 0, updated, 0, existing.length);
+				updated[existing.length] = session;
+			}
+			userSessions.put(session.userName, updated);
 		}
 
-		public void setExpirationTime(long expirationTime) {
-			this.expirationTime = expirationTime;
+		private static void removeSession(Map<String, RemoteSession> sessions,
+				Map<String, RemoteSession[]> userSessions, String sessionId) {
+
+			RemoteSession session = sessions.remove(sessionId);
+			if (session == null) {
+				return;
+			}
+			RemoteSession[] existing = userSessions.get(session.userName);
+			if (existing == null) {
+				return;
+			}
+			if (existing.length == 1) {
+				userSessions.remove(session.userName);
+				return;
+			}
+			RemoteSession[] updated = new RemoteSession[existing.length - 1];
+			int index = 0;
+			for (RemoteSession candidate : existing) {
+				if (candidate != session && index < updated.length) {
+					updated[index++] = candidate;
+				}
+			}
+			userSessions.put(session.userName, updated);
 		}
 
-		public long getExpirationTime() {
-			return this.expirationTime;
+		public SimpUser getUser(String userName) {
+			RemoteSession[] sessions = this.userSessions.get(userName);
+			return (sessions != null ? new RemoteSimpUser(userName, sessions) : null);
+		}
+
+		public void addUsers(Set<SimpUser> result) {
+			for (Map.Entry<String, RemoteSession[]> entry : this.userSessions.entrySet()) {
+				result.add(new RemoteSimpUser(entry.getKey(), entry.getValue()));
+			}
 		}
 
-		private void restoreParentReferences() {
-			for (SimpUserDto user : this.users.values()) {
-				user.restoreParentReferences();
+		public void addSubscriptions(SimpSubscriptionMatcher matcher, Set<SimpSubscription> result) {
+			for (Map.Entry<String, RemoteSession[]> entry : this.userSessions.entrySet()) {
+				RemoteSimpUser user = new RemoteSimpUser(entry.getKey(), entry.getValue());
+				for (RemoteSession session : entry.getValue()) {
+					if (session.subscriptions.length == 0) {
+						continue;
+					}
+					RemoteSimpSession simpSession = new RemoteSimpSession(user, session);
+					for (int i = 0; i < session.subscriptions.length; i += 2) {
+						SimpSubscription subscription = new RemoteSimpSubscription(
+								simpSession, session.subscriptions[i], session.subscriptions[i + 1]);
+						if (matcher.match(subscription)) {
+							result.add(subscription);
+						}
+					}
+				}
 			}
 		}
+
 		@Override
 		public String toString() {
-			return "id=" + this.id + ", users=" + this.users;
+			return "id=" + this.id + ", users=" + this.userSessions.keySet();
 		}
 	}
 
 
-	@SuppressWarnings("unused")
-	private static class SimpUserDto implements SimpUser {
+	/**
+	 * A remote session with its subscriptions as id and destination pairs.
+	 */
+	private static class RemoteSession {
 
-		private String name;
+		private static final String[] NO_SUBSCRIPTIONS = new String[0];
 
-		private Set<SimpSessionDto> sessions;
+		private final String id;
 
-		public SimpUserDto() {
-			this.sessions = new HashSet<SimpSessionDto>(1);
+		private final String userName;
+
+		private final String[] subscriptions;
+
+		public RemoteSession(SessionDto dto) {
+			this.id = dto.getSessionId();
+			this.userName = dto.getUser();
+			this.subscriptions = toArray(dto.getSubscriptions());
 		}
 
-		public SimpUserDto(SimpUser user) {
-			this.name = user.getName();
-			Set<SimpSession> sessions = user.getSessions();
-			this.sessions = new HashSet<SimpSessionDto>(sessions.size());
-			for (SimpSession session : sessions) {
-				this.sessions.add(new SimpSessionDto(session));
+		public RemoteSession(String userName, SimpSessionDto dto) {
+			this.id = dto.getId();
+			this.userName = userName;
+			Map<String, String> subscriptions = new LinkedHashMap<String, String>();
+			for (SimpSubscriptionDto subscription : dto.getSubscriptions()) {
+				subscriptions.put(subscription.getId(), subscription.getDestination());
 			}
+			this.subscriptions = toArray(subscriptions);
 		}
 
-		public void setName(String name) {
+		private static String[] toArray(Map<String, String> subscriptions) {
+			if (subscriptions == null || subscriptions.isEmpty()) {
+				return NO_SUBSCRIPTIONS;
+			}
+			String[] result = new String[subscriptions.size() * 2];
+			int index = 0;
+			for (Map.Entry<String, String> entry : subscriptions.entrySet()) {
+				result[index++] = entry.getKey();
+				result[index++] = entry.getValue();
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return "id=" + this.id + ", user=" + this.userName + ", subscriptions=" + (this.subscriptions.length / 2);
+		}
+	}
+
+
+	private static class RemoteSimpUser implements SimpUser {
+
+		private final String name;
+
+		private final RemoteSession[] sessions;
+
+		public RemoteSimpUser(String name, RemoteSession[] sessions) {
 			this.name = name;
+			this.sessions = sessions;
 		}
 
 		@Override
@@ -266,33 +570,26 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 
 		@Override
 		public boolean hasSessions() {
-			return !this.sessions.isEmpty();
+			return (this.sessions.length > 0);
 		}
 
 		@Override
-		public SimpSessionDto getSession(String sessionId) {
-			for (SimpSessionDto session : this.sessions) {
-				if (session.getId().equals(sessionId)) {
-					return session;
+		public SimpSession getSession(String sessionId) {
+			for (RemoteSession session : this.sessions) {
+				if (session.id.equals(sessionId)) {
+					return new RemoteSimpSession(this, session);
 				}
 			}
 			return null;
 		}
 
-		public void setSessions(Set<SimpSessionDto> sessions) {
-			this.sessions.addAll(sessions);
-		}
-
 		@Override
 		public Set<SimpSession> getSessions() {
-			return new HashSet<SimpSession>(this.sessions);
-		}
-
-		private void restoreParentReferences() {
-			for (SimpSessionDto session : this.sessions) {
-				session.setUser(this);
-				session.restoreParentReferences();
+			Set<SimpSession> result = new HashSet<SimpSession>(this.sessions.length);
+			for (RemoteSession session : this.sessions) {
+				result.add(new RemoteSimpSession(this, session));
 			}
+			return result;
 		}
 
 		@Override
@@ -307,125 +604,258 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 
 		@Override
 		public String toString() {
-			return "name=" + this.name + ", sessions=" + this.sessions;
+			return "name=" + this.name + ", sessions=" + this.sessions.length;
 		}
 	}
 
 
-	@SuppressWarnings("unused")
-	private static class SimpSessionDto implements SimpSession {
+	private static class RemoteSimpSession implements SimpSession {
 
-		private String id;
+		private final RemoteSimpUser user;
 
-		private SimpUserDto user;
+		private final RemoteSession session;
 
-		private final Set<SimpSubscriptionDto> subscriptions;
+		public RemoteSimpSession(RemoteSimpUser user, RemoteSession session) {
+			this.user = user;
+			this.session = session;
+		}
 
-		public SimpSessionDto() {
-			this.subscriptions = new HashSet<SimpSubscriptionDto>(4);
+		@Override
+		public String getId() {
+			return this.session.id;
 		}
 
-		public SimpSessionDto(SimpSession session) {
-			this.id = session.getId();
-			Set<SimpSubscription> subscriptions = session.getSubscriptions();
-			this.subscriptions = new HashSet<SimpSubscriptionDto>(subscriptions.size());
-			for (SimpSubscription subscription : subscriptions) {
-				this.subscriptions.add(new SimpSubscriptionDto(subscription));
-			}
+		@Override
+		public SimpUser getUser() {
+			return this.user;
 		}
 
-		public void setId(String id) {
-			this.id = id;
+		@Override
+		public Set<SimpSubscription> getSubscriptions() {
+			String[] subscriptions = this.session.subscriptions;
+			Set<SimpSubscription> result = new HashSet<SimpSubscription>(subscriptions.length / 2);
+			for (int i = 0; i < subscriptions.length; i += 2) {
+				result.add(new RemoteSimpSubscription(this, subscriptions[i], subscriptions[i + 1]));
+			}
+			return result;
 		}
 
 		@Override
-		public String getId() {
-			return this.id;
+		public boolean equals(Object other) {
+			return (this == other ||
+					(other instanceof SimpSession && getId().equals(((SimpSession) other).getId())));
 		}
 
-		public void setUser(SimpUserDto user) {
-			this.user = user;
+		@Override
+		public int hashCode() {
+			return getId().hashCode();
 		}
 
 		@Override
-		public SimpUserDto getUser() {
-			return this.user;
+		public String toString() {
+			return this.session.toString();
 		}
+	}
 
-		public void setSubscriptions(Set<SimpSubscriptionDto> subscriptions) {
-			this.subscriptions.addAll(subscriptions);
+
+	private static class RemoteSimpSubscription implements SimpSubscription {
+
+		private final RemoteSimpSession session;
+
+		private final String id;
+
+		private final String destination;
+
+		public RemoteSimpSubscription(RemoteSimpSession session, String id, String destination) {
+			this.session = session;
+			this.id = id;
+			this.destination = destination;
 		}
 
 		@Override
-		public Set<SimpSubscription> getSubscriptions() {
-			return new HashSet<SimpSubscription>(this.subscriptions);
+		public String getId() {
+			return this.id;
 		}
 
-		private void restoreParentReferences() {
-			for (SimpSubscriptionDto subscription : this.subscriptions) {
-				subscription.setSession(this);
-			}
+		@Override
+		public SimpSession getSession() {
+			return this.session;
+		}
+
+		@Override
+		public String getDestination() {
+			return this.destination;
 		}
 
 		@Override
 		public boolean equals(Object other) {
-			return (this == other || (other instanceof SimpSession && this.id.equals(((SimpSession) other).getId())));
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof SimpSubscription)) {
+				return false;
+			}
+			SimpSubscription otherSubscription = (SimpSubscription) other;
+			return (ObjectUtils.nullSafeEquals(getSession(), otherSubscription.getSession()) &&
+					this.id.equals(otherSubscription.getId()));
 		}
 
 		@Override
 		public int hashCode() {
-			return this.id.hashCode();
+			return this.id.hashCode() * 31 + ObjectUtils.nullSafeHashCode(getSession());
 		}
 
 		@Override
 		public String toString() {
-			return "id=" + this.id + ", subscriptions=" + this.subscriptions;
+			return "destination=" + this.destination;
 		}
 	}
 
 
+	/**
+	 * A broadcast of user registry content: either a full snapshot, in the
+	 * format of previous versions, or the sessions added, changed and removed
+	 * since the previous broadcast.
+	 */
 	@SuppressWarnings("unused")
-	private static class SimpSubscriptionDto implements SimpSubscription {
+	private static class UserRegistryDto {
 
 		private String id;
 
-		private SimpSessionDto session;
+		private long sequence;
 
-		private String destination;
+		private boolean snapshot;
 
-		public SimpSubscriptionDto() {
+		/** Ids of the servers asked to send a full snapshot */
+		private List<String> syncRequests;
+
+		private List<SessionDto> sessions;
+
+		private List<String> removedSessions;
+
+		/** Full snapshot, as also broadcast by previous versions */
+		private Map<String, SimpUserDto> users;
+
+		public UserRegistryDto() {
 		}
 
-		public SimpSubscriptionDto(SimpSubscription subscription) {
-			this.id = subscription.getId();
-			this.destination = subscription.getDestination();
+		public UserRegistryDto(String id, long sequence) {
+			this.id = id;
+			this.sequence = sequence;
 		}
 
 		public void setId(String id) {
 			this.id = id;
 		}
 
-		@Override
 		public String getId() {
 			return this.id;
 		}
 
-		public void setSession(SimpSessionDto session) {
-			this.session = session;
+		public void setSequence(long sequence) {
+			this.sequence = sequence;
 		}
 
-		@Override
-		public SimpSessionDto getSession() {
-			return this.session;
+		public long getSequence() {
+			return this.sequence;
 		}
 
-		public void setDestination(String destination) {
-			this.destination = destination;
+		public void setSnapshot(boolean snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		public boolean isSnapshot() {
+			return this.snapshot;
+		}
+
+		public void setSyncRequests(List<String> syncRequests) {
+			this.syncRequests = syncRequests;
+		}
+
+		public List<String> getSyncRequests() {
+			return this.syncRequests;
+		}
+
+		public void setSessions(List<SessionDto> sessions) {
+			this.sessions = sessions;
+		}
+
+		public List<SessionDto> getSessions() {
+			return this.sessions;
+		}
+
+		public void setRemovedSessions(List<String> removedSessions) {
+			this.removedSessions = removedSessions;
+		}
+
+		public List<String> getRemovedSessions() {
+			return this.removedSessions;
+		}
+
+		public void setUsers(Map<String, SimpUserDto> users) {
+			this.users = users;
+		}
+
+		public Map<String, SimpUserDto> getUsers() {
+			return this.users;
 		}
 
 		@Override
-		public String getDestination() {
-			return this.destination;
+		public String toString() {
+			return "id=" + this.id + ", sequence=" + this.sequence + ", snapshot=" + this.snapshot +
+					", users=" + this.users + ", sessions=" + this.sessions +
+					", removedSessions=" + this.removedSessions;
+		}
+	}
+
+
+	/**
+	 * A session along with the name of its user and its subscriptions.
+	 */
+	@SuppressWarnings("unused")
+	private static class SessionDto {
+
+		private String sessionId;
+
+		private String user;
+
+		private Map<String, String> subscriptions;
+
+		public SessionDto() {
+		}
+
+		public SessionDto(String user, SimpSession session) {
+			this.sessionId = session.getId();
+			this.user = user;
+			Set<SimpSubscription> subscriptions = session.getSubscriptions();
+			this.subscriptions = new HashMap<String, String>(subscriptions.size());
+			for (SimpSubscription subscription : subscriptions) {
+				this.subscriptions.put(subscription.getId(), subscription.getDestination());
+			}
+		}
+
+		public void setSessionId(String sessionId) {
+			this.sessionId = sessionId;
+		}
+
+		public String getSessionId() {
+			return this.sessionId;
+		}
+
+		public void setUser(String user) {
+			this.user = user;
+		}
+
+		public String getUser() {
+			return this.user;
+		}
+
+		public void setSubscriptions(Map<String, String> subscriptions) {
+			this.subscriptions = subscriptions;
+		}
+
+		public Map<String, String> getSubscriptions() {
+			return this.subscriptions;
 		}
 
 		@Override
@@ -433,22 +863,135 @@ public class MultiServerUserRegistry implements SimpUserRegistry, SmartApplicati
 			if (this == other) {
 				return true;
 			}
-			if (!(other instanceof SimpSubscription)) {
+			if (!(other instanceof SessionDto)) {
 				return false;
 			}
-			SimpSubscription otherSubscription = (SimpSubscription) other;
-			return (ObjectUtils.nullSafeEquals(getSession(), otherSubscription.getSession()) &&
-					this.id.equals(otherSubscription.getId()));
+			SessionDto otherSession = (SessionDto) other;
+			return (ObjectUtils.nullSafeEquals(this.sessionId, otherSession.sessionId) &&
+					ObjectUtils.nullSafeEquals(this.user, otherSession.user) &&
+					ObjectUtils.nullSafeEquals(this.subscriptions, otherSession.subscriptions));
 		}
 
 		@Override
 		public int hashCode() {
-			return this.id.hashCode() * 31 + ObjectUtils.nullSafeHashCode(getSession());
+			return ObjectUtils.nullSafeHashCode(this.sessionId);
 		}
 
 		@Override
 		public String toString() {
-			return "destination=" + this.destination;
+			return "id=" + this.sessionId + ", user=" + this.user + ", subscriptions=" + this.subscriptions;
+		}
+	}
+
+
+	/**
+	 * A user in a full snapshot.
+	 */
+	@SuppressWarnings("unused")
+	private static class SimpUserDto {
+
+		private String name;
+
+		private Set<SimpSessionDto> sessions = new HashSet<SimpSessionDto>(1);
+
+		public SimpUserDto() {
+		}
+
+		public SimpUserDto(SimpUser user) {
+			this.name = user.getName();
+			for (SimpSession session : user.getSessions()) {
+				this.sessions.add(new SimpSessionDto(session));
+			}
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setSessions(Set<SimpSessionDto> sessions) {
+			this.sessions = sessions;
+		}
+
+		public Set<SimpSessionDto> getSessions() {
+			return this.sessions;
+		}
+	}
+
+
+	/**
+	 * A session in a full snapshot.
+	 */
+	@SuppressWarnings("unused")
+	private static class SimpSessionDto {
+
+		private String id;
+
+		private Set<SimpSubscriptionDto> subscriptions = new HashSet<SimpSubscriptionDto>(4);
+
+		public SimpSessionDto() {
+		}
+
+		public SimpSessionDto(SimpSession session) {
+			this.id = session.getId();
+			for (SimpSubscription subscription : session.getSubscriptions()) {
+				this.subscriptions.add(new SimpSubscriptionDto(subscription));
+			}
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public void setSubscriptions(Set<SimpSubscriptionDto> subscriptions) {
+			this.subscriptions = subscriptions;
+		}
+
+		public Set<SimpSubscriptionDto> getSubscriptions() {
+			return this.subscriptions;
+		}
+	}
+
+
+	/**
+	 * A subscription in a full snapshot.
+	 */
+	@SuppressWarnings("unused")
+	private static class SimpSubscriptionDto {
+
+		private String id;
+
+		private String destination;
+
+		public SimpSubscriptionDto() {
+		}
+
+		public SimpSubscriptionDto(SimpSubscription subscription) {
+			this.id = subscription.getId();
+			this.destination = subscription.getDestination();
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public void setDestination(String destination) {
+			this.destination = destination;
+		}
+
+		public String getDestination() {
+			return this.destination;
 		}
 	}
 
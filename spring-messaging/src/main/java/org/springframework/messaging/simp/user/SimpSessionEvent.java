@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.user;
+
+import java.security.Principal;
+
+/**
+ * Contract for an application event about a single client session, e.g. when
+ * it connects, subscribes or disconnects, through which a {@link SimpUserRegistry}
+ * is kept up to date.
+ *
+ * <p>Used by {@link MultiServerUserRegistry} to find out which local sessions
+ * changed without going through all of them.
+ *
+ * @author agent
+ * @since 4.3
+ */
+public interface SimpSessionEvent {
+
+	/**
+	 * Return the id of the session the event is about.
+	 */
+	String getSessionId();
+
+	/**
+	 * Return the user of the session, or {@code null} if not known.
+	 */
+	Principal getUser();
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.messaging.support;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executor;
 
@@ -37,7 +38,8 @@ public class ExecutorSubscribableChannel extends AbstractSubscribableChannel {
 
 	private final Executor executor;
 
-	private final List<ExecutorChannelInterceptor> executorInterceptors = new ArrayList<ExecutorChannelInterceptor>(4);
+	/* Replaced, never modified, since send tasks iterate over it concurrently */
+	private volatile List<ExecutorChannelInterceptor> executorInterceptors = Collections.emptyList();
 
 
 	/**
@@ -66,20 +68,43 @@ public class ExecutorSubscribableChannel extends AbstractSubscribableChannel {
 	@Override
 	public void setInterceptors(List<ChannelInterceptor> interceptors) {
 		super.setInterceptors(interceptors);
-		this.executorInterceptors.clear();
-		for (ChannelInterceptor interceptor : interceptors) {
-			if (interceptor instanceof ExecutorChannelInterceptor) {
-				this.executorInterceptors.add((ExecutorChannelInterceptor) interceptor);
-			}
-		}
+		updateExecutorInterceptors();
 	}
 
 	@Override
 	public void addInterceptor(ChannelInterceptor interceptor) {
 		super.addInterceptor(interceptor);
-		if (interceptor instanceof ExecutorChannelInterceptor) {
-			this.executorInterceptors.add((ExecutorChannelInterceptor) interceptor);
+		updateExecutorInterceptors();
+	}
+
+	@Override
+	public void addInterceptor(int index, ChannelInterceptor interceptor) {
+		super.addInterceptor(index, interceptor);
+		updateExecutorInterceptors();
+	}
+
+	@Override
+	public boolean removeInterceptor(ChannelInterceptor interceptor) {
+		boolean removed = super.removeInterceptor(interceptor);
+		updateExecutorInterceptors();
+		return removed;
+	}
+
+	@Override
+	public ChannelInterceptor removeInterceptor(int index) {
+		ChannelInterceptor removed = super.removeInterceptor(index);
+		updateExecutorInterceptors();
+		return removed;
+	}
+
+	private void updateExecutorInterceptors() {
+		List<ExecutorChannelInterceptor> executorInterceptors = new ArrayList<ExecutorChannelInterceptor>(4);
+		for (ChannelInterceptor interceptor : getInterceptors()) {
+			if (interceptor instanceof ExecutorChannelInterceptor) {
+				executorInterceptors.add((ExecutorChannelInterceptor) interceptor);
+			}
 		}
+		this.executorInterceptors = executorInterceptors;
 	}
 
 
@@ -101,17 +126,20 @@ public class ExecutorSubscribableChannel extends AbstractSubscribableChannel {
 	/**
 	 * Invoke a MessageHandler with ExecutorChannelInterceptor's.
 	 */
-	private class SendTask implements MessageHandlingRunnable {
+	class SendTask implements MessageHandlingRunnable {
 
 		private final Message<?> inputMessage;
 
 		private final MessageHandler messageHandler;
 
+		private final List<ExecutorChannelInterceptor> interceptors;
+
 		private int interceptorIndex = -1;
 
 		public SendTask(Message<?> message, MessageHandler messageHandler) {
 			this.inputMessage = message;
 			this.messageHandler = messageHandler;
+			this.interceptors = executorInterceptors;
 		}
 
 		@Override
@@ -151,7 +179,7 @@ public class ExecutorSubscribableChannel extends AbstractSubscribableChannel {
 		}
 
 		private Message<?> applyBeforeHandle(Message<?> message) {
-			for (ExecutorChannelInterceptor interceptor : executorInterceptors) {
+			for (ExecutorChannelInterceptor interceptor : this.interceptors) {
 				message = interceptor.beforeHandle(message, ExecutorSubscribableChannel.this, this.messageHandler);
 				if (message == null) {
 					String name = interceptor.getClass().getSimpleName();
@@ -168,7 +196,7 @@ public class ExecutorSubscribableChannel extends AbstractSubscribableChannel {
 
 		private void triggerAfterMessageHandled(Message<?> message, Exception ex) {
 			for (int i = this.interceptorIndex; i >= 0; i--) {
-				ExecutorChannelInterceptor interceptor = executorInterceptors.get(i);
+				ExecutorChannelInterceptor interceptor = this.interceptors.get(i);
 				try {
 					interceptor.afterMessageHandled(message, ExecutorSubscribableChannel.this, this.messageHandler, ex);
 				}
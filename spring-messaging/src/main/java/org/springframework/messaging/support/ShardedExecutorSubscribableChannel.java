@@ -0,0 +1,479 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.NamedThreadLocal;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.Assert;
+
+/**
+ * {@link ExecutorSubscribableChannel} variant that preserves the order of
+ * messages sharing the same key, e.g. the messages of one WebSocket session.
+ *
+ * <p>Messages are assigned to one of a fixed number of lanes by the hash of
+ * their key, by default the {@link #DEFAULT_SHARD_KEY_HEADER simpSessionId}
+ * header. Each lane has a bounded queue of its own and is drained by at most one
+ * thread of the executor at a time, so messages with the same key are handled
+ * one after the other in the order they were sent, while messages with keys
+ * assigned to different lanes are handled in parallel. Spreading messages over
+ * several queues also avoids contention on the single queue of the executor.
+ *
+ * <p>If the queue of a lane is full, the {@link OverflowPolicy} determines
+ * whether the sender waits for space (the default, honoring the send timeout),
+ * or whether the new or the oldest queued message is discarded.
+ *
+ * <p>Messages without a key, as well as all messages if no executor has been
+ * specified, are sent as with {@code ExecutorSubscribableChannel}.
+ *
+ * <p>For every lane, the current and maximum number of queued messages as well
+ * as the number of handled and discarded messages are exposed through
+ * {@link #getLaneStats()}.
+ *
+ * @author agent
+ * @since 4.3
+ * @see #setShardKeyHeader
+ * @see #setLaneCapacity
+ * @see #setOverflowPolicy
+ */
+public class ShardedExecutorSubscribableChannel extends ExecutorSubscribableChannel {
+
+	/**
+	 * Default header used as shard key: the session id header.
+	 * @see org.springframework.messaging.simp.SimpMessageHeaderAccessor#SESSION_ID_HEADER
+	 */
+	public static final String DEFAULT_SHARD_KEY_HEADER = "simpSessionId";
+
+	/** Default capacity of each lane's queue: 1024 */
+	public static final int DEFAULT_LANE_CAPACITY = 1024;
+
+	/** Maximum number of messages to handle before handing the executor thread back */
+	private static final int MAX_DRAIN_COUNT = 64;
+
+	private static final ThreadLocal<Lane> currentLane =
+			new NamedThreadLocal<Lane>("Current ShardedExecutorSubscribableChannel lane");
+
+
+	private final Lane[] lanes;
+
+	private String shardKeyHeader = DEFAULT_SHARD_KEY_HEADER;
+
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+
+	/**
+	 * Create a new channel sending messages via the given executor, with as
+	 * many lanes as there are available processors.
+	 * @param executor the executor used to send messages
+	 */
+	public ShardedExecutorSubscribableChannel(Executor executor) {
+		this(executor, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a new channel sending messages via the given executor.
+	 * @param executor the executor used to send messages, or {@code null}
+	 * to send all messages in the caller's thread
+	 * @param laneCount the number of lanes to spread keys over; typically
+	 * no more than the number of threads of the executor
+	 */
+	public ShardedExecutorSubscribableChannel(Executor executor, int laneCount) {
+		super(executor);
+		Assert.isTrue(laneCount > 0, "Lane count must be greater than 0");
+		this.lanes = new Lane[laneCount];
+		for (int i = 0; i < laneCount; i++) {
+			this.lanes[i] = new Lane(i, DEFAULT_LANE_CAPACITY);
+		}
+	}
+
+
+	/**
+	 * Set the name of the header whose value determines the lane of a message.
+	 * Default is {@link #DEFAULT_SHARD_KEY_HEADER "simpSessionId"}.
+	 * @see #getShardKey
+	 */
+	public void setShardKeyHeader(String shardKeyHeader) {
+		Assert.hasText(shardKeyHeader, "Shard key header must not be empty");
+		this.shardKeyHeader = shardKeyHeader;
+	}
+
+	/**
+	 * Return the name of the header whose value determines the lane of a message.
+	 */
+	public String getShardKeyHeader() {
+		return this.shardKeyHeader;
+	}
+
+	/**
+	 * Set the maximum number of messages that may be queued for each lane.
+	 * Default is {@link #DEFAULT_LANE_CAPACITY 1024}.
+	 * <p>Must be configured before the first message is sent.
+	 */
+	public void setLaneCapacity(int laneCapacity) {
+		Assert.isTrue(laneCapacity > 0, "Lane capacity must be greater than 0");
+		for (int i = 0; i < this.lanes.length; i++) {
+			Assert.state(this.lanes[i].getQueueSize() == 0, "Cannot change lane capacity while messages are queued");
+			this.lanes[i] = new Lane(i, laneCapacity);
+		}
+	}
+
+	/**
+	 * Return the maximum number of messages that may be queued for each lane.
+	 */
+	public int getLaneCapacity() {
+		return this.lanes[0].capacity;
+	}
+
+	/**
+	 * Return the number of lanes that keys are spread over.
+	 */
+	public int getLaneCount() {
+		return this.lanes.length;
+	}
+
+	/**
+	 * Set the policy to apply when the queue of a lane is full.
+	 * Default is {@link OverflowPolicy#BLOCK}.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		Assert.notNull(overflowPolicy, "OverflowPolicy must not be null");
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Return the policy to apply when the queue of a lane is full.
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return this.overflowPolicy;
+	}
+
+	/**
+	 * Return the statistics of each lane, in lane order.
+	 */
+	public List<LaneStats> getLaneStats() {
+		List<LaneStats> stats = new ArrayList<LaneStats>(this.lanes.length);
+		for (Lane lane : this.lanes) {
+			stats.add(lane);
+		}
+		return stats;
+	}
+
+
+	@Override
+	public boolean sendInternal(Message<?> message, long timeout) {
+		Object key = (getExecutor() != null ? getShardKey(message) : null);
+		if (key == null) {
+			return super.sendInternal(message, timeout);
+		}
+		Lane lane = this.lanes[getLaneIndex(key)];
+		boolean sent = true;
+		for (MessageHandler handler : getSubscribers()) {
+			if (!lane.enqueue(new SendTask(message, handler), timeout)) {
+				sent = false;
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Determine the key whose messages need to be handled in order.
+	 * <p>The default implementation returns the value of the
+	 * {@link #setShardKeyHeader shard key header}.
+	 * @param message the message to send
+	 * @return the key, or {@code null} if the message may be handled
+	 * independently of any other message
+	 */
+	protected Object getShardKey(Message<?> message) {
+		return message.getHeaders().get(this.shardKeyHeader);
+	}
+
+	private int getLaneIndex(Object key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % this.lanes.length;
+	}
+
+	@Override
+	public String toString() {
+		int queued = 0;
+		long handled = 0;
+		long discarded = 0;
+		for (Lane lane : this.lanes) {
+			queued += lane.getQueueSize();
+			handled += lane.getHandledCount();
+			discarded += lane.getDiscardCount();
+		}
+		return getClass().getSimpleName() + "[" + getBeanName() + ", lanes=" + this.lanes.length +
+				", queued=" + queued + ", handled=" + handled + ", discarded=" + discarded + "]";
+	}
+
+
+	/**
+	 * What to do when a message cannot be queued because the queue of its
+	 * lane is full.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * Wait for space in the queue of the lane, applying backpressure to the
+		 * sender, for no longer than the send timeout. If the message is sent
+		 * from a thread that is draining the same lane, it is appended to an
+		 * unbounded overflow list behind the queue instead, to avoid waiting
+		 * for itself. Until that list has been drained, further messages for
+		 * the lane are appended to it as well, in order to keep their order.
+		 */
+		BLOCK,
+
+		/**
+		 * Drop the message, counting it as discarded and returning {@code false}
+		 * from the send operation.
+		 */
+		DISCARD,
+
+		/**
+		 * Drop the oldest message queued in the lane to make room for the
+		 * message, counting it as discarded.
+		 */
+		DISCARD_OLDEST
+	}
+
+
+	/**
+	 * Statistics for a single lane.
+	 */
+	public interface LaneStats {
+
+		/**
+		 * Return the index of the lane.
+		 */
+		int getIndex();
+
+		/**
+		 * Return the number of messages currently waiting in the lane's queue.
+		 */
+		int getQueueSize();
+
+		/**
+		 * Return the largest number of messages that have been waiting in the
+		 * lane's queue at the same time.
+		 */
+		int getMaxQueueSize();
+
+		/**
+		 * Return the number of messages handled from the lane.
+		 */
+		long getHandledCount();
+
+		/**
+		 * Return the number of messages discarded because the lane's queue was full.
+		 */
+		long getDiscardCount();
+	}
+
+
+	/**
+	 * Queue and statistics for a single lane. At most one thread at a time
+	 * drains the queue, followed by the overflow list, so messages are handled
+	 * in the order they were queued.
+	 */
+	private class Lane implements Runnable, LaneStats {
+
+		private final int index;
+
+		private final int capacity;
+
+		private final BlockingQueue<SendTask> queue;
+
+		private final Queue<SendTask> overflow = new ConcurrentLinkedQueue<SendTask>();
+
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		private final AtomicInteger maxQueueSize = new AtomicInteger();
+
+		private final AtomicLong handledCount = new AtomicLong();
+
+		private final AtomicLong discardCount = new AtomicLong();
+
+		public Lane(int index, int capacity) {
+			this.index = index;
+			this.capacity = capacity;
+			this.queue = new LinkedBlockingQueue<SendTask>(capacity);
+		}
+
+		public boolean enqueue(SendTask task, long timeout) {
+			if (!this.overflow.isEmpty()) {
+				// Stay behind messages that overflowed while sending from the lane's own thread
+				this.overflow.add(task);
+			}
+			else if (!this.queue.offer(task)) {
+				switch (getOverflowPolicy()) {
+					case DISCARD:
+						discard(task);
+						return false;
+					case DISCARD_OLDEST:
+						while (!this.queue.offer(task)) {
+							SendTask oldest = this.queue.poll();
+							if (oldest != null) {
+								discard(oldest);
+							}
+						}
+						break;
+					default:
+						if (currentLane.get() == this) {
+							// Handler sending to its own lane - can't wait for the lane to drain.
+							this.overflow.add(task);
+							break;
+						}
+						if (!put(task, timeout)) {
+							discard(task);
+							return false;
+						}
+				}
+			}
+			updateMaxQueueSize();
+			schedule();
+			return true;
+		}
+
+		private boolean put(SendTask task, long timeout) {
+			try {
+				if (timeout < 0) {
+					this.queue.put(task);
+					return true;
+				}
+				return this.queue.offer(task, timeout, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		private void discard(SendTask task) {
+			this.discardCount.incrementAndGet();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Lane " + this.index + " full - discarding " + task.getMessage() +
+						" for " + task.getMessageHandler());
+			}
+		}
+
+		private void updateMaxQueueSize() {
+			int size = getQueueSize();
+			int max = this.maxQueueSize.get();
+			while (size > max && !this.maxQueueSize.compareAndSet(max, size)) {
+				max = this.maxQueueSize.get();
+			}
+		}
+
+		private void schedule() {
+			if ((!this.queue.isEmpty() || !this.overflow.isEmpty()) && this.scheduled.compareAndSet(false, true)) {
+				try {
+					getExecutor().execute(this);
+				}
+				catch (RejectedExecutionException ex) {
+					// Executor saturated or shut down - drain in the calling thread.
+					run();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			Lane previous = currentLane.get();
+			currentLane.set(this);
+			try {
+				SendTask task;
+				int count = 0;
+				while (count++ < MAX_DRAIN_COUNT && (task = poll()) != null) {
+					handle(task);
+				}
+			}
+			finally {
+				currentLane.set(previous);
+				this.scheduled.set(false);
+			}
+			// Reschedule if more messages arrived or remained after the batch
+			schedule();
+		}
+
+		private SendTask poll() {
+			SendTask task = this.queue.poll();
+			return (task != null ? task : this.overflow.poll());
+		}
+
+		private void handle(SendTask task) {
+			try {
+				task.run();
+			}
+			catch (RuntimeException ex) {
+				logger.error("Failed to handle message in lane " + this.index, ex);
+			}
+			catch (Error err) {
+				logger.error("Failed to handle message in lane " + this.index, err);
+			}
+			finally {
+				this.handledCount.incrementAndGet();
+			}
+		}
+
+		@Override
+		public int getIndex() {
+			return this.index;
+		}
+
+		@Override
+		public int getQueueSize() {
+			return this.queue.size() + this.overflow.size();
+		}
+
+		@Override
+		public int getMaxQueueSize() {
+			return this.maxQueueSize.get();
+		}
+
+		@Override
+		public long getHandledCount() {
+			return this.handledCount.get();
+		}
+
+		@Override
+		public long getDiscardCount() {
+			return this.discardCount.get();
+		}
+
+		@Override
+		public String toString() {
+			return "LaneStats[index=" + this.index + ", queued=" + getQueueSize() +
+					", maxQueued=" + getMaxQueueSize() + ", handled=" + getHandledCount() +
+					", discarded=" + getDiscardCount() + "]";
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,8 +20,14 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 
 import org.junit.Before;
@@ -33,11 +39,13 @@ import org.mockito.MockitoAnnotations;
 
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.SubscribableChannel;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.TestPrincipal;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.scheduling.TaskScheduler;
 
@@ -101,6 +109,25 @@ public class SimpleBrokerMessageHandlerTests {
 		assertTrue(messageCaptured("sess2", "sub3", "/bar"));
 	}
 
+	@Test
+	public void broadcastHeader() {
+		this.messageHandler.start();
+
+		this.messageHandler.handleMessage(createSubscriptionMessage("sess1", "sub1", "/foo"));
+		this.messageHandler.handleMessage(createSubscriptionMessage("sess2", "sub1", "/foo"));
+		this.messageHandler.handleMessage(createSubscriptionMessage("sess1", "sub2", "/bar"));
+
+		this.messageHandler.handleMessage(createMessage("/foo", "message1"));
+		this.messageHandler.handleMessage(createMessage("/bar", "message2"));
+
+		verify(this.clientOutboundChannel, times(3)).send(this.messageCaptor.capture());
+		List<Message<?>> messages = this.messageCaptor.getAllValues();
+		Object broadcast = messages.get(0).getHeaders().get(SimpMessageHeaderAccessor.BROADCAST_HEADER);
+		assertNotNull(broadcast);
+		assertSame(broadcast, messages.get(1).getHeaders().get(SimpMessageHeaderAccessor.BROADCAST_HEADER));
+		assertNull(messages.get(2).getHeaders().get(SimpMessageHeaderAccessor.BROADCAST_HEADER));
+	}
+
 	@Test
 	public void subcribeDisconnectPublish() {
 
@@ -298,6 +325,88 @@ public class SimpleBrokerMessageHandlerTests {
 				messages.get(0).getHeaders().get(SimpMessageHeaderAccessor.MESSAGE_TYPE_HEADER));
 	}
 
+	@Test
+	public void conflatedDestinations() {
+		ManualExecutor executor = new ManualExecutor();
+		List<Object> payloads = new ArrayList<Object>();
+		SimpleBrokerMessageHandler handler = createConflatingHandler(executor, payloads);
+
+		handler.handleMessage(createSubscriptionMessage("sess1", "sub1", "/topic/price.IBM"));
+		handler.handleMessage(createSubscriptionMessage("sess1", "sub2", "/topic/news"));
+
+		handler.handleMessage(createMessage("/topic/price.IBM", "101"));
+		handler.handleMessage(createMessage("/topic/news", "a"));
+		handler.handleMessage(createMessage("/topic/price.IBM", "102"));
+		handler.handleMessage(createMessage("/topic/news", "b"));
+		handler.handleMessage(createMessage("/topic/price.IBM", "103"));
+		assertEquals(2, handler.getConflatedMessageCount());
+
+		executor.runAll();
+		assertEquals(Arrays.asList("103", "a", "b"), payloads);
+
+		payloads.clear();
+		handler.handleMessage(createMessage("/topic/price.IBM", "104"));
+		executor.runAll();
+		assertEquals(Collections.singletonList("104"), payloads);
+		assertEquals(2, handler.getConflatedMessageCount());
+	}
+
+	@Test
+	public void conflatedDestinationsUnsubscribe() {
+		ManualExecutor executor = new ManualExecutor();
+		List<Object> payloads = new ArrayList<Object>();
+		SimpleBrokerMessageHandler handler = createConflatingHandler(executor, payloads);
+
+		handler.handleMessage(createSubscriptionMessage("sess1", "sub1", "/topic/price.IBM"));
+		handler.handleMessage(createMessage("/topic/price.IBM", "101"));
+
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+		headers.setSubscriptionId("sub1");
+		headers.setSessionId("sess1");
+		handler.handleMessage(MessageBuilder.createMessage("", headers.getMessageHeaders()));
+
+		executor.runAll();
+		assertEquals(Collections.emptyList(), payloads);
+	}
+
+	@Test
+	public void conflatedDestinationsFailedSend() {
+		ManualExecutor executor = new ManualExecutor();
+		List<Object> payloads = new ArrayList<Object>();
+		SimpleBrokerMessageHandler handler = createConflatingHandler(executor, payloads);
+
+		handler.handleMessage(createSubscriptionMessage("sess1", "sub1", "/topic/price.IBM"));
+
+		executor.setRejecting(true);
+		handler.handleMessage(createMessage("/topic/price.IBM", "101"));
+		executor.setRejecting(false);
+
+		handler.handleMessage(createMessage("/topic/price.IBM", "102"));
+		assertEquals(0, handler.getConflatedMessageCount());
+
+		executor.runAll();
+		assertEquals(Collections.singletonList("102"), payloads);
+	}
+
+	private SimpleBrokerMessageHandler createConflatingHandler(ManualExecutor executor, final List<Object> payloads) {
+		ExecutorSubscribableChannel outboundChannel = new ExecutorSubscribableChannel(executor);
+		outboundChannel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> message) {
+				if (SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))) {
+					payloads.add(message.getPayload());
+				}
+			}
+		});
+		SimpleBrokerMessageHandler handler = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+				outboundChannel, new ExecutorSubscribableChannel(), Collections.<String>emptyList());
+		handler.setConflatedDestinations("/topic/price.*");
+		handler.start();
+		handler.handleMessage(createConnectMessage("sess1", new TestPrincipal("joe"), new long[] {0, 0}));
+		executor.runAll();
+		return handler;
+	}
+
 	private Message<String> createSubscriptionMessage(String sessionId, String subcriptionId, String destination) {
 		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
 		headers.setSubscriptionId(subcriptionId);
@@ -334,4 +443,31 @@ public class SimpleBrokerMessageHandlerTests {
 		return false;
 	}
 
+
+	private static class ManualExecutor implements Executor {
+
+		private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+		private boolean rejecting;
+
+		public void setRejecting(boolean rejecting) {
+			this.rejecting = rejecting;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			if (this.rejecting) {
+				throw new RejectedExecutionException();
+			}
+			this.tasks.add(task);
+		}
+
+		public void runAll() {
+			Runnable task;
+			while ((task = this.tasks.poll()) != null) {
+				task.run();
+			}
+		}
+	}
+
 }
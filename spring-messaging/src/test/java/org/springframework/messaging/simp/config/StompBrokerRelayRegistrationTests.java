@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -49,6 +49,9 @@ public class StompBrokerRelayRegistrationTests {
 		registration.setSystemHeartbeatReceiveInterval(123);
 		registration.setSystemHeartbeatSendInterval(456);
 		registration.setVirtualHost("example.org");
+		registration.setMaxPendingWrites(50);
+		registration.setPendingWriteTimeout(1000);
+		registration.setMultiplexedConnectionCount(8);
 
 		StompBrokerRelayMessageHandler handler = registration.getMessageHandler(new StubMessageChannel());
 
@@ -60,6 +63,9 @@ public class StompBrokerRelayRegistrationTests {
 		assertEquals(123, handler.getSystemHeartbeatReceiveInterval());
 		assertEquals(456, handler.getSystemHeartbeatSendInterval());
 		assertEquals("example.org", handler.getVirtualHost());
+		assertEquals(50, handler.getMaxPendingWrites());
+		assertEquals(1000, handler.getPendingWriteTimeout());
+		assertEquals(8, handler.getMultiplexedConnectionCount());
 	}
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.messaging.simp.stomp;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -163,6 +164,35 @@ public class BufferingStompDecoderTests {
 		}
 	}
 
+	@Test
+	public void messagesSplitAcrossManyChunks() throws InterruptedException {
+		BufferingStompDecoder stompDecoder = new BufferingStompDecoder(STOMP_DECODER, 8 * 1024);
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			body.append(i % 10);
+		}
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			content.append("SEND\ndestination:/app/" + i + "\n\n").append(body).append(i).append("\0");
+		}
+
+		List<Message<byte[]>> messages = new ArrayList<Message<byte[]>>();
+		String input = content.toString();
+		for (int i = 0; i < input.length(); i += 97) {
+			String chunk = input.substring(i, Math.min(i + 97, input.length()));
+			messages.addAll(stompDecoder.decode(toByteBuffer(chunk)));
+		}
+
+		assertEquals(10, messages.size());
+		for (int i = 0; i < 10; i++) {
+			StompHeaderAccessor headers = StompHeaderAccessor.wrap(messages.get(i));
+			assertEquals("/app/" + i, headers.getDestination());
+			assertEquals(body.toString() + i, new String(messages.get(i).getPayload()));
+		}
+		assertEquals(0, stompDecoder.getBufferSize());
+		assertNull(stompDecoder.getExpectedContentLength());
+	}
+
 	@Test(expected = StompConversionException.class)
 	public void bufferSizeLimit() {
 		BufferingStompDecoder stompDecoder = new BufferingStompDecoder(STOMP_DECODER, 10);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,7 +21,9 @@ import static org.mockito.Mockito.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.junit.Before;
@@ -43,6 +45,7 @@ import org.springframework.messaging.tcp.TcpConnectionHandler;
 import org.springframework.messaging.tcp.TcpOperations;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureTask;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 /**
  * Unit tests for StompBrokerRelayMessageHandler.
@@ -220,6 +223,314 @@ public class StompBrokerRelayMessageHandlerTests {
 		assertSame(message, captor.getValue());
 	}
 
+	@Test
+	public void maxPendingWritesExceeded() throws Exception {
+		this.brokerRelay.setMaxPendingWrites(2);
+		this.brokerRelay.start();
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.tcpClient.connection.setCompleteWrites(false);
+
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+		assertEquals(2, this.brokerRelay.getPendingWriteCount());
+		assertEquals(0, this.brokerRelay.getRejectedWriteCount());
+
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+		assertEquals(1, this.brokerRelay.getRejectedWriteCount());
+		assertEquals(1, this.brokerRelay.getConnectionCount());
+
+		List<Message<byte[]>> messages = this.outboundChannel.getMessages();
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(messages.get(messages.size() - 1));
+		assertEquals(StompCommand.ERROR, accessor.getCommand());
+		assertEquals("sess1", accessor.getSessionId());
+		assertEquals("Exceeded 2 pending writes to the broker.", accessor.getMessage());
+
+		this.tcpClient.connection.completeWrites();
+		assertEquals(0, this.brokerRelay.getPendingWriteCount());
+		assertEquals(2, this.brokerRelay.getPeakPendingWriteCount());
+	}
+
+	@Test
+	public void maxPendingWritesWithCompletedWrites() throws Exception {
+		this.brokerRelay.setMaxPendingWrites(1);
+		this.brokerRelay.start();
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.tcpClient.connection.setCompleteWrites(false);
+
+		for (int i = 0; i < 3; i++) {
+			this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+			assertEquals(1, this.brokerRelay.getPendingWriteCount());
+			this.tcpClient.connection.completeWrites();
+			assertEquals(0, this.brokerRelay.getPendingWriteCount());
+		}
+
+		assertEquals(0, this.brokerRelay.getRejectedWriteCount());
+		assertEquals(2, this.brokerRelay.getConnectionCount());
+		assertEquals(5, this.tcpClient.getSentMessages().size());
+	}
+
+	@Test
+	public void pendingWriteTimeout() throws Exception {
+		this.brokerRelay.setMaxPendingWrites(1);
+		this.brokerRelay.setPendingWriteTimeout(5000);
+		this.brokerRelay.start();
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.tcpClient.connection.setCompleteWrites(false);
+
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				}
+				catch (InterruptedException ex) {
+					// ignore
+				}
+				tcpClient.connection.completeWrites();
+			}
+		}).start();
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+
+		assertEquals(1, this.brokerRelay.getThrottledWriteCount());
+		assertEquals(0, this.brokerRelay.getRejectedWriteCount());
+		assertEquals(1, this.brokerRelay.getPendingWriteCount());
+		assertTrue(this.brokerRelay.getMaxWriteTime() >= 100);
+	}
+
+	@Test
+	public void multiplexedSessions() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.start();
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.brokerRelay.handleMessage(connectMessage("sess2", "jane"));
+		assertEquals(2, this.brokerRelay.getConnectionCount());
+		assertEquals(2, this.brokerRelay.getMultiplexedSessionCount());
+
+		List<Message<byte[]>> outbound = this.outboundChannel.getMessages();
+		assertEquals(2, outbound.size());
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(outbound.get(1));
+		assertEquals(StompCommand.CONNECTED, accessor.getCommand());
+		assertEquals("sess2", accessor.getSessionId());
+		assertEquals("jane", accessor.getUser().getName());
+
+		this.brokerRelay.handleMessage(subscribeMessage("sess1", "joe", "0", "/topic/foo"));
+		this.brokerRelay.handleMessage(subscribeMessage("sess2", "jane", "0", "/topic/foo"));
+		assertEquals(4, this.tcpClient.getSentMessages().size());
+		String subscriptionId1 = this.tcpClient.getSentHeaders(2).getSubscriptionId();
+		String subscriptionId2 = this.tcpClient.getSentHeaders(3).getSubscriptionId();
+		assertNotEquals(subscriptionId1, subscriptionId2);
+		assertEquals(subscriptionId2, this.tcpClient.getSentHeaders(3).getFirstNativeHeader("id"));
+
+		StompHeaderAccessor messageAccessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+		messageAccessor.setSubscriptionId(subscriptionId2);
+		messageAccessor.setDestination("/topic/foo");
+		messageAccessor.setLeaveMutable(true);
+		this.tcpClient.handleMessage(MessageBuilder.createMessage(new byte[0], messageAccessor.getMessageHeaders()));
+
+		accessor = StompHeaderAccessor.wrap(outbound.get(2));
+		assertEquals(StompCommand.MESSAGE, accessor.getCommand());
+		assertEquals("sess2", accessor.getSessionId());
+		assertEquals("jane", accessor.getUser().getName());
+		assertEquals("0", accessor.getSubscriptionId());
+		assertEquals("0", accessor.getFirstNativeHeader("subscription"));
+
+		Message<byte[]> send = message(StompCommand.SEND, "sess1", "joe", "/topic/foo");
+		StompHeaderAccessor.getAccessor(send, StompHeaderAccessor.class).setReceipt("r1");
+		this.brokerRelay.handleMessage(send);
+		String receipt = this.tcpClient.getSentHeaders(4).getReceipt();
+		assertNotEquals("r1", receipt);
+
+		StompHeaderAccessor receiptAccessor = StompHeaderAccessor.create(StompCommand.RECEIPT);
+		receiptAccessor.setReceiptId(receipt);
+		receiptAccessor.setLeaveMutable(true);
+		this.tcpClient.handleMessage(MessageBuilder.createMessage(new byte[0], receiptAccessor.getMessageHeaders()));
+
+		accessor = StompHeaderAccessor.wrap(outbound.get(3));
+		assertEquals(StompCommand.RECEIPT, accessor.getCommand());
+		assertEquals("sess1", accessor.getSessionId());
+		assertEquals("r1", accessor.getReceiptId());
+
+		this.brokerRelay.handleMessage(message(StompCommand.DISCONNECT, "sess1", "joe", null));
+		assertEquals(1, this.brokerRelay.getMultiplexedSessionCount());
+		assertEquals(StompCommand.UNSUBSCRIBE, this.tcpClient.getSentHeaders(5).getCommand());
+		assertEquals(subscriptionId1, this.tcpClient.getSentHeaders(5).getSubscriptionId());
+		assertEquals(2, this.brokerRelay.getConnectionCount());
+	}
+
+	@Test
+	public void multiplexedSessionMaxPendingWritesExceeded() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.setMaxPendingWrites(1);
+		this.brokerRelay.start();
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.brokerRelay.handleMessage(subscribeMessage("sess1", "joe", "0", "/topic/foo"));
+		String subscriptionId = this.tcpClient.getSentHeaders(2).getSubscriptionId();
+		this.tcpClient.connection.setCompleteWrites(false);
+
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/foo"));
+		assertEquals(1, this.brokerRelay.getRejectedWriteCount());
+		assertEquals(0, this.brokerRelay.getMultiplexedSessionCount());
+
+		assertEquals(5, this.tcpClient.getSentMessages().size());
+		StompHeaderAccessor sent = this.tcpClient.getSentHeaders(4);
+		assertEquals(StompCommand.UNSUBSCRIBE, sent.getCommand());
+		assertEquals(subscriptionId, sent.getSubscriptionId());
+
+		List<Message<byte[]>> outbound = this.outboundChannel.getMessages();
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(outbound.get(outbound.size() - 1));
+		assertEquals(StompCommand.ERROR, accessor.getCommand());
+		assertEquals("sess1", accessor.getSessionId());
+
+		this.tcpClient.connection.completeWrites();
+		assertEquals(0, this.brokerRelay.getPendingWriteCount());
+		this.brokerRelay.handleMessage(connectMessage("sess2", "jane"));
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess2", "jane", "/topic/foo"));
+		assertEquals(1, this.brokerRelay.getRejectedWriteCount());
+		assertEquals(1, this.brokerRelay.getPendingWriteCount());
+
+		// The UNSUBSCRIBE did not take a permit, so it must not have released one either
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess2", "jane", "/topic/foo"));
+		assertEquals(2, this.brokerRelay.getRejectedWriteCount());
+	}
+
+	@Test
+	public void multiplexedSessionRepeatedConnect() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.start();
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.brokerRelay.handleMessage(subscribeMessage("sess1", "joe", "0", "/topic/foo"));
+		String subscriptionId = this.tcpClient.getSentHeaders(2).getSubscriptionId();
+
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		assertEquals(1, this.brokerRelay.getMultiplexedSessionCount());
+		assertEquals(StompCommand.UNSUBSCRIBE, this.tcpClient.getSentHeaders(3).getCommand());
+		assertEquals(subscriptionId, this.tcpClient.getSentHeaders(3).getSubscriptionId());
+
+		StompHeaderAccessor messageAccessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+		messageAccessor.setSubscriptionId(subscriptionId);
+		messageAccessor.setDestination("/topic/foo");
+		messageAccessor.setLeaveMutable(true);
+		this.tcpClient.handleMessage(MessageBuilder.createMessage(new byte[0], messageAccessor.getMessageHeaders()));
+
+		List<Message<byte[]>> outbound = this.outboundChannel.getMessages();
+		assertEquals(2, outbound.size());
+		assertEquals(StompCommand.CONNECTED, StompHeaderAccessor.wrap(outbound.get(1)).getCommand());
+	}
+
+	@Test
+	public void multiplexedConnectionClosed() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.start();
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.brokerRelay.handleMessage(connectMessage("sess2", "jane"));
+
+		this.tcpClient.connectionHandler.afterConnectionClosed();
+
+		assertEquals(0, this.brokerRelay.getMultiplexedSessionCount());
+		List<Message<byte[]>> outbound = this.outboundChannel.getMessages();
+		assertEquals(4, outbound.size());
+		for (Message<byte[]> message : outbound.subList(2, 4)) {
+			StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+			assertEquals(StompCommand.ERROR, accessor.getCommand());
+			assertEquals("Connection to broker closed.", accessor.getMessage());
+		}
+	}
+
+	@Test
+	public void multiplexedSessionInvalidFrame() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.start();
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.brokerRelay.handleMessage(connectMessage("sess2", "jane"));
+		this.brokerRelay.handleMessage(subscribeMessage("sess1", "joe", "0", "/topic/foo"));
+
+		// Rejected by the relay: only the sending session fails, the shared connection stays open
+		Message<byte[]> subscribe = message(StompCommand.SUBSCRIBE, "sess2", "jane", null);
+		StompHeaderAccessor.getAccessor(subscribe, StompHeaderAccessor.class).setSubscriptionId("0");
+		this.brokerRelay.handleMessage(subscribe);
+		assertEquals(3, this.tcpClient.getSentMessages().size());
+		assertEquals(1, this.brokerRelay.getMultiplexedSessionCount());
+
+		List<Message<byte[]>> outbound = this.outboundChannel.getMessages();
+		assertEquals(3, outbound.size());
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(outbound.get(2));
+		assertEquals(StompCommand.ERROR, accessor.getCommand());
+		assertEquals("sess2", accessor.getSessionId());
+		assertEquals("Missing destination header in SUBSCRIBE frame.", accessor.getMessage());
+
+		Message<byte[]> commit = message(StompCommand.COMMIT, "sess1", "joe", null);
+		StompHeaderAccessor.getAccessor(commit, StompHeaderAccessor.class).setNativeHeader("transaction", "tx1");
+		this.brokerRelay.handleMessage(commit);
+		assertEquals(0, this.brokerRelay.getMultiplexedSessionCount());
+		assertEquals(StompCommand.UNSUBSCRIBE, this.tcpClient.getSentHeaders(3).getCommand());
+		assertEquals(4, this.tcpClient.getSentMessages().size());
+		accessor = StompHeaderAccessor.wrap(outbound.get(3));
+		assertEquals(StompCommand.ERROR, accessor.getCommand());
+		assertEquals("sess1", accessor.getSessionId());
+		assertEquals("Transaction tx1 not begun.", accessor.getMessage());
+		assertEquals(2, this.brokerRelay.getConnectionCount());
+	}
+
+	@Test
+	public void multiplexedConnectionBrokerError() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.start();
+		this.tcpClient.handleMessage(message(StompCommand.CONNECTED, null, null, null));
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+		this.brokerRelay.handleMessage(connectMessage("sess2", "jane"));
+		this.brokerRelay.handleMessage(message(StompCommand.SEND, "sess1", "joe", "/topic/unknown"));
+
+		// An ERROR not tied to a receipt closes the shared connection: all of its sessions fail
+		StompHeaderAccessor errorAccessor = StompHeaderAccessor.create(StompCommand.ERROR);
+		errorAccessor.setMessage("Unknown destination");
+		errorAccessor.setLeaveMutable(true);
+		this.tcpClient.handleMessage(MessageBuilder.createMessage(new byte[0], errorAccessor.getMessageHeaders()));
+
+		assertEquals(0, this.brokerRelay.getMultiplexedSessionCount());
+		List<Message<byte[]>> outbound = this.outboundChannel.getMessages();
+		assertEquals(4, outbound.size());
+		Set<String> failedSessions = new HashSet<>();
+		for (Message<byte[]> message : outbound.subList(2, 4)) {
+			StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+			assertEquals(StompCommand.ERROR, accessor.getCommand());
+			assertEquals("Unknown destination", accessor.getMessage());
+			failedSessions.add(accessor.getSessionId());
+		}
+		assertEquals(new HashSet<>(Arrays.asList("sess1", "sess2")), failedSessions);
+	}
+
+	@Test
+	public void multiplexedConnectionNotConnected() throws Exception {
+		this.brokerRelay.setMultiplexedConnectionCount(1);
+		this.brokerRelay.start();
+		this.brokerRelay.handleMessage(connectMessage("sess1", "joe"));
+
+		assertEquals(0, this.brokerRelay.getMultiplexedSessionCount());
+		StompHeaderAccessor accessor = StompHeaderAccessor.wrap(this.outboundChannel.getMessages().get(0));
+		assertEquals(StompCommand.ERROR, accessor.getCommand());
+		assertEquals("Broker not available.", accessor.getMessage());
+	}
+
+	private Message<byte[]> subscribeMessage(String sessionId, String user, String subscriptionId, String destination) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setUser(new TestPrincipal(user));
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
 	private Message<byte[]> connectMessage(String sessionId, String user) {
 		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.CONNECT);
 		headers.setSessionId(sessionId);
@@ -315,15 +626,41 @@ public class StompBrokerRelayMessageHandlerTests {
 
 		private final List<Message<byte[]>> messages = new ArrayList<>();
 
+		private final List<SettableListenableFuture<Void>> pendingWrites = new ArrayList<>();
+
+		private boolean completeWrites = true;
+
 
 		public List<Message<byte[]>> getMessages() {
 			return this.messages;
 		}
 
+		public void setCompleteWrites(boolean completeWrites) {
+			this.completeWrites = completeWrites;
+		}
+
+		public void completeWrites() {
+			List<SettableListenableFuture<Void>> futures;
+			synchronized (this.pendingWrites) {
+				futures = new ArrayList<>(this.pendingWrites);
+				this.pendingWrites.clear();
+			}
+			for (SettableListenableFuture<Void> future : futures) {
+				future.set(null);
+			}
+		}
+
 		@Override
 		public ListenableFuture<Void> send(Message<byte[]> message) {
 			this.messages.add(message);
-			return getVoidFuture();
+			if (this.completeWrites) {
+				return getVoidFuture();
+			}
+			SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+			synchronized (this.pendingWrites) {
+				this.pendingWrites.add(future);
+			}
+			return future;
 		}
 
 		@Override
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.stomp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageType;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link StompDecoder} complementing the decoding tests in
+ * {@link StompCodecTests}.
+ *
+ * @author agent
+ */
+public class StompDecoderTests {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	private final StompDecoder decoder = new StompDecoder();
+
+
+	@Test
+	public void repeatedHeaderStringsAreShared() {
+		String frame = "MESSAGE\nsubscription:s1\ndestination:/topic/foo\ncontent-type:text/plain\n" +
+				"message-id:m1\n\nbody\0";
+		StompHeaderAccessor first = StompHeaderAccessor.wrap(decodeSingle(frame));
+		StompHeaderAccessor second = StompHeaderAccessor.wrap(decodeSingle(frame.replace("m1", "m2")));
+
+		assertEquals("/topic/foo", second.getDestination());
+		assertSame(first.getFirstNativeHeader("destination"), second.getFirstNativeHeader("destination"));
+		assertSame(first.getFirstNativeHeader("subscription"), second.getFirstNativeHeader("subscription"));
+		assertEquals("m2", second.getFirstNativeHeader("message-id"));
+	}
+
+	@Test
+	public void escapedHeadersAreNotShared() {
+		String frame = "SEND\ndestination:/app/a\\cb\n\n\0";
+		StompHeaderAccessor first = StompHeaderAccessor.wrap(decodeSingle(frame));
+		StompHeaderAccessor second = StompHeaderAccessor.wrap(decodeSingle(frame));
+
+		assertEquals("/app/a:b", first.getDestination());
+		assertEquals("/app/a:b", second.getDestination());
+	}
+
+	@Test
+	public void unknownCommand() {
+		try {
+			decodeSingle("FOO\n\n\0");
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void decodeToSlices() {
+		String frames = "SEND\ndestination:/app/a\ncontent-length:5\n\nfirst\0" +
+				"SEND\ndestination:/app/b\n\nsecond\0";
+		ByteBuffer buffer = ByteBuffer.wrap(frames.getBytes(UTF_8));
+		List<Message<ByteBuffer>> messages = this.decoder.decodeToSlices(buffer);
+
+		assertEquals(2, messages.size());
+		assertFalse(buffer.hasRemaining());
+
+		ByteBuffer payload = messages.get(0).getPayload();
+		assertTrue(payload.isReadOnly());
+		assertEquals("first", toString(payload));
+		assertEquals("/app/a", StompHeaderAccessor.wrap(messages.get(0)).getDestination());
+		assertEquals("second", toString(messages.get(1).getPayload()));
+		assertEquals("/app/b", StompHeaderAccessor.wrap(messages.get(1)).getDestination());
+
+		// The body is shared with the input buffer
+		buffer.put(buffer.limit() - 7, (byte) 'S');
+		assertEquals("Second", toString(messages.get(1).getPayload()));
+	}
+
+	@Test
+	public void decodeToSlicesWithPartialFrame() {
+		ByteBuffer buffer = ByteBuffer.wrap("SEND\ndestination:/app/a\n\nfirst\0SEND\nde".getBytes(UTF_8));
+		List<Message<ByteBuffer>> messages = this.decoder.decodeToSlices(buffer);
+
+		assertEquals(1, messages.size());
+		assertEquals("first", toString(messages.get(0).getPayload()));
+		assertEquals("SEND\nde".length(), buffer.remaining());
+	}
+
+	@Test
+	public void decodeToSlicesHeartbeat() {
+		List<Message<ByteBuffer>> messages = this.decoder.decodeToSlices(ByteBuffer.wrap("\n".getBytes(UTF_8)));
+
+		assertEquals(1, messages.size());
+		assertEquals(SimpMessageType.HEARTBEAT, StompHeaderAccessor.wrap(messages.get(0)).getMessageType());
+	}
+
+
+	private Message<byte[]> decodeSingle(String frame) {
+		List<Message<byte[]>> messages = this.decoder.decode(ByteBuffer.wrap(frame.getBytes(UTF_8)));
+		assertEquals(1, messages.size());
+		return messages.get(0);
+	}
+
+	private static String toString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+}
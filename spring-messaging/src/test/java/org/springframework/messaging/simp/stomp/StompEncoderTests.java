@@ -0,0 +1,198 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.simp.stomp;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link StompEncoder}.
+ *
+ * @author agent
+ */
+public class StompEncoderTests {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	private final StompEncoder encoder = new StompEncoder();
+
+
+	@Test
+	public void encodeFrameWithNoHeadersAndNoBody() {
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+		Message<byte[]> frame = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+
+		assertEquals("DISCONNECT\n\n\0", new String(this.encoder.encode(frame), UTF_8));
+	}
+
+	@Test
+	public void encodeFrameWithHeadersBody() {
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SEND);
+		headers.addNativeHeader("a", "alpha");
+		headers.setContentLength(100);
+		Message<byte[]> frame = MessageBuilder.createMessage("Message body".getBytes(UTF_8), headers.getMessageHeaders());
+
+		assertEquals("SEND\na:alpha\ncontent-length:12\n\nMessage body\0", new String(this.encoder.encode(frame), UTF_8));
+	}
+
+	@Test
+	public void encodeFrameWithHeadersThatShouldBeEscaped() {
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+		headers.addNativeHeader("a:\r\n\\b",  "alpha:bravo\r\n\\");
+		Message<byte[]> frame = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+
+		assertEquals("DISCONNECT\na\\c\\r\\n\\\\b:alpha\\cbravo\\r\\n\\\\\n\n\0",
+				new String(this.encoder.encode(frame), UTF_8));
+	}
+
+	@Test
+	public void encodeConnectFrameWithoutEscaping() {
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.CONNECT);
+		headers.setLogin("a:b");
+		headers.setPasscode("secret");
+		Message<byte[]> frame = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+		String frameString = new String(this.encoder.encode(frame), UTF_8);
+
+		assertTrue(frameString, frameString.contains("\nlogin:a:b\n"));
+		assertTrue(frameString, frameString.contains("\npasscode:secret\n"));
+	}
+
+	@Test
+	public void encodeMultibyteHeaders() {
+		String value = "caf\u00e9 \u20ac \ud83d\ude00 \ud83d";
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SEND);
+		headers.addNativeHeader("h\u00e9ader", value);
+		Message<byte[]> frame = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+
+		byte[] expected = ("SEND\nh\u00e9ader:" + value + "\ncontent-length:0\n\n\0").getBytes(UTF_8);
+		assertArrayEquals(expected, this.encoder.encode(frame));
+		assertEquals(expected.length, this.encoder.getEncodedLength(frame.getHeaders(), frame.getPayload()));
+	}
+
+	@Test
+	public void encodeHeartbeat() {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+		Message<byte[]> frame = MessageBuilder.createMessage(StompDecoder.HEARTBEAT_PAYLOAD, headers.getMessageHeaders());
+
+		assertEquals("\n", new String(this.encoder.encode(frame), UTF_8));
+	}
+
+	@Test
+	public void encodeToByteBuffer() {
+		Message<byte[]> frame = createMessage("sub-0", "m-0", "payload");
+		byte[] expected = this.encoder.encode(frame);
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+		buffer.put((byte) 'x');
+		int length = this.encoder.encode(frame.getHeaders(), frame.getPayload(), buffer);
+
+		assertEquals(expected.length, length);
+		assertEquals(expected.length + 1, buffer.position());
+		buffer.flip();
+		buffer.get();
+		byte[] actual = new byte[length];
+		buffer.get(actual);
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void encodeToByteBufferTooSmall() {
+		Message<byte[]> frame = createMessage("sub-0", "m-0", "payload");
+		ByteBuffer buffer = ByteBuffer.allocate(10);
+		try {
+			this.encoder.encode(frame.getHeaders(), frame.getPayload(), buffer);
+			fail("Expected BufferOverflowException");
+		}
+		catch (BufferOverflowException ex) {
+			assertEquals(0, buffer.position());
+		}
+	}
+
+	@Test
+	public void encodeHeaders() {
+		Message<byte[]> frame = createMessage("sub-0", "m-0", "payload");
+		String headers = new String(this.encoder.encodeHeaders(frame.getHeaders(), frame.getPayload()), UTF_8);
+
+		assertEquals(new String(this.encoder.encode(frame), UTF_8), headers + "payload\0");
+		assertTrue(headers.endsWith("\ncontent-length:7\n\n"));
+	}
+
+	@Test
+	public void encodeWithHeaderBlockCache() {
+		StompEncoder cachingEncoder = new StompEncoder();
+		cachingEncoder.setHeaderBlockCacheLimit(16);
+		assertEquals(16, cachingEncoder.getHeaderBlockCacheLimit());
+
+		for (int i = 0; i < 5; i++) {
+			Message<byte[]> frame = createMessage("sub-" + i, "m-" + i, "payload");
+			assertEquals(new String(this.encoder.encode(frame), UTF_8), new String(cachingEncoder.encode(frame), UTF_8));
+		}
+
+		Message<byte[]> frame = createMessage("sub-a:b", null, "other payload");
+		String frameString = new String(cachingEncoder.encode(frame), UTF_8);
+		assertEquals(new String(this.encoder.encode(frame), UTF_8), frameString);
+		assertFalse(frameString.contains("message-id"));
+		assertTrue(frameString.contains("\nsubscription:sub-a\\cb\n"));
+		assertTrue(frameString.contains("\ncontent-length:13\n"));
+
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+		headers.setDestination("/topic/other");
+		headers.setSubscriptionId("sub-0");
+		frame = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+		assertEquals(new String(this.encoder.encode(frame), UTF_8), new String(cachingEncoder.encode(frame), UTF_8));
+	}
+
+	@Test
+	public void encodeWithHeaderBlockCacheAddingVariableHeader() {
+		StompEncoder cachingEncoder = new StompEncoder();
+		cachingEncoder.setHeaderBlockCacheLimit(16);
+
+		cachingEncoder.encode(createMessage("sub-0", null, "payload"));
+		Message<byte[]> frame = createMessage("sub-1", "m-1", "payload");
+		String frameString = new String(cachingEncoder.encode(frame), UTF_8);
+
+		assertTrue(frameString.contains("\nsubscription:sub-1\n"));
+		assertTrue(frameString.contains("\nmessage-id:m-1\n"));
+		assertEquals(this.encoder.encode(frame).length, frameString.getBytes(UTF_8).length);
+	}
+
+
+	private Message<byte[]> createMessage(String subscriptionId, String messageId, String payload) {
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+		headers.setSubscriptionId(subscriptionId);
+		headers.setDestination("/topic/price.stock.IBM");
+		if (messageId != null) {
+			headers.setMessageId(messageId);
+		}
+		headers.setContentType(MimeTypeUtils.TEXT_PLAIN);
+		headers.addNativeHeader("custom", "value\u00e9");
+		return MessageBuilder.createMessage(payload.getBytes(UTF_8), headers.getMessageHeaders());
+	}
+
+}
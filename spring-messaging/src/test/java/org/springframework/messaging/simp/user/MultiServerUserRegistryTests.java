@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,19 +19,25 @@ package org.springframework.messaging.simp.user;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.security.Principal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.SmartApplicationListener;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.TestPrincipal;
 
 /**
  * Unit tests for {@link MultiServerUserRegistry}.
@@ -144,6 +150,174 @@ public class MultiServerUserRegistryTests {
 		assertEquals(new HashSet<>(Arrays.asList("sess1", "sess2")), sessionIds);
 	}
 
+	@Test
+	public void remoteRegistryUpdates() throws Exception {
+
+		TestSimpSession session1 = new TestSimpSession("sess1");
+		TestSimpUser user1 = new TestSimpUser("joe");
+		user1.addSessions(session1);
+		SimpUserRegistry remoteUserRegistry = mock(SimpUserRegistry.class);
+		when(remoteUserRegistry.getUsers()).thenReturn(Collections.<SimpUser>singleton(user1));
+
+		MultiServerUserRegistry remoteRegistry = new MultiServerUserRegistry(remoteUserRegistry);
+		remoteRegistry.setDeltaBroadcastEnabled(true);
+		Message<?> message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertEquals(1, this.multiServerRegistry.getUsers().size());
+		assertEquals(0, this.multiServerRegistry.getUser("joe").getSession("sess1").getSubscriptions().size());
+
+		session1.addSubscriptions(new TestSimpSubscription("sub1", "/dest"));
+		TestSimpUser user2 = new TestSimpUser("jane");
+		user2.addSessions(new TestSimpSession("sess2"));
+		when(remoteUserRegistry.getUsers()).thenReturn(new HashSet<SimpUser>(Arrays.asList(user1, user2)));
+
+		message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertEquals(2, this.multiServerRegistry.getUsers().size());
+		assertNotNull(this.multiServerRegistry.getUser("jane").getSession("sess2"));
+		SimpSession session = this.multiServerRegistry.getUser("joe").getSession("sess1");
+		assertEquals(1, session.getSubscriptions().size());
+		assertEquals("/dest", session.getSubscriptions().iterator().next().getDestination());
+
+		when(remoteUserRegistry.getUsers()).thenReturn(Collections.<SimpUser>singleton(user2));
+
+		message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertEquals(1, this.multiServerRegistry.getUsers().size());
+		assertNull(this.multiServerRegistry.getUser("joe"));
+		assertNotNull(this.multiServerRegistry.getUser("jane"));
+	}
+
+	@Test
+	public void remoteRegistryMissedUpdate() throws Exception {
+
+		TestSimpUser user1 = new TestSimpUser("joe");
+		user1.addSessions(new TestSimpSession("sess1"));
+		SimpUserRegistry remoteUserRegistry = mock(SimpUserRegistry.class);
+		when(remoteUserRegistry.getUsers()).thenReturn(Collections.<SimpUser>singleton(user1));
+
+		MultiServerUserRegistry remoteRegistry = new MultiServerUserRegistry(remoteUserRegistry);
+		remoteRegistry.setDeltaBroadcastEnabled(true);
+		Message<?> message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+
+		TestSimpUser user2 = new TestSimpUser("jane");
+		user2.addSessions(new TestSimpSession("sess2"));
+		when(remoteUserRegistry.getUsers()).thenReturn(new HashSet<SimpUser>(Arrays.asList(user1, user2)));
+
+		remoteRegistry.getLocalRegistryDto();
+		message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertNull("Update out of sequence", this.multiServerRegistry.getUser("jane"));
+
+		message = this.converter.toMessage(this.multiServerRegistry.getLocalRegistryDto(), null);
+		remoteRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+
+		message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertEquals(2, this.multiServerRegistry.getUsers().size());
+		assertNotNull(this.multiServerRegistry.getUser("jane"));
+	}
+
+	@Test
+	public void remoteRegistryMissedUpdateSyncRequest() throws Exception {
+
+		TestSimpUser user1 = new TestSimpUser("joe");
+		user1.addSessions(new TestSimpSession("sess1"));
+		SimpUserRegistry remoteUserRegistry = mock(SimpUserRegistry.class);
+		when(remoteUserRegistry.getUsers()).thenReturn(Collections.<SimpUser>singleton(user1));
+
+		MultiServerUserRegistry remoteRegistry = new MultiServerUserRegistry(remoteUserRegistry);
+		remoteRegistry.setDeltaBroadcastEnabled(true);
+		MultiServerUserRegistry otherRegistry = new MultiServerUserRegistry(mock(SimpUserRegistry.class));
+		otherRegistry.setDeltaBroadcastEnabled(true);
+		otherRegistry.getLocalRegistryDto();
+
+		remoteRegistry.getLocalRegistryDto();
+		Message<?> message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertNull("Update out of sequence", this.multiServerRegistry.getUser("joe"));
+
+		message = this.converter.toMessage(this.multiServerRegistry.getLocalRegistryDto(), null);
+		remoteRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		otherRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+
+		message = this.converter.toMessage(otherRegistry.getLocalRegistryDto(), null);
+		assertEquals(Boolean.FALSE, ((Map<?, ?>) this.converter.fromMessage(message, Map.class)).get("snapshot"));
+		message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+		assertEquals(Boolean.TRUE, ((Map<?, ?>) this.converter.fromMessage(message, Map.class)).get("snapshot"));
+	}
+
+	@Test
+	public void snapshotInPreviousFormat() throws Exception {
+
+		TestSimpSession session = new TestSimpSession("sess1");
+		session.addSubscriptions(new TestSimpSubscription("sub1", "/dest"));
+		TestSimpUser user = new TestSimpUser("joe");
+		user.addSessions(session);
+		SimpUserRegistry remoteUserRegistry = mock(SimpUserRegistry.class);
+		when(remoteUserRegistry.getUsers()).thenReturn(Collections.<SimpUser>singleton(user));
+		MultiServerUserRegistry remoteRegistry = new MultiServerUserRegistry(remoteUserRegistry);
+
+		for (int i = 0; i < 2; i++) {
+			Message<?> message = this.converter.toMessage(remoteRegistry.getLocalRegistryDto(), null);
+			Map<?, ?> users = (Map<?, ?>) ((Map<?, ?>) this.converter.fromMessage(message, Map.class)).get("users");
+			Map<?, ?> joe = (Map<?, ?>) users.get("joe");
+			assertEquals("joe", joe.get("name"));
+			Map<?, ?> sess1 = (Map<?, ?>) ((List<?>) joe.get("sessions")).get(0);
+			assertEquals("sess1", sess1.get("id"));
+			Map<?, ?> sub1 = (Map<?, ?>) ((List<?>) sess1.get("subscriptions")).get(0);
+			assertEquals("sub1", sub1.get("id"));
+			assertEquals("/dest", sub1.get("destination"));
+		}
+	}
+
+	@Test
+	public void localChangesTrackedFromSessionEvents() throws Exception {
+
+		TestSimpUser user1 = new TestSimpUser("joe");
+		user1.addSessions(new TestSimpSession("sess1"));
+		SimpUserRegistry localRegistry = mock(SimpUserRegistry.class,
+				withSettings().extraInterfaces(SmartApplicationListener.class));
+		when(localRegistry.getUsers()).thenReturn(Collections.<SimpUser>singleton(user1));
+
+		MultiServerUserRegistry registry = new MultiServerUserRegistry(localRegistry);
+		registry.setDeltaBroadcastEnabled(true);
+		Message<?> message = this.converter.toMessage(registry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertNotNull(this.multiServerRegistry.getUser("joe"));
+
+		TestSimpSession session2 = new TestSimpSession("sess2");
+		TestSimpUser user2 = new TestSimpUser("jane");
+		user2.addSessions(session2);
+		when(localRegistry.getUser("jane")).thenReturn(user2);
+		registry.onApplicationEvent(new TestSessionEvent("sess2", new TestPrincipal("jane")));
+
+		message = this.converter.toMessage(registry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertNotNull(this.multiServerRegistry.getUser("joe"));
+		assertEquals(0, this.multiServerRegistry.getUser("jane").getSession("sess2").getSubscriptions().size());
+
+		session2.addSubscriptions(new TestSimpSubscription("sub1", "/dest"));
+		registry.onApplicationEvent(new TestSessionEvent("sess2", new TestPrincipal("jane")));
+
+		message = this.converter.toMessage(registry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertEquals(1, this.multiServerRegistry.getUser("jane").getSession("sess2").getSubscriptions().size());
+
+		// No user in the event: the user name is taken from the previous broadcast
+		when(localRegistry.getUser("jane")).thenReturn(null);
+		registry.onApplicationEvent(new TestSessionEvent("sess2", null));
+
+		message = this.converter.toMessage(registry.getLocalRegistryDto(), null);
+		this.multiServerRegistry.addRemoteRegistryDto(message, this.converter, 20000);
+		assertNull(this.multiServerRegistry.getUser("jane"));
+		assertNotNull(this.multiServerRegistry.getUser("joe"));
+
+		// Only the initial snapshot went through all local sessions
+		verify(localRegistry, times(1)).getUsers();
+	}
+
 	@Test
 	public void purgeExpiredRegistries() throws Exception {
 
@@ -163,4 +337,29 @@ public class MultiServerUserRegistryTests {
 		assertEquals(0, this.multiServerRegistry.getUsers().size());
 	}
 
+
+	@SuppressWarnings("serial")
+	private static class TestSessionEvent extends ApplicationEvent implements SimpSessionEvent {
+
+		private final String sessionId;
+
+		private final Principal user;
+
+		public TestSessionEvent(String sessionId, Principal user) {
+			super(sessionId);
+			this.sessionId = sessionId;
+			this.user = user;
+		}
+
+		@Override
+		public String getSessionId() {
+			return this.sessionId;
+		}
+
+		@Override
+		public Principal getUser() {
+			return this.user;
+		}
+	}
+
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.messaging.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ShardedExecutorSubscribableChannel.LaneStats;
+import org.springframework.messaging.support.ShardedExecutorSubscribableChannel.OverflowPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ShardedExecutorSubscribableChannel}.
+ *
+ * @author agent
+ */
+public class ShardedExecutorSubscribableChannelTests {
+
+	private final ManualExecutor executor = new ManualExecutor();
+
+	private final RecordingHandler handler = new RecordingHandler();
+
+
+	@Test
+	public void sendWithKey() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 4);
+		channel.subscribe(this.handler);
+
+		assertTrue(channel.send(createMessage("sess1", 1)));
+		assertTrue(channel.send(createMessage("sess1", 2)));
+		assertEquals("One drain task per lane", 1, this.executor.tasks.size());
+		assertEquals(0, this.handler.payloads.size());
+
+		this.executor.runAll();
+		assertEquals(Arrays.asList(1, 2), this.handler.payloads);
+
+		int queued = 0;
+		long handled = 0;
+		for (LaneStats stats : channel.getLaneStats()) {
+			queued += stats.getQueueSize();
+			handled += stats.getHandledCount();
+		}
+		assertEquals(0, queued);
+		assertEquals(2, handled);
+	}
+
+	@Test
+	public void sendWithoutKey() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 4);
+		channel.subscribe(this.handler);
+
+		channel.send(MessageBuilder.withPayload(1).build());
+		channel.send(MessageBuilder.withPayload(2).build());
+		assertEquals("One task per message", 2, this.executor.tasks.size());
+
+		this.executor.runAll();
+		assertEquals(Arrays.asList(1, 2), this.handler.payloads);
+	}
+
+	@Test
+	public void sendWithoutExecutor() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(null, 4);
+		channel.subscribe(this.handler);
+
+		channel.send(createMessage("sess1", 1));
+		assertEquals(Collections.singletonList(1), this.handler.payloads);
+	}
+
+	@Test
+	public void customShardKeyHeader() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 1);
+		channel.setShardKeyHeader("conversation");
+		channel.subscribe(this.handler);
+
+		channel.send(MessageBuilder.withPayload(1).setHeader("conversation", "c1").build());
+		channel.send(MessageBuilder.withPayload(2).setHeader("conversation", "c1").build());
+		assertEquals(1, this.executor.tasks.size());
+		assertEquals(2, channel.getLaneStats().get(0).getQueueSize());
+	}
+
+	@Test
+	public void overflowDiscard() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 1);
+		channel.setLaneCapacity(2);
+		channel.setOverflowPolicy(OverflowPolicy.DISCARD);
+		channel.subscribe(this.handler);
+
+		assertTrue(channel.send(createMessage("sess1", 1)));
+		assertTrue(channel.send(createMessage("sess1", 2)));
+		assertFalse(channel.send(createMessage("sess1", 3)));
+
+		LaneStats stats = channel.getLaneStats().get(0);
+		assertEquals(2, stats.getQueueSize());
+		assertEquals(2, stats.getMaxQueueSize());
+		assertEquals(1, stats.getDiscardCount());
+
+		this.executor.runAll();
+		assertEquals(Arrays.asList(1, 2), this.handler.payloads);
+	}
+
+	@Test
+	public void overflowDiscardOldest() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 1);
+		channel.setLaneCapacity(2);
+		channel.setOverflowPolicy(OverflowPolicy.DISCARD_OLDEST);
+		channel.subscribe(this.handler);
+
+		assertTrue(channel.send(createMessage("sess1", 1)));
+		assertTrue(channel.send(createMessage("sess1", 2)));
+		assertTrue(channel.send(createMessage("sess1", 3)));
+		assertEquals(1, channel.getLaneStats().get(0).getDiscardCount());
+
+		this.executor.runAll();
+		assertEquals(Arrays.asList(2, 3), this.handler.payloads);
+	}
+
+	@Test
+	public void overflowBlockWithTimeout() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 1);
+		channel.setLaneCapacity(1);
+		channel.subscribe(this.handler);
+
+		assertTrue(channel.send(createMessage("sess1", 1)));
+		assertFalse(channel.send(createMessage("sess1", 2), 10));
+		assertEquals(1, channel.getLaneStats().get(0).getDiscardCount());
+
+		this.executor.runAll();
+		assertEquals(Collections.singletonList(1), this.handler.payloads);
+	}
+
+	@Test
+	public void overflowBlockSendingToOwnLane() {
+		final ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 1);
+		channel.setLaneCapacity(1);
+		RecordingHandler handler = new RecordingHandler() {
+			@Override
+			public void handleMessage(Message<?> message) {
+				super.handleMessage(message);
+				int payload = (Integer) message.getPayload();
+				if (payload < 3) {
+					channel.send(createMessage("sess1", payload + 1));
+					channel.send(createMessage("sess1", payload + 10));
+				}
+			}
+		};
+		channel.subscribe(handler);
+
+		channel.send(createMessage("sess1", 1));
+		this.executor.runAll();
+
+		// Messages that don't fit overflow behind the queue, keeping the order of sending
+		assertEquals(Arrays.asList(1, 2, 11, 3, 12), handler.payloads);
+		assertEquals(0, channel.getLaneStats().get(0).getDiscardCount());
+	}
+
+	@Test
+	public void beforeHandleInterceptor() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 2);
+		channel.addInterceptor(new EvenPayloadInterceptor());
+		channel.subscribe(this.handler);
+
+		for (int i = 1; i <= 4; i++) {
+			channel.send(createMessage("sess1", i));
+		}
+		this.executor.runAll();
+		assertEquals(Arrays.asList(2, 4), this.handler.payloads);
+	}
+
+	@Test
+	public void handlerExceptionDoesNotStopLane() {
+		ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(this.executor, 1);
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> message) {
+				if (message.getPayload().equals(1)) {
+					throw new IllegalStateException("expected");
+				}
+			}
+		});
+		channel.subscribe(this.handler);
+
+		channel.send(createMessage("sess1", 1));
+		channel.send(createMessage("sess1", 2));
+		this.executor.runAll();
+
+		assertEquals(Arrays.asList(1, 2), this.handler.payloads);
+	}
+
+	@Test
+	public void orderPerKeyWithThreadPool() throws Exception {
+		ExecutorService threadPool = Executors.newFixedThreadPool(4);
+		try {
+			ShardedExecutorSubscribableChannel channel = new ShardedExecutorSubscribableChannel(threadPool, 8);
+			int sessionCount = 16;
+			int messageCount = 500;
+			final CountDownLatch latch = new CountDownLatch(sessionCount * messageCount);
+			final List<List<Integer>> received = new ArrayList<List<Integer>>();
+			for (int i = 0; i < sessionCount; i++) {
+				received.add(Collections.synchronizedList(new ArrayList<Integer>()));
+			}
+			channel.subscribe(new MessageHandler() {
+				@Override
+				public void handleMessage(Message<?> message) {
+					String sessionId = (String) message.getHeaders().get("simpSessionId");
+					received.get(Integer.parseInt(sessionId)).add((Integer) message.getPayload());
+					latch.countDown();
+				}
+			});
+
+			for (int i = 0; i < messageCount; i++) {
+				for (int j = 0; j < sessionCount; j++) {
+					channel.send(createMessage(String.valueOf(j), i));
+				}
+			}
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+			for (List<Integer> payloads : received) {
+				assertEquals(messageCount, payloads.size());
+				for (int i = 0; i < messageCount; i++) {
+					assertEquals(Integer.valueOf(i), payloads.get(i));
+				}
+			}
+		}
+		finally {
+			threadPool.shutdown();
+		}
+	}
+
+
+	private static Message<Integer> createMessage(String sessionId, int payload) {
+		return MessageBuilder.withPayload(payload).setHeader("simpSessionId", sessionId).build();
+	}
+
+
+	private static class ManualExecutor implements Executor {
+
+		private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+		@Override
+		public void execute(Runnable task) {
+			this.tasks.add(task);
+		}
+
+		public void runAll() {
+			Runnable task;
+			while ((task = this.tasks.poll()) != null) {
+				task.run();
+			}
+		}
+	}
+
+
+	private static class EvenPayloadInterceptor extends ChannelInterceptorAdapter implements ExecutorChannelInterceptor {
+
+		@Override
+		public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+			return ((Integer) message.getPayload() % 2 == 0 ? message : null);
+		}
+
+		@Override
+		public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+		}
+	}
+
+
+	private static class RecordingHandler implements MessageHandler {
+
+		private final List<Object> payloads = new ArrayList<Object>();
+
+		@Override
+		public void handleMessage(Message<?> message) {
+			this.payloads.add(message.getPayload());
+		}
+	}
+
+}
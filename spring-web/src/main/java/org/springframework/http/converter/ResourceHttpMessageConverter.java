@@ -16,8 +16,11 @@
 
 package org.springframework.http.converter;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import javax.activation.FileTypeMap;
 import javax.activation.MimetypesFileTypeMap;
 
@@ -25,6 +28,7 @@ import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceFileUtils;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
@@ -101,6 +105,24 @@ public class ResourceHttpMessageConverter extends AbstractHttpMessageConverter<R
 	protected void writeInternal(Resource resource, HttpOutputMessage outputMessage)
 			throws IOException, HttpMessageNotWritableException {
 
+		File file = ResourceFileUtils.getFileIfResolvable(resource);
+		if (file != null) {
+			// Transfer the content straight from the file channel
+			FileChannel channel = new FileInputStream(file).getChannel();
+			try {
+				StreamUtils.copyRange(channel, outputMessage.getBody(), 0, channel.size() - 1);
+			}
+			finally {
+				try {
+					channel.close();
+				}
+				catch (IOException ex) {
+					// ignore
+				}
+			}
+			return;
+		}
+
 		InputStream in = resource.getInputStream();
 		try {
 			StreamUtils.copy(in, outputMessage.getBody());
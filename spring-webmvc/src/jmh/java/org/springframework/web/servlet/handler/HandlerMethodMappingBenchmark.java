@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.handler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.mock.web.test.MockHttpServletRequest;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Benchmarks for handler method lookups in {@link AbstractHandlerMethodMapping},
+ * with and without the URL pattern index, for a growing number of mappings.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HandlerMethodMappingBenchmark {
+
+	@Param({"100", "1000", "3000"})
+	public int mappingCount;
+
+	@Param({"false", "true"})
+	public boolean usePatternIndex;
+
+
+	private RequestMappingHandlerMapping mapping;
+
+	private MockHttpServletRequest firstRequest;
+
+	private MockHttpServletRequest lastRequest;
+
+	private MockHttpServletRequest unmatchedRequest;
+
+
+	@Setup
+	public void setup() throws Exception {
+		this.mapping = new RequestMappingHandlerMapping();
+		this.mapping.setApplicationContext(new StaticWebApplicationContext());
+		this.mapping.setUsePatternIndex(this.usePatternIndex);
+		this.mapping.afterPropertiesSet();
+
+		Handler handler = new Handler();
+		Method method = Handler.class.getMethod("handle");
+		for (int i = 0; i < this.mappingCount; i++) {
+			RequestMappingInfo info = RequestMappingInfo.paths("/api/resource" + i + "/{id}")
+					.methods(RequestMethod.GET).build();
+			this.mapping.registerMapping(info, handler, method);
+		}
+
+		this.firstRequest = new MockHttpServletRequest("GET", "/api/resource0/42");
+		this.lastRequest = new MockHttpServletRequest("GET", "/api/resource" + (this.mappingCount - 1) + "/42");
+		this.unmatchedRequest = new MockHttpServletRequest("GET", "/api/unknown/42");
+	}
+
+
+	@Benchmark
+	public Object lookupFirstMapping() throws Exception {
+		return this.mapping.getHandlerInternal(this.firstRequest);
+	}
+
+	@Benchmark
+	public Object lookupLastMapping() throws Exception {
+		return this.mapping.getHandlerInternal(this.lastRequest);
+	}
+
+	@Benchmark
+	public Object lookupUnmatched() throws Exception {
+		return this.mapping.getHandlerInternal(this.unmatchedRequest);
+	}
+
+
+	public static class Handler {
+
+		public void handle() {
+		}
+	}
+
+}
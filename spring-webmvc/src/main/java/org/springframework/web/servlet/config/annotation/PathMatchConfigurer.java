@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,6 +43,8 @@ public class PathMatchConfigurer {
 
 	private Boolean registeredSuffixPatternMatch;
 
+	private Boolean patternIndex;
+
 	private UrlPathHelper urlPathHelper;
 
 	private PathMatcher pathMatcher;
@@ -85,6 +87,20 @@ public class PathMatchConfigurer {
 		return this;
 	}
 
+	/**
+	 * Whether to index the URL patterns of request mappings in a trie of path
+	 * segments, in order to narrow down the mappings checked for lookup paths
+	 * that do not match a mapping directly. Recommended for applications with
+	 * a large number of request mappings.
+	 * <p>By default this is set to "false".
+	 * @since 4.3
+	 * @see org.springframework.web.servlet.handler.AbstractHandlerMethodMapping#setUsePatternIndex
+	 */
+	public PathMatchConfigurer setUsePatternIndex(Boolean patternIndex) {
+		this.patternIndex = patternIndex;
+		return this;
+	}
+
 	/**
 	 * Set the UrlPathHelper to use for resolution of lookup paths.
 	 * <p>Use this to override the default UrlPathHelper with a custom subclass,
@@ -118,6 +134,10 @@ public class PathMatchConfigurer {
 		return this.registeredSuffixPatternMatch;
 	}
 
+	public Boolean isUsePatternIndex() {
+		return this.patternIndex;
+	}
+
 	public UrlPathHelper getUrlPathHelper() {
 		return this.urlPathHelper;
 	}
@@ -255,6 +255,9 @@ public class WebMvcConfigurationSupport implements ApplicationContextAware, Serv
 		if (configurer.isUseTrailingSlashMatch() != null) {
 			handlerMapping.setUseTrailingSlashMatch(configurer.isUseTrailingSlashMatch());
 		}
+		if (configurer.isUsePatternIndex() != null) {
+			handlerMapping.setUsePatternIndex(configurer.isUsePatternIndex());
+		}
 		if (configurer.getPathMatcher() != null) {
 			handlerMapping.setPathMatcher(configurer.getPathMatcher());
 		}
@@ -89,6 +89,8 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 
 	private HandlerMethodMappingNamingStrategy<T> namingStrategy;
 
+	private boolean usePatternIndex = false;
+
 	private final MappingRegistry mappingRegistry = new MappingRegistry();
 
 
@@ -122,6 +124,35 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 		return this.namingStrategy;
 	}
 
+	/**
+	 * Whether to maintain an index of the URL patterns of all registered
+	 * mappings, organized as a trie of path segments, and to consult it for
+	 * lookup paths that do not match any mapping directly.
+	 * <p>Without the index, such lookup paths are checked against every
+	 * registered mapping, which becomes expensive with a large number of
+	 * mappings. The index only narrows down the candidate mappings; matching
+	 * and selecting the best match is still performed by the mappings,
+	 * so the resulting handler method is the same either way.
+	 * <p>The index assumes "/" separated URL patterns in the style of the
+	 * default {@link org.springframework.util.AntPathMatcher}, and should not
+	 * be enabled with a {@link #setPathMatcher PathMatcher} that uses a
+	 * different syntax.
+	 * <p>By default this is set to "false".
+	 * @since 4.3
+	 */
+	public void setUsePatternIndex(boolean usePatternIndex) {
+		this.usePatternIndex = usePatternIndex;
+		this.mappingRegistry.setPatternIndexEnabled(usePatternIndex);
+	}
+
+	/**
+	 * Whether an index of the URL patterns of registered mappings is used.
+	 * @since 4.3
+	 */
+	public boolean usePatternIndex() {
+		return this.usePatternIndex;
+	}
+
 	/**
 	 * Return a (read-only) map with all mappings and HandlerMethod's.
 	 */
@@ -337,8 +368,14 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 			addMatchingMappings(directPathMatches, matches, request);
 		}
 		if (matches.isEmpty()) {
-			// No choice but to go through all mappings...
-			addMatchingMappings(this.mappingRegistry.getMappings().keySet(), matches, request);
+			List<T> candidates = this.mappingRegistry.getMappingsByPatternIndex(lookupPath);
+			if (candidates != null) {
+				addMatchingMappings(candidates, matches, request);
+			}
+			else {
+				// No choice but to go through all mappings...
+				addMatchingMappings(this.mappingRegistry.getMappings().keySet(), matches, request);
+			}
 		}
 
 		if (!matches.isEmpty()) {
@@ -480,6 +517,8 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 		private final Map<HandlerMethod, CorsConfiguration> corsLookup =
 				new ConcurrentHashMap<HandlerMethod, CorsConfiguration>();
 
+		private PathPatternIndex<T> patternIndex;
+
 		private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
 		/**
@@ -498,6 +537,15 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 			return this.urlLookup.get(urlPath);
 		}
 
+		/**
+		 * Return the mappings whose patterns could match the given URL path,
+		 * or {@code null} if no pattern index is maintained. Not thread-safe.
+		 * @see #acquireReadLock()
+		 */
+		public List<T> getMappingsByPatternIndex(String urlPath) {
+			return (this.patternIndex != null ? this.patternIndex.getCandidates(urlPath) : null);
+		}
+
 		/**
 		 * Return handler methods by mapping name. Thread-safe for concurrent use.
 		 */
@@ -527,6 +575,28 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 			this.readWriteLock.readLock().unlock();
 		}
 
+		/**
+		 * Create or discard the index of URL patterns, populating a newly
+		 * created index with the mappings registered so far.
+		 */
+		public void setPatternIndexEnabled(boolean enabled) {
+			this.readWriteLock.writeLock().lock();
+			try {
+				if (!enabled) {
+					this.patternIndex = null;
+				}
+				else if (this.patternIndex == null) {
+					this.patternIndex = new PathPatternIndex<T>();
+					for (T mapping : this.mappingLookup.keySet()) {
+						this.patternIndex.add(mapping, getMappingPathPatterns(mapping));
+					}
+				}
+			}
+			finally {
+				this.readWriteLock.writeLock().unlock();
+			}
+		}
+
 		public void register(T mapping, Object handler, Method method) {
 			this.readWriteLock.writeLock().lock();
 			try {
@@ -543,6 +613,10 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 					this.urlLookup.add(url, mapping);
 				}
 
+				if (this.patternIndex != null) {
+					this.patternIndex.add(mapping, getMappingPathPatterns(mapping));
+				}
+
 				String name = null;
 				if (getNamingStrategy() != null) {
 					name = getNamingStrategy().getName(handlerMethod, mapping);
@@ -630,6 +704,10 @@ public abstract class AbstractHandlerMethodMapping<T> extends AbstractHandlerMap
 					}
 				}
 
+				if (this.patternIndex != null) {
+					this.patternIndex.remove(definition.getMapping(), getMappingPathPatterns(definition.getMapping()));
+				}
+
 				removeMappingName(definition);
 
 				this.corsLookup.remove(definition.getHandlerMethod());
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.handler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * A segment trie over the URL patterns of registered mappings, used to narrow
+ * down the set of mappings that need to be checked for a given lookup path.
+ *
+ * <p>Each pattern is split on "/" into segments. A segment without wildcards
+ * or URI variables becomes a literal edge, a "**" segment becomes a multi-segment
+ * edge, and any other segment (e.g. "{id}", "*" or "*.html") becomes a
+ * single-segment wildcard edge.
+ *
+ * <p>The index is deliberately conservative: it returns a superset of the
+ * mappings whose patterns could match the lookup path, also taking into account
+ * suffix pattern matching ("/users" matching "/users.json"), trailing slash
+ * matching, trimmed tokens and case-insensitive matching. The actual match and
+ * the selection of the best match remain the job of the mapping conditions,
+ * so that the outcome is identical to checking every registered mapping.
+ * Candidates are returned in registration order for the same reason.
+ *
+ * <p>This class is not thread-safe; access is guarded by the read-write lock
+ * of the owning mapping registry.
+ *
+ * @author agent
+ * @since 4.3
+ * @param <T> the mapping type
+ * @see AbstractHandlerMethodMapping#setUsePatternIndex
+ */
+class PathPatternIndex<T> {
+
+	private static final String PATH_SEPARATOR = "/";
+
+	private static final String DOUBLE_WILDCARD = "**";
+
+	private static final char[] WILDCARD_CHARS = {'*', '?', '{'};
+
+
+	private final Node<T> root = new Node<T>();
+
+	/** Mappings without any patterns, matching every lookup path */
+	private final Map<T, Integer> unconditionalMappings = new LinkedHashMap<T, Integer>();
+
+	private final Map<T, Integer> registrationOrder = new HashMap<T, Integer>();
+
+	private int counter;
+
+
+	/**
+	 * Add the given mapping to the index.
+	 * @param mapping the mapping
+	 * @param patterns the URL patterns of the mapping, possibly empty
+	 */
+	public void add(T mapping, Collection<String> patterns) {
+		Integer order = this.registrationOrder.get(mapping);
+		if (order == null) {
+			order = this.counter++;
+			this.registrationOrder.put(mapping, order);
+		}
+		if (patterns.isEmpty()) {
+			this.unconditionalMappings.put(mapping, order);
+			return;
+		}
+		for (String pattern : patterns) {
+			Node<T> node = this.root;
+			for (String segment : tokenize(pattern)) {
+				node = node.getOrCreateChild(segment);
+			}
+			if (!node.mappings.contains(mapping)) {
+				node.mappings.add(mapping);
+			}
+		}
+	}
+
+	/**
+	 * Remove the given mapping from the index.
+	 * @param mapping the mapping
+	 * @param patterns the URL patterns the mapping was added with
+	 */
+	public void remove(T mapping, Collection<String> patterns) {
+		this.registrationOrder.remove(mapping);
+		this.unconditionalMappings.remove(mapping);
+		for (String pattern : patterns) {
+			removeFrom(this.root, tokenize(pattern), 0, mapping);
+		}
+	}
+
+	private boolean removeFrom(Node<T> node, String[] segments, int index, T mapping) {
+		if (index == segments.length) {
+			node.mappings.remove(mapping);
+		}
+		else {
+			String segment = segments[index];
+			Node<T> child = node.getChild(segment);
+			if (child != null && removeFrom(child, segments, index + 1, mapping)) {
+				node.removeChild(segment);
+			}
+		}
+		return node.isEmpty();
+	}
+
+	/**
+	 * Return the mappings that could possibly match the given lookup path,
+	 * in the order in which they were added.
+	 * @param lookupPath the lookup path
+	 * @return the candidate mappings (never {@code null})
+	 */
+	public List<T> getCandidates(String lookupPath) {
+		TreeMap<Integer, T> candidates = new TreeMap<Integer, T>();
+		for (Map.Entry<T, Integer> entry : this.unconditionalMappings.entrySet()) {
+			candidates.put(entry.getValue(), entry.getKey());
+		}
+		collect(this.root, tokenize(lookupPath), 0, candidates);
+		return new ArrayList<T>(candidates.values());
+	}
+
+	private void collect(Node<T> node, String[] segments, int index, Map<Integer, T> candidates) {
+		if (node.doubleWildcardChild != null) {
+			// "**" consumes zero or more of the remaining segments
+			for (int i = index; i <= segments.length; i++) {
+				collect(node.doubleWildcardChild, segments, i, candidates);
+			}
+		}
+		if (index == segments.length) {
+			addAll(node, candidates);
+			// "/foo/*" also matches "/foo/"
+			if (node.wildcardChild != null) {
+				addAll(node.wildcardChild, candidates);
+			}
+			return;
+		}
+		String segment = segments[index];
+		if (node.wildcardChild != null) {
+			collect(node.wildcardChild, segments, index + 1, candidates);
+		}
+		if (node.literalChildren != null) {
+			Node<T> child = node.literalChildren.get(segment);
+			if (child != null) {
+				collect(child, segments, index + 1, candidates);
+			}
+			if (index == segments.length - 1) {
+				// Suffix pattern match: "/foo" also matches "/foo.json" and "/foo.bar.json"
+				int dotIndex = segment.indexOf('.');
+				while (dotIndex != -1) {
+					if (dotIndex == 0) {
+						addAll(node, candidates);
+					}
+					else {
+						child = node.literalChildren.get(segment.substring(0, dotIndex));
+						if (child != null) {
+							addAll(child, candidates);
+						}
+					}
+					dotIndex = segment.indexOf('.', dotIndex + 1);
+				}
+			}
+		}
+	}
+
+	private void addAll(Node<T> node, Map<Integer, T> candidates) {
+		for (T mapping : node.mappings) {
+			candidates.put(this.registrationOrder.get(mapping), mapping);
+		}
+	}
+
+	private static String[] tokenize(String path) {
+		String[] segments = StringUtils.tokenizeToStringArray(path, PATH_SEPARATOR, true, true);
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = segments[i].toLowerCase(Locale.ENGLISH);
+		}
+		return segments;
+	}
+
+	private static boolean isWildcardSegment(String segment) {
+		for (char c : WILDCARD_CHARS) {
+			if (segment.indexOf(c) != -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	private static class Node<T> {
+
+		private final List<T> mappings = new ArrayList<T>(1);
+
+		private Map<String, Node<T>> literalChildren;
+
+		private Node<T> wildcardChild;
+
+		private Node<T> doubleWildcardChild;
+
+		public Node<T> getChild(String segment) {
+			if (DOUBLE_WILDCARD.equals(segment)) {
+				return this.doubleWildcardChild;
+			}
+			else if (isWildcardSegment(segment)) {
+				return this.wildcardChild;
+			}
+			else {
+				return (this.literalChildren != null ? this.literalChildren.get(segment) : null);
+			}
+		}
+
+		public Node<T> getOrCreateChild(String segment) {
+			Node<T> child = getChild(segment);
+			if (child == null) {
+				child = new Node<T>();
+				if (DOUBLE_WILDCARD.equals(segment)) {
+					this.doubleWildcardChild = child;
+				}
+				else if (isWildcardSegment(segment)) {
+					this.wildcardChild = child;
+				}
+				else {
+					if (this.literalChildren == null) {
+						this.literalChildren = new HashMap<String, Node<T>>(4);
+					}
+					this.literalChildren.put(segment, child);
+				}
+			}
+			return child;
+		}
+
+		public void removeChild(String segment) {
+			if (DOUBLE_WILDCARD.equals(segment)) {
+				this.doubleWildcardChild = null;
+			}
+			else if (isWildcardSegment(segment)) {
+				this.wildcardChild = null;
+			}
+			else if (this.literalChildren != null) {
+				this.literalChildren.remove(segment);
+				if (this.literalChildren.isEmpty()) {
+					this.literalChildren = null;
+				}
+			}
+		}
+
+		public boolean isEmpty() {
+			return (this.mappings.isEmpty() && this.literalChildren == null &&
+					this.wildcardChild == null && this.doubleWildcardChild == null);
+		}
+	}
+
+}
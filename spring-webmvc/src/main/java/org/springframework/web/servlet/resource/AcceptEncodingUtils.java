@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Parsing of the "Accept-Encoding" request header, shared by the resolvers
+ * that select a content coding and by {@link CachingResourceResolver}, so
+ * that they agree on which content codings a request accepts.
+ *
+ * @author agent
+ * @since 4.3
+ */
+abstract class AcceptEncodingUtils {
+
+	/**
+	 * Determine whether the given request accepts the given content coding,
+	 * i.e. whether its "Accept-Encoding" header lists the coding (or "*")
+	 * with a quality value greater than 0.
+	 * @param request the current request (may be {@code null})
+	 * @param coding the content coding, in lower case
+	 */
+	public static boolean isAccepted(HttpServletRequest request, String coding) {
+		if (request == null) {
+			return false;
+		}
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		return (acceptEncoding != null && getQualityValue(parseQualityValues(acceptEncoding), coding) > 0);
+	}
+
+	/**
+	 * Parse the given "Accept-Encoding" header value into a map from content
+	 * coding (in lower case) to quality value, with 1.0 for codings without
+	 * a quality value and 0 for malformed ones.
+	 * @param acceptEncoding the header value (may be {@code null})
+	 */
+	public static Map<String, Double> parseQualityValues(String acceptEncoding) {
+		if (!StringUtils.hasText(acceptEncoding)) {
+			return Collections.emptyMap();
+		}
+		Map<String, Double> qualities = new HashMap<String, Double>(4);
+		for (String token : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+			String[] parts = StringUtils.tokenizeToStringArray(token, ";");
+			if (parts.length == 0) {
+				continue;
+			}
+			double quality = 1.0;
+			for (int i = 1; i < parts.length; i++) {
+				if (parts[i].startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parts[i].substring(2));
+					}
+					catch (NumberFormatException ex) {
+						quality = 0;
+					}
+				}
+			}
+			qualities.put(parts[0].toLowerCase(Locale.ENGLISH), quality);
+		}
+		return qualities;
+	}
+
+	/**
+	 * Return the quality value of the given content coding, falling back on
+	 * the "*" wildcard, or 0 if the coding is not acceptable at all.
+	 * @param qualities the quality values as returned by {@link #parseQualityValues}
+	 * @param coding the content coding, in lower case
+	 */
+	public static double getQualityValue(Map<String, Double> qualities, String coding) {
+		Double quality = qualities.get(coding);
+		if (quality == null) {
+			quality = qualities.get("*");
+		}
+		return (quality != null ? quality : 0);
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.web.servlet.resource;
 
 import java.util.List;
+import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.cache.Cache;
@@ -39,6 +40,9 @@ public class CachingResourceResolver extends AbstractResourceResolver {
 
 	public static final String RESOLVED_URL_PATH_CACHE_KEY_PREFIX = "resolvedUrlPath:";
 
+	/** Content codings that resolvers further down the chain may select */
+	private static final String[] CONTENT_CODINGS = new String[] {"gzip", "br"};
+
 
 	private final Cache cache;
 
@@ -91,8 +95,17 @@ public class CachingResourceResolver extends AbstractResourceResolver {
 		key.append(requestPath);
 		if (request != null) {
 			String encoding = request.getHeader("Accept-Encoding");
-			if (encoding != null && encoding.contains("gzip")) {
-				key.append("+encoding=gzip");
+			if (encoding != null) {
+				Map<String, Double> qualities = AcceptEncodingUtils.parseQualityValues(encoding);
+				for (String coding : CONTENT_CODINGS) {
+					double quality = AcceptEncodingUtils.getQualityValue(qualities, coding);
+					if (quality > 0) {
+						key.append("+encoding=").append(coding);
+						if (quality < 1) {
+							key.append(";q=").append(quality);
+						}
+					}
+				}
 			}
 		}
 		return key.toString();
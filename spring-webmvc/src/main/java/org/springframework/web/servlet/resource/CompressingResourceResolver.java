@@ -0,0 +1,545 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * A {@code ResourceResolver} that delegates to the chain to locate a resource
+ * and then returns a compressed variant of it, negotiated from the content
+ * codings listed in the "Accept-Encoding" request header.
+ *
+ * <p>For each acceptable content coding, in order of the client's quality
+ * values and then of the {@link #setContentCodings configured preference},
+ * a precompressed variant next to the resource is used if present (e.g.
+ * "app.js.br" or "app.js.gz"). Otherwise, for the "gzip" coding, the resource
+ * is compressed once and the result is kept in an in-memory cache that is
+ * bounded by the total size of the cached content, so that the same content
+ * does not get compressed on every request. Only
+ * resources with a {@link #setCompressibleExtensions compressible extension}
+ * and a length within the configured bounds are compressed on the fly.
+ *
+ * <p>Resolved variants implement {@link EncodedResource} as well as
+ * {@link VersionedResource}, with the MD5 hash of the encoded content as
+ * version. {@link ResourceHttpRequestHandler} exposes that version as a
+ * strong "ETag" that is specific to the content coding.
+ *
+ * <p>When combined with {@link CachingResourceResolver}, this resolver should
+ * be placed after it in the chain, so that the cache key reflects the content
+ * codings accepted by the client. This resolver replaces
+ * {@link GzipResourceResolver}; the two are not meant to be used together.
+ *
+ * @author agent
+ * @since 4.3
+ * @see GzipResourceResolver
+ */
+public class CompressingResourceResolver extends AbstractResourceResolver {
+
+	/**
+	 * Default maximum total size of the compressed content to cache: 10M.
+	 */
+	public static final int DEFAULT_CACHE_SIZE_LIMIT = 10 * 1024 * 1024;
+
+	/**
+	 * Default minimum content length for compression on the fly: 1K.
+	 */
+	public static final int DEFAULT_MIN_CONTENT_LENGTH = 1024;
+
+	/**
+	 * Default maximum content length for compression on the fly: 1M.
+	 */
+	public static final int DEFAULT_MAX_CONTENT_LENGTH = 1024 * 1024;
+
+	private static final Map<String, String> extensions = new HashMap<String, String>(4);
+
+	static {
+		extensions.put("br", ".br");
+		extensions.put("gzip", ".gz");
+	}
+
+
+	private final List<String> contentCodings = new ArrayList<String>(Arrays.asList("br", "gzip"));
+
+	private final Set<String> compressibleExtensions = new LinkedHashSet<String>(Arrays.asList(
+			"html", "htm", "css", "js", "json", "map", "svg", "txt", "xml", "csv", "manifest", "appcache"));
+
+	private boolean compressOnTheFly = true;
+
+	private int minContentLength = DEFAULT_MIN_CONTENT_LENGTH;
+
+	private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+
+	private volatile EncodedContentCache cache = new EncodedContentCache(DEFAULT_CACHE_SIZE_LIMIT);
+
+
+	/**
+	 * Configure the supported content codings in order of preference, for
+	 * content codings that the client accepts with the same quality value.
+	 * <p>Supported are "br" (precompressed variants only) and "gzip".
+	 * By default both are enabled, preferring "br".
+	 */
+	public void setContentCodings(List<String> contentCodings) {
+		Assert.notEmpty(contentCodings, "At least one content coding expected");
+		for (String coding : contentCodings) {
+			Assert.isTrue(extensions.containsKey(coding), "Unsupported content coding: " + coding);
+		}
+		this.contentCodings.clear();
+		this.contentCodings.addAll(contentCodings);
+	}
+
+	/**
+	 * Return the configured content codings in order of preference.
+	 */
+	public List<String> getContentCodings() {
+		return Collections.unmodifiableList(this.contentCodings);
+	}
+
+	/**
+	 * Configure the file extensions of resources to compress on the fly, e.g.
+	 * "js" or "css". Formats that are compressed already, such as images and
+	 * fonts, do not benefit from another compression.
+	 * <p>By default, common text-based web formats are compressed.
+	 */
+	public void setCompressibleExtensions(Set<String> compressibleExtensions) {
+		Assert.notNull(compressibleExtensions, "Compressible extensions must not be null");
+		this.compressibleExtensions.clear();
+		for (String extension : compressibleExtensions) {
+			this.compressibleExtensions.add(extension.toLowerCase(Locale.ENGLISH));
+		}
+	}
+
+	/**
+	 * Return the file extensions of resources to compress on the fly.
+	 */
+	public Set<String> getCompressibleExtensions() {
+		return Collections.unmodifiableSet(this.compressibleExtensions);
+	}
+
+	/**
+	 * Whether to compress resources without a precompressed variant on the fly.
+	 * <p>Default is "true". Switch this to "false" in order to only serve
+	 * precompressed variants.
+	 */
+	public void setCompressOnTheFly(boolean compressOnTheFly) {
+		this.compressOnTheFly = compressOnTheFly;
+	}
+
+	/**
+	 * Return whether resources get compressed on the fly.
+	 */
+	public boolean isCompressOnTheFly() {
+		return this.compressOnTheFly;
+	}
+
+	/**
+	 * Set the minimum content length of resources to compress on the fly.
+	 * <p>Default is 1K. Compressing smaller content rarely pays off.
+	 */
+	public void setMinContentLength(int minContentLength) {
+		this.minContentLength = minContentLength;
+	}
+
+	/**
+	 * Return the minimum content length of resources to compress on the fly.
+	 */
+	public int getMinContentLength() {
+		return this.minContentLength;
+	}
+
+	/**
+	 * Set the maximum content length of resources to compress on the fly.
+	 * <p>Default is 1M. Content compressed to more than the
+	 * {@link #setCacheSizeLimit cache size limit} is not cached.
+	 */
+	public void setMaxContentLength(int maxContentLength) {
+		this.maxContentLength = maxContentLength;
+	}
+
+	/**
+	 * Return the maximum content length of resources to compress on the fly.
+	 */
+	public int getMaxContentLength() {
+		return this.maxContentLength;
+	}
+
+	/**
+	 * Specify the maximum total size in bytes of the cached compressed content,
+	 * including a small fixed amount per cached entry.
+	 * <p>Default is 10M. Least recently used entries are evicted once the
+	 * limit has been exceeded.
+	 */
+	public void setCacheSizeLimit(int cacheSizeLimit) {
+		Assert.isTrue(cacheSizeLimit > 0, "Cache size limit must be greater than 0");
+		this.cache = new EncodedContentCache(cacheSizeLimit);
+	}
+
+	/**
+	 * Return the maximum total size in bytes of the cached compressed content.
+	 */
+	public int getCacheSizeLimit() {
+		return this.cache.sizeLimit;
+	}
+
+	/**
+	 * Return the current total size in bytes of the cached compressed content.
+	 */
+	public int getCacheSize() {
+		return this.cache.getSize();
+	}
+
+	/**
+	 * Clear the cache of compressed variants.
+	 */
+	public void clearCache() {
+		this.cache.clear();
+	}
+
+
+	@Override
+	protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath,
+			List<? extends Resource> locations, ResourceResolverChain chain) {
+
+		Resource resource = chain.resolveResource(request, requestPath, locations);
+		if (resource == null || request == null || resource instanceof EncodedResource) {
+			return resource;
+		}
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (!StringUtils.hasText(acceptEncoding)) {
+			return resource;
+		}
+
+		for (String coding : getAcceptedCodings(acceptEncoding)) {
+			try {
+				Resource encoded = getEncodedResource(resource, coding);
+				if (encoded != null) {
+					return encoded;
+				}
+			}
+			catch (IOException ex) {
+				if (logger.isTraceEnabled()) {
+					logger.trace("No " + coding + " variant for [" + resource + "]", ex);
+				}
+			}
+		}
+		return resource;
+	}
+
+	@Override
+	protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+			ResourceResolverChain chain) {
+
+		return chain.resolveUrlPath(resourceUrlPath, locations);
+	}
+
+	/**
+	 * Return the configured content codings that the client accepts, ordered
+	 * by quality value and then by the configured preference.
+	 */
+	List<String> getAcceptedCodings(String acceptEncoding) {
+		Map<String, Double> qualities = AcceptEncodingUtils.parseQualityValues(acceptEncoding);
+		List<String> accepted = new ArrayList<String>(this.contentCodings.size());
+		List<Double> acceptedQualities = new ArrayList<Double>(this.contentCodings.size());
+		for (String coding : this.contentCodings) {
+			double quality = AcceptEncodingUtils.getQualityValue(qualities, coding);
+			if (quality > 0) {
+				// Insertion sort, keeping the configured order for equal qualities
+				int index = 0;
+				while (index < accepted.size() && acceptedQualities.get(index) >= quality) {
+					index++;
+				}
+				accepted.add(index, coding);
+				acceptedQualities.add(index, quality);
+			}
+		}
+		return accepted;
+	}
+
+	private Resource getEncodedResource(Resource resource, String coding) throws IOException {
+		Resource precompressed = resource.createRelative(resource.getFilename() + extensions.get(coding));
+		long precompressedLastModified = (precompressed.exists() ? precompressed.lastModified() : -1);
+		String key = coding + ":" + resource.lastModified() + ":" + precompressedLastModified + ":" +
+				resource.getDescription();
+		EncodedContent content = this.cache.get(key);
+		if (content == null) {
+			content = encode(resource, coding, precompressed, precompressedLastModified);
+			content = this.cache.put(key, content);
+		}
+		return (content.content != null ? new CompressedResource(resource, coding, content) : null);
+	}
+
+	private EncodedContent encode(Resource resource, String coding, Resource precompressed, long lastModified)
+			throws IOException {
+
+		if (lastModified != -1) {
+			InputStream in = precompressed.getInputStream();
+			try {
+				return new EncodedContent(precompressed, DigestUtils.md5DigestAsHex(in), lastModified, 0);
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		if (!this.compressOnTheFly || !"gzip".equals(coding) || !isCompressible(resource)) {
+			return EncodedContent.notEncoded();
+		}
+		long contentLength = resource.contentLength();
+		if (contentLength < this.minContentLength || contentLength > this.maxContentLength) {
+			return EncodedContent.notEncoded();
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream((int) contentLength);
+		InputStream in = resource.getInputStream();
+		try {
+			OutputStream out = new GZIPOutputStream(bos);
+			StreamUtils.copy(in, out);
+			out.close();
+		}
+		finally {
+			in.close();
+		}
+		byte[] compressed = bos.toByteArray();
+		if (compressed.length >= contentLength) {
+			return EncodedContent.notEncoded();
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Compressed [" + resource + "] from " + contentLength + " to " +
+					compressed.length + " bytes");
+		}
+		return new EncodedContent(new ByteArrayResource(compressed), DigestUtils.md5DigestAsHex(compressed), -1,
+				compressed.length);
+	}
+
+	private boolean isCompressible(Resource resource) {
+		String extension = StringUtils.getFilenameExtension(resource.getFilename());
+		return (extension != null && this.compressibleExtensions.contains(extension.toLowerCase(Locale.ENGLISH)));
+	}
+
+
+	/**
+	 * Cache of encoded content, bounded by the total size of the content held
+	 * in memory. Lookups are lock-free and only record the time of access;
+	 * insertions synchronize and evict the least recently accessed entries
+	 * while the size limit is exceeded.
+	 */
+	private static final class EncodedContentCache {
+
+		/** Approximate memory taken by a cache entry besides the content */
+		private static final int ENTRY_OVERHEAD = 256;
+
+		private final int sizeLimit;
+
+		private final Map<String, EncodedContent> contents = new ConcurrentHashMap<String, EncodedContent>(64);
+
+		/** Total size of the cached entries, guarded by this cache */
+		private int size;
+
+		public EncodedContentCache(int sizeLimit) {
+			this.sizeLimit = sizeLimit;
+		}
+
+		public EncodedContent get(String key) {
+			EncodedContent content = this.contents.get(key);
+			if (content != null) {
+				content.lastAccess = System.nanoTime();
+			}
+			return content;
+		}
+
+		/**
+		 * Cache the given content unless content is cached for the key already.
+		 * @return the content now cached for the key, or the given content
+		 * if too large to be cached at all
+		 */
+		public synchronized EncodedContent put(String key, EncodedContent content) {
+			EncodedContent existing = this.contents.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			int weight = ENTRY_OVERHEAD + key.length() * 2 + content.size;
+			if (weight > this.sizeLimit) {
+				return content;
+			}
+			content.lastAccess = System.nanoTime();
+			this.contents.put(key, content);
+			this.size += weight;
+			while (this.size > this.sizeLimit) {
+				evictLeastRecentlyAccessed();
+			}
+			return content;
+		}
+
+		private void evictLeastRecentlyAccessed() {
+			Map.Entry<String, EncodedContent> eldest = null;
+			for (Map.Entry<String, EncodedContent> entry : this.contents.entrySet()) {
+				if (eldest == null || entry.getValue().lastAccess - eldest.getValue().lastAccess < 0) {
+					eldest = entry;
+				}
+			}
+			this.contents.remove(eldest.getKey());
+			this.size -= ENTRY_OVERHEAD + eldest.getKey().length() * 2 + eldest.getValue().size;
+		}
+
+		public synchronized int getSize() {
+			return this.size;
+		}
+
+		public synchronized void clear() {
+			this.contents.clear();
+			this.size = 0;
+		}
+	}
+
+
+	/**
+	 * Cached variant of a resource in a given content coding.
+	 */
+	private static final class EncodedContent {
+
+		/** The encoded content, or {@code null} if there is no variant in the coding */
+		private final Resource content;
+
+		private final String hash;
+
+		/** Last-modified time of a precompressed variant, or -1 if compressed on the fly */
+		private final long lastModified;
+
+		/** Number of bytes held in memory for content compressed on the fly */
+		private final int size;
+
+		private volatile long lastAccess;
+
+		public EncodedContent(Resource content, String hash, long lastModified, int size) {
+			this.content = content;
+			this.hash = hash;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+
+		public static EncodedContent notEncoded() {
+			return new EncodedContent(null, null, -1, 0);
+		}
+	}
+
+
+	private static final class CompressedResource extends AbstractResource
+			implements EncodedResource, VersionedResource {
+
+		private final Resource original;
+
+		private final String coding;
+
+		private final EncodedContent encoded;
+
+		public CompressedResource(Resource original, String coding, EncodedContent encoded) {
+			this.original = original;
+			this.coding = coding;
+			this.encoded = encoded;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return this.encoded.content.getInputStream();
+		}
+
+		@Override
+		public boolean exists() {
+			return this.encoded.content.exists();
+		}
+
+		@Override
+		public boolean isReadable() {
+			return this.encoded.content.isReadable();
+		}
+
+		@Override
+		public URL getURL() throws IOException {
+			return this.encoded.content.getURL();
+		}
+
+		@Override
+		public URI getURI() throws IOException {
+			return this.encoded.content.getURI();
+		}
+
+		@Override
+		public File getFile() throws IOException {
+			return this.encoded.content.getFile();
+		}
+
+		@Override
+		public long contentLength() throws IOException {
+			return this.encoded.content.contentLength();
+		}
+
+		@Override
+		public long lastModified() throws IOException {
+			return (this.encoded.lastModified != -1 ? this.encoded.lastModified : this.original.lastModified());
+		}
+
+		@Override
+		public Resource createRelative(String relativePath) throws IOException {
+			return this.original.createRelative(relativePath);
+		}
+
+		@Override
+		public String getFilename() {
+			return this.original.getFilename();
+		}
+
+		@Override
+		public String getDescription() {
+			return this.coding + " encoded " + this.original.getDescription();
+		}
+
+		@Override
+		public String getContentEncoding() {
+			return this.coding;
+		}
+
+		@Override
+		public String getVersion() {
+			return this.encoded.hash;
+		}
+	}
+
+}
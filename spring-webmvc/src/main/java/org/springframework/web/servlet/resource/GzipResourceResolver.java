@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -32,7 +32,8 @@ import org.springframework.core.io.Resource;
  * and then attempts to find a variation with the ".gz" extension.
  *
  * <p>The resolver gets involved only if the "Accept-Encoding" request header
- * contains the value "gzip" indicating the client accepts gzipped responses.
+ * accepts "gzip" (or "*") with a non-zero quality value, indicating the client
+ * accepts gzipped responses.
  *
  * @author Jeremy Grelle
  * @author Rossen Stoyanchev
@@ -64,8 +65,7 @@ public class GzipResourceResolver extends AbstractResourceResolver {
 	}
 
 	private boolean isGzipAccepted(HttpServletRequest request) {
-		String value = request.getHeader("Accept-Encoding");
-		return (value != null && value.toLowerCase().contains("gzip"));
+		return AcceptEncodingUtils.isAccepted(request, "gzip");
 	}
 
 	@Override
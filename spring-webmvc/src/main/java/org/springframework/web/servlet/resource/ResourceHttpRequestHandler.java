@@ -16,17 +16,20 @@
 
 package org.springframework.web.servlet.resource;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 import javax.activation.FileTypeMap;
 import javax.activation.MimetypesFileTypeMap;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponseWrapper;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -36,6 +39,7 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceFileUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpRange;
@@ -98,6 +102,14 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 
 	private static final Log logger = LogFactory.getLog(ResourceHttpRequestHandler.class);
 
+	private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
 	private static final boolean jafPresent = ClassUtils.isPresent(
 			"javax.activation.FileTypeMap", ResourceHttpRequestHandler.class.getClassLoader());
 
@@ -110,6 +122,8 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 
 	private CorsConfiguration corsConfiguration;
 
+	private long sendfileThreshold = 48 * 1024;
+
 
 	public ResourceHttpRequestHandler() {
 		super(HttpMethod.GET.name(), HttpMethod.HEAD.name());
@@ -177,6 +191,29 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 		return this.corsConfiguration;
 	}
 
+	/**
+	 * Set the minimum number of bytes to be written for a file system resource
+	 * in order to hand it off to the container's sendfile support, if available.
+	 * <p>With Tomcat's NIO and APR connectors, the container then writes the
+	 * file content to the socket itself instead of the content being streamed
+	 * through the servlet response. Smaller writes, and containers without such
+	 * support, go through {@link FileChannel#transferTo} for file system resources.
+	 * <p>Default is 48K, in line with the default of Tomcat's {@code DefaultServlet}.
+	 * Set this to -1 in order to never use sendfile.
+	 * @since 4.3
+	 */
+	public void setSendfileThreshold(long sendfileThreshold) {
+		this.sendfileThreshold = sendfileThreshold;
+	}
+
+	/**
+	 * Return the minimum number of bytes to be written through sendfile.
+	 * @since 4.3
+	 */
+	public long getSendfileThreshold() {
+		return this.sendfileThreshold;
+	}
+
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
@@ -243,7 +280,7 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 		checkRequest(request);
 
 		// Header phase
-		if (new ServletWebRequest(request, response).checkNotModified(resource.lastModified())) {
+		if (checkNotModified(request, response, resource)) {
 			logger.trace("Resource not modified - returning 304");
 			return;
 		}
@@ -273,7 +310,7 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 
 		if (request.getHeader(HttpHeaders.RANGE) == null) {
 			setHeaders(response, resource, mediaType);
-			writeContent(response, resource);
+			writeContent(request, response, resource);
 		}
 		else {
 			writePartialContent(request, response, resource, mediaType);
@@ -431,20 +468,56 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 		if (resource instanceof EncodedResource) {
 			response.setHeader(HttpHeaders.CONTENT_ENCODING, ((EncodedResource) resource).getContentEncoding());
 		}
+		if (resource instanceof EncodedResource || isContentCodingNegotiated()) {
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
 		if (resource instanceof VersionedResource) {
 			response.setHeader(HttpHeaders.ETAG, "\"" + ((VersionedResource) resource).getVersion() + "\"");
 		}
 		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
 	}
 
+	/**
+	 * Write the actual content out to the given servlet response.
+	 * <p>The default implementation hands file system resources off to the
+	 * container's sendfile support, if available (see {@link #setSendfileThreshold}),
+	 * and delegates to {@link #writeContent(HttpServletResponse, Resource)} otherwise.
+	 * Subclasses may override this method in order to customize or to suppress
+	 * the use of sendfile.
+	 * @param request current servlet request
+	 * @param response current servlet response
+	 * @param resource the identified resource (never {@code null})
+	 * @throws IOException in case of errors while writing the content
+	 * @since 4.3
+	 */
+	protected void writeContent(HttpServletRequest request, HttpServletResponse response, Resource resource)
+			throws IOException {
+
+		if (!useSendfile(request, response, resource, 0, resource.contentLength() - 1)) {
+			writeContent(response, resource);
+		}
+	}
+
 	/**
 	 * Write the actual content out to the given servlet response,
 	 * streaming the resource's content.
+	 * <p>The content of file system resources is transferred from the
+	 * resource's {@link FileChannel} rather than through its InputStream.
 	 * @param response current servlet response
 	 * @param resource the identified resource (never {@code null})
 	 * @throws IOException in case of errors while writing the content
 	 */
 	protected void writeContent(HttpServletResponse response, Resource resource) throws IOException {
+		FileChannel channel = openFileChannel(resource);
+		if (channel != null) {
+			try {
+				StreamUtils.copyRange(channel, response.getOutputStream(), 0, channel.size() - 1);
+			}
+			finally {
+				closeQuietly(channel);
+			}
+			return;
+		}
 		try {
 			InputStream in = resource.getInputStream();
 			try {
@@ -488,7 +561,7 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 		catch (IllegalArgumentException ex) {
 			response.addHeader("Content-Range", "bytes */" + length);
 			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
-            return;
+			return;
 		}
 
 		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
@@ -502,18 +575,15 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 
 			setHeaders(response, resource, contentType);
 			response.addHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
-            response.setContentLength((int) rangeLength);
+			response.setContentLength((int) rangeLength);
 
-			InputStream in = resource.getInputStream();
-			try {
-				copyRange(in, response.getOutputStream(), start, end);
-			}
-			finally {
+			if (!useSendfile(request, response, resource, start, end)) {
+				FileChannel channel = openFileChannel(resource);
 				try {
-					in.close();
+					copyRange(resource, channel, response.getOutputStream(), start, end);
 				}
-				catch (IOException ex) {
-					// ignore
+				finally {
+					closeQuietly(channel);
 				}
 			}
 		}
@@ -523,49 +593,143 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 
 			ServletOutputStream out = response.getOutputStream();
 
-			for (HttpRange range : ranges) {
-				long start = range.getRangeStart(length);
-				long end = range.getRangeEnd(length);
-
-				InputStream in = resource.getInputStream();
-
-                // Writing MIME header.
-                out.println();
-                out.println("--" + boundaryString);
-                if (contentType != null) {
-	                out.println("Content-Type: " + contentType);
-                }
-                out.println("Content-Range: bytes " + start + "-" + end + "/" + length);
-                out.println();
+			// Keep a single channel open across all ranges of a file system resource
+			FileChannel channel = openFileChannel(resource);
+			try {
+				for (HttpRange range : ranges) {
+					long start = range.getRangeStart(length);
+					long end = range.getRangeEnd(length);
+
+					// Writing MIME header.
+					out.println();
+					out.println("--" + boundaryString);
+					if (contentType != null) {
+						out.println("Content-Type: " + contentType);
+					}
+					out.println("Content-Range: bytes " + start + "-" + end + "/" + length);
+					out.println();
 
-                // Printing content
-                copyRange(in, out, start, end);
+					// Printing content
+					copyRange(resource, channel, out, start, end);
+				}
+			}
+			finally {
+				closeQuietly(channel);
 			}
 			out.println();
-            out.print("--" + boundaryString + "--");
+			out.print("--" + boundaryString + "--");
 		}
 	}
 
-	private void copyRange(InputStream in, OutputStream out, long start, long end) throws IOException {
-		long skipped = in.skip(start);
-		if (skipped < start) {
-			throw new IOException("Skipped only " + skipped + " bytes out of " + start + " required.");
+	/**
+	 * Evaluate the conditional request headers against the given resource.
+	 * <p>For a {@link VersionedResource}, "If-None-Match" takes precedence over
+	 * "If-Modified-Since" as per RFC 7232: if present, the resource version is
+	 * compared against it alone, and the last-modified timestamp is only
+	 * considered for requests that do not carry an "If-None-Match" header.
+	 */
+	private boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, Resource resource)
+			throws IOException {
+
+		ServletWebRequest webRequest = new ServletWebRequest(request, response);
+		long lastModified = resource.lastModified();
+		if (!(resource instanceof VersionedResource)) {
+			return webRequest.checkNotModified(lastModified);
+		}
+		// Checking the version first also sets the ETag header if not matched
+		boolean notModified = webRequest.checkNotModified(((VersionedResource) resource).getVersion());
+		if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+			if (lastModified >= 0 && !response.containsHeader(HttpHeaders.LAST_MODIFIED)) {
+				response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+			}
+			return notModified;
 		}
+		return webRequest.checkNotModified(lastModified);
+	}
 
-		long bytesToCopy = end - start + 1;
-		byte buffer[] = new byte[StreamUtils.BUFFER_SIZE];
-		while (bytesToCopy > 0) {
-			int bytesRead = in.read(buffer);
-			if (bytesRead <= bytesToCopy) {
-				out.write(buffer, 0, bytesRead);
-				bytesToCopy -= bytesRead;
+	/**
+	 * Whether one of the configured resolvers selects a content coding based on
+	 * the "Accept-Encoding" header, in which case also the unencoded variant of
+	 * a resource needs to be marked with "Vary: Accept-Encoding" for caches.
+	 */
+	private boolean isContentCodingNegotiated() {
+		for (ResourceResolver resolver : getResourceResolvers()) {
+			if (resolver instanceof CompressingResourceResolver || resolver instanceof GzipResourceResolver) {
+				return true;
 			}
-			else {
-				out.write(buffer, 0, (int) bytesToCopy);
-				bytesToCopy = 0;
+		}
+		return false;
+	}
+
+	private void copyRange(Resource resource, FileChannel channel, ServletOutputStream out, long start, long end)
+			throws IOException {
+
+		if (channel != null) {
+			StreamUtils.copyRange(channel, out, start, end);
+			return;
+		}
+		InputStream in = resource.getInputStream();
+		try {
+			StreamUtils.copyRange(in, out, start, end);
+		}
+		finally {
+			try {
+				in.close();
 			}
-			if (bytesRead == -1) {
-				break;
+			catch (IOException ex) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Hand the given range of a file system resource off to the container,
+	 * if it supports sendfile, the range is large enough, and the response
+	 * has not been wrapped (e.g. for content caching or compression).
+	 * @return {@code true} if the container is going to write the content,
+	 * {@code false} if the content needs to be written to the response
+	 */
+	private boolean useSendfile(HttpServletRequest request, HttpServletResponse response,
+			Resource resource, long start, long end) {
+
+		if (this.sendfileThreshold < 0 || end - start + 1 < this.sendfileThreshold ||
+				response instanceof ServletResponseWrapper ||
+				!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+			return false;
+		}
+		File file = ResourceFileUtils.getFileIfResolvable(resource);
+		if (file == null) {
+			return false;
+		}
+		request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getAbsolutePath());
+		request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+		request.setAttribute(SENDFILE_END_ATTRIBUTE, end + 1);
+		if (logger.isTraceEnabled()) {
+			logger.trace("Using sendfile for bytes " + start + "-" + end + " of [" + file + "]");
+		}
+		return true;
+	}
+
+	private FileChannel openFileChannel(Resource resource) {
+		File file = ResourceFileUtils.getFileIfResolvable(resource);
+		if (file == null) {
+			return null;
+		}
+		try {
+			return new FileInputStream(file).getChannel();
+		}
+		catch (FileNotFoundException ex) {
+			return null;
+		}
+	}
+
+	private void closeQuietly(FileChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			}
+			catch (IOException ex) {
+				// ignore
 			}
 		}
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -92,6 +92,25 @@ public class HandlerMethodMappingTests {
 		assertEquals(method1, result.getMethod());
 	}
 
+	@Test
+	public void patternMatchWithPatternIndex() throws Exception {
+		this.mapping.setUsePatternIndex(true);
+		this.mapping.registerMapping("/fo*", this.handler, this.method1);
+		this.mapping.registerMapping("/f*", this.handler, this.method2);
+
+		HandlerMethod result = this.mapping.getHandlerInternal(new MockHttpServletRequest("GET", "/foo"));
+		assertEquals(method1, result.getMethod());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void ambiguousMatchWithPatternIndex() throws Exception {
+		this.mapping.registerMapping("/f?o", this.handler, this.method1);
+		this.mapping.registerMapping("/fo?", this.handler, this.method2);
+		this.mapping.setUsePatternIndex(true);
+
+		this.mapping.getHandlerInternal(new MockHttpServletRequest("GET", "/foo"));
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void ambiguousMatch() throws Exception {
 		this.mapping.registerMapping("/f?o", this.handler, this.method1);
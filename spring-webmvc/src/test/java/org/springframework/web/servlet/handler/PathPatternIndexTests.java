@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.handler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PathPatternIndex}.
+ *
+ * @author agent
+ */
+public class PathPatternIndexTests {
+
+	private PathPatternIndex<String> index;
+
+
+	@Before
+	public void setUp() {
+		this.index = new PathPatternIndex<String>();
+	}
+
+
+	@Test
+	public void literalSegments() {
+		add("/foo/bar");
+		add("/foo/baz");
+
+		assertEquals(Collections.singletonList("/foo/bar"), this.index.getCandidates("/foo/bar"));
+		assertEquals(Collections.singletonList("/foo/bar"), this.index.getCandidates("/foo/bar/"));
+		assertEquals(Collections.emptyList(), this.index.getCandidates("/foo"));
+		assertEquals(Collections.emptyList(), this.index.getCandidates("/foo/bar/baz"));
+	}
+
+	@Test
+	public void wildcardSegments() {
+		add("/hotels/{hotel}");
+		add("/hotels/*.html");
+		add("/hotels/{hotel}/bookings");
+		add("/hotels/new");
+
+		assertEquals(Arrays.asList("/hotels/{hotel}", "/hotels/*.html", "/hotels/new"),
+				this.index.getCandidates("/hotels/new"));
+		assertEquals(Arrays.asList("/hotels/{hotel}/bookings"), this.index.getCandidates("/hotels/1/bookings"));
+		assertEquals(Arrays.asList("/hotels/{hotel}", "/hotels/*.html"), this.index.getCandidates("/hotels/"));
+	}
+
+	@Test
+	public void doubleWildcardSegments() {
+		add("/resources/**");
+		add("/**/*.css");
+		add("/a/**/b");
+
+		assertEquals(Arrays.asList("/resources/**", "/**/*.css"), this.index.getCandidates("/resources/css/main.css"));
+		assertEquals(Arrays.asList("/resources/**", "/**/*.css"), this.index.getCandidates("/resources"));
+		assertEquals(Arrays.asList("/**/*.css"), this.index.getCandidates("/main.css"));
+		assertEquals(Arrays.asList("/**/*.css", "/a/**/b"), this.index.getCandidates("/a/b"));
+		assertEquals(Arrays.asList("/**/*.css", "/a/**/b"), this.index.getCandidates("/a/x/y/b"));
+	}
+
+	@Test
+	public void suffixPattern() {
+		add("/users");
+		add("/users/{id}");
+
+		assertEquals(Arrays.asList("/users"), this.index.getCandidates("/users.json"));
+		assertEquals(Arrays.asList("/users"), this.index.getCandidates("/users.tar.gz"));
+		assertEquals(Arrays.asList("/users/{id}"), this.index.getCandidates("/users/1.json"));
+	}
+
+	@Test
+	public void caseInsensitiveAndTrimmed() {
+		add("/Foo/Bar");
+
+		assertEquals(Arrays.asList("/Foo/Bar"), this.index.getCandidates("/foo/BAR"));
+		assertEquals(Arrays.asList("/Foo/Bar"), this.index.getCandidates("/foo/ bar"));
+	}
+
+	@Test
+	public void mappingWithoutPatterns() {
+		this.index.add("any", Collections.<String>emptyList());
+		add("/foo");
+
+		assertEquals(Arrays.asList("any", "/foo"), this.index.getCandidates("/foo"));
+		assertEquals(Arrays.asList("any"), this.index.getCandidates("/bar"));
+	}
+
+	@Test
+	public void multiplePatternsInRegistrationOrder() {
+		add("/b");
+		this.index.add("multi", Arrays.asList("/a", "/{x}"));
+		add("/a");
+
+		assertEquals(Arrays.asList("multi", "/a"), this.index.getCandidates("/a"));
+		assertEquals(Arrays.asList("/b", "multi"), this.index.getCandidates("/b"));
+	}
+
+	@Test
+	public void remove() {
+		add("/foo/{id}");
+		add("/foo/bar");
+
+		this.index.remove("/foo/{id}", Collections.singletonList("/foo/{id}"));
+		assertEquals(Arrays.asList("/foo/bar"), this.index.getCandidates("/foo/bar"));
+		assertEquals(Collections.emptyList(), this.index.getCandidates("/foo/1"));
+
+		this.index.remove("/foo/bar", Collections.singletonList("/foo/bar"));
+		assertEquals(Collections.emptyList(), this.index.getCandidates("/foo/bar"));
+	}
+
+
+	private void add(String pattern) {
+		this.index.add(pattern, Collections.singletonList(pattern));
+	}
+
+}
@@ -132,6 +132,18 @@ public class CachingResourceResolverTests {
 		assertEquals(expected, this.cache.get(cacheKey).get());
 	}
 
+	@Test
+	public void resolveResourceAcceptEncodingQualityValuesInCacheKey() {
+		String file = "bar.css";
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", file);
+		request.addHeader("Accept-Encoding", "gzip;q=0.5, br;q=0, identity");
+		Resource expected = this.chain.resolveResource(request, file, this.locations);
+		String cacheKey = CachingResourceResolver.RESOLVED_RESOURCE_CACHE_KEY_PREFIX + file + "+encoding=gzip;q=0.5";
+
+		assertEquals(expected, this.cache.get(cacheKey).get());
+	}
+
 	@Test
 	public void resolveResourceMatchingEncoding() {
 		Resource resource = Mockito.mock(Resource.class);
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.test.MockHttpServletRequest;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.StreamUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CompressingResourceResolver}.
+ *
+ * @author agent
+ */
+public class CompressingResourceResolverTests {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private CompressingResourceResolver compressingResolver;
+
+	private ResourceResolverChain chain;
+
+	private List<Resource> locations;
+
+	private byte[] content;
+
+
+	@Before
+	public void setUp() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			builder.append("function f").append(i).append("() { return ").append(i).append("; }\n");
+		}
+		this.content = builder.toString().getBytes("UTF-8");
+		FileCopyUtils.copy(this.content, new File(this.folder.getRoot(), "app.js"));
+		FileCopyUtils.copy(this.content, new File(this.folder.getRoot(), "app.png"));
+		FileCopyUtils.copy("precompressed".getBytes("UTF-8"), new File(this.folder.getRoot(), "lib.js.br"));
+		FileCopyUtils.copy(this.content, new File(this.folder.getRoot(), "lib.js"));
+
+		this.compressingResolver = new CompressingResourceResolver();
+		List<ResourceResolver> resolvers = new ArrayList<ResourceResolver>();
+		resolvers.add(this.compressingResolver);
+		resolvers.add(new PathResourceResolver());
+		this.chain = new DefaultResourceResolverChain(resolvers);
+		this.locations = Collections.<Resource>singletonList(
+				new FileSystemResource(this.folder.getRoot().getAbsolutePath() + "/"));
+	}
+
+
+	@Test
+	public void compressOnTheFly() throws IOException {
+		Resource resolved = resolve("app.js", "gzip, deflate");
+
+		assertTrue(resolved instanceof EncodedResource);
+		assertEquals("gzip", ((EncodedResource) resolved).getContentEncoding());
+		assertEquals("app.js", resolved.getFilename());
+		byte[] compressed = StreamUtils.copyToByteArray(resolved.getInputStream());
+		assertEquals(compressed.length, resolved.contentLength());
+		assertTrue(compressed.length < this.content.length);
+		assertArrayEquals(this.content,
+				StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+		assertEquals(DigestUtils.md5DigestAsHex(compressed), ((VersionedResource) resolved).getVersion());
+	}
+
+	@Test
+	public void compressOnceIntoCache() throws IOException {
+		Resource first = resolve("app.js", "gzip");
+		Resource second = resolve("app.js", "gzip");
+
+		assertEquals(((VersionedResource) first).getVersion(), ((VersionedResource) second).getVersion());
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void cacheBoundedBySize() throws IOException {
+		Resource resolved = resolve("app.js", "gzip");
+		int size = this.compressingResolver.getCacheSize();
+		assertTrue(size > resolved.contentLength());
+
+		// Room for a single compressed resource
+		this.compressingResolver.setCacheSizeLimit(size + size / 2);
+		resolve("app.js", "gzip");
+		resolve("lib.js", "gzip");
+		assertEquals(size, this.compressingResolver.getCacheSize());
+
+		// Too large to be cached, still compressed
+		this.compressingResolver.setCacheSizeLimit(100);
+		assertTrue(resolve("app.js", "gzip") instanceof EncodedResource);
+		assertEquals(0, this.compressingResolver.getCacheSize());
+	}
+
+	@Test
+	public void modifiedResourceCompressedAgain() throws IOException {
+		Resource first = resolve("app.js", "gzip");
+
+		File file = new File(this.folder.getRoot(), "app.js");
+		FileCopyUtils.copy((new String(this.content, "UTF-8") + "// changed").getBytes("UTF-8"), file);
+		file.setLastModified(first.lastModified() + 60 * 1000);
+		Resource second = resolve("app.js", "gzip");
+
+		assertFalse(((VersionedResource) first).getVersion().equals(((VersionedResource) second).getVersion()));
+	}
+
+	@Test
+	public void noAcceptEncoding() throws IOException {
+		Resource resolved = resolve("app.js", null);
+
+		assertFalse(resolved instanceof EncodedResource);
+		assertEquals(new File(this.folder.getRoot(), "app.js"), resolved.getFile());
+	}
+
+	@Test
+	public void nullRequest() throws IOException {
+		Resource resolved = this.chain.resolveResource(null, "app.js", this.locations);
+
+		assertFalse(resolved instanceof EncodedResource);
+	}
+
+	@Test
+	public void notCompressible() throws IOException {
+		assertFalse(resolve("app.png", "gzip") instanceof EncodedResource);
+	}
+
+	@Test
+	public void belowMinContentLength() throws IOException {
+		this.compressingResolver.setMinContentLength(this.content.length + 1);
+
+		assertFalse(resolve("app.js", "gzip") instanceof EncodedResource);
+	}
+
+	@Test
+	public void precompressedPreferred() throws IOException {
+		Resource resolved = resolve("lib.js", "gzip, deflate, br");
+
+		assertTrue(resolved instanceof EncodedResource);
+		assertEquals("br", ((EncodedResource) resolved).getContentEncoding());
+		assertEquals(new File(this.folder.getRoot(), "lib.js.br"), resolved.getFile());
+		assertEquals("lib.js", resolved.getFilename());
+		assertEquals(DigestUtils.md5DigestAsHex("precompressed".getBytes("UTF-8")),
+				((VersionedResource) resolved).getVersion());
+	}
+
+	@Test
+	public void precompressedLastModified() throws IOException {
+		File precompressed = new File(this.folder.getRoot(), "lib.js.br");
+		File original = new File(this.folder.getRoot(), "lib.js");
+		long lastModified = original.lastModified() / 1000 * 1000 + 60 * 1000;
+		precompressed.setLastModified(lastModified);
+
+		Resource resolved = resolve("lib.js", "br");
+		assertEquals(lastModified, resolved.lastModified());
+
+		FileCopyUtils.copy("changed".getBytes("UTF-8"), precompressed);
+		precompressed.setLastModified(lastModified + 60 * 1000);
+		resolved = resolve("lib.js", "br");
+		assertEquals(lastModified + 60 * 1000, resolved.lastModified());
+		assertEquals(DigestUtils.md5DigestAsHex("changed".getBytes("UTF-8")),
+				((VersionedResource) resolved).getVersion());
+	}
+
+	@Test
+	public void qualityValues() throws IOException {
+		Resource resolved = resolve("lib.js", "br;q=0.5, gzip");
+
+		assertEquals("gzip", ((EncodedResource) resolved).getContentEncoding());
+	}
+
+	@Test
+	public void onlyPrecompressed() throws IOException {
+		this.compressingResolver.setCompressOnTheFly(false);
+
+		assertFalse(resolve("app.js", "gzip, br") instanceof EncodedResource);
+		assertEquals("br", ((EncodedResource) resolve("lib.js", "gzip, br")).getContentEncoding());
+	}
+
+	@Test
+	public void acceptedCodings() {
+		assertEquals(Arrays.asList("br", "gzip"), this.compressingResolver.getAcceptedCodings("gzip, deflate, br"));
+		assertEquals(Arrays.asList("gzip", "br"), this.compressingResolver.getAcceptedCodings("gzip, br;q=0.8"));
+		assertEquals(Arrays.asList("gzip"), this.compressingResolver.getAcceptedCodings("br;q=0, gzip"));
+		assertEquals(Arrays.asList("br", "gzip"), this.compressingResolver.getAcceptedCodings("*"));
+		assertEquals(Arrays.asList("gzip"), this.compressingResolver.getAcceptedCodings("*;q=0.5, br;q=0, identity"));
+		assertEquals(Collections.emptyList(), this.compressingResolver.getAcceptedCodings("identity"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedContentCoding() {
+		this.compressingResolver.setContentCodings(Arrays.asList("compress"));
+	}
+
+
+	private Resource resolve(String path, String acceptEncoding) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/" + path);
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		return this.chain.resolveResource(request, path, this.locations);
+	}
+
+}
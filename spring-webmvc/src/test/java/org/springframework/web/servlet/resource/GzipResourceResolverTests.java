@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -150,6 +150,26 @@ public class GzipResourceResolverTests {
 				resolved instanceof EncodedResource);
 	}
 
+	@Test
+	public void resolveFromCacheWithGzipNotAccepted() throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/js/foo.js");
+		request.addHeader("Accept-Encoding", "gzip;q=0");
+		String file = "js/foo.js";
+		Resource resource = new ClassPathResource("test/" + file, getClass());
+
+		Resource resolved = resolver.resolveResource(request, file, locations);
+		assertEquals(resource.getDescription(), resolved.getDescription());
+		assertFalse("Expected " + resolved + " to *not* be of type " + EncodedResource.class,
+				resolved instanceof EncodedResource);
+
+		// plain request must not get a gzipped resource cached for the previous request
+		request = new MockHttpServletRequest("GET", "/js/foo.js");
+		resolved = resolver.resolveResource(request, file, locations);
+		assertEquals(resource.getDescription(), resolved.getDescription());
+		assertFalse("Expected " + resolved + " to *not* be of type " + EncodedResource.class,
+				resolved instanceof EncodedResource);
+	}
+
 	// SPR-13149
 	@Test
 	public void resolveWithNullRequest() throws IOException {
@@ -32,6 +32,7 @@ import java.util.Locale;
 import java.util.TimeZone;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -149,6 +150,51 @@ public class ResourceHttpRequestHandlerTests {
 		assertEquals("\"versionString\"", this.response.getHeader("ETag"));
 	}
 
+	@Test
+	public void getVersionedResourceNoneMatchOverridesModifiedSince() throws Exception {
+		VersionResourceResolver versionResolver = new VersionResourceResolver()
+				.addFixedVersionStrategy("versionString", "/**");
+		this.handler.setResourceResolvers(Arrays.asList(versionResolver, new PathResourceResolver()));
+		this.handler.afterPropertiesSet();
+
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "versionString/foo.css");
+		this.request.addHeader("If-None-Match", "\"otherVersion\"");
+		this.request.addHeader("If-Modified-Since", resourceLastModified("test/foo.css"));
+		this.handler.handleRequest(this.request, this.response);
+
+		assertEquals(200, this.response.getStatus());
+		assertEquals("h1 { color:red; }", this.response.getContentAsString());
+	}
+
+	@Test
+	public void getVersionedResourceNoneMatch() throws Exception {
+		VersionResourceResolver versionResolver = new VersionResourceResolver()
+				.addFixedVersionStrategy("versionString", "/**");
+		this.handler.setResourceResolvers(Arrays.asList(versionResolver, new PathResourceResolver()));
+		this.handler.afterPropertiesSet();
+
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "versionString/foo.css");
+		this.request.addHeader("If-None-Match", "\"versionString\"");
+		this.handler.handleRequest(this.request, this.response);
+
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, this.response.getStatus());
+		assertEquals("\"versionString\"", this.response.getHeader("ETag"));
+		assertEquals(0, this.response.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void getResourceVaryWithoutContentCoding() throws Exception {
+		this.handler.setResourceResolvers(Arrays.asList(new CompressingResourceResolver(), new PathResourceResolver()));
+		this.handler.afterPropertiesSet();
+
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "foo.css");
+		this.handler.handleRequest(this.request, this.response);
+
+		assertNull(this.response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", this.response.getHeader("Vary"));
+		assertEquals("h1 { color:red; }", this.response.getContentAsString());
+	}
+
 	@Test
 	@SuppressWarnings("deprecation")
 	public void getResourceHttp10BehaviorCache() throws Exception {
@@ -508,6 +554,59 @@ public class ResourceHttpRequestHandlerTests {
 		assertEquals("t.", ranges[11]);
 	}
 
+	@Test
+	public void sendfile() throws Exception {
+		this.handler.setSendfileThreshold(0);
+		this.request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "foo.txt");
+		this.handler.handleRequest(this.request, this.response);
+
+		assertEquals(200, this.response.getStatus());
+		assertEquals(10, this.response.getContentLength());
+		assertEquals(new ClassPathResource("test/foo.txt", getClass()).getFile().getAbsolutePath(),
+				this.request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(0L, this.request.getAttribute("org.apache.tomcat.sendfile.start"));
+		assertEquals(10L, this.request.getAttribute("org.apache.tomcat.sendfile.end"));
+		assertEquals("", this.response.getContentAsString());
+	}
+
+	@Test
+	public void sendfileByteRange() throws Exception {
+		this.handler.setSendfileThreshold(0);
+		this.request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		this.request.addHeader("Range", "bytes=4-7");
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "foo.txt");
+		this.handler.handleRequest(this.request, this.response);
+
+		assertEquals(206, this.response.getStatus());
+		assertEquals(4, this.response.getContentLength());
+		assertEquals("bytes 4-7/10", this.response.getHeader("Content-Range"));
+		assertEquals(4L, this.request.getAttribute("org.apache.tomcat.sendfile.start"));
+		assertEquals(8L, this.request.getAttribute("org.apache.tomcat.sendfile.end"));
+		assertEquals("", this.response.getContentAsString());
+	}
+
+	@Test
+	public void sendfileBelowThreshold() throws Exception {
+		this.request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "foo.txt");
+		this.handler.handleRequest(this.request, this.response);
+
+		assertNull(this.request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals("Some text.", this.response.getContentAsString());
+	}
+
+	@Test
+	public void sendfileWithWrappedResponse() throws Exception {
+		this.handler.setSendfileThreshold(0);
+		this.request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		this.request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "foo.txt");
+		this.handler.handleRequest(this.request, new HttpServletResponseWrapper(this.response));
+
+		assertNull(this.request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals("Some text.", this.response.getContentAsString());
+	}
+
 	// SPR-12999
 	@Test @SuppressWarnings("unchecked")
 	public void writeContentNotGettingInputStream() throws Exception {
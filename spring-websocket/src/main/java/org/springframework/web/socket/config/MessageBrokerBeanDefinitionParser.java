@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -297,6 +297,13 @@ class MessageBrokerBeanDefinitionParser implements BeanDefinitionParser {
 			if (transportElem.hasAttribute("send-buffer-size")) {
 				handlerDef.getPropertyValues().add("sendBufferSizeLimit", transportElem.getAttribute("send-buffer-size"));
 			}
+			if (transportElem.hasAttribute("send-buffer-overflow")) {
+				handlerDef.getPropertyValues().add("sendBufferOverflowStrategy",
+						transportElem.getAttribute("send-buffer-overflow"));
+			}
+			if (transportElem.hasAttribute("send-batch-size")) {
+				handlerDef.getPropertyValues().add("sendBatchSizeLimit", transportElem.getAttribute("send-batch-size"));
+			}
 			Element factoriesElement = DomUtils.getChildElementByTagName(transportElem, "decorator-factories");
 			if (factoriesElement != null) {
 				ManagedList<Object> factories = extractBeanSubElements(factoriesElement, context);
@@ -374,6 +381,15 @@ class MessageBrokerBeanDefinitionParser implements BeanDefinitionParser {
 				String heartbeatValue = simpleBrokerElem.getAttribute("heartbeat");
 				brokerDef.getPropertyValues().add("heartbeatValue", heartbeatValue);
 			}
+			if (simpleBrokerElem.hasAttribute("conflated-destinations")) {
+				String destinations = simpleBrokerElem.getAttribute("conflated-destinations");
+				brokerDef.getPropertyValues().add("conflatedDestinations",
+						StringUtils.tokenizeToStringArray(destinations, ","));
+			}
+			if (simpleBrokerElem.hasAttribute("subscription-registry")) {
+				String registryRef = simpleBrokerElem.getAttribute("subscription-registry");
+				brokerDef.getPropertyValues().add("subscriptionRegistry", new RuntimeBeanReference(registryRef));
+			}
 		}
 		else if (brokerRelayElem != null) {
 			String prefix = brokerRelayElem.getAttribute("prefix");
@@ -407,6 +423,15 @@ class MessageBrokerBeanDefinitionParser implements BeanDefinitionParser {
 			if (brokerRelayElem.hasAttribute("virtual-host")) {
 				values.add("virtualHost", brokerRelayElem.getAttribute("virtual-host"));
 			}
+			if (brokerRelayElem.hasAttribute("max-pending-writes")) {
+				values.add("maxPendingWrites", brokerRelayElem.getAttribute("max-pending-writes"));
+			}
+			if (brokerRelayElem.hasAttribute("pending-write-timeout")) {
+				values.add("pendingWriteTimeout", brokerRelayElem.getAttribute("pending-write-timeout"));
+			}
+			if (brokerRelayElem.hasAttribute("multiplexed-connections")) {
+				values.add("multiplexedConnectionCount", brokerRelayElem.getAttribute("multiplexed-connections"));
+			}
 			ManagedMap<String, Object> map = new ManagedMap<String, Object>();
 			map.setSource(source);
 			if (brokerRelayElem.hasAttribute("user-destination-broadcast")) {
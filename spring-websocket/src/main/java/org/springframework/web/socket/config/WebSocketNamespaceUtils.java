@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -133,6 +133,10 @@ class WebSocketNamespaceUtils {
 			if (!attrValue.isEmpty()) {
 				sockJsServiceDef.getPropertyValues().add("httpMessageCacheSize", Integer.valueOf(attrValue));
 			}
+			attrValue = sockJsElement.getAttribute("message-cache-overflow-strategy");
+			if (!attrValue.isEmpty()) {
+				sockJsServiceDef.getPropertyValues().add("httpMessageCacheOverflowStrategy", attrValue);
+			}
 			attrValue = sockJsElement.getAttribute("heartbeat-time");
 			if (!attrValue.isEmpty()) {
 				sockJsServiceDef.getPropertyValues().add("heartbeatTime", Long.valueOf(attrValue));
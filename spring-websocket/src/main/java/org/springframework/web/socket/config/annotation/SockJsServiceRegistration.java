@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,7 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 import org.springframework.web.socket.sockjs.SockJsService;
 import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
+import org.springframework.web.socket.sockjs.transport.HttpMessageCacheOverflowStrategy;
 import org.springframework.web.socket.sockjs.transport.TransportHandler;
 import org.springframework.web.socket.sockjs.transport.TransportHandlingSockJsService;
 import org.springframework.web.socket.sockjs.transport.handler.DefaultSockJsService;
@@ -54,6 +55,8 @@ public class SockJsServiceRegistration {
 
 	private Integer httpMessageCacheSize;
 
+	private HttpMessageCacheOverflowStrategy httpMessageCacheOverflowStrategy;
+
 	private Boolean webSocketEnabled;
 
 	private final List<TransportHandler> transportHandlers = new ArrayList<TransportHandler>();
@@ -172,6 +175,19 @@ public class SockJsServiceRegistration {
 		return this;
 	}
 
+	/**
+	 * The strategy to apply when a session has cached as many messages as the
+	 * {@link #setHttpMessageCacheSize HTTP message cache size} allows.
+	 * <p>By default the session is closed.
+	 * @since 4.3
+	 */
+	public SockJsServiceRegistration setHttpMessageCacheOverflowStrategy(
+			HttpMessageCacheOverflowStrategy overflowStrategy) {
+
+		this.httpMessageCacheOverflowStrategy = overflowStrategy;
+		return this;
+	}
+
 	/**
 	 * Some load balancers don't support WebSocket. This option can be used to
 	 * disable the WebSocket transport on the server side.
@@ -261,6 +277,9 @@ public class SockJsServiceRegistration {
 		if (this.httpMessageCacheSize != null) {
 			service.setHttpMessageCacheSize(this.httpMessageCacheSize);
 		}
+		if (this.httpMessageCacheOverflowStrategy != null) {
+			service.setHttpMessageCacheOverflowStrategy(this.httpMessageCacheOverflowStrategy);
+		}
 		if (this.webSocketEnabled != null) {
 			service.setWebSocketEnabled(this.webSocketEnabled);
 		}
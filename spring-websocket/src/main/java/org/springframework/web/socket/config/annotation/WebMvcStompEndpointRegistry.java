@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -79,6 +79,13 @@ public class WebMvcStompEndpointRegistry implements StompEndpointRegistry {
 		if (transportRegistration.getSendBufferSizeLimit() != null) {
 			this.subProtocolWebSocketHandler.setSendBufferSizeLimit(transportRegistration.getSendBufferSizeLimit());
 		}
+		if (transportRegistration.getSendBufferOverflowStrategy() != null) {
+			this.subProtocolWebSocketHandler.setSendBufferOverflowStrategy(
+					transportRegistration.getSendBufferOverflowStrategy());
+		}
+		if (transportRegistration.getSendBatchSizeLimit() != null) {
+			this.subProtocolWebSocketHandler.setSendBatchSizeLimit(transportRegistration.getSendBatchSizeLimit());
+		}
 
 		this.stompHandler = new StompSubProtocolHandler();
 		this.stompHandler.setUserSessionRegistry(userSessionRegistry);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
 import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
 
 /**
@@ -36,6 +37,10 @@ public class WebSocketTransportRegistration {
 
 	private Integer sendBufferSizeLimit;
 
+	private OverflowStrategy sendBufferOverflowStrategy;
+
+	private Integer sendBatchSizeLimit;
+
 	private final List<WebSocketHandlerDecoratorFactory> decoratorFactories =
 			new ArrayList<WebSocketHandlerDecoratorFactory>(2);
 
@@ -157,6 +162,56 @@ public class WebSocketTransportRegistration {
 		return this.sendBufferSizeLimit;
 	}
 
+	/**
+	 * Configure what to do when the {@code sendBufferSizeLimit} is exceeded.
+	 *
+	 * <p>By default the session is closed. Slow clients, such as mobile clients
+	 * on poor networks, can instead be kept connected by dropping the oldest
+	 * buffered STOMP MESSAGE frames, optionally after conflating those superseded
+	 * by a more recent message for the same subscription and destination. Other
+	 * frames are never dropped. The {@code sendTimeLimit} still applies in
+	 * either case.
+	 *
+	 * @param overflowStrategy the strategy to apply
+	 * @since 4.3
+	 */
+	public WebSocketTransportRegistration setSendBufferOverflowStrategy(OverflowStrategy overflowStrategy) {
+		this.sendBufferOverflowStrategy = overflowStrategy;
+		return this;
+	}
+
+	/**
+	 * Protected accessor for internal use.
+	 * @since 4.3
+	 */
+	protected OverflowStrategy getSendBufferOverflowStrategy() {
+		return this.sendBufferOverflowStrategy;
+	}
+
+	/**
+	 * Configure the maximum size (in bytes) of a WebSocket text message merged
+	 * from STOMP messages buffered for a session that falls behind, so that a
+	 * backlog is flushed with fewer frames and container writes.
+	 *
+	 * <p>STOMP clients split the merged message at the NULL octet terminating
+	 * each frame. The default value is 0, i.e. messages are never merged.
+	 *
+	 * @param sendBatchSizeLimit the maximum number of bytes of a merged message
+	 * @since 4.3
+	 */
+	public WebSocketTransportRegistration setSendBatchSizeLimit(int sendBatchSizeLimit) {
+		this.sendBatchSizeLimit = sendBatchSizeLimit;
+		return this;
+	}
+
+	/**
+	 * Protected accessor for internal use.
+	 * @since 4.3
+	 */
+	protected Integer getSendBatchSizeLimit() {
+		return this.sendBatchSizeLimit;
+	}
+
 	/**
 	 * Configure one or more factories to decorate the handler used to process
 	 * WebSocket messages. This may be useful in some advanced use cases, for
@@ -17,8 +17,11 @@
 package org.springframework.web.socket.handler;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -26,7 +29,9 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.util.Assert;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
@@ -40,6 +45,15 @@ import org.springframework.web.socket.WebSocketSession;
  * send-time limit will be checked and the session closed if the limits are
  * exceeded.
  *
+ * <p>Alternatively, an {@link OverflowStrategy} may be specified to drop buffered
+ * messages instead of closing the session when the buffer-size limit is exceeded,
+ * optionally conflating messages that are superseded by a more recent message
+ * with the same conflation key first. Only messages sent with a conflation key
+ * are ever dropped; see {@link #sendMessage(WebSocketMessage, Object)}. In addition, a
+ * {@link #setBatchSizeLimit batch-size limit} may be set to merge buffered
+ * text messages into a single message, reducing the number of frames and
+ * container writes for sessions that fall behind.
+ *
  * @author Rossen Stoyanchev
  * @since 4.0.3
  */
@@ -52,8 +66,12 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 
 	private final int bufferSizeLimit;
 
+	private final OverflowStrategy overflowStrategy;
+
+	private int batchSizeLimit;
+
 
-	private final Queue<WebSocketMessage<?>> buffer = new LinkedBlockingQueue<WebSocketMessage<?>>();
+	private final Deque<BufferedMessage> buffer = new LinkedBlockingDeque<BufferedMessage>();
 
 	private final AtomicInteger bufferSize = new AtomicInteger();
 
@@ -76,12 +94,59 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 	 * @param bufferSizeLimit the buffer-size limit (number of bytes)
 	 */
 	public ConcurrentWebSocketSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit) {
+		this(delegate, sendTimeLimit, bufferSizeLimit, OverflowStrategy.TERMINATE);
+	}
+
+	/**
+	 * Create a new {@code ConcurrentWebSocketSessionDecorator}.
+	 * @param delegate the {@code WebSocketSession} to delegate to
+	 * @param sendTimeLimit the send-time limit (milliseconds)
+	 * @param bufferSizeLimit the buffer-size limit (number of bytes)
+	 * @param overflowStrategy the strategy to apply when the buffer-size limit
+	 * is exceeded
+	 * @since 4.3
+	 */
+	public ConcurrentWebSocketSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit,
+			OverflowStrategy overflowStrategy) {
+
 		super(delegate);
+		Assert.notNull(overflowStrategy, "OverflowStrategy must not be null");
 		this.sendTimeLimit = sendTimeLimit;
 		this.bufferSizeLimit = bufferSizeLimit;
+		this.overflowStrategy = overflowStrategy;
 	}
 
 
+	/**
+	 * Merge consecutive buffered text messages into a single text message of up
+	 * to the given number of bytes. By default this is 0, i.e. every message is
+	 * sent as a separate WebSocket message.
+	 * <p>Only enable this for sub-protocols whose messages are self-delimiting,
+	 * such as STOMP where each frame ends with a NULL octet, so that the client
+	 * can split a merged message into the original messages.
+	 * @param batchSizeLimit the maximum number of bytes of a merged message
+	 * @since 4.3
+	 */
+	public void setBatchSizeLimit(int batchSizeLimit) {
+		this.batchSizeLimit = batchSizeLimit;
+	}
+
+	/**
+	 * Return the maximum number of bytes of a merged text message, 0 if disabled.
+	 * @since 4.3
+	 */
+	public int getBatchSizeLimit() {
+		return this.batchSizeLimit;
+	}
+
+	/**
+	 * Return the strategy to apply when the buffer-size limit is exceeded.
+	 * @since 4.3
+	 */
+	public OverflowStrategy getOverflowStrategy() {
+		return this.overflowStrategy;
+	}
+
 	public int getBufferSize() {
 		return this.bufferSize.get();
 	}
@@ -93,11 +158,27 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 
 
 	public void sendMessage(WebSocketMessage<?> message) throws IOException {
+		sendMessage(message, getConflationKey(message));
+	}
+
+	/**
+	 * Send the given message, associating it with a key for the purpose of
+	 * {@link OverflowStrategy#DROP dropping} or {@link OverflowStrategy#CONFLATE
+	 * conflating} buffered messages when the buffer-size limit is exceeded.
+	 * Of several buffered messages with the same key, only the most recent one
+	 * is kept. Messages without a key are never dropped.
+	 * @param message the message to send
+	 * @param conflationKey the conflation key, e.g. the subscription and
+	 * destination of a STOMP MESSAGE frame, or {@code null} if the message
+	 * must not be dropped
+	 * @since 4.3
+	 */
+	public void sendMessage(WebSocketMessage<?> message, Object conflationKey) throws IOException {
 		if (shouldNotSend()) {
 			return;
 		}
 
-		this.buffer.add(message);
+		this.buffer.add(new BufferedMessage(message, conflationKey));
 		this.bufferSize.addAndGet(message.getPayloadLength());
 
 		do {
@@ -121,19 +202,43 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 
 	private boolean tryFlushMessageBuffer() throws IOException {
 		if (this.flushLock.tryLock()) {
+			BufferedMessage next = null;
 			try {
-				while (true) {
-					WebSocketMessage<?> message = this.buffer.poll();
-					if (message == null || shouldNotSend()) {
+				while (!shouldNotSend()) {
+					BufferedMessage buffered = (next != null ? next : this.buffer.poll());
+					next = null;
+					if (buffered == null) {
 						break;
 					}
-					this.bufferSize.addAndGet(message.getPayloadLength() * -1);
+					WebSocketMessage<?> message = buffered.message;
+					int length = message.getPayloadLength();
+					if (this.batchSizeLimit > 0 && buffered.isBatchable()) {
+						StringBuilder batch = null;
+						while (length < this.batchSizeLimit && (next = this.buffer.poll()) != null &&
+								next.isBatchable() && length + next.message.getPayloadLength() <= this.batchSizeLimit) {
+							if (batch == null) {
+								batch = new StringBuilder(((TextMessage) message).getPayload());
+							}
+							batch.append(((TextMessage) next.message).getPayload());
+							length += next.message.getPayloadLength();
+							next = null;
+						}
+						// A polled message that did not fit starts the next batch
+						if (batch != null) {
+							message = new TextMessage(batch);
+						}
+					}
+					this.bufferSize.addAndGet(length * -1);
 					this.sendStartTime = System.currentTimeMillis();
 					getDelegate().sendMessage(message);
 					this.sendStartTime = 0;
 				}
 			}
 			finally {
+				if (next != null) {
+					// Polled but not sent, and still counted in the buffer size
+					this.buffer.addFirst(next);
+				}
 				this.sendStartTime = 0;
 				flushLock.unlock();
 			}
@@ -151,6 +256,9 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 					setLimitExceeded(reason);
 				}
 				else if (this.bufferSize.get() > this.bufferSizeLimit) {
+					if (this.overflowStrategy != OverflowStrategy.TERMINATE && reduceBuffer()) {
+						return;
+					}
 					String format = "The send buffer size %d bytes for session '%s' exceeded the allowed limit %d";
 					String reason = String.format(format, this.bufferSize.get(), getId(), this.bufferSizeLimit);
 					setLimitExceeded(reason);
@@ -162,6 +270,65 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 		}
 	}
 
+	/**
+	 * Drop buffered messages with a conflation key, superseded ones first in
+	 * case of {@link OverflowStrategy#CONFLATE}, then the oldest ones.
+	 * @return whether the buffer size is back within the limit
+	 */
+	private boolean reduceBuffer() {
+		int conflated = 0;
+		if (this.overflowStrategy == OverflowStrategy.CONFLATE) {
+			conflated = conflateBuffer();
+		}
+		int dropped = 0;
+		Iterator<BufferedMessage> iterator = this.buffer.iterator();
+		while (this.bufferSize.get() > this.bufferSizeLimit && iterator.hasNext()) {
+			BufferedMessage buffered = iterator.next();
+			if (buffered.conflationKey != null && this.buffer.remove(buffered)) {
+				this.bufferSize.addAndGet(buffered.message.getPayloadLength() * -1);
+				dropped++;
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Send buffer of session '" + getId() + "' exceeded the limit of " + this.bufferSizeLimit +
+					" bytes: conflated " + conflated + " and dropped " + dropped + " messages");
+		}
+		return (this.bufferSize.get() <= this.bufferSizeLimit);
+	}
+
+	private int conflateBuffer() {
+		Map<Object, BufferedMessage> latest = new HashMap<Object, BufferedMessage>();
+		for (BufferedMessage buffered : this.buffer) {
+			if (buffered.conflationKey != null) {
+				latest.put(buffered.conflationKey, buffered);
+			}
+		}
+		int count = 0;
+		for (BufferedMessage buffered : this.buffer) {
+			if (buffered.conflationKey != null && latest.get(buffered.conflationKey) != buffered &&
+					this.buffer.remove(buffered)) {
+				this.bufferSize.addAndGet(buffered.message.getPayloadLength() * -1);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the conflation key of a message sent through
+	 * {@link #sendMessage(WebSocketMessage)}.
+	 * <p>The default implementation returns {@code null}, i.e. such messages
+	 * are never dropped. Sub-protocol handlers that know which of their
+	 * messages may be dropped pass the key to
+	 * {@link #sendMessage(WebSocketMessage, Object)} instead.
+	 * @param message the message to send
+	 * @return the conflation key, or {@code null} if the message must not be dropped
+	 * @since 4.3
+	 */
+	protected Object getConflationKey(WebSocketMessage<?> message) {
+		return null;
+	}
+
 	private void setLimitExceeded(String reason) {
 		this.limitExceeded = true;
 		throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
@@ -202,4 +369,54 @@ public class ConcurrentWebSocketSessionDecorator extends WebSocketSessionDecorat
 		return getDelegate().toString();
 	}
 
+
+	/**
+	 * Strategy to apply when the buffer-size limit is exceeded.
+	 * @since 4.3
+	 */
+	public enum OverflowStrategy {
+
+		/**
+		 * Throw {@link SessionLimitExceededException} that will result in the
+		 * session being terminated. This is the default.
+		 */
+		TERMINATE,
+
+		/**
+		 * Drop the oldest buffered messages that have a conflation key until
+		 * the buffer size is back within the limit. If that is not possible,
+		 * e.g. because no buffered message has a key, terminate the session.
+		 */
+		DROP,
+
+		/**
+		 * Remove buffered messages superseded by a more recent buffered message
+		 * with the same conflation key, e.g. the latest price for a ticker, and
+		 * then proceed as with {@link #DROP} if the buffer size still exceeds
+		 * the limit.
+		 * @see ConcurrentWebSocketSessionDecorator#sendMessage(WebSocketMessage, Object)
+		 */
+		CONFLATE
+	}
+
+
+	/**
+	 * A buffered message along with its conflation key, if any.
+	 */
+	private static class BufferedMessage {
+
+		private final WebSocketMessage<?> message;
+
+		private final Object conflationKey;
+
+		public BufferedMessage(WebSocketMessage<?> message, Object conflationKey) {
+			this.message = message;
+			this.conflationKey = conflationKey;
+		}
+
+		public boolean isBatchable() {
+			return (this.message instanceof TextMessage && this.message.isLast());
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,8 @@ import java.security.Principal;
 
 import org.springframework.context.ApplicationEvent;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpSessionEvent;
 import org.springframework.util.Assert;
 
 /**
@@ -30,7 +32,7 @@ import org.springframework.util.Assert;
  * @since 4.1
  */
 @SuppressWarnings("serial")
-public abstract class AbstractSubProtocolEvent extends ApplicationEvent {
+public abstract class AbstractSubProtocolEvent extends ApplicationEvent implements SimpSessionEvent {
 
 	private final Message<byte[]> message;
 
@@ -77,9 +79,19 @@ public abstract class AbstractSubProtocolEvent extends ApplicationEvent {
 		return this.message;
 	}
 
+	/**
+	 * Return the id of the session associated with the event.
+	 * @since 4.3
+	 */
+	@Override
+	public String getSessionId() {
+		return SimpMessageHeaderAccessor.getSessionId(this.message.getHeaders());
+	}
+
 	/**
 	 * Return the user for the session associated with the event.
 	 */
+	@Override
 	public Principal getUser() {
 		return this.user;
 	}
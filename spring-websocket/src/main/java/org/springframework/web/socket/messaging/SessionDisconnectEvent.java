@@ -74,6 +74,7 @@ public class SessionDisconnectEvent extends AbstractSubProtocolEvent {
 	/**
 	 * Return the session id.
 	 */
+	@Override
 	public String getSessionId() {
 		return this.sessionId;
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
@@ -50,13 +51,16 @@ import org.springframework.messaging.support.ImmutableMessageChannelInterceptor;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.messaging.support.MessageHeaderInitializer;
+import org.springframework.util.AlternativeJdkIdGenerator;
 import org.springframework.util.Assert;
+import org.springframework.util.IdGenerator;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.WebSocketSessionDecorator;
 import org.springframework.web.socket.sockjs.transport.SockJsSession;
@@ -89,6 +93,17 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 
 	private static final byte[] EMPTY_PAYLOAD = new byte[0];
 
+	/** Key of the {@link BroadcastPayload} in the attributes of a broadcast */
+	private static final String BROADCAST_PAYLOAD = StompSubProtocolHandler.class.getName() + ".PAYLOAD";
+
+	/** Key of the STOMP message-ids of a broadcast, per subscription id */
+	private static final String BROADCAST_MESSAGE_IDS = StompSubProtocolHandler.class.getName() + ".MESSAGE_IDS";
+
+	/** Maximum number of distinct frames kept for reuse per broadcast */
+	private static final int MAX_BROADCAST_FRAMES = 16;
+
+	private static final IdGenerator broadcastIdGenerator = new AlternativeJdkIdGenerator();
+
 
 	private StompSubProtocolErrorHandler errorHandler;
 
@@ -97,7 +112,7 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 	@SuppressWarnings("deprecation")
 	private org.springframework.messaging.simp.user.UserSessionRegistry userSessionRegistry;
 
-	private final StompEncoder stompEncoder = new StompEncoder();
+	private StompEncoder stompEncoder = new StompEncoder();
 
 	private final StompDecoder stompDecoder = new StompDecoder();
 
@@ -150,6 +165,26 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 		return this.messageSizeLimit;
 	}
 
+	/**
+	 * Configure a {@link StompEncoder} for encoding STOMP frames, e.g. one with
+	 * a {@link StompEncoder#setHeaderBlockCacheLimit header block cache} for
+	 * applications that broadcast messages to many subscribers.
+	 * <p>By default a {@code StompEncoder} without header block cache is used.
+	 * @since 4.3
+	 */
+	public void setEncoder(StompEncoder encoder) {
+		Assert.notNull(encoder, "StompEncoder is required");
+		this.stompEncoder = encoder;
+	}
+
+	/**
+	 * Return the configured {@link StompEncoder}.
+	 * @since 4.3
+	 */
+	public StompEncoder getEncoder() {
+		return this.stompEncoder;
+	}
+
 	/**
 	 * Provide a registry with which to register active user session ids.
 	 * @see org.springframework.messaging.simp.user.UserDestinationMessageHandler
@@ -425,16 +460,27 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 	private void sendToClient(WebSocketSession session, StompHeaderAccessor stompAccessor, byte[] payload) {
 		StompCommand command = stompAccessor.getCommand();
 		try {
-			byte[] bytes = this.stompEncoder.encode(stompAccessor.getMessageHeaders(), payload);
-
 			boolean useBinary = (payload.length > 0 && !(session instanceof SockJsSession) &&
 					MimeTypeUtils.APPLICATION_OCTET_STREAM.isCompatibleWith(stompAccessor.getContentType()));
 
-			if (useBinary) {
-				session.sendMessage(new BinaryMessage(bytes));
+			BroadcastPayload broadcastPayload = null;
+			if (!useBinary && payload.length > 0 && StompCommand.MESSAGE.equals(command)) {
+				broadcastPayload = getBroadcastPayload(stompAccessor, payload);
+			}
+
+			if (broadcastPayload != null) {
+				// Payload shared with the other messages of a broadcast: only encode the headers
+				byte[] headers = this.stompEncoder.encodeHeaders(stompAccessor.getMessageHeaders(), payload);
+				sendMessage(session, stompAccessor, broadcastPayload.getFrame(headers));
 			}
 			else {
-				session.sendMessage(new TextMessage(bytes));
+				byte[] bytes = this.stompEncoder.encode(stompAccessor.getMessageHeaders(), payload);
+				if (useBinary) {
+					sendMessage(session, stompAccessor, new BinaryMessage(bytes));
+				}
+				else {
+					sendMessage(session, stompAccessor, new TextMessage(bytes));
+				}
 			}
 		}
 		catch (SessionLimitExceededException ex) {
@@ -458,6 +504,89 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 		}
 	}
 
+	/**
+	 * Send the given message, keying MESSAGE frames by subscription and
+	 * destination so that a {@link ConcurrentWebSocketSessionDecorator} may
+	 * drop or conflate them when its send buffer overflows. All other frames,
+	 * e.g. CONNECTED, RECEIPT or ERROR, are never dropped.
+	 */
+	private void sendMessage(WebSocketSession session, StompHeaderAccessor stompAccessor,
+			WebSocketMessage<?> message) throws IOException {
+
+		if (session instanceof ConcurrentWebSocketSessionDecorator &&
+				StompCommand.MESSAGE.equals(stompAccessor.getCommand()) &&
+				stompAccessor.getDestination() != null) {
+			String key = stompAccessor.getSubscriptionId() + "\n" + stompAccessor.getDestination();
+			((ConcurrentWebSocketSessionDecorator) session).sendMessage(message, key);
+		}
+		else {
+			session.sendMessage(message);
+		}
+	}
+
+	/**
+	 * Return the payload shared by the messages of a broadcast, as marked by
+	 * the broker through the {@link SimpMessageHeaderAccessor#BROADCAST_HEADER
+	 * broadcast header}, in which case the payload is decoded only once and
+	 * frames with the same headers are encoded only once for all of its messages.
+	 * Return {@code null} for any other message.
+	 */
+	private BroadcastPayload getBroadcastPayload(StompHeaderAccessor stompAccessor, byte[] payload) {
+		ConcurrentMap<String, Object> attributes = getBroadcastAttributes(stompAccessor);
+		if (attributes == null) {
+			return null;
+		}
+		BroadcastPayload broadcastPayload = (BroadcastPayload) attributes.get(BROADCAST_PAYLOAD);
+		if (broadcastPayload == null) {
+			broadcastPayload = new BroadcastPayload(payload);
+			BroadcastPayload existing = (BroadcastPayload) attributes.putIfAbsent(BROADCAST_PAYLOAD, broadcastPayload);
+			broadcastPayload = (existing != null ? existing : broadcastPayload);
+		}
+		// The payload of an individual message may have been replaced, e.g. by an interceptor
+		return (broadcastPayload.payload == payload ? broadcastPayload : null);
+	}
+
+	/**
+	 * Return the STOMP message-id for the messages of the broadcast the given
+	 * message is part of that have the same subscription id, or {@code null}
+	 * if it is not part of a broadcast or if the broadcast has too many distinct
+	 * subscription ids already, in which case a unique message-id is generated.
+	 * Sharing the message-id lets sessions subscribed with the same subscription
+	 * id receive the very same frame, while the messages of different
+	 * subscriptions of a session still have distinct message-ids.
+	 */
+	@SuppressWarnings("unchecked")
+	private String getBroadcastMessageId(StompHeaderAccessor stompAccessor) {
+		ConcurrentMap<String, Object> attributes = getBroadcastAttributes(stompAccessor);
+		String subscriptionId = stompAccessor.getSubscriptionId();
+		if (attributes == null || subscriptionId == null) {
+			return null;
+		}
+		ConcurrentMap<String, String> messageIds = (ConcurrentMap<String, String>) attributes.get(BROADCAST_MESSAGE_IDS);
+		if (messageIds == null) {
+			messageIds = new ConcurrentHashMap<String, String>(4);
+			Object existing = attributes.putIfAbsent(BROADCAST_MESSAGE_IDS, messageIds);
+			messageIds = (existing != null ? (ConcurrentMap<String, String>) existing : messageIds);
+		}
+		String messageId = messageIds.get(subscriptionId);
+		if (messageId == null) {
+			// Beyond the frames kept for reuse, sharing the message-id is pointless
+			if (messageIds.size() >= MAX_BROADCAST_FRAMES) {
+				return null;
+			}
+			messageId = broadcastIdGenerator.generateId().toString();
+			String existing = messageIds.putIfAbsent(subscriptionId, messageId);
+			messageId = (existing != null ? existing : messageId);
+		}
+		return messageId;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ConcurrentMap<String, Object> getBroadcastAttributes(StompHeaderAccessor stompAccessor) {
+		Object broadcast = stompAccessor.getHeader(SimpMessageHeaderAccessor.BROADCAST_HEADER);
+		return (broadcast instanceof ConcurrentMap ? (ConcurrentMap<String, Object>) broadcast : null);
+	}
+
 	private  StompHeaderAccessor getStompHeaderAccessor(Message<?> message) {
 		MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
 		if (accessor == null) {
@@ -482,6 +611,12 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 				stompAccessor = StompHeaderAccessor.createForHeartbeat();
 			}
 			else if (stompAccessor.getCommand() == null || StompCommand.SEND.equals(stompAccessor.getCommand())) {
+				if (stompAccessor.getMessageId() == null) {
+					String messageId = getBroadcastMessageId(stompAccessor);
+					if (messageId != null) {
+						stompAccessor.setMessageId(messageId);
+					}
+				}
 				stompAccessor.updateStompCommandAsServerMessage();
 			}
 		}
@@ -617,6 +752,45 @@ public class StompSubProtocolHandler implements SubProtocolHandler, ApplicationE
 	}
 
 
+	/**
+	 * The payload of a broadcast along with the frames already built from it,
+	 * keyed by their encoded headers.
+	 */
+	private static class BroadcastPayload {
+
+		private final byte[] payload;
+
+		private final ConcurrentMap<ByteBuffer, TextMessage> frames =
+				new ConcurrentHashMap<ByteBuffer, TextMessage>(4);
+
+		public BroadcastPayload(byte[] payload) {
+			this.payload = payload;
+		}
+
+		/**
+		 * Return the frame for the given encoded headers, reusing a frame
+		 * already sent with the same headers to another session. Frames are
+		 * built from bytes, so their encoded form and length are shared too.
+		 */
+		public TextMessage getFrame(byte[] headers) {
+			ByteBuffer key = ByteBuffer.wrap(headers);
+			TextMessage frame = this.frames.get(key);
+			if (frame == null) {
+				byte[] bytes = new byte[headers.length + this.payload.length + 1];
+				System.arraycopy(headers, 0, bytes, 0, headers.length);
+				System.arraycopy(this.payload, 0, bytes, headers.length, this.payload.length);
+				// The trailing NULL octet is already 0
+				frame = new TextMessage(bytes);
+				if (this.frames.size() < MAX_BROADCAST_FRAMES) {
+					TextMessage existing = this.frames.putIfAbsent(key, frame);
+					frame = (existing != null ? existing : frame);
+				}
+			}
+			return frame;
+		}
+	}
+
+
 	private static class Stats {
 
 		private final AtomicInteger connect = new AtomicInteger();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -96,6 +96,11 @@ public class SubProtocolWebSocketHandler
 
 	private int sendBufferSizeLimit = 512 * 1024;
 
+	private ConcurrentWebSocketSessionDecorator.OverflowStrategy sendBufferOverflowStrategy =
+			ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE;
+
+	private int sendBatchSizeLimit = 0;
+
 	private volatile long lastSessionCheckTime = System.currentTimeMillis();
 
 	private final ReentrantLock sessionCheckLock = new ReentrantLock();
@@ -221,6 +226,45 @@ public class SubProtocolWebSocketHandler
 		return this.sendBufferSizeLimit;
 	}
 
+	/**
+	 * Specify the strategy to apply when the buffer-size limit is exceeded.
+	 * Default is to close the session.
+	 * @since 4.3
+	 * @see ConcurrentWebSocketSessionDecorator.OverflowStrategy
+	 */
+	public void setSendBufferOverflowStrategy(ConcurrentWebSocketSessionDecorator.OverflowStrategy overflowStrategy) {
+		Assert.notNull(overflowStrategy, "OverflowStrategy must not be null");
+		this.sendBufferOverflowStrategy = overflowStrategy;
+	}
+
+	/**
+	 * Return the strategy to apply when the buffer-size limit is exceeded.
+	 * @since 4.3
+	 */
+	public ConcurrentWebSocketSessionDecorator.OverflowStrategy getSendBufferOverflowStrategy() {
+		return this.sendBufferOverflowStrategy;
+	}
+
+	/**
+	 * Specify the maximum size (number of bytes) of a text message merged from
+	 * buffered text messages, or 0 (the default) to never merge messages.
+	 * <p>Only enable this if all sub-protocols in use have self-delimiting
+	 * messages, e.g. STOMP.
+	 * @since 4.3
+	 * @see ConcurrentWebSocketSessionDecorator#setBatchSizeLimit
+	 */
+	public void setSendBatchSizeLimit(int sendBatchSizeLimit) {
+		this.sendBatchSizeLimit = sendBatchSizeLimit;
+	}
+
+	/**
+	 * Return the maximum size (number of bytes) of a merged text message.
+	 * @since 4.3
+	 */
+	public int getSendBatchSizeLimit() {
+		return this.sendBatchSizeLimit;
+	}
+
 	/**
 	 * Return a String describing internal state and counters.
 	 */
@@ -289,7 +333,10 @@ public class SubProtocolWebSocketHandler
 			return;
 		}
 		this.stats.incrementSessionCount(session);
-		session = new ConcurrentWebSocketSessionDecorator(session, getSendTimeLimit(), getSendBufferSizeLimit());
+		ConcurrentWebSocketSessionDecorator decorator = new ConcurrentWebSocketSessionDecorator(
+				session, getSendTimeLimit(), getSendBufferSizeLimit(), getSendBufferOverflowStrategy());
+		decorator.setBatchSizeLimit(getSendBatchSizeLimit());
+		session = decorator;
 		this.sessions.put(session.getId(), new WebSocketSessionHolder(session));
 		findProtocolHandler(session).afterSessionStarted(session, this.clientInboundChannel);
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,19 +27,26 @@ import org.springframework.util.Assert;
  */
 public abstract class AbstractSockJsMessageCodec implements SockJsMessageCodec {
 
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
 	@Override
 	public String encode(String... messages) {
 		Assert.notNull(messages, "messages must not be null");
-		StringBuilder sb = new StringBuilder();
+		int capacity = 3;
+		for (String message : messages) {
+			capacity += (message.length() + 3);
+		}
+		StringBuilder sb = new StringBuilder(capacity + (capacity >> 3));
 		sb.append("a[");
-		for (int i=0; i < messages.length; i++) {
+		for (int i = 0; i < messages.length; i++) {
 			sb.append('"');
 			char[] quotedChars = applyJsonQuoting(messages[i]);
-			sb.append(escapeSockJsSpecialChars(quotedChars));
+			appendSockJsEscaped(quotedChars, sb);
 			sb.append('"');
-            if (i < messages.length - 1) {
-                sb.append(',');
-            }
+			if (i < messages.length - 1) {
+				sb.append(',');
+			}
 		}
 		sb.append(']');
 		return sb.toString();
@@ -51,24 +58,22 @@ public abstract class AbstractSockJsMessageCodec implements SockJsMessageCodec {
 	protected abstract char[] applyJsonQuoting(String content);
 
 	/**
-	 * See "JSON Unicode Encoding" section of SockJS protocol.
+	 * Append the given characters, escaping special characters as per the
+	 * "JSON Unicode Encoding" section of SockJS protocol.
 	 */
-	private String escapeSockJsSpecialChars(char[] characters) {
-		StringBuilder result = new StringBuilder();
-		for (char c : characters) {
+	private void appendSockJsEscaped(char[] characters, StringBuilder result) {
+		int start = 0;
+		for (int i = 0; i < characters.length; i++) {
+			char c = characters[i];
 			if (isSockJsSpecialChar(c)) {
+				result.append(characters, start, i - start);
 				result.append('\\').append('u');
-				String hex = Integer.toHexString(c).toLowerCase();
-				for (int i = 0; i < (4 - hex.length()); i++) {
-					result.append('0');
-				}
-				result.append(hex);
-			}
-			else {
-				result.append(c);
+				result.append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF]);
+				result.append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+				start = i + 1;
 			}
 		}
-		return result.toString();
+		result.append(characters, start, characters.length - start);
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -51,6 +51,7 @@ import org.springframework.web.cors.CorsUtils;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.sockjs.SockJsException;
 import org.springframework.web.socket.sockjs.SockJsService;
+import org.springframework.web.socket.sockjs.transport.HttpMessageCacheOverflowStrategy;
 import org.springframework.web.util.WebUtils;
 
 /**
@@ -94,6 +95,9 @@ public abstract class AbstractSockJsService implements SockJsService, CorsConfig
 
 	private int httpMessageCacheSize = 100;
 
+	private HttpMessageCacheOverflowStrategy httpMessageCacheOverflowStrategy =
+			HttpMessageCacheOverflowStrategy.TERMINATE;
+
 	private boolean webSocketEnabled = true;
 
 	private boolean suppressCors = false;
@@ -260,6 +264,26 @@ public abstract class AbstractSockJsService implements SockJsService, CorsConfig
 		return this.httpMessageCacheSize;
 	}
 
+	/**
+	 * The strategy to apply when a session has cached as many messages as the
+	 * {@link #setHttpMessageCacheSize HTTP message cache size} allows, i.e.
+	 * when messages are sent faster than the client polls for them.
+	 * <p>By default the session is closed.
+	 * @since 4.3
+	 */
+	public void setHttpMessageCacheOverflowStrategy(HttpMessageCacheOverflowStrategy overflowStrategy) {
+		Assert.notNull(overflowStrategy, "HttpMessageCacheOverflowStrategy must not be null");
+		this.httpMessageCacheOverflowStrategy = overflowStrategy;
+	}
+
+	/**
+	 * Return the strategy to apply when the HTTP message cache is full.
+	 * @since 4.3
+	 */
+	public HttpMessageCacheOverflowStrategy getHttpMessageCacheOverflowStrategy() {
+		return this.httpMessageCacheOverflowStrategy;
+	}
+
 	/**
 	 * Some load balancers do not support WebSocket. This option can be used to
 	 * disable the WebSocket transport on the server side.
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.socket.sockjs.transport;
+
+/**
+ * Strategy to apply when the cache of server-to-client messages of a SockJS
+ * HTTP transport session is full, i.e. when messages are sent faster than the
+ * client polls for them.
+ *
+ * @author agent
+ * @since 4.3
+ * @see org.springframework.web.socket.sockjs.support.AbstractSockJsService#setHttpMessageCacheOverflowStrategy
+ */
+public enum HttpMessageCacheOverflowStrategy {
+
+	/**
+	 * Raise {@link org.springframework.web.socket.handler.SessionLimitExceededException}
+	 * that will result in the session being closed. This is the default.
+	 */
+	TERMINATE,
+
+	/**
+	 * Drop the oldest cached message to make room for the new message.
+	 */
+	DROP_OLDEST
+
+}
@@ -45,6 +45,7 @@ import org.springframework.web.socket.sockjs.SockJsException;
 import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
 import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
 import org.springframework.web.socket.sockjs.support.AbstractSockJsService;
+import org.springframework.web.socket.sockjs.transport.session.AbstractHttpSockJsSession;
 
 /**
  * A basic implementation of {@link org.springframework.web.socket.sockjs.SockJsService}
@@ -350,6 +351,10 @@ public class TransportHandlingSockJsService extends AbstractSockJsService implem
 			scheduleSessionTask();
 		}
 		session = sessionFactory.createSession(sessionId, handler, attributes);
+		if (session instanceof AbstractHttpSockJsSession) {
+			((AbstractHttpSockJsSession) session).setMessageCacheOverflowStrategy(
+					getHttpMessageCacheOverflowStrategy());
+		}
 		this.sessions.put(sessionId, session);
 		return session;
 	}
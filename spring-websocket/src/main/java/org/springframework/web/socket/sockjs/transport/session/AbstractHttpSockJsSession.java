@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,14 +33,17 @@ import org.springframework.http.server.ServerHttpAsyncRequestControl;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.util.Assert;
 import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.sockjs.SockJsException;
 import org.springframework.web.socket.sockjs.SockJsTransportFailureException;
 import org.springframework.web.socket.sockjs.frame.SockJsFrame;
 import org.springframework.web.socket.sockjs.frame.SockJsFrameFormat;
+import org.springframework.web.socket.sockjs.transport.HttpMessageCacheOverflowStrategy;
 import org.springframework.web.socket.sockjs.transport.SockJsServiceConfig;
 
 /**
@@ -79,6 +82,9 @@ public abstract class AbstractHttpSockJsSession extends AbstractSockJsSession {
 
 	private final Queue<String> messageCache;
 
+	private volatile HttpMessageCacheOverflowStrategy messageCacheOverflowStrategy =
+			HttpMessageCacheOverflowStrategy.TERMINATE;
+
 
 	public AbstractHttpSockJsSession(String id, SockJsServiceConfig config,
 			WebSocketHandler wsHandler, Map<String, Object> attributes) {
@@ -134,12 +140,34 @@ public abstract class AbstractHttpSockJsSession extends AbstractSockJsSession {
 	 * Return the SockJS buffer for messages stored transparently between polling
 	 * requests. If the polling request takes longer than 5 seconds, the session
 	 * is closed.
+	 * <p>The cache is bounded by the configured HTTP message cache size; what happens
+	 * when it is full depends on the configured {@link HttpMessageCacheOverflowStrategy}.
 	 * @see org.springframework.web.socket.sockjs.transport.TransportHandlingSockJsService
 	 */
 	protected Queue<String> getMessageCache() {
 		return this.messageCache;
 	}
 
+	/**
+	 * Set the strategy to apply when the message cache is full.
+	 * <p>By default this is {@link HttpMessageCacheOverflowStrategy#TERMINATE}.
+	 * {@link org.springframework.web.socket.sockjs.transport.TransportHandlingSockJsService}
+	 * sets it to its own configured strategy when creating a session.
+	 * @since 4.3
+	 */
+	public void setMessageCacheOverflowStrategy(HttpMessageCacheOverflowStrategy overflowStrategy) {
+		Assert.notNull(overflowStrategy, "HttpMessageCacheOverflowStrategy must not be null");
+		this.messageCacheOverflowStrategy = overflowStrategy;
+	}
+
+	/**
+	 * Return the strategy to apply when the message cache is full.
+	 * @since 4.3
+	 */
+	public HttpMessageCacheOverflowStrategy getMessageCacheOverflowStrategy() {
+		return this.messageCacheOverflowStrategy;
+	}
+
 	@Override
 	public boolean isActive() {
 		ServerHttpAsyncRequestControl control = this.asyncRequestControl;
@@ -280,7 +308,9 @@ public abstract class AbstractHttpSockJsSession extends AbstractSockJsSession {
 	@Override
 	protected final void sendMessageInternal(String message) throws SockJsTransportFailureException {
 		synchronized (this.responseLock) {
-			this.messageCache.add(message);
+			if (!this.messageCache.offer(message)) {
+				handleMessageCacheOverflow(message);
+			}
 			if (logger.isTraceEnabled()) {
 				logger.trace(this.messageCache.size() + " message(s) to flush in session " + this.getId());
 			}
@@ -299,6 +329,21 @@ public abstract class AbstractHttpSockJsSession extends AbstractSockJsSession {
 		}
 	}
 
+	private void handleMessageCacheOverflow(String message) {
+		if (this.messageCacheOverflowStrategy == HttpMessageCacheOverflowStrategy.DROP_OLDEST) {
+			this.messageCache.poll();
+			this.messageCache.offer(message);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Message cache full, dropped oldest message in session " + getId());
+			}
+		}
+		else {
+			int cacheSize = getSockJsServiceConfig().getHttpMessageCacheSize();
+			throw new SessionLimitExceededException("Message cache size " + cacheSize +
+					" exceeded in session " + getId(), CloseStatus.SESSION_NOT_RELIABLE);
+		}
+	}
+
 	/**
 	 * Called when the connection is active and ready to write to the response.
 	 * Subclasses should only call this method from a method where the
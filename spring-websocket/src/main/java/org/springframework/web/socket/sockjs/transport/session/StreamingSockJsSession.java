@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -77,24 +77,30 @@ public abstract class StreamingSockJsSession extends AbstractHttpSockJsSession {
 		flushCache();
 	}
 
+	/**
+	 * Write all cached messages as a single message frame, i.e. with a single
+	 * write and flush to the response, rather than one frame per message.
+	 */
 	@Override
 	protected void flushCache() throws SockJsTransportFailureException {
-		while (!getMessageCache().isEmpty()) {
-			String message = getMessageCache().poll();
+		int count = getMessageCache().size();
+		if (count > 0) {
+			String[] messages = new String[count];
+			for (int i = 0; i < count; i++) {
+				messages[i] = getMessageCache().poll();
+			}
 			SockJsMessageCodec messageCodec = getSockJsServiceConfig().getMessageCodec();
-			SockJsFrame frame = SockJsFrame.messageFrame(messageCodec, message);
+			SockJsFrame frame = SockJsFrame.messageFrame(messageCodec, messages);
 			writeFrame(frame);
 
 			this.byteCount += (frame.getContentBytes().length + 1);
 			if (logger.isTraceEnabled()) {
-				logger.trace(this.byteCount + " bytes written so far, " +
-						getMessageCache().size() + " more messages not flushed");
+				logger.trace(this.byteCount + " bytes written so far, " + count + " message(s) in last frame");
 			}
 			if (this.byteCount >= getSockJsServiceConfig().getStreamBytesLimit()) {
 				logger.trace("Streamed bytes limit reached, recycling current request");
 				resetRequest();
 				this.byteCount = 0;
-				break;
 			}
 		}
 		scheduleHeartbeat();
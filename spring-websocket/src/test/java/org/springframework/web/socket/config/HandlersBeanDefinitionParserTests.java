@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -49,6 +49,7 @@ import org.springframework.web.socket.server.support.WebSocketHttpRequestHandler
 import org.springframework.web.socket.sockjs.SockJsService;
 import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
 import org.springframework.web.socket.sockjs.support.SockJsHttpRequestHandler;
+import org.springframework.web.socket.sockjs.transport.HttpMessageCacheOverflowStrategy;
 import org.springframework.web.socket.sockjs.transport.TransportHandler;
 import org.springframework.web.socket.sockjs.transport.TransportHandlingSockJsService;
 import org.springframework.web.socket.sockjs.transport.TransportType;
@@ -220,6 +221,7 @@ public class HandlersBeanDefinitionParserTests {
 		assertEquals(2048, transportService.getStreamBytesLimit());
 		assertEquals(256, transportService.getDisconnectDelay());
 		assertEquals(1024, transportService.getHttpMessageCacheSize());
+		assertEquals(HttpMessageCacheOverflowStrategy.DROP_OLDEST, transportService.getHttpMessageCacheOverflowStrategy());
 		assertEquals(20, transportService.getHeartbeatTime());
 		assertEquals("/js/sockjs.min.js", transportService.getSockJsClientLibraryUrl());
 		assertEquals(TestMessageCodec.class, transportService.getMessageCodec().getClass());
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -66,6 +66,7 @@ import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
 import org.springframework.web.socket.handler.ExceptionWebSocketHandlerDecorator;
 import org.springframework.web.socket.handler.LoggingWebSocketHandlerDecorator;
 import org.springframework.web.socket.handler.TestWebSocketSession;
@@ -142,6 +143,8 @@ public class MessageBrokerBeanDefinitionParserTests {
 		assertEquals(Arrays.asList("v10.stomp", "v11.stomp", "v12.stomp"), subProtocolWsHandler.getSubProtocols());
 		assertEquals(25 * 1000, subProtocolWsHandler.getSendTimeLimit());
 		assertEquals(1024 * 1024, subProtocolWsHandler.getSendBufferSizeLimit());
+		assertEquals(OverflowStrategy.CONFLATE, subProtocolWsHandler.getSendBufferOverflowStrategy());
+		assertEquals(8192, subProtocolWsHandler.getSendBatchSizeLimit());
 
 		Map<String, SubProtocolHandler> handlerMap = subProtocolWsHandler.getProtocolHandlerMap();
 		StompSubProtocolHandler stompHandler = (StompSubProtocolHandler) handlerMap.get("v12.stomp");
@@ -199,6 +202,8 @@ public class MessageBrokerBeanDefinitionParserTests {
 		assertEquals(Arrays.asList("/topic", "/queue"), new ArrayList<String>(prefixes));
 		assertNotNull(brokerMessageHandler.getTaskScheduler());
 		assertArrayEquals(new long[] {15000, 15000}, brokerMessageHandler.getHeartbeatValue());
+		assertArrayEquals(new String[] {"/topic/price.**", "/topic/status"},
+				brokerMessageHandler.getConflatedDestinations());
 
 		List<Class<? extends MessageHandler>> subscriberTypes =
 				Arrays.<Class<? extends MessageHandler>>asList(SimpAnnotationMethodMessageHandler.class,
@@ -265,6 +270,9 @@ public class MessageBrokerBeanDefinitionParserTests {
 		assertEquals("relayhost", messageBroker.getRelayHost());
 		assertEquals(1234, messageBroker.getRelayPort());
 		assertEquals("spring.io", messageBroker.getVirtualHost());
+		assertEquals(100, messageBroker.getMaxPendingWrites());
+		assertEquals(2000, messageBroker.getPendingWriteTimeout());
+		assertEquals(4, messageBroker.getMultiplexedConnectionCount());
 		assertEquals(5000, messageBroker.getSystemHeartbeatReceiveInterval());
 		assertEquals(5000, messageBroker.getSystemHeartbeatSendInterval());
 		assertThat(messageBroker.getDestinationPrefixes(), Matchers.containsInAnyOrder("/topic","/queue"));
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -55,6 +55,7 @@ import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
 import org.springframework.web.socket.handler.TestWebSocketSession;
 import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
 import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
@@ -141,6 +142,8 @@ public class WebSocketMessageBrokerConfigurationSupportTests {
 
 		assertEquals(1024 * 1024, subWsHandler.getSendBufferSizeLimit());
 		assertEquals(25 * 1000, subWsHandler.getSendTimeLimit());
+		assertEquals(OverflowStrategy.DROP, subWsHandler.getSendBufferOverflowStrategy());
+		assertEquals(8192, subWsHandler.getSendBatchSizeLimit());
 
 		Map<String, SubProtocolHandler> handlerMap = subWsHandler.getProtocolHandlerMap();
 		StompSubProtocolHandler protocolHandler = (StompSubProtocolHandler) handlerMap.get("v12.stomp");
@@ -160,6 +163,7 @@ public class WebSocketMessageBrokerConfigurationSupportTests {
 		SimpleBrokerMessageHandler handler = config.getBean(SimpleBrokerMessageHandler.class);
 		assertNotNull(handler.getTaskScheduler());
 		assertArrayEquals(new long[] {15000, 15000}, handler.getHeartbeatValue());
+		assertArrayEquals(new String[] {"/topic/price.**"}, handler.getConflatedDestinations());
 	}
 
 	@Test
@@ -236,13 +240,16 @@ public class WebSocketMessageBrokerConfigurationSupportTests {
 			registration.setMessageSizeLimit(128 * 1024);
 			registration.setSendTimeLimit(25 * 1000);
 			registration.setSendBufferSizeLimit(1024 * 1024);
+			registration.setSendBufferOverflowStrategy(OverflowStrategy.DROP);
+			registration.setSendBatchSizeLimit(8192);
 		}
 
 		@Override
 		public void configureMessageBroker(MessageBrokerRegistry registry) {
 			registry.enableSimpleBroker()
 					.setTaskScheduler(mock(TaskScheduler.class))
-					.setHeartbeatValue(new long[] {15000, 15000});
+					.setHeartbeatValue(new long[] {15000, 15000})
+					.setConflatedDestinations("/topic/price.**");
 		}
 	}
 
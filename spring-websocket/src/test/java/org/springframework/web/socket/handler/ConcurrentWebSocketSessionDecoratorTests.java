@@ -17,6 +17,7 @@
 package org.springframework.web.socket.handler;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -188,6 +189,206 @@ public class ConcurrentWebSocketSessionDecoratorTests {
 		}
 	}
 
+	@Test
+	public void sendBufferSizeExceededWithDropStrategy() throws IOException, InterruptedException {
+
+		BlockingSession blockingSession = new BlockingSession();
+		blockingSession.setOpen(true);
+		CountDownLatch sentMessageLatch = blockingSession.getSentMessageLatch();
+
+		final ConcurrentWebSocketSessionDecorator concurrentSession = new ConcurrentWebSocketSessionDecorator(
+				blockingSession, 10 * 1000, 1024, ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+
+		sendInBackground(concurrentSession, new TextMessage("slow message"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		StringBuilder sb = new StringBuilder();
+		for (int i=0 ; i < 1023; i++) {
+			sb.append("a");
+		}
+		TextMessage message = new TextMessage(sb.toString());
+		concurrentSession.sendMessage(message, "key-1");
+		concurrentSession.sendMessage(message, "key-2");
+
+		assertEquals(1023, concurrentSession.getBufferSize());
+		assertTrue(blockingSession.isOpen());
+	}
+
+	@Test
+	public void sendBufferSizeExceededWithDropStrategyAndNoConflationKey() throws IOException, InterruptedException {
+
+		BlockingSession blockingSession = new BlockingSession();
+		blockingSession.setId("123");
+		blockingSession.setOpen(true);
+		CountDownLatch sentMessageLatch = blockingSession.getSentMessageLatch();
+
+		final ConcurrentWebSocketSessionDecorator concurrentSession = new ConcurrentWebSocketSessionDecorator(
+				blockingSession, 10 * 1000, 1024, ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP);
+
+		sendInBackground(concurrentSession, new TextMessage("slow message"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		StringBuilder sb = new StringBuilder();
+		for (int i=0 ; i < 1023; i++) {
+			sb.append("a");
+		}
+		TextMessage message = new TextMessage(sb.toString());
+		concurrentSession.sendMessage(message);
+
+		try {
+			concurrentSession.sendMessage(message);
+			fail("Expected exception");
+		}
+		catch (SessionLimitExceededException ex) {
+			assertEquals(2046, concurrentSession.getBufferSize());
+			assertEquals(CloseStatus.SESSION_NOT_RELIABLE, ex.getStatus());
+		}
+	}
+
+	@Test
+	public void sendBufferSizeExceededWithConflateStrategy() throws IOException, InterruptedException {
+
+		BlockingSession blockingSession = new BlockingSession();
+		blockingSession.setOpen(true);
+		CountDownLatch sentMessageLatch = blockingSession.getSentMessageLatch();
+
+		TextMessage price1 = createMessageFrame("sub-0", "/topic/price.IBM", "101");
+		TextMessage other = createMessageFrame("sub-1", "/topic/price.IBM", "101");
+		TextMessage price2 = createMessageFrame("sub-0", "/topic/price.IBM", "102");
+		int frameLength = price1.getPayloadLength();
+
+		final ConcurrentWebSocketSessionDecorator concurrentSession = new ConcurrentWebSocketSessionDecorator(
+				blockingSession, 10 * 1000, 2 * frameLength, ConcurrentWebSocketSessionDecorator.OverflowStrategy.CONFLATE);
+
+		sendInBackground(concurrentSession, new TextMessage("slow message"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		concurrentSession.sendMessage(price1, "sub-0\n/topic/price.IBM");
+		concurrentSession.sendMessage(other, "sub-1\n/topic/price.IBM");
+		concurrentSession.sendMessage(price2, "sub-0\n/topic/price.IBM");
+
+		assertEquals(2 * frameLength, concurrentSession.getBufferSize());
+		assertTrue(blockingSession.isOpen());
+
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		blockingSession.release();
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		blockingSession.release();
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		assertEquals(Arrays.asList(new TextMessage("slow message"), other, price2), blockingSession.getSentMessages());
+	}
+
+	@Test
+	public void sendBufferSizeExceededWithConflateStrategyKeepsMessagesWithoutConflationKey() throws Exception {
+
+		BlockingSession blockingSession = new BlockingSession();
+		blockingSession.setOpen(true);
+		CountDownLatch sentMessageLatch = blockingSession.getSentMessageLatch();
+
+		TextMessage receipt = new TextMessage("RECEIPT\nreceipt-id:r-1\n\n\0");
+		TextMessage price1 = createMessageFrame("sub-0", "/topic/price.IBM", "101");
+		TextMessage price2 = createMessageFrame("sub-1", "/topic/price.SAP", "102");
+		int limit = receipt.getPayloadLength() + price1.getPayloadLength();
+
+		final ConcurrentWebSocketSessionDecorator concurrentSession = new ConcurrentWebSocketSessionDecorator(
+				blockingSession, 10 * 1000, limit, ConcurrentWebSocketSessionDecorator.OverflowStrategy.CONFLATE);
+
+		sendInBackground(concurrentSession, new TextMessage("slow message"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		concurrentSession.sendMessage(receipt);
+		concurrentSession.sendMessage(price1, "sub-0\n/topic/price.IBM");
+		concurrentSession.sendMessage(price2, "sub-1\n/topic/price.SAP");
+
+		assertEquals(limit, concurrentSession.getBufferSize());
+		assertTrue(blockingSession.isOpen());
+
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		blockingSession.release();
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		blockingSession.release();
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		assertEquals(Arrays.asList(new TextMessage("slow message"), receipt, price2), blockingSession.getSentMessages());
+	}
+
+	@Test
+	public void sendWithBatchSizeLimit() throws IOException, InterruptedException {
+
+		BlockingSession blockingSession = new BlockingSession();
+		blockingSession.setOpen(true);
+		CountDownLatch sentMessageLatch = blockingSession.getSentMessageLatch();
+
+		final ConcurrentWebSocketSessionDecorator concurrentSession =
+				new ConcurrentWebSocketSessionDecorator(blockingSession, 10 * 1000, 1024);
+		concurrentSession.setBatchSizeLimit(10);
+
+		sendInBackground(concurrentSession, new TextMessage("slow"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		concurrentSession.sendMessage(new TextMessage("abc\0"));
+		concurrentSession.sendMessage(new TextMessage("def\0"));
+		concurrentSession.sendMessage(new TextMessage("ghi\0"));
+		assertEquals(12, concurrentSession.getBufferSize());
+
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		blockingSession.release();
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		assertEquals(new TextMessage("abc\0def\0"), blockingSession.getSentMessages().get(1));
+		assertEquals(4, concurrentSession.getBufferSize());
+
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		blockingSession.release();
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		assertEquals(new TextMessage("ghi\0"), blockingSession.getSentMessages().get(2));
+		assertEquals(0, concurrentSession.getBufferSize());
+	}
+
+	@Test
+	public void sendWithBatchSizeLimitAfterFailedSend() throws IOException, InterruptedException {
+
+		final CountDownLatch failedSendLatch = new CountDownLatch(1);
+		BlockingSession blockingSession = new BlockingSession() {
+			@Override
+			public void sendMessage(WebSocketMessage<?> message) throws IOException {
+				if (failedSendLatch.getCount() > 0 && getSentMessages().size() == 1) {
+					failedSendLatch.countDown();
+					throw new IOException("Failed send");
+				}
+				super.sendMessage(message);
+			}
+		};
+		blockingSession.setOpen(true);
+		CountDownLatch sentMessageLatch = blockingSession.getSentMessageLatch();
+
+		final ConcurrentWebSocketSessionDecorator concurrentSession =
+				new ConcurrentWebSocketSessionDecorator(blockingSession, 10 * 1000, 1024);
+		concurrentSession.setBatchSizeLimit(10);
+
+		sendInBackground(concurrentSession, new TextMessage("slow"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		concurrentSession.sendMessage(new TextMessage("abc\0"));
+		concurrentSession.sendMessage(new TextMessage("def\0"));
+		concurrentSession.sendMessage(new TextMessage("ghijklm\0"));
+		assertEquals(16, concurrentSession.getBufferSize());
+
+		blockingSession.release();
+		assertTrue(failedSendLatch.await(5, TimeUnit.SECONDS));
+
+		// "ghijklm" did not fit into the failed batch and must still be buffered
+		sentMessageLatch = blockingSession.getSentMessageLatch();
+		sendInBackground(concurrentSession, new TextMessage("x"));
+		assertTrue(sentMessageLatch.await(5, TimeUnit.SECONDS));
+
+		assertEquals(new TextMessage("ghijklm\0x"), blockingSession.getSentMessages().get(1));
+	}
+
 	@Test
 	public void closeStatusNormal() throws Exception {
 
@@ -238,6 +439,22 @@ public class ConcurrentWebSocketSessionDecoratorTests {
 	}
 
 
+	private static void sendInBackground(ConcurrentWebSocketSessionDecorator session, TextMessage message) {
+		Executors.newSingleThreadExecutor().submit((Runnable) () -> {
+			try {
+				session.sendMessage(message);
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	private static TextMessage createMessageFrame(String subscription, String destination, String body) {
+		return new TextMessage("MESSAGE\nsubscription:" + subscription + "\ndestination:" + destination +
+				"\nmessage-id:" + body + "\n\n" + body + "\0");
+	}
+
 
 	private static class BlockingSession extends TestWebSocketSession {
 
@@ -251,9 +468,14 @@ public class ConcurrentWebSocketSessionDecoratorTests {
 			return this.nextMessageLatch.get();
 		}
 
+		public void release() {
+			this.releaseLatch.get().countDown();
+		}
+
 		@Override
 		public void sendMessage(WebSocketMessage<?> message) throws IOException {
 			super.sendMessage(message);
+			this.releaseLatch.set(new CountDownLatch(1));
 			if (this.nextMessageLatch != null) {
 				this.nextMessageLatch.get().countDown();
 			}
@@ -262,7 +484,6 @@ public class ConcurrentWebSocketSessionDecoratorTests {
 
 		private void block() {
 			try {
-				this.releaseLatch.set(new CountDownLatch(1));
 				this.releaseLatch.get().await();
 			}
 			catch (InterruptedException e) {
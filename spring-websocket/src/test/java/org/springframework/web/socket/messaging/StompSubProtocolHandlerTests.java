@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,11 +17,15 @@
 package org.springframework.web.socket.messaging;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
@@ -53,6 +57,7 @@ import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TestWebSocketSession;
 import org.springframework.web.socket.sockjs.transport.SockJsSession;
 
@@ -61,6 +66,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -225,6 +231,124 @@ public class StompSubProtocolHandlerTests {
 		assertFalse(((String) textMessage.getPayload()).contains(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION));
 	}
 
+	@Test
+	public void handleMessageToClientWithBroadcast() {
+		byte[] payload = "{\"price\":\"\u20ac 100\"}".getBytes(StandardCharsets.UTF_8);
+		Map<String, Object> broadcast = new ConcurrentHashMap<>();
+		for (int i = 0; i < 3; i++) {
+			this.protocolHandler.handleMessageToClient(this.session, createBroadcastMessage(payload, "sub" + i, broadcast));
+		}
+
+		// Each message on its own, never taking the broadcast path
+		TestWebSocketSession expectedSession = new TestWebSocketSession();
+		StompSubProtocolHandler expectedHandler = new StompSubProtocolHandler();
+		for (int i = 0; i < 3; i++) {
+			expectedHandler.handleMessageToClient(expectedSession, createBroadcastMessage(payload, "sub" + i, null));
+		}
+
+		assertEquals(3, this.session.getSentMessages().size());
+		Set<String> messageIds = new HashSet<>();
+		for (int i = 0; i < 3; i++) {
+			String actual = ((TextMessage) this.session.getSentMessages().get(i)).getPayload();
+			String expected = ((TextMessage) expectedSession.getSentMessages().get(i)).getPayload();
+			assertTrue(actual, actual.contains("\nsubscription:sub" + i + "\n"));
+			assertTrue(actual, actual.endsWith("\n\n{\"price\":\"\u20ac 100\"}\u0000"));
+			assertEquals(expected.replaceAll("message-id:.*\n", ""), actual.replaceAll("message-id:.*\n", ""));
+			int start = actual.indexOf("message-id:");
+			messageIds.add(actual.substring(start, actual.indexOf('\n', start)));
+		}
+		// One message-id per subscription of the session
+		assertEquals(3, messageIds.size());
+	}
+
+	@Test
+	public void handleMessageToClientWithBroadcastSharesFrame() {
+		byte[] payload = "{\"price\":\"\u20ac 100\"}".getBytes(StandardCharsets.UTF_8);
+		Map<String, Object> broadcast = new ConcurrentHashMap<>();
+		List<TestWebSocketSession> sessions = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			TestWebSocketSession session = new TestWebSocketSession("s" + i);
+			this.protocolHandler.handleMessageToClient(session, createBroadcastMessage(payload, "sub-0", broadcast));
+			sessions.add(session);
+		}
+		this.protocolHandler.handleMessageToClient(this.session, createBroadcastMessage(payload, "sub-1", broadcast));
+
+		WebSocketMessage<?> frame = sessions.get(0).getSentMessages().get(0);
+		String actual = ((TextMessage) frame).getPayload();
+		assertTrue(actual, actual.contains("\nsubscription:sub-0\n"));
+		assertTrue(actual, actual.endsWith("\n\n{\"price\":\"\u20ac 100\"}\u0000"));
+		for (TestWebSocketSession session : sessions) {
+			assertEquals(1, session.getSentMessages().size());
+			assertSame(frame, session.getSentMessages().get(0));
+		}
+
+		String other = ((TextMessage) this.session.getSentMessages().get(0)).getPayload();
+		assertTrue(other, other.contains("\nsubscription:sub-1\n"));
+		int start = actual.indexOf("message-id:");
+		assertFalse(other, other.contains(actual.substring(start, actual.indexOf('\n', start) + 1)));
+		assertEquals(actual.replace("sub-0", "sub-1").replaceAll("message-id:.*\n", ""),
+				other.replaceAll("message-id:.*\n", ""));
+	}
+
+	@Test
+	public void handleMessageToClientWithBroadcastSharesFrameBytes() {
+		byte[] payload = "{\"price\":\"\u20ac 100\"}".getBytes(StandardCharsets.UTF_8);
+		Map<String, Object> broadcast = new ConcurrentHashMap<>();
+		List<TestWebSocketSession> sessions = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			TestWebSocketSession session = new TestWebSocketSession("s" + i);
+			ConcurrentWebSocketSessionDecorator decorator = new ConcurrentWebSocketSessionDecorator(session, 1000, 1024);
+			this.protocolHandler.handleMessageToClient(decorator, createBroadcastMessage(payload, "sub-0", broadcast));
+			sessions.add(session);
+		}
+
+		TextMessage frame = (TextMessage) sessions.get(0).getSentMessages().get(0);
+		assertSame(frame, sessions.get(1).getSentMessages().get(0));
+		// Encoded once when built, not on every call
+		assertSame(frame.asBytes(), frame.asBytes());
+		assertEquals(frame.getPayload().getBytes(StandardCharsets.UTF_8).length, frame.getPayloadLength());
+		assertTrue(frame.getPayload(), frame.getPayload().endsWith("\n\n{\"price\":\"\u20ac 100\"}\u0000"));
+	}
+
+	@Test
+	public void handleMessageToClientWithReusedPayload() {
+		byte[] payload = "first".getBytes(StandardCharsets.UTF_8);
+		this.protocolHandler.handleMessageToClient(this.session, createBroadcastMessage(payload, "sub1", null));
+		System.arraycopy("other".getBytes(StandardCharsets.UTF_8), 0, payload, 0, payload.length);
+		this.protocolHandler.handleMessageToClient(this.session, createBroadcastMessage(payload, "sub2", null));
+
+		assertEquals(2, this.session.getSentMessages().size());
+		String actual = ((TextMessage) this.session.getSentMessages().get(1)).getPayload();
+		assertTrue(actual, actual.endsWith("\n\nother\u0000"));
+	}
+
+	@Test
+	public void handleMessageToClientWithConflationKey() {
+		final List<Object> keys = new ArrayList<>();
+		ConcurrentWebSocketSessionDecorator decorator =
+				new ConcurrentWebSocketSessionDecorator(this.session, 1000, 1024) {
+					@Override
+					public void sendMessage(WebSocketMessage<?> message, Object conflationKey) throws IOException {
+						keys.add(conflationKey);
+						super.sendMessage(message, conflationKey);
+					}
+				};
+
+		StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+		headers.setMessageId("mess0");
+		headers.setSubscriptionId("sub0");
+		headers.setDestination("/topic/foo");
+		Message<byte[]> message = MessageBuilder.createMessage("payload".getBytes(), headers.getMessageHeaders());
+		this.protocolHandler.handleMessageToClient(decorator, message);
+
+		headers = StompHeaderAccessor.create(StompCommand.CONNECTED);
+		message = MessageBuilder.createMessage(EMPTY_PAYLOAD, headers.getMessageHeaders());
+		this.protocolHandler.handleMessageToClient(decorator, message);
+
+		assertEquals(2, this.session.getSentMessages().size());
+		assertEquals(Arrays.asList("sub0\n/topic/foo", null), keys);
+	}
+
 	// SPR-12475
 
 	@Test
@@ -454,6 +578,19 @@ public class StompSubProtocolHandlerTests {
 	}
 
 
+	private Message<byte[]> createBroadcastMessage(byte[] payload, String subscriptionId, Map<String, Object> broadcast) {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		if (broadcast != null) {
+			headers.setHeader(SimpMessageHeaderAccessor.BROADCAST_HEADER, broadcast);
+		}
+		headers.setSessionId("s1");
+		headers.setSubscriptionId(subscriptionId);
+		headers.setDestination("/topic/price");
+		headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		return MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+	}
+
+
 	private static class UniqueUser extends TestPrincipal implements DestinationUserNameProvider {
 
 		private UniqueUser(String name) {
@@ -33,10 +33,12 @@ import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.handler.TestPrincipal;
 import org.springframework.web.socket.server.HandshakeHandler;
 import org.springframework.web.socket.server.support.OriginHandshakeInterceptor;
+import org.springframework.web.socket.sockjs.transport.HttpMessageCacheOverflowStrategy;
 import org.springframework.web.socket.sockjs.transport.SockJsSessionFactory;
 import org.springframework.web.socket.sockjs.transport.TransportHandler;
 import org.springframework.web.socket.sockjs.transport.TransportHandlingSockJsService;
 import org.springframework.web.socket.sockjs.transport.TransportType;
+import org.springframework.web.socket.sockjs.transport.session.PollingSockJsSession;
 import org.springframework.web.socket.sockjs.transport.session.StubSockJsServiceConfig;
 import org.springframework.web.socket.sockjs.transport.session.TestSockJsSession;
 
@@ -153,6 +155,22 @@ public class DefaultSockJsServiceTests extends AbstractHttpRequestTests {
 		assertNull(this.servletResponse.getHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS));
 	}
 
+	@Test
+	public void handleTransportRequestXhrWithMessageCacheOverflowStrategy() throws Exception {
+		Map<String, Object> attributes = Collections.emptyMap();
+		PollingSockJsSession session =
+				new PollingSockJsSession(sessionId, new StubSockJsServiceConfig(), this.wsHandler, attributes);
+		given(this.xhrHandler.createSession(sessionId, this.wsHandler, attributes)).willReturn(session);
+		this.service.setHttpMessageCacheOverflowStrategy(HttpMessageCacheOverflowStrategy.DROP_OLDEST);
+
+		String sockJsPath = sessionUrlPrefix + "xhr";
+		setRequest("POST", sockJsPrefix + sockJsPath);
+		this.service.handleRequest(this.request, this.response, sockJsPath, this.wsHandler);
+
+		verify(this.xhrHandler).handleRequest(this.request, this.response, this.wsHandler, session);
+		assertEquals(HttpMessageCacheOverflowStrategy.DROP_OLDEST, session.getMessageCacheOverflowStrategy());
+	}
+
 	@Test  // SPR-12226
 	public void handleTransportRequestXhrAllowedOriginsMatch() throws Exception {
 		String sockJsPath = sessionUrlPrefix + "xhr";
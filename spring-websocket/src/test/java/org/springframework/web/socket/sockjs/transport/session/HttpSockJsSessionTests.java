@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2014 the original author or authors.
+ * Copyright 2002-2016 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.web.socket.sockjs.transport.session;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.junit.Before;
@@ -28,10 +29,14 @@ import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.mock.web.test.MockHttpServletRequest;
 import org.springframework.mock.web.test.MockHttpServletResponse;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.sockjs.frame.DefaultSockJsFrameFormat;
 import org.springframework.web.socket.sockjs.frame.SockJsFrame;
 import org.springframework.web.socket.sockjs.frame.SockJsFrameFormat;
+import org.springframework.web.socket.sockjs.transport.HttpMessageCacheOverflowStrategy;
 import org.springframework.web.socket.sockjs.transport.SockJsServiceConfig;
 import org.springframework.web.socket.sockjs.transport.session.HttpSockJsSessionTests.TestAbstractHttpSockJsSession;
 
@@ -101,6 +106,60 @@ public class HttpSockJsSessionTests extends AbstractSockJsSessionTests<TestAbstr
 		verifyNoMoreInteractions(this.webSocketHandler);
 	}
 
+	@Test
+	public void flushCacheAsSingleFrame() throws Exception {
+
+		StreamingSockJsSession session = new StreamingSockJsSession("2", this.sockJsConfig, this.webSocketHandler, null) {
+			@Override
+			protected byte[] getPrelude(ServerHttpRequest request) {
+				return "hhh\n".getBytes();
+			}
+		};
+		session.getMessageCache().add("x");
+		session.getMessageCache().add("y");
+		session.handleSuccessiveRequest(this.request, this.response, this.frameFormat);
+
+		assertEquals("hhh\na[\"x\",\"y\"]", this.servletResponse.getContentAsString());
+		assertTrue(session.getMessageCache().isEmpty());
+	}
+
+	@Test
+	public void messageCacheOverflow() throws Exception {
+
+		this.sockJsConfig.setHttpMessageCacheSize(2);
+		this.session = initSockJsSession();
+		this.session.sendMessage(new TextMessage("x"));
+		this.session.sendMessage(new TextMessage("y"));
+
+		try {
+			this.session.sendMessage(new TextMessage("z"));
+			fail("Expected exception");
+		}
+		catch (SessionLimitExceededException ex) {
+			assertEquals(CloseStatus.SESSION_NOT_RELIABLE, ex.getStatus());
+		}
+		assertEquals(Arrays.asList("x", "y"), Arrays.asList(this.session.getMessageCache().toArray()));
+	}
+
+	@Test
+	public void messageCacheOverflowDropOldest() throws Exception {
+
+		this.sockJsConfig.setHttpMessageCacheSize(2);
+		this.session = initSockJsSession();
+		this.session.setMessageCacheOverflowStrategy(HttpMessageCacheOverflowStrategy.DROP_OLDEST);
+		this.session.sendMessage(new TextMessage("x"));
+		this.session.sendMessage(new TextMessage("y"));
+		this.session.sendMessage(new TextMessage("z"));
+
+		assertEquals(Arrays.asList("y", "z"), Arrays.asList(this.session.getMessageCache().toArray()));
+	}
+
+	@Test
+	public void messageCacheOverflowStrategyDefault() throws Exception {
+		assertEquals(HttpMessageCacheOverflowStrategy.TERMINATE,
+				initSockJsSession().getMessageCacheOverflowStrategy());
+	}
+
 
 	static class TestAbstractHttpSockJsSession extends StreamingSockJsSession {
 